@@ -1,10 +1,10 @@
 package com.mathagent.agents;
 
 import com.mathagent.exception.PromptProcessingException;
+import com.mathagent.execution.CancellationToken;
+import com.mathagent.execution.TaskCancellationRegistry;
 import com.mathagent.service.PromptService;
 import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.UserMessage;
-import org.springframework.ai.chat.prompt.Prompt;
 import com.alibaba.cloud.ai.graph.OverAllState;
 import com.alibaba.cloud.ai.graph.action.NodeAction;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,20 +16,44 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 代码手Agent 专门负责代码生成、执行和调试
- * 
+ *
+ * 首次执行失败后进入修复：每轮并行请求K个修复候选，各自在独立会话中执行，第一个执行成功的候选胜出，
+ * 其余候选的模型调用和Python进程随即取消；修复轮数受时间和Token预算限制。K为1时按原方式在同一会话中调试一次
+ *
  * @author Makoto
  */
 @Slf4j
 @Component
 public class CodingAgent implements NodeAction {
 
+	private static final String NODE_NAME = "coding_agent";
+
+	/**
+	 * 各候选的修复思路，候选数超过思路数时循环使用
+	 */
+	private static final List<String> REPAIR_STRATEGIES = List.of("在原代码基础上做最小改动，只修正导致错误的部分",
+			"换用更稳健的实现方式，例如替换出错的库函数或算法，并对输入数据做必要的校验",
+			"简化计算流程，去掉非必要的步骤，优先保证代码能完整运行并输出关键结果");
+
 	@Autowired
 	@Qualifier("codingChatClient")
 	private ChatClient codingChatClient;
@@ -43,6 +67,37 @@ public class CodingAgent implements NodeAction {
 	@Autowired
 	private ObjectMapper objectMapper;
 
+	@Autowired
+	private StreamingChatInvoker streamingChatInvoker;
+
+	@Autowired
+	private TaskCancellationRegistry cancellationRegistry;
+
+	@Autowired
+	@Qualifier("codeRepairExecutor")
+	private Executor codeRepairExecutor;
+
+	/**
+	 * 每轮并行的修复候选数，小于等于1时在原会话中串行调试一次
+	 */
+	@Value("${math-agent.coding.repair.candidates:3}")
+	private int repairCandidates;
+
+	@Value("${math-agent.coding.repair.max-rounds:2}")
+	private int repairMaxRounds;
+
+	/**
+	 * 修复阶段的总耗时上限
+	 */
+	@Value("${math-agent.coding.repair.latency-budget-seconds:600}")
+	private long repairLatencyBudgetSeconds;
+
+	/**
+	 * 修复阶段的Token预算（按字符数估算，提示词和预计输出都计入），不足一个候选时停止修复
+	 */
+	@Value("${math-agent.coding.repair.token-budget:60000}")
+	private long repairTokenBudget;
+
 	@Override
 	public Map<String, Object> apply(OverAllState state) {
 		log.info("代码手开始工作...");
@@ -50,12 +105,13 @@ public class CodingAgent implements NodeAction {
 		try {
 			Map<String, Object> modelingResult = (Map<String, Object>) state.value("modeling_analysis").get();
 			String taskId = state.value("task_id").get().toString();
+			Long eventTaskId = StreamingChatInvoker.parseTaskId(taskId);
 
 			// 创建代码执行会话
 			PythonCodeExecutorService.PythonSession session = pythonCodeExecutorService.createSession(taskId);
 
 			// 生成代码
-			String code = generateCode(modelingResult);
+			String code = generateCode(eventTaskId, modelingResult);
 
 			// 执行代码
 			PythonCodeExecutorService.CodeExecutionResult result = pythonCodeExecutorService
@@ -66,10 +122,15 @@ public class CodingAgent implements NodeAction {
 
 			// 如果执行失败，尝试调试
 			if (!result.isSuccess()) {
-				String debugCode = debugCode(code, result.getError());
-				PythonCodeExecutorService.CodeExecutionResult debugResult = pythonCodeExecutorService
-					.executeCode(session.getSessionId(), debugCode, "python");
-				codingResult.put("debug_result", processExecutionResult(debugResult, debugCode));
+				if (repairCandidates > 1) {
+					codingResult.put("debug_result", repairInParallel(taskId, eventTaskId, code, result.getError()));
+				}
+				else {
+					String debugCode = debugCode(eventTaskId, session.getSessionId(), code, result.getError());
+					PythonCodeExecutorService.CodeExecutionResult debugResult = pythonCodeExecutorService
+						.executeCode(session.getSessionId(), debugCode, "python");
+					codingResult.put("debug_result", processExecutionResult(debugResult, debugCode));
+				}
 			}
 
 			log.info("代码手完成工作: {}", codingResult.get("summary"));
@@ -89,34 +150,266 @@ public class CodingAgent implements NodeAction {
 		}
 	}
 
-	private String generateCode(Map<String, Object> modelingResult) throws PromptProcessingException {
+	private String generateCode(Long taskId, Map<String, Object> modelingResult) throws PromptProcessingException {
 		// 使用提示词服务构建代码生成提示
 		String codingPrompt = promptService.getCodeGenerationPrompt(modelingResult);
 
-		Prompt prompt = new Prompt(List.of(new UserMessage(codingPrompt)));
-		String response = codingChatClient.prompt(prompt).call().content();
+		return streamingChatInvoker.call(codingChatClient, taskId, NODE_NAME, "generate_code", codingPrompt);
+	}
+
+	private String debugCode(Long taskId, String sessionId, String originalCode, String error)
+			throws PromptProcessingException {
+		// 使用提示词服务构建代码调试提示；内核崩溃、超时被终止或未在内核中执行时变量已不可用，要求提供完整代码
+		String debugPrompt = promptService.getCodeDebugPrompt(originalCode, error,
+				pythonCodeExecutorService.isSessionStateAvailable(sessionId));
+
+		return streamingChatInvoker.call(codingChatClient, taskId, NODE_NAME, "debug_code", debugPrompt);
+	}
+
+	/**
+	 * 并行修复：每轮并行生成并执行K个候选，第一个成功的候选胜出；全部失败时以输出最多（执行得最远）的候选作为下一轮的基础
+	 */
+	private Map<String, Object> repairInParallel(String taskId, Long eventTaskId, String originalCode,
+			String originalError) throws InterruptedException {
+		CancellationToken taskToken = cancellationRegistry.get(eventTaskId);
+		long startedAt = System.currentTimeMillis();
+		Instant deadline = Instant.now().plusSeconds(repairLatencyBudgetSeconds);
+		Duration taskRemaining = taskToken.remaining();
+		if (taskRemaining != null && Instant.now().plus(taskRemaining).isBefore(deadline)) {
+			deadline = Instant.now().plus(taskRemaining);
+		}
+
+		String baseCode = originalCode;
+		String baseError = originalError;
+		long tokensUsed = 0;
+		int rounds = 0;
+		int candidatesStarted = 0;
+		String stopReason = "max_rounds";
+		RepairCandidate best = null;
+
+		while (rounds < repairMaxRounds) {
+			Duration remaining = Duration.between(Instant.now(), deadline);
+			if (remaining.isNegative() || remaining.isZero()) {
+				stopReason = "latency_budget";
+				break;
+			}
+			// 每个候选的Token估算：提示词加上与原代码等长的输出
+			long perCandidate = estimateTokens(baseCode) * 2 + estimateTokens(baseError) + 1000;
+			int count = (int) Math.min(repairCandidates, (repairTokenBudget - tokensUsed) / perCandidate);
+			if (count < 1) {
+				stopReason = "token_budget";
+				break;
+			}
+			rounds++;
+			tokensUsed += perCandidate * count;
+			candidatesStarted += count;
+
+			RoundOutcome outcome = runRound(taskId, eventTaskId, taskToken, rounds, count, baseCode, baseError,
+					deadline);
+			if (outcome.winner() != null) {
+				log.info("并行修复成功: 第{}轮候选{}，耗时{}ms", rounds, outcome.winner().index(),
+						System.currentTimeMillis() - startedAt);
+				return repairResult(outcome.winner(), rounds, candidatesStarted, tokensUsed, startedAt, "success");
+			}
+			if (outcome.best() != null) {
+				best = outcome.best();
+				baseCode = best.code();
+				baseError = best.result().getError();
+			}
+			if (outcome.timedOut()) {
+				stopReason = "latency_budget";
+				break;
+			}
+		}
+
+		log.warn("并行修复未成功: {}轮，{}个候选，停止原因 {}", rounds, candidatesStarted, stopReason);
+		return repairResult(best, rounds, candidatesStarted, tokensUsed, startedAt, stopReason);
+	}
+
+	/**
+	 * 执行一轮修复：K个候选并行，第一个成功者胜出后取消其余候选；落选候选的会话在其结束后清理
+	 *
+	 * 等待时间按截止时刻计算，提交候选的耗时也计入；线程池饱和时被拒绝的候选直接视为失败
+	 */
+	private RoundOutcome runRound(String taskId, Long eventTaskId, CancellationToken taskToken, int round, int count,
+			String baseCode, String baseError, Instant deadline) throws InterruptedException {
+		CompletableFuture<RepairCandidate> firstSuccess = new CompletableFuture<>();
+		List<CancellationToken> tokens = new ArrayList<>();
+		List<CompletableFuture<RepairCandidate>> futures = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			int index = i + 1;
+			CancellationToken token = taskToken.newChild();
+			tokens.add(token);
+			String strategy = REPAIR_STRATEGIES.get(i % REPAIR_STRATEGIES.size());
+			CompletableFuture<RepairCandidate> future;
+			try {
+				future = CompletableFuture.supplyAsync(
+						() -> runCandidate(taskId, eventTaskId, token, round, index, baseCode, baseError, strategy),
+						codeRepairExecutor);
+			}
+			catch (RejectedExecutionException e) {
+				log.warn("修复线程池已满，第{}轮候选{}未启动", round, index);
+				future = CompletableFuture.failedFuture(e);
+			}
+			future.thenAccept(candidate -> {
+				if (candidate.result().isSuccess()) {
+					firstSuccess.complete(candidate);
+				}
+			});
+			futures.add(future);
+		}
+		CompletableFuture<Void> allDone = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+
+		boolean timedOut = false;
+		try {
+			long waitMillis = Math.max(0, Duration.between(Instant.now(), deadline).toMillis());
+			CompletableFuture.anyOf(firstSuccess, allDone).get(waitMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			timedOut = true;
+		}
+		catch (ExecutionException e) {
+			// 单个候选的异常在下面按候选处理
+		}
+		catch (InterruptedException e) {
+			tokens.forEach(CancellationToken::cancel);
+			futures.forEach(future -> future
+				.thenAccept(candidate -> pythonCodeExecutorService.cleanupSession(candidate.sessionId())));
+			throw e;
+		}
+		RepairCandidate winner = winnerOf(firstSuccess, futures);
+		// 成功者之外的候选全部取消：中止模型调用、终止Python进程
+		for (int i = 0; i < count; i++) {
+			if (winner == null || winner.index() != i + 1) {
+				tokens.get(i).cancel();
+			}
+		}
+		for (CompletableFuture<RepairCandidate> future : futures) {
+			future.thenAccept(candidate -> {
+				if (candidate != winner) {
+					pythonCodeExecutorService.cleanupSession(candidate.sessionId());
+				}
+			});
+		}
 
-		return response;
+		RepairCandidate best = null;
+		for (CompletableFuture<RepairCandidate> future : futures) {
+			RepairCandidate candidate = future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+			if (candidate != null && (best == null || outputLength(candidate) > outputLength(best))) {
+				best = candidate;
+			}
+		}
+		return new RoundOutcome(winner, best, timedOut && winner == null);
 	}
 
-	private String debugCode(String originalCode, String error) throws PromptProcessingException {
-		// 使用提示词服务构建代码调试提示
-		String debugPrompt = promptService.getCodeDebugPrompt(originalCode, error);
+	/**
+	 * 生成并执行一个修复候选；执行结果无论成败都返回，模型调用失败或被取消时抛出异常
+	 */
+	private RepairCandidate runCandidate(String taskId, Long eventTaskId, CancellationToken token, int round,
+			int index, String baseCode, String baseError, String strategy) {
+		try {
+			String prompt = promptService.getCodeRepairPrompt(baseCode, baseError, strategy);
+			String code = streamingChatInvoker.call(codingChatClient, token, eventTaskId, NODE_NAME,
+					"repair_" + round + "_" + index, prompt);
+			token.throwIfCancelled();
 
-		Prompt prompt = new Prompt(List.of(new UserMessage(debugPrompt)));
-		String response = codingChatClient.prompt(prompt).call().content();
+			PythonCodeExecutorService.PythonSession session = pythonCodeExecutorService.createSession(taskId, token);
+			try {
+				PythonCodeExecutorService.CodeExecutionResult result = pythonCodeExecutorService
+					.executeCode(session.getSessionId(), code, "python");
+				return new RepairCandidate(round, index, code, session.getSessionId(), result);
+			}
+			catch (PythonExecutionException | RuntimeException e) {
+				pythonCodeExecutorService.cleanupSession(session.getSessionId());
+				throw e;
+			}
+		}
+		catch (PromptProcessingException | PythonExecutionException e) {
+			throw new CompletionException(e);
+		}
+	}
 
-		return response;
+	/**
+	 * 第一个成功的候选；所有候选同时结束时 allOf 可能先于成功回调完成，因此再检查一遍已完成的候选
+	 */
+	private static RepairCandidate winnerOf(CompletableFuture<RepairCandidate> firstSuccess,
+			List<CompletableFuture<RepairCandidate>> futures) {
+		RepairCandidate winner = firstSuccess.getNow(null);
+		if (winner != null) {
+			return winner;
+		}
+		for (CompletableFuture<RepairCandidate> future : futures) {
+			if (future.isDone() && !future.isCompletedExceptionally() && future.join().result().isSuccess()) {
+				return future.join();
+			}
+		}
+		return null;
+	}
+
+	private Map<String, Object> repairResult(RepairCandidate candidate, int rounds, int candidatesStarted,
+			long tokensUsed, long startedAt, String stopReason) {
+		Map<String, Object> repairResult = candidate != null
+				? processExecutionResult(candidate.result(), candidate.code()) : new LinkedHashMap<>();
+		if (candidate == null) {
+			repairResult.put("success", false);
+			repairResult.put("summary", "代码修复失败");
+		}
+		else if (candidate.result().isSuccess()) {
+			// 落选候选的会话已清理，只有胜出候选的会话保留
+			repairResult.put("session_id", candidate.sessionId());
+		}
+		Map<String, Object> repair = new LinkedHashMap<>();
+		repair.put("rounds", rounds);
+		repair.put("candidates", candidatesStarted);
+		repair.put("estimated_tokens", tokensUsed);
+		repair.put("elapsed_ms", System.currentTimeMillis() - startedAt);
+		repair.put("stop_reason", stopReason);
+		if (candidate != null && candidate.result().isSuccess()) {
+			repair.put("winner", candidate.round() + "-" + candidate.index());
+		}
+		repairResult.put("repair", repair);
+		return repairResult;
+	}
+
+	private static long estimateTokens(String text) {
+		// 与调用调控一致：中文约1字1Token，按字符数保守估算
+		return text != null ? text.length() : 0;
+	}
+
+	private static int outputLength(RepairCandidate candidate) {
+		String output = candidate.result().getOutput();
+		return output != null ? output.length() : 0;
 	}
 
 	private Map<String, Object> processExecutionResult(PythonCodeExecutorService.CodeExecutionResult result, String code) {
-		Map<String, Object> codingResult = Map.of("code", code, "success", result.isSuccess(), "output",
-				result.getOutput(), "error", result.getError(), "execution_time",
+		// 调用方会继续追加调试结果，使用可变Map；输出可能为null，不能使用Map.of
+		Map<String, Object> codingResult = new LinkedHashMap<>();
+		codingResult.put("code", code);
+		codingResult.put("success", result.isSuccess());
+		codingResult.put("output", result.getOutput());
+		codingResult.put("error", result.getError());
+		codingResult.put("execution_time",
 				result.getEndTime() != null && result.getStartTime() != null
-						? java.time.Duration.between(result.getStartTime(), result.getEndTime()).toMillis() : 0,
-				"summary", result.isSuccess() ? "代码执行成功" : "代码执行失败");
+						? Duration.between(result.getStartTime(), result.getEndTime()).toMillis() : 0);
+		codingResult.put("summary", result.isSuccess() ? "代码执行成功" : "代码执行失败");
 
 		return codingResult;
 	}
 
+	/**
+	 * 修复候选
+	 */
+	private record RepairCandidate(int round, int index, String code, String sessionId,
+			PythonCodeExecutorService.CodeExecutionResult result) {
+	}
+
+	/**
+	 * 一轮修复的结果
+	 * @param winner 第一个执行成功的候选
+	 * @param best 已完成的候选中输出最多的一个
+	 * @param timedOut 超过时间预算时仍没有成功的候选
+	 */
+	private record RoundOutcome(RepairCandidate winner, RepairCandidate best, boolean timedOut) {
+	}
+
 }
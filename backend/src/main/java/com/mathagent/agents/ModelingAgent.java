@@ -1,11 +1,10 @@
 package com.mathagent.agents;
 
+import com.mathagent.service.ModelingSemanticCacheService;
 import com.mathagent.service.PromptService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.UserMessage;
-import org.springframework.ai.chat.prompt.Prompt;
 import com.alibaba.cloud.ai.graph.action.NodeAction;
 import com.alibaba.cloud.ai.graph.OverAllState;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -15,7 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -27,37 +26,55 @@ import java.util.Map;
 @Component
 public class ModelingAgent implements NodeAction {
 
+	private static final String NODE_NAME = "modeling_agent";
+
 	@Autowired
 	@Qualifier("modelingChatClient")
 	private ChatClient modelingChatClient;
 
+	@Autowired
+	@Qualifier("analysisChatClient")
+	private ChatClient analysisChatClient;
+
 	@Autowired
 	private PromptService promptService;
 
+	@Autowired
+	private ModelingSemanticCacheService semanticCacheService;
+
 	@Autowired
 	private ObjectMapper objectMapper;
 
+	@Autowired
+	private StreamingChatInvoker streamingChatInvoker;
+
 	@Override
 	public Map<String, Object> apply(OverAllState state) {
 		log.info("建模手开始工作...");
 
 		try {
 			String problemStatement = state.value("input").get().toString();
+			Long taskId = StreamingChatInvoker.parseTaskId(state.value("task_id").orElse(null));
 
-			// 使用提示词服务构建建模分析提示
-			String modelingPrompt = promptService.getModelingAnalysisPrompt(problemStatement);
-
-			// 调用建模专用模型
-			Prompt prompt = new Prompt(List.of(new UserMessage(modelingPrompt)));
-			String response = modelingChatClient.prompt(prompt).call().content();
-
-			// 解析建模结果
-			Map<String, Object> modelingResult = parseModelingResult(response);
+			// 语义缓存：相似问题复用或适配历史建模分析
+			ModelingSemanticCacheService.Lookup lookup = semanticCacheService.lookup(problemStatement);
+			Map<String, Object> modelingResult = switch (lookup.decision()) {
+				case REUSE -> semanticCacheService.readAnalysis(lookup.match());
+				case ADAPT -> adaptCachedAnalysis(taskId, problemStatement, lookup.match());
+				case MISS -> analyze(taskId, problemStatement);
+			};
+			if (lookup.decision() != ModelingSemanticCacheService.Decision.REUSE) {
+				semanticCacheService.store(lookup, problemStatement, modelingResult);
+			}
 
 			// 返回建模结果
-			return Map.of("modeling_analysis", modelingResult, "model_definition",
-					modelingResult.get("model_definition"), "variables", modelingResult.get("variables"), "constraints",
-					modelingResult.get("constraints"));
+			Map<String, Object> result = new HashMap<>();
+			result.put("modeling_analysis", modelingResult);
+			result.put("model_definition", modelingResult.get("model_definition"));
+			result.put("variables", modelingResult.get("variables"));
+			result.put("constraints", modelingResult.get("constraints"));
+			result.put("modeling_cache", cacheInfo(lookup));
+			return result;
 
 		}
 		catch (PromptProcessingException e) {
@@ -68,6 +85,47 @@ public class ModelingAgent implements NodeAction {
 		}
 	}
 
+	/**
+	 * 完整建模分析
+	 */
+	private Map<String, Object> analyze(Long taskId, String problemStatement) throws Exception {
+		// 使用提示词服务构建建模分析提示
+		String modelingPrompt = promptService.getModelingAnalysisPrompt(problemStatement);
+
+		// 调用建模专用模型（流式输出推送到任务事件流）
+		String response = streamingChatInvoker.call(modelingChatClient, taskId, NODE_NAME, "modeling_analysis",
+				modelingPrompt);
+
+		// 解析建模结果
+		return parseModelingResult(response);
+	}
+
+	/**
+	 * 基于相似问题的历史分析做轻量适配，使用通用分析模型
+	 */
+	private Map<String, Object> adaptCachedAnalysis(Long taskId, String problemStatement,
+			ModelingSemanticCacheService.IndexEntry cached) throws Exception {
+		String adaptPrompt = promptService.getModelingAdaptationPrompt(problemStatement, cached.problemStatement(),
+				cached.analysisData());
+		String response = streamingChatInvoker.call(analysisChatClient, taskId, NODE_NAME, "adapt_modeling_analysis",
+				adaptPrompt);
+		Map<String, Object> adapted = parseModelingResult(response);
+		if (adapted.containsKey("raw_response")) {
+			// 适配结果无法解析时退回完整分析
+			log.warn("建模分析适配结果格式异常，改为完整分析");
+			return analyze(taskId, problemStatement);
+		}
+		return adapted;
+	}
+
+	private Map<String, Object> cacheInfo(ModelingSemanticCacheService.Lookup lookup) {
+		Map<String, Object> info = new HashMap<>();
+		info.put("decision", lookup.decision().name());
+		info.put("similarity", lookup.similarity());
+		info.put("source_id", lookup.match() != null ? lookup.match().id() : null);
+		return info;
+	}
+
 	private Map<String, Object> parseModelingResult(String response) {
 		try {
 			return objectMapper.readValue(response, Map.class);
@@ -0,0 +1,155 @@
+package com.mathagent.agents;
+
+import com.mathagent.execution.CancellationToken;
+import com.mathagent.execution.TaskCancellationRegistry;
+import com.mathagent.execution.TaskEventPublisher;
+import com.mathagent.llm.ContextBudgetAdvisor;
+import com.mathagent.llm.LlmResilience;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Agent流式调用器 通过ChatClient.stream()调用模型，边生成边推送到任务事件流，最终返回完整文本
+ *
+ * 调用与任务的取消令牌绑定，任务取消时立即释放订阅并中止HTTP请求；超时、重试和对冲由 {@link LlmResilience} 负责
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class StreamingChatInvoker {
+
+	@Autowired
+	private TaskEventPublisher taskEventPublisher;
+
+	@Autowired
+	private TaskCancellationRegistry cancellationRegistry;
+
+	@Autowired
+	private LlmResilience llmResilience;
+
+	/**
+	 * 流式调用模型并聚合完整响应
+	 * @param chatClient Agent专用ChatClient
+	 * @param taskId 任务ID，用于事件推送
+	 * @param nodeName Graph节点名称
+	 * @param callName 节点内的调用名称
+	 * @param promptText 提示词
+	 * @return 模型完整输出
+	 */
+	public String call(ChatClient chatClient, Long taskId, String nodeName, String callName, String promptText) {
+		return call(chatClient, cancellationRegistry.get(taskId), taskId, nodeName, callName, promptText);
+	}
+
+	/**
+	 * 使用指定的取消令牌流式调用模型，用于可以单独取消的并行调用（如任务令牌的子令牌）
+	 */
+	public String call(ChatClient chatClient, CancellationToken cancellationToken, Long taskId, String nodeName,
+			String callName, String promptText) {
+		cancellationToken.throwIfCancelled();
+
+		Duration callTimeout = llmResilience.callTimeout(cancellationToken);
+
+		Prompt prompt = new Prompt(List.of(new UserMessage(promptText)));
+		StringBuilder response = new StringBuilder();
+		CompletableFuture<String> completion = new CompletableFuture<>();
+
+		// 每次重试/对冲都重新发起请求，缓存和调控Advisor对每个请求分别生效
+		Disposable subscription = llmResilience
+			.apply(nodeName + "." + callName, () -> chatClient.prompt(prompt)
+				.advisors(advisor -> budgetParams(advisor, taskId, nodeName + "." + callName))
+				.stream()
+				.chatResponse(), callTimeout)
+			.subscribe(chunk -> {
+				String token = textOf(chunk);
+				if (token == null || token.isEmpty()) {
+					return;
+				}
+				response.append(token);
+				taskEventPublisher.token(taskId, nodeName, callName, token);
+			}, completion::completeExceptionally, () -> completion.complete(response.toString()));
+
+		// 任务取消时释放订阅，底层HTTP请求随之中止
+		Runnable unregister = cancellationToken.onCancel(() -> {
+			subscription.dispose();
+			completion.completeExceptionally(new CancellationException("任务已取消"));
+		});
+
+		try {
+			String content = completion.get(callTimeout.toMillis(), TimeUnit.MILLISECONDS);
+			log.debug("{}.{} 输出完成，长度: {}", nodeName, callName, content.length());
+			return content;
+		}
+		catch (InterruptedException e) {
+			subscription.dispose();
+			Thread.currentThread().interrupt();
+			throw new CancellationException("模型调用被中断");
+		}
+		catch (TimeoutException e) {
+			subscription.dispose();
+			throw new IllegalStateException(nodeName + "." + callName + " 调用超时(" + callTimeout.toSeconds() + "s)", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			unregister.run();
+		}
+	}
+
+	/**
+	 * 提取分片文本（流式响应的最后一个分片可能只有用量信息）
+	 */
+	private static String textOf(ChatResponse chunk) {
+		if (chunk == null || chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+			return null;
+		}
+		return chunk.getResult().getOutput().getText();
+	}
+
+	/**
+	 * 上下文预算Advisor按任务记录决策
+	 */
+	private static void budgetParams(ChatClient.AdvisorSpec advisor, Long taskId, String callName) {
+		advisor.param(ContextBudgetAdvisor.CALL_NAME, callName);
+		if (taskId != null) {
+			advisor.param(ContextBudgetAdvisor.TASK_ID, taskId);
+		}
+	}
+
+	/**
+	 * 从Graph状态中的task_id解析任务ID
+	 */
+	public static Long parseTaskId(Object taskId) {
+		if (taskId == null) {
+			return null;
+		}
+		if (taskId instanceof Long id) {
+			return id;
+		}
+		try {
+			return Long.valueOf(taskId.toString());
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+}
@@ -4,18 +4,23 @@ import com.mathagent.exception.PromptProcessingException;
 import com.mathagent.service.PromptService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.messages.UserMessage;
-import org.springframework.ai.chat.prompt.Prompt;
 import com.alibaba.cloud.ai.graph.action.NodeAction;
 import com.alibaba.cloud.ai.graph.OverAllState;
 import com.mathagent.exception.PromptProcessingException;
+import com.mathagent.execution.CancellationToken;
+import com.mathagent.execution.TaskCancellationRegistry;
 import com.mathagent.util.ExceptionHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 论文手Agent 专门负责学术论文撰写和格式化
@@ -26,6 +31,8 @@ import java.util.Map;
 @Component
 public class WritingAgent implements NodeAction {
 
+	private static final String NODE_NAME = "writing_agent";
+
 	@Autowired
 	@Qualifier("writingChatClient")
 	private ChatClient writingChatClient;
@@ -33,6 +40,15 @@ public class WritingAgent implements NodeAction {
 	@Autowired
 	private PromptService promptService;
 
+	@Autowired
+	@Qualifier("agentCallExecutor")
+	private Executor agentCallExecutor;
+
+	@Autowired
+	private StreamingChatInvoker streamingChatInvoker;
+
+	@Autowired
+	private TaskCancellationRegistry cancellationRegistry;
 
 	@Override
 	public Map<String, Object> apply(OverAllState state) {
@@ -42,21 +58,51 @@ public class WritingAgent implements NodeAction {
 			Map<String, Object> modelingResult = (Map<String, Object>) state.value("modeling_analysis").get();
 			Map<String, Object> codingResult = (Map<String, Object>) state.value("coding_result").get();
 			String problemStatement = state.value("input").get().toString();
-
-			// 生成论文
-			String paper = generatePaper(problemStatement, modelingResult, codingResult);
-
-			// 格式化论文
-			String formattedPaper = formatPaper(paper);
-
-			// 生成论文摘要
-			String abstractContent = generateAbstract(problemStatement, modelingResult, codingResult);
-
-			// 生成关键词
-			String keywords = generateKeywords(modelingResult);
+			Long taskId = StreamingChatInvoker.parseTaskId(state.value("task_id").orElse(null));
+
+			long stageStart = System.currentTimeMillis();
+			Map<String, Long> latencies = new ConcurrentHashMap<>();
+			// 各分支共用任务令牌的子令牌：任一分支失败时取消其余分支，不影响任务本身
+			CancellationToken branchToken = cancellationRegistry.get(taskId).newChild();
+			AtomicReference<Exception> failure = new AtomicReference<>();
+
+			String paper;
+			String formattedPaper;
+			String abstractContent;
+			String keywords;
+			try {
+				// 论文生成与格式化串行，摘要和关键词只依赖建模与代码结果，与之并行执行
+				CompletableFuture<String> paperFuture = timedCall("generate_paper", latencies, branchToken, failure,
+						() -> generatePaper(taskId, branchToken, problemStatement, modelingResult, codingResult));
+				CompletableFuture<String> formattedFuture = paperFuture.thenCompose(generated -> timedCall("format_paper",
+						latencies, branchToken, failure, () -> formatPaper(taskId, branchToken, generated)));
+				CompletableFuture<String> abstractFuture = timedCall("generate_abstract", latencies, branchToken,
+						failure,
+						() -> generateAbstract(taskId, branchToken, problemStatement, modelingResult, codingResult));
+				CompletableFuture<String> keywordsFuture = timedCall("generate_keywords", latencies, branchToken,
+						failure, () -> generateKeywords(taskId, branchToken, modelingResult));
+
+				paper = await(paperFuture);
+				formattedPaper = await(formattedFuture);
+				abstractContent = await(abstractFuture);
+				keywords = await(keywordsFuture);
+			}
+			catch (Exception e) {
+				// 其余分支因被取消而失败，报告最先失败的分支
+				throw failure.get() != null ? failure.get() : e;
+			}
+			finally {
+				// 全部完成后取消只是解除与任务令牌的关联；提前失败时中止仍在进行的分支
+				branchToken.cancel();
+			}
+
+			Map<String, Object> latencyBreakdown = new LinkedHashMap<>(latencies);
+			latencyBreakdown.put("stage_wall_clock", System.currentTimeMillis() - stageStart);
+			log.info("论文手各调用耗时(ms): {}", latencyBreakdown);
 
 			Map<String, Object> writingResult = Map.of("paper", formattedPaper, "abstract", abstractContent, "keywords",
-					keywords, "word_count", formattedPaper.length(), "summary", "论文生成完成");
+					keywords, "word_count", formattedPaper.length(), "latency_ms", latencyBreakdown, "summary",
+					"论文生成完成");
 
 			log.info("论文手完成工作: {}", writingResult.get("summary"));
 
@@ -72,47 +118,82 @@ public class WritingAgent implements NodeAction {
 		}
 	}
 
-	private String generatePaper(String problemStatement, Map<String, Object> modelingResult,
-			Map<String, Object> codingResult) throws PromptProcessingException {
+	/**
+	 * 在Agent调用线程池中异步执行一次LLM调用，并记录耗时；调用失败时记录首个失败并取消其余分支
+	 */
+	private CompletableFuture<String> timedCall(String callName, Map<String, Long> latencies,
+			CancellationToken branchToken, AtomicReference<Exception> failure, WritingCall call) {
+		return CompletableFuture.supplyAsync(() -> {
+			long start = System.currentTimeMillis();
+			try {
+				return call.execute();
+			}
+			catch (PromptProcessingException | RuntimeException e) {
+				if (failure.compareAndSet(null, e)) {
+					branchToken.cancel();
+				}
+				throw new CompletionException(e);
+			}
+			finally {
+				latencies.put(callName, System.currentTimeMillis() - start);
+			}
+		}, agentCallExecutor);
+	}
+
+	/**
+	 * 等待异步调用完成，还原原始异常
+	 */
+	private String await(CompletableFuture<String> future) throws Exception {
+		try {
+			return future.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof Exception cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	private String generatePaper(Long taskId, CancellationToken token, String problemStatement,
+			Map<String, Object> modelingResult, Map<String, Object> codingResult) throws PromptProcessingException {
 		// 使用提示词服务构建论文生成提示
 		String writingPrompt = promptService.getPaperGenerationPrompt(problemStatement, modelingResult, codingResult);
 
-		Prompt prompt = new Prompt(List.of(new UserMessage(writingPrompt)));
-		String response = writingChatClient.prompt(prompt).call().content();
-
-		return response;
+		return streamingChatInvoker.call(writingChatClient, token, taskId, NODE_NAME, "generate_paper", writingPrompt);
 	}
 
-	private String formatPaper(String paper) throws PromptProcessingException {
+	private String formatPaper(Long taskId, CancellationToken token, String paper) throws PromptProcessingException {
 		// 使用提示词服务构建论文格式化提示
 		String formatPrompt = promptService.getPaperFormattingPrompt(paper);
 
-		Prompt prompt = new Prompt(List.of(new UserMessage(formatPrompt)));
-		String response = writingChatClient.prompt(prompt).call().content();
-
-		return response;
+		return streamingChatInvoker.call(writingChatClient, token, taskId, NODE_NAME, "format_paper", formatPrompt);
 	}
 
-	private String generateAbstract(String problemStatement, Map<String, Object> modelingResult,
-			Map<String, Object> codingResult) throws PromptProcessingException {
+	private String generateAbstract(Long taskId, CancellationToken token, String problemStatement,
+			Map<String, Object> modelingResult, Map<String, Object> codingResult) throws PromptProcessingException {
 		// 使用提示词服务构建摘要生成提示
 		String abstractPrompt = promptService.getAbstractGenerationPrompt(problemStatement, modelingResult,
 				codingResult);
 
-		Prompt prompt = new Prompt(List.of(new UserMessage(abstractPrompt)));
-		String response = writingChatClient.prompt(prompt).call().content();
-
-		return response;
+		return streamingChatInvoker.call(writingChatClient, token, taskId, NODE_NAME, "generate_abstract",
+				abstractPrompt);
 	}
 
-	private String generateKeywords(Map<String, Object> modelingResult) throws PromptProcessingException {
+	private String generateKeywords(Long taskId, CancellationToken token, Map<String, Object> modelingResult)
+			throws PromptProcessingException {
 		// 使用提示词服务构建关键词生成提示
 		String keywordsPrompt = promptService.getKeywordsGenerationPrompt(modelingResult);
 
-		Prompt prompt = new Prompt(List.of(new UserMessage(keywordsPrompt)));
-		String response = writingChatClient.prompt(prompt).call().content();
+		return streamingChatInvoker.call(writingChatClient, token, taskId, NODE_NAME, "generate_keywords",
+				keywordsPrompt);
+	}
+
+	@FunctionalInterface
+	private interface WritingCall {
+
+		String execute() throws PromptProcessingException;
 
-		return response;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,330 @@
+package com.mathagent.cache;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 两级缓存 内存LRU + 磁盘持久化，支持TTL和命中率指标
+ *
+ * 内存层按条目数限制容量，磁盘层以key的哈希为文件名，重启后仍然有效。
+ * 磁盘层定期清理：过期条目（按文件写入时间加有效期判断）删除，条目数超过上限时按写入时间从旧到新删除；
+ * 读取时遇到的过期条目同样删除
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class TieredCache<V> {
+
+	private static final long SWEEP_INTERVAL_MINUTES = 10;
+
+	/**
+	 * 写入中断残留的临时文件，超过该时间后清理
+	 */
+	private static final long STALE_TEMP_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "tiered-cache-sweeper");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String name;
+
+	private final int maxMemoryEntries;
+
+	private final int maxDiskEntries;
+
+	private final Duration ttl;
+
+	private final Path directory;
+
+	private final ObjectMapper objectMapper;
+
+	private final JavaType entryType;
+
+	private final Map<String, Entry<V>> memory;
+
+	private final Counter memoryHits;
+
+	private final Counter diskHits;
+
+	private final Counter misses;
+
+	/**
+	 * @param name 缓存名称，用于指标标签
+	 * @param maxMemoryEntries 内存层最大条目数
+	 * @param maxDiskEntries 磁盘层最大条目数，小于等于0时不限制（仍清理过期条目）
+	 * @param ttl 条目有效期
+	 * @param directory 磁盘层目录，为null时只使用内存层
+	 * @param valueType 值类型，用于磁盘层反序列化
+	 */
+	public TieredCache(String name, int maxMemoryEntries, int maxDiskEntries, Duration ttl, Path directory,
+			Class<V> valueType, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+		this.name = name;
+		this.maxMemoryEntries = maxMemoryEntries;
+		this.maxDiskEntries = maxDiskEntries;
+		this.ttl = ttl;
+		this.directory = directory;
+		this.objectMapper = objectMapper;
+		this.entryType = objectMapper.getTypeFactory().constructParametricType(Entry.class, valueType);
+		this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+				return size() > TieredCache.this.maxMemoryEntries;
+			}
+		};
+
+		this.memoryHits = Counter.builder("mathagent.cache.requests")
+			.tag("cache", name)
+			.tag("result", "memory_hit")
+			.register(meterRegistry);
+		this.diskHits = Counter.builder("mathagent.cache.requests")
+			.tag("cache", name)
+			.tag("result", "disk_hit")
+			.register(meterRegistry);
+		this.misses = Counter.builder("mathagent.cache.requests")
+			.tag("cache", name)
+			.tag("result", "miss")
+			.register(meterRegistry);
+		Gauge.builder("mathagent.cache.memory.size", this, TieredCache::memorySize)
+			.tag("cache", name)
+			.register(meterRegistry);
+
+		if (directory != null) {
+			SWEEPER.scheduleWithFixedDelay(this::sweepDisk, 1, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+		}
+	}
+
+	/**
+	 * 读取缓存，先查内存层再查磁盘层，磁盘命中后回填内存层
+	 */
+	public Optional<V> get(String key) {
+		long now = System.currentTimeMillis();
+
+		synchronized (memory) {
+			Entry<V> entry = memory.get(key);
+			if (entry != null) {
+				if (entry.getExpiresAt() > now) {
+					memoryHits.increment();
+					return Optional.of(entry.getValue());
+				}
+				memory.remove(key);
+			}
+		}
+
+		Entry<V> diskEntry = readDisk(key, now);
+		if (diskEntry != null) {
+			synchronized (memory) {
+				memory.put(key, diskEntry);
+			}
+			diskHits.increment();
+			return Optional.of(diskEntry.getValue());
+		}
+
+		misses.increment();
+		return Optional.empty();
+	}
+
+	/**
+	 * 写入缓存（同时写内存层和磁盘层）
+	 */
+	public void put(String key, V value) {
+		Entry<V> entry = new Entry<>(System.currentTimeMillis() + ttl.toMillis(), value);
+		synchronized (memory) {
+			memory.put(key, entry);
+		}
+		writeDisk(key, entry);
+	}
+
+	/**
+	 * 删除缓存条目
+	 */
+	public void invalidate(String key) {
+		synchronized (memory) {
+			memory.remove(key);
+		}
+		if (directory != null) {
+			try {
+				Files.deleteIfExists(diskPath(key));
+			}
+			catch (IOException e) {
+				log.warn("删除缓存文件失败: {} - {}", name, key, e);
+			}
+		}
+	}
+
+	public int memorySize() {
+		synchronized (memory) {
+			return memory.size();
+		}
+	}
+
+	/**
+	 * 计算字符串的SHA-256摘要，用作缓存key
+	 */
+	public static String sha256(String content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 清理磁盘层：条目在写入时确定过期时间，因此按文件修改时间加有效期判断过期，不需要解析文件；
+	 * 剩余条目超过上限时按写入时间从旧到新删除
+	 */
+	void sweepDisk() {
+		if (directory == null || !Files.isDirectory(directory)) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<DiskFile> entries = new ArrayList<>();
+		long expired = 0;
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+				long writtenAt = Files.getLastModifiedTime(file).toMillis();
+				boolean temp = file.getFileName().toString().endsWith(".tmp");
+				if (temp ? writtenAt + STALE_TEMP_FILE_MILLIS < now : writtenAt + ttl.toMillis() <= now) {
+					if (Files.deleteIfExists(file) && !temp) {
+						expired++;
+					}
+				}
+				else if (!temp) {
+					entries.add(new DiskFile(file, writtenAt));
+				}
+			}
+		}
+		catch (IOException | UncheckedIOException e) {
+			log.warn("清理缓存目录失败: {} - {}", name, directory, e);
+			return;
+		}
+
+		long evicted = 0;
+		if (maxDiskEntries > 0 && entries.size() > maxDiskEntries) {
+			entries.sort(Comparator.comparingLong(DiskFile::writtenAt));
+			for (DiskFile entry : entries.subList(0, entries.size() - maxDiskEntries)) {
+				try {
+					Files.deleteIfExists(entry.path());
+					evicted++;
+				}
+				catch (IOException e) {
+					log.warn("删除缓存文件失败: {} - {}", name, entry.path(), e);
+				}
+			}
+		}
+		if (expired > 0 || evicted > 0) {
+			log.info("清理缓存磁盘层 {}: 过期 {} 个, 超出容量 {} 个", name, expired, evicted);
+		}
+	}
+
+	private record DiskFile(Path path, long writtenAt) {
+	}
+
+	private Entry<V> readDisk(String key, long now) {
+		if (directory == null) {
+			return null;
+		}
+		Path path = diskPath(key);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		try {
+			Entry<V> entry = objectMapper.readValue(path.toFile(), entryType);
+			if (entry.getExpiresAt() > now) {
+				return entry;
+			}
+			Files.deleteIfExists(path);
+		}
+		catch (IOException e) {
+			log.warn("读取缓存文件失败: {} - {}", name, path, e);
+		}
+		return null;
+	}
+
+	private void writeDisk(String key, Entry<V> entry) {
+		if (directory == null) {
+			return;
+		}
+		Path path = diskPath(key);
+		try {
+			Files.createDirectories(path.getParent());
+			// 先写临时文件再原子替换，避免并发读到半个文件
+			Path tempFile = Files.createTempFile(path.getParent(), "entry-", ".tmp");
+			objectMapper.writeValue(tempFile.toFile(), entry);
+			Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			log.warn("写入缓存文件失败: {} - {}", name, path, e);
+		}
+	}
+
+	private Path diskPath(String key) {
+		String fileName = sha256(key);
+		return directory.resolve(fileName.substring(0, 2)).resolve(fileName + ".json");
+	}
+
+	/**
+	 * 缓存条目
+	 */
+	public static class Entry<V> {
+
+		private long expiresAt;
+
+		private V value;
+
+		public Entry() {
+		}
+
+		public Entry(long expiresAt, V value) {
+			this.expiresAt = expiresAt;
+			this.value = value;
+		}
+
+		// Getters and Setters
+		public long getExpiresAt() {
+			return expiresAt;
+		}
+
+		public void setExpiresAt(long expiresAt) {
+			this.expiresAt = expiresAt;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public void setValue(V value) {
+			this.value = value;
+		}
+
+	}
+
+}
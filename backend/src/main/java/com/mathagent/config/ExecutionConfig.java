@@ -0,0 +1,138 @@
+package com.mathagent.config;
+
+import com.mathagent.util.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 任务执行线程池配置 Graph工作流在独立的有界线程池中运行，不占用Tomcat请求线程
+ *
+ * 执行模式：platform 使用平台线程；virtual 在Java 21+上使用虚拟线程，阻塞在LLM调用和Python进程上的任务不再独占OS线程
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Configuration
+public class ExecutionConfig {
+
+	private static final String MODE_VIRTUAL = "virtual";
+
+	@Value("${math-agent.execution.mode:platform}")
+	private String mode;
+
+	@Value("${math-agent.execution.core-pool-size:4}")
+	private int corePoolSize;
+
+	@Value("${math-agent.execution.max-pool-size:8}")
+	private int maxPoolSize;
+
+	@Value("${math-agent.execution.queue-capacity:50}")
+	private int queueCapacity;
+
+	@Value("${math-agent.execution.keep-alive-seconds:60}")
+	private int keepAliveSeconds;
+
+	@Value("${math-agent.execution.virtual.max-concurrency:2000}")
+	private int virtualMaxConcurrency;
+
+	@Value("${math-agent.execution.agent-call.pool-size:16}")
+	private int agentCallPoolSize;
+
+	@Value("${math-agent.execution.code-repair.pool-size:8}")
+	private int codeRepairPoolSize;
+
+	@Value("${math-agent.execution.code-repair.queue-capacity:16}")
+	private int codeRepairQueueCapacity;
+
+	/**
+	 * Graph工作流执行线程池 - 队列满时直接拒绝，由调用方返回繁忙响应
+	 */
+	@Bean("taskExecutionExecutor")
+	public ThreadPoolTaskExecutor taskExecutionExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		if (useVirtualThreads()) {
+			// 虚拟线程按需创建，空闲后回收，并发上限仅用于保护下游资源
+			executor.setCorePoolSize(virtualMaxConcurrency);
+			executor.setMaxPoolSize(virtualMaxConcurrency);
+			executor.setAllowCoreThreadTimeOut(true);
+			executor.setThreadFactory(VirtualThreads.threadFactory("task-exec-vt-"));
+		}
+		else {
+			executor.setCorePoolSize(corePoolSize);
+			executor.setMaxPoolSize(maxPoolSize);
+			executor.setThreadNamePrefix("task-exec-");
+		}
+		executor.setQueueCapacity(queueCapacity);
+		executor.setKeepAliveSeconds(keepAliveSeconds);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		executor.initialize();
+		return executor;
+	}
+
+	/**
+	 * Agent内部并发调用线程池 - 用于LLM并行调用，饱和时由调用线程直接执行，避免互相等待
+	 */
+	@Bean("agentCallExecutor")
+	public ThreadPoolTaskExecutor agentCallExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		if (useVirtualThreads()) {
+			executor.setCorePoolSize(virtualMaxConcurrency);
+			executor.setMaxPoolSize(virtualMaxConcurrency);
+			executor.setAllowCoreThreadTimeOut(true);
+			executor.setThreadFactory(VirtualThreads.threadFactory("agent-call-vt-"));
+		}
+		else {
+			executor.setCorePoolSize(agentCallPoolSize);
+			executor.setMaxPoolSize(agentCallPoolSize);
+			executor.setThreadNamePrefix("agent-call-");
+		}
+		executor.setQueueCapacity(0);
+		executor.setKeepAliveSeconds(keepAliveSeconds);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.initialize();
+		return executor;
+	}
+
+	/**
+	 * 并行代码修复候选线程池 - 有界队列，饱和时直接拒绝，被拒绝的候选视为失败，不在调用线程上执行以免串行化整轮修复
+	 */
+	@Bean("codeRepairExecutor")
+	public ThreadPoolTaskExecutor codeRepairExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		if (useVirtualThreads()) {
+			executor.setCorePoolSize(virtualMaxConcurrency);
+			executor.setMaxPoolSize(virtualMaxConcurrency);
+			executor.setAllowCoreThreadTimeOut(true);
+			executor.setThreadFactory(VirtualThreads.threadFactory("code-repair-vt-"));
+		}
+		else {
+			executor.setCorePoolSize(codeRepairPoolSize);
+			executor.setMaxPoolSize(codeRepairPoolSize);
+			executor.setThreadNamePrefix("code-repair-");
+		}
+		executor.setQueueCapacity(codeRepairQueueCapacity);
+		executor.setKeepAliveSeconds(keepAliveSeconds);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		executor.initialize();
+		return executor;
+	}
+
+	private boolean useVirtualThreads() {
+		if (!MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+			return false;
+		}
+		if (!VirtualThreads.isSupported()) {
+			log.warn("配置了虚拟线程执行模式，但当前Java运行时 {} 不支持，回退到平台线程", Runtime.version());
+			return false;
+		}
+		return true;
+	}
+
+}
@@ -3,11 +3,25 @@ package com.mathagent.config;
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mathagent.cache.TieredCache;
+import com.mathagent.llm.ContextBudgetAdvisor;
+import com.mathagent.llm.ContextBudgetManager;
+import com.mathagent.llm.GovernorAdvisor;
+import com.mathagent.llm.ModelGovernor;
+import com.mathagent.llm.ResponseCacheAdvisor;
+import com.mathagent.llm.TokenEstimator;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Paths;
+import java.time.Duration;
 
 /**
  * Multi-LLMs配置 为不同的Agent配置不同的模型
@@ -20,6 +34,48 @@ public class MultiLLMConfig {
 	@Value("${spring.ai.dashscope.api-key}")
 	private String apiKey;
 
+	@Value("${math-agent.llm.cache.enabled:true}")
+	private boolean cacheEnabled;
+
+	@Value("${math-agent.llm.cache.max-entries:500}")
+	private int cacheMaxEntries;
+
+	@Value("${math-agent.llm.cache.max-disk-entries:20000}")
+	private int cacheMaxDiskEntries;
+
+	@Value("${math-agent.llm.cache.ttl-hours:168}")
+	private long cacheTtlHours;
+
+	@Value("${math-agent.llm.cache.directory:llm_cache}")
+	private String cacheDirectory;
+
+	@Value("${math-agent.llm.governor.enabled:true}")
+	private boolean governorEnabled;
+
+	@Value("${math-agent.llm.governor.max-wait-seconds:300}")
+	private long governorMaxWaitSeconds;
+
+	@Value("${math-agent.llm.governor.latency-spike-factor:3.0}")
+	private double governorLatencySpikeFactor;
+
+	@Value("${math-agent.llm.governor.decrease-cooldown-ms:2000}")
+	private long governorDecreaseCooldownMs;
+
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private ContextBudgetManager contextBudgetManager;
+
+	@Autowired
+	private TokenEstimator tokenEstimator;
+
 	// 模型配置常量 - 默认使用百炼模型
 	private static final String MODELING_MODEL = "qwen-max";
 	private static final String CODING_MODEL = "qwen-max";
@@ -98,12 +154,21 @@ public class MultiLLMConfig {
 			.build();
 	}
 
+	/**
+	 * LLM响应缓存 - 内存LRU + 磁盘持久化，所有Agent的ChatClient共享
+	 */
+	@Bean("llmResponseCache")
+	public TieredCache<String> llmResponseCache() {
+		return new TieredCache<>("llm_response", cacheMaxEntries, cacheMaxDiskEntries,
+				Duration.ofHours(cacheTtlHours), Paths.get(cacheDirectory), String.class, objectMapper, meterRegistry);
+	}
+
 	/**
 	 * 建模手专用ChatClient
 	 */
 	@Bean("modelingChatClient")
 	public ChatClient modelingChatClient(@Qualifier("modelingChatModel") DashScopeChatModel modelingChatModel) {
-		return ChatClient.builder(modelingChatModel).build();
+		return buildChatClient(modelingChatModel, "modeling", MODELING_MODEL, MODELING_TEMPERATURE, MODELING_MAX_TOKENS);
 	}
 
 	/**
@@ -111,7 +176,7 @@ public class MultiLLMConfig {
 	 */
 	@Bean("codingChatClient")
 	public ChatClient codingChatClient(@Qualifier("codingChatModel") DashScopeChatModel codingChatModel) {
-		return ChatClient.builder(codingChatModel).build();
+		return buildChatClient(codingChatModel, "coding", CODING_MODEL, CODING_TEMPERATURE, CODING_MAX_TOKENS);
 	}
 
 	/**
@@ -119,7 +184,7 @@ public class MultiLLMConfig {
 	 */
 	@Bean("writingChatClient")
 	public ChatClient writingChatClient(@Qualifier("writingChatModel") DashScopeChatModel writingChatModel) {
-		return ChatClient.builder(writingChatModel).build();
+		return buildChatClient(writingChatModel, "writing", WRITING_MODEL, WRITING_TEMPERATURE, WRITING_MAX_TOKENS);
 	}
 
 	/**
@@ -127,7 +192,36 @@ public class MultiLLMConfig {
 	 */
 	@Bean("analysisChatClient")
 	public ChatClient analysisChatClient(@Qualifier("analysisChatModel") DashScopeChatModel analysisChatModel) {
-		return ChatClient.builder(analysisChatModel).build();
+		return buildChatClient(analysisChatModel, "analysis", ANALYSIS_MODEL, ANALYSIS_TEMPERATURE, ANALYSIS_MAX_TOKENS);
+	}
+
+	/**
+	 * 构建Agent专用ChatClient，挂载上下文预算Advisor，按配置挂载响应缓存和调用调控Advisor
+	 */
+	private ChatClient buildChatClient(DashScopeChatModel chatModel, String agent, String model, double temperature,
+			int maxTokens) {
+		contextBudgetManager.registerAgent(agent, maxTokens);
+		ChatClient.Builder builder = ChatClient.builder(chatModel);
+		builder.defaultAdvisors(new ContextBudgetAdvisor(contextBudgetManager, agent));
+		if (cacheEnabled) {
+			builder.defaultAdvisors(new ResponseCacheAdvisor(llmResponseCache(), model, temperature, maxTokens));
+		}
+		if (governorEnabled) {
+			builder.defaultAdvisors(new GovernorAdvisor(modelGovernor(agent), Duration.ofSeconds(governorMaxWaitSeconds),
+					tokenEstimator, maxTokens));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * 每个Agent模型一个调控器，限额按 math-agent.llm.governor.&lt;agent&gt;.* 配置
+	 */
+	private ModelGovernor modelGovernor(String agent) {
+		String prefix = "math-agent.llm.governor." + agent + ".";
+		int maxConcurrency = environment.getProperty(prefix + "max-concurrency", Integer.class, 4);
+		long tokensPerMinute = environment.getProperty(prefix + "tokens-per-minute", Long.class, 0L);
+		return new ModelGovernor(agent, maxConcurrency, tokensPerMinute, governorLatencySpikeFactor,
+				governorDecreaseCooldownMs, meterRegistry);
 	}
 
 }
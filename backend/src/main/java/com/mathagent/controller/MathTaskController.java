@@ -1,9 +1,11 @@
 package com.mathagent.controller;
 
-import com.alibaba.cloud.ai.graph.CompiledGraph;
-import com.alibaba.cloud.ai.graph.OverAllState;
 import com.mathagent.exception.TaskManagementException;
-import com.mathagent.exception.GraphWorkflowException;
+import com.mathagent.exception.TaskSubmissionException;
+import com.mathagent.execution.TaskEvent;
+import com.mathagent.execution.TaskEventPublisher;
+import com.mathagent.execution.TaskExecution;
+import com.mathagent.execution.TaskExecutionEngine;
 import com.mathagent.model.MathTask;
 import com.mathagent.model.TaskLog;
 import com.mathagent.model.TaskResult;
@@ -11,16 +13,17 @@ import com.mathagent.util.ExceptionHandler;
 import com.mathagent.service.MathTaskService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-
-import static com.alibaba.cloud.ai.graph.OverAllState.DEFAULT_INPUT_KEY;
 
 /**
  * 数学建模任务控制器 提供任务管理和执行API
@@ -33,12 +36,16 @@ import static com.alibaba.cloud.ai.graph.OverAllState.DEFAULT_INPUT_KEY;
 @CrossOrigin(origins = "*")
 public class MathTaskController {
 
+	private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
 	@Autowired
 	private MathTaskService mathTaskService;
 
 	@Autowired
-	@Qualifier("compiledMathModelingGraph")
-	private CompiledGraph compiledGraph;
+	private TaskExecutionEngine taskExecutionEngine;
+
+	@Autowired
+	private TaskEventPublisher taskEventPublisher;
 
 	/**
 	 * 创建新的数学建模任务
@@ -64,7 +71,7 @@ public class MathTaskController {
 	}
 
 	/**
-	 * 执行数学建模任务
+	 * 执行数学建模任务 提交到执行引擎后立即返回202和执行句柄
 	 */
 	@PostMapping("/{taskId}/execute")
 	public ResponseEntity<Map<String, Object>> executeTask(@PathVariable Long taskId) {
@@ -76,32 +83,94 @@ public class MathTaskController {
 				throw new TaskManagementException(taskId, "任务不存在");
 			}
 
-			// 更新任务状态
-			task.setStatus(MathTask.TaskStatus.ANALYZING);
-			task.setStartedAt(LocalDateTime.now());
-			mathTaskService.updateTask(task);
+			// 提交到执行引擎，Graph工作流在独立线程池中异步执行
+			TaskExecution execution = taskExecutionEngine.submit(task);
 
-			// 记录开始日志
-			mathTaskService.addTaskLog(task.getId(), "GRAPH_EXECUTOR", TaskLog.LogLevel.INFO, "开始执行数学建模Graph工作流", null);
+			return ResponseEntity.accepted()
+				.body(Map.of("taskId", taskId, "executionId", execution.getExecutionId(), "status",
+						task.getStatus().name(), "executionState", execution.getState().name(), "message", "任务已提交执行"));
 
-			// 异步执行Graph工作流
-			String executionId = executeGraphWorkflow(task);
+		}
+		catch (TaskSubmissionException e) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ExceptionHandler.handleTaskException(taskId, e));
+		}
+		catch (TaskManagementException e) {
+			return ResponseEntity.badRequest().body(ExceptionHandler.handleTaskException(taskId, e));
+		}
+		catch (Exception e) {
+			return ResponseEntity.badRequest().body(ExceptionHandler.handleGenericException("执行任务", e));
+		}
+	}
 
-			task.setGraphExecutionId(executionId);
-			mathTaskService.updateTask(task);
+	/**
+	 * 从最后一个成功的节点恢复执行失败的任务
+	 */
+	@PostMapping("/{taskId}/resume")
+	public ResponseEntity<Map<String, Object>> resumeTask(@PathVariable Long taskId) {
+		log.info("恢复执行任务: {}", taskId);
+
+		try {
+			MathTask task = mathTaskService.getTaskById(taskId);
+			if (task == null) {
+				throw new TaskManagementException(taskId, "任务不存在");
+			}
+			if (task.getStatus() == MathTask.TaskStatus.COMPLETED) {
+				throw new TaskManagementException(taskId, "任务已完成，无需恢复");
+			}
 
-			return ResponseEntity.ok(Map.of("taskId", taskId, "executionId", executionId, "status",
-					task.getStatus().name(), "message", "任务执行已开始"));
+			TaskExecution execution = taskExecutionEngine.resume(task);
 
+			return ResponseEntity.accepted()
+				.body(Map.of("taskId", taskId, "executionId", execution.getExecutionId(), "status",
+						task.getStatus().name(), "executionState", execution.getState().name(), "message", "任务已提交恢复执行"));
+
+		}
+		catch (TaskSubmissionException e) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ExceptionHandler.handleTaskException(taskId, e));
 		}
 		catch (TaskManagementException e) {
 			return ResponseEntity.badRequest().body(ExceptionHandler.handleTaskException(taskId, e));
 		}
 		catch (Exception e) {
-			return ResponseEntity.badRequest().body(ExceptionHandler.handleGenericException("执行任务", e));
+			return ResponseEntity.badRequest().body(ExceptionHandler.handleGenericException("恢复任务", e));
 		}
 	}
 
+	/**
+	 * 获取任务执行句柄状态
+	 */
+	@GetMapping("/{taskId}/execution")
+	public ResponseEntity<Map<String, Object>> getTaskExecution(@PathVariable Long taskId) {
+		TaskExecution execution = taskExecutionEngine.getExecution(taskId);
+		if (execution == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(execution.toMap());
+	}
+
+	/**
+	 * 订阅任务执行事件流(SSE) 推送节点开始/结束事件和各Agent的模型输出
+	 */
+	@GetMapping(value = "/{taskId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public Flux<ServerSentEvent<TaskEvent>> streamTask(@PathVariable Long taskId) {
+		Flux<ServerSentEvent<TaskEvent>> events = taskEventPublisher.subscribe(taskId)
+			.map(flux -> flux.map(event -> ServerSentEvent.builder(event).event(event.getType().eventName()).build()))
+			.orElseGet(() -> Flux.just(currentStatusEvent(taskId)));
+
+		// 心跳注释保持连接，事件流结束时一并结束
+		Flux<ServerSentEvent<TaskEvent>> heartbeats = Flux.interval(HEARTBEAT_INTERVAL)
+			.map(i -> ServerSentEvent.<TaskEvent>builder().comment("heartbeat").build());
+		return events.mergeWith(heartbeats.takeUntilOther(events.ignoreElements()));
+	}
+
+	/**
+	 * 获取执行队列状态
+	 */
+	@GetMapping("/execution-queue")
+	public ResponseEntity<Map<String, Object>> getExecutionQueue() {
+		return ResponseEntity.ok(taskExecutionEngine.getQueueStats());
+	}
+
 	/**
 	 * 获取任务列表
 	 */
@@ -152,11 +221,21 @@ public class MathTaskController {
 				throw new TaskManagementException(taskId, "任务不存在");
 			}
 
+			// 中止正在执行的工作流（LLM请求、Python进程、工作线程）
+			boolean interrupted = taskExecutionEngine.cancel(taskId);
+			// 没有可取消的执行时只允许取消尚未提交的任务，已结束的任务保持原状态
+			if (!interrupted && task.getStatus() != MathTask.TaskStatus.CREATED) {
+				return ResponseEntity.status(HttpStatus.CONFLICT)
+					.body(Map.of("taskId", taskId, "status", task.getStatus().name(), "message",
+							"任务没有正在执行的工作流，无法取消"));
+			}
+
 			task.setStatus(MathTask.TaskStatus.CANCELLED);
 			task.setCompletedAt(LocalDateTime.now());
 			mathTaskService.updateTask(task);
 
-			mathTaskService.addTaskLog(task.getId(), "USER", TaskLog.LogLevel.INFO, "任务已被用户取消", null);
+			mathTaskService.addTaskLog(task.getId(), "USER", TaskLog.LogLevel.INFO, "任务已被用户取消",
+					interrupted ? "已中止正在执行的工作流" : null);
 
 			return ResponseEntity.ok(Map.of("taskId", taskId, "status", task.getStatus().name(), "message", "任务已取消"));
 
@@ -170,72 +249,17 @@ public class MathTaskController {
 	}
 
 	/**
-	 * 执行Graph工作流
+	 * 任务没有执行中的事件流时，返回当前状态作为唯一事件
 	 */
-	private String executeGraphWorkflow(MathTask task) throws GraphWorkflowException {
-		String executionId = "execution_" + System.currentTimeMillis();
-		
-		try {
-			// 构建输入状态
-			Map<String, Object> input = Map.of(DEFAULT_INPUT_KEY, task.getProblemStatement(), "task_id", task.getId(),
-					"task_title", task.getTitle());
-
-			// 执行Graph工作流
-			Optional<OverAllState> result = compiledGraph.call(input);
-
-			if (result.isPresent()) {
-				OverAllState finalState = result.get();
-				String report = finalState.value("result").get().toString();
-
-				// 更新任务状态
-				task.setStatus(MathTask.TaskStatus.COMPLETED);
-				task.setCompletedAt(LocalDateTime.now());
-				task.setExecutionTimeMs(calculateExecutionTime(task));
-				mathTaskService.updateTask(task);
-
-				// 保存最终结果
-				TaskResult finalResult = TaskResult.builder()
-					.taskId(task.getId())
-					.nodeName("FINAL_REPORT")
-					.status(TaskResult.NodeStatus.SUCCESS)
-					.outputData(report)
-					.build();
-				mathTaskService.saveTaskResult(task.getId(), "FINAL_REPORT", TaskResult.NodeStatus.SUCCESS, null,
-						report, null);
-
-				mathTaskService.addTaskLog(task.getId(), "GRAPH_EXECUTOR", TaskLog.LogLevel.INFO, "Graph工作流执行完成",
-						report);
-
-				return executionId;
-			}
-			else {
-				throw new GraphWorkflowException("FINAL_REPORT", executionId, "Graph工作流执行失败");
-			}
-
-		}
-		catch (GraphWorkflowException e) {
-			throw e;
-		}
-		catch (Exception e) {
-			log.error("Graph工作流执行失败", e);
-
-			// 更新任务状态为失败
-			task.setStatus(MathTask.TaskStatus.FAILED);
-			task.setCompletedAt(LocalDateTime.now());
-			mathTaskService.updateTask(task);
-
-			mathTaskService.addTaskLog(task.getId(), "GRAPH_EXECUTOR", TaskLog.LogLevel.ERROR,
-					"Graph工作流执行失败: " + e.getMessage(), null);
-
-			throw new GraphWorkflowException("GRAPH_EXECUTOR", executionId, "Graph工作流执行失败", e);
-		}
-	}
-
-	private Long calculateExecutionTime(MathTask task) {
-		if (task.getStartedAt() != null && task.getCompletedAt() != null) {
-			return java.time.Duration.between(task.getStartedAt(), task.getCompletedAt()).toMillis();
-		}
-		return null;
+	private ServerSentEvent<TaskEvent> currentStatusEvent(Long taskId) {
+		MathTask task = mathTaskService.getTaskById(taskId);
+		TaskEvent event = TaskEvent.builder()
+			.taskId(taskId)
+			.type(TaskEvent.EventType.STATUS)
+			.content(task != null ? task.getStatus().name() : "任务不存在")
+			.timestamp(LocalDateTime.now())
+			.build();
+		return ServerSentEvent.builder(event).event(event.getType().eventName()).build();
 	}
 
 	/**
@@ -0,0 +1,169 @@
+package com.mathagent.controller;
+
+import com.mathagent.python.CellArtifactCollector;
+import com.mathagent.service.PythonCodeExecutorService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 任务产出文件控制器 提供代码单元格产出的图像和数据文件下载
+ *
+ * 支持单个Range区间和ETag/Last-Modified条件请求；Tomcat支持sendfile时由内核直接把文件发送到连接，
+ * 否则通过FileChannel.transferTo分段写出，文件内容不会整体读入堆内存
+ *
+ * @author Makoto
+ */
+@RestController
+@RequestMapping("/api/tasks")
+@CrossOrigin(origins = "*")
+public class TaskArtifactController {
+
+	private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	/**
+	 * 小于该大小时直接写出，与Tomcat默认的sendfile阈值一致
+	 */
+	private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+	/**
+	 * 单元格产出目录中的文件生成后不再改写，允许客户端缓存
+	 */
+	private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofHours(1)).cachePrivate();
+
+	@Autowired
+	private PythonCodeExecutorService pythonCodeExecutorService;
+
+	/**
+	 * 下载任务产出文件
+	 * @param name 产出文件名称，如 session_1_1700000000000_1/0/figure_1.png
+	 */
+	@GetMapping("/{taskId}/artifacts/{*name}")
+	public void getArtifact(@PathVariable Long taskId, @PathVariable String name, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Path file = pythonCodeExecutorService.resolveArtifact(String.valueOf(taskId),
+				name.startsWith("/") ? name.substring(1) : name);
+		if (file == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		long length = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		String etag = CellArtifactCollector.etag(length, lastModified);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL.getHeaderValue());
+		// 同时写入ETag和Last-Modified响应头，条件满足时设置304/412状态
+		if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+			return;
+		}
+
+		String fileName = file.getFileName().toString();
+		response.setContentType(CellArtifactCollector.contentType(fileName));
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+				ContentDisposition.inline().filename(fileName, StandardCharsets.UTF_8).build().toString());
+
+		long start = 0;
+		long end = length - 1;
+		String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+		if (rangeHeader != null && length > 0 && ifRangeMatches(request, etag, lastModified)) {
+			List<HttpRange> ranges;
+			try {
+				ranges = HttpRange.parseRanges(rangeHeader);
+			}
+			catch (IllegalArgumentException e) {
+				// 无法解析的Range按普通请求处理
+				ranges = List.of();
+			}
+			// 多个区间时返回完整文件
+			if (ranges.size() == 1) {
+				try {
+					start = ranges.get(0).getRangeStart(length);
+					end = ranges.get(0).getRangeEnd(length);
+				}
+				catch (IllegalArgumentException e) {
+					response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+					response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					return;
+				}
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+
+		long count = end - start + 1;
+		response.setContentLengthLong(count);
+		if (count <= 0 || "HEAD".equals(request.getMethod())) {
+			return;
+		}
+		if (count >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+			// 请求处理结束后由Tomcat调用sendfile发送
+			request.setAttribute(SENDFILE_FILENAME, file.toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end + 1);
+			return;
+		}
+		transfer(file, start, count, response);
+	}
+
+	private void transfer(Path file, long start, long count, HttpServletResponse response) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			long remaining = count;
+			while (remaining > 0) {
+				long written = channel.transferTo(position, remaining, out);
+				if (written <= 0) {
+					break;
+				}
+				position += written;
+				remaining -= written;
+			}
+		}
+	}
+
+	/**
+	 * If-Range校验：不带该请求头，或其中的ETag/日期与当前文件一致时才按Range返回部分内容
+	 */
+	private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return ifRange.equals(etag);
+		}
+		try {
+			return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+		}
+		catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,17 @@
+package com.mathagent.exception;
+
+/**
+ * 任务提交异常 执行队列已满或任务已在执行中
+ *
+ * @author Makoto
+ */
+public class TaskSubmissionException extends TaskManagementException {
+
+    public TaskSubmissionException(Long taskId, String message) {
+        super(taskId, message);
+    }
+
+    public TaskSubmissionException(Long taskId, String message, Throwable cause) {
+        super(taskId, message, cause);
+    }
+}
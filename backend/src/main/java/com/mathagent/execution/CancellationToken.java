@@ -0,0 +1,117 @@
+package com.mathagent.execution;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 协作式取消令牌 任务取消时依次触发已注册的回调（中止LLM流式请求、终止Python进程等）
+ *
+ * 同时携带任务截止时间，模型调用据此计算单次调用的剩余可用时间
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class CancellationToken {
+
+	/**
+	 * 不可取消的令牌，用于不在任务执行引擎中运行的调用
+	 */
+	public static final CancellationToken NONE = new CancellationToken();
+
+	private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+	private final Set<Runnable> callbacks = ConcurrentHashMap.newKeySet();
+
+	private volatile Instant deadline;
+
+	/**
+	 * 注册取消回调，已取消时立即执行；返回值用于在调用结束后注销回调
+	 */
+	public Runnable onCancel(Runnable callback) {
+		if (this == NONE) {
+			return () -> {
+			};
+		}
+		callbacks.add(callback);
+		if (cancelled.get() && callbacks.remove(callback)) {
+			runQuietly(callback);
+		}
+		return () -> callbacks.remove(callback);
+	}
+
+	/**
+	 * 取消并触发所有回调
+	 */
+	public void cancel() {
+		if (this == NONE || !cancelled.compareAndSet(false, true)) {
+			return;
+		}
+		for (Runnable callback : callbacks) {
+			if (callbacks.remove(callback)) {
+				runQuietly(callback);
+			}
+		}
+	}
+
+	/**
+	 * 创建子令牌：本令牌取消时子令牌随之取消，子令牌可以单独取消而不影响本令牌；截止时间与本令牌相同
+	 */
+	public CancellationToken newChild() {
+		CancellationToken child = new CancellationToken();
+		child.deadline = deadline;
+		Runnable unregister = onCancel(child::cancel);
+		// 子令牌取消后不再需要跟随父令牌
+		child.onCancel(unregister);
+		return child;
+	}
+
+	public boolean isCancelled() {
+		return cancelled.get();
+	}
+
+	/**
+	 * 已取消时抛出CancellationException
+	 */
+	public void throwIfCancelled() {
+		if (isCancelled()) {
+			throw new CancellationException("任务已取消");
+		}
+	}
+
+	/**
+	 * 设置任务截止时间
+	 */
+	public void setDeadline(Instant deadline) {
+		if (this != NONE) {
+			this.deadline = deadline;
+		}
+	}
+
+	public Instant getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * 距离截止时间的剩余时间，未设置截止时间时返回null
+	 */
+	public Duration remaining() {
+		Instant current = deadline;
+		return current != null ? Duration.between(Instant.now(), current) : null;
+	}
+
+	private void runQuietly(Runnable callback) {
+		try {
+			callback.run();
+		}
+		catch (Exception e) {
+			log.warn("取消回调执行失败", e);
+		}
+	}
+
+}
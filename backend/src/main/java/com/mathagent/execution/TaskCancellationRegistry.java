@@ -0,0 +1,56 @@
+package com.mathagent.execution;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任务取消令牌注册表 Agent和Python执行器按任务ID查找当前执行的取消令牌
+ *
+ * @author Makoto
+ */
+@Component
+public class TaskCancellationRegistry {
+
+	private final Map<Long, CancellationToken> tokens = new ConcurrentHashMap<>();
+
+	/**
+	 * 为新的执行创建取消令牌
+	 */
+	public CancellationToken open(Long taskId) {
+		CancellationToken token = new CancellationToken();
+		tokens.put(taskId, token);
+		return token;
+	}
+
+	/**
+	 * 获取任务的取消令牌，任务不在执行中时返回不可取消的令牌
+	 */
+	public CancellationToken get(Long taskId) {
+		if (taskId == null) {
+			return CancellationToken.NONE;
+		}
+		return tokens.getOrDefault(taskId, CancellationToken.NONE);
+	}
+
+	/**
+	 * 按字符串形式的任务ID查找（Python会话中保存的是字符串）
+	 */
+	public CancellationToken get(String taskId) {
+		try {
+			return taskId != null ? get(Long.valueOf(taskId)) : CancellationToken.NONE;
+		}
+		catch (NumberFormatException e) {
+			return CancellationToken.NONE;
+		}
+	}
+
+	/**
+	 * 执行结束后移除令牌
+	 */
+	public void close(Long taskId, CancellationToken token) {
+		tokens.remove(taskId, token);
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.mathagent.execution;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 任务执行事件 通过SSE推送给前端的节点状态和模型输出
+ *
+ * @author Makoto
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TaskEvent {
+
+	private Long taskId;
+
+	private EventType type;
+
+	private String nodeName;
+
+	private String callName;
+
+	private String content;
+
+	private Long durationMs;
+
+	private LocalDateTime timestamp;
+
+	public enum EventType {
+
+		NODE_START("节点开始"), NODE_FINISH("节点完成"), NODE_ERROR("节点失败"), TOKEN("模型输出"), TASK_COMPLETED("任务完成"),
+		TASK_FAILED("任务失败"), TASK_CANCELLED("任务取消"), STATUS("任务状态");
+
+		private final String description;
+
+		EventType(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * SSE事件名称
+		 */
+		public String eventName() {
+			return name().toLowerCase();
+		}
+
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.mathagent.execution;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任务事件发布器 每个执行中的任务对应一个可重放的事件流，供SSE端点订阅
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class TaskEventPublisher {
+
+	@Value("${math-agent.stream.replay-size:2000}")
+	private int replaySize;
+
+	@Value("${math-agent.stream.retention-seconds:60}")
+	private long retentionSeconds;
+
+	private final Map<Long, Sinks.Many<TaskEvent>> sinks = new ConcurrentHashMap<>();
+
+	/**
+	 * 为新的执行创建事件流，替换该任务之前的事件流
+	 */
+	public void open(Long taskId) {
+		Sinks.Many<TaskEvent> previous = sinks.put(taskId, Sinks.many().replay().limit(replaySize));
+		if (previous != null) {
+			synchronized (previous) {
+				previous.tryEmitComplete();
+			}
+		}
+	}
+
+	/**
+	 * 订阅任务事件流，任务没有执行中的事件流时返回空
+	 */
+	public Optional<Flux<TaskEvent>> subscribe(Long taskId) {
+		return Optional.ofNullable(sinks.get(taskId)).map(Sinks.Many::asFlux);
+	}
+
+	/**
+	 * 节点开始
+	 */
+	public void nodeStarted(Long taskId, String nodeName) {
+		publish(taskId, TaskEvent.builder().type(TaskEvent.EventType.NODE_START).nodeName(nodeName).build());
+	}
+
+	/**
+	 * 节点结束
+	 */
+	public void nodeFinished(Long taskId, String nodeName, long durationMs, String error) {
+		publish(taskId,
+				TaskEvent.builder()
+					.type(error == null ? TaskEvent.EventType.NODE_FINISH : TaskEvent.EventType.NODE_ERROR)
+					.nodeName(nodeName)
+					.durationMs(durationMs)
+					.content(error)
+					.build());
+	}
+
+	/**
+	 * 模型输出片段
+	 */
+	public void token(Long taskId, String nodeName, String callName, String token) {
+		publish(taskId, TaskEvent.builder()
+			.type(TaskEvent.EventType.TOKEN)
+			.nodeName(nodeName)
+			.callName(callName)
+			.content(token)
+			.build());
+	}
+
+	/**
+	 * 发布终止事件并关闭事件流，保留一段时间供晚到的订阅者重放
+	 */
+	public void complete(Long taskId, TaskEvent.EventType type, String message) {
+		Sinks.Many<TaskEvent> sink = sinks.get(taskId);
+		if (sink == null) {
+			return;
+		}
+		publish(taskId, TaskEvent.builder().type(type).content(message).build());
+		synchronized (sink) {
+			sink.tryEmitComplete();
+		}
+		Mono.delay(Duration.ofSeconds(retentionSeconds)).subscribe(ignored -> sinks.remove(taskId, sink));
+	}
+
+	private void publish(Long taskId, TaskEvent event) {
+		if (taskId == null) {
+			return;
+		}
+		Sinks.Many<TaskEvent> sink = sinks.get(taskId);
+		if (sink == null) {
+			return;
+		}
+		event.setTaskId(taskId);
+		event.setTimestamp(LocalDateTime.now());
+		// 多个线程可能同时输出（并行LLM调用），串行化写入避免FAIL_NON_SERIALIZED
+		synchronized (sink) {
+			Sinks.EmitResult result = sink.tryEmitNext(event);
+			if (result.isFailure()) {
+				log.debug("任务事件发布失败: {} - {}", taskId, result);
+			}
+		}
+	}
+
+}
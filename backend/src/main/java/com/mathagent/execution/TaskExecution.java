@@ -0,0 +1,148 @@
+package com.mathagent.execution;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * 任务执行句柄 记录一次Graph工作流执行的排队和运行状态
+ *
+ * @author Makoto
+ */
+public class TaskExecution {
+
+	private final String executionId;
+
+	private final Long taskId;
+
+	private final LocalDateTime submittedAt;
+
+	private volatile ExecutionState state = ExecutionState.QUEUED;
+
+	private volatile LocalDateTime startedAt;
+
+	private volatile LocalDateTime finishedAt;
+
+	private volatile String errorMessage;
+
+	private volatile Future<?> future;
+
+	private volatile CancellationToken cancellationToken = CancellationToken.NONE;
+
+	public TaskExecution(String executionId, Long taskId) {
+		this.executionId = executionId;
+		this.taskId = taskId;
+		this.submittedAt = LocalDateTime.now();
+	}
+
+	/**
+	 * 排队中 -> 执行中，已被取消时返回false
+	 */
+	public synchronized boolean markRunning() {
+		if (state != ExecutionState.QUEUED) {
+			return false;
+		}
+		this.state = ExecutionState.RUNNING;
+		this.startedAt = LocalDateTime.now();
+		return true;
+	}
+
+	public synchronized void markFinished(ExecutionState finalState, String errorMessage) {
+		this.state = finalState;
+		this.errorMessage = errorMessage;
+		this.finishedAt = LocalDateTime.now();
+	}
+
+	/**
+	 * 仍在排队时直接标记为已取消
+	 */
+	public synchronized boolean cancelIfQueued() {
+		if (state != ExecutionState.QUEUED) {
+			return false;
+		}
+		markFinished(ExecutionState.CANCELLED, "任务已取消");
+		return true;
+	}
+
+	public boolean isActive() {
+		return state == ExecutionState.QUEUED || state == ExecutionState.RUNNING;
+	}
+
+	/**
+	 * 转换为API响应
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("executionId", executionId);
+		map.put("taskId", taskId);
+		map.put("state", state.name());
+		map.put("submittedAt", submittedAt.toString());
+		map.put("startedAt", startedAt != null ? startedAt.toString() : null);
+		map.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+		map.put("error", errorMessage);
+		return map;
+	}
+
+	// Getters and Setters
+	public String getExecutionId() {
+		return executionId;
+	}
+
+	public Long getTaskId() {
+		return taskId;
+	}
+
+	public LocalDateTime getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public ExecutionState getState() {
+		return state;
+	}
+
+	public LocalDateTime getStartedAt() {
+		return startedAt;
+	}
+
+	public LocalDateTime getFinishedAt() {
+		return finishedAt;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public Future<?> getFuture() {
+		return future;
+	}
+
+	public void setFuture(Future<?> future) {
+		this.future = future;
+	}
+
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	public void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = cancellationToken;
+	}
+
+	public enum ExecutionState {
+
+		QUEUED("排队中"), RUNNING("执行中"), COMPLETED("已完成"), FAILED("失败"), CANCELLED("已取消");
+
+		private final String description;
+
+		ExecutionState(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+	}
+
+}
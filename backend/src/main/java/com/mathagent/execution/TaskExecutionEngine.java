@@ -0,0 +1,318 @@
+package com.mathagent.execution;
+
+import com.alibaba.cloud.ai.graph.CompiledGraph;
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.mathagent.exception.GraphWorkflowException;
+import com.mathagent.exception.TaskSubmissionException;
+import com.mathagent.model.MathTask;
+import com.mathagent.model.TaskLog;
+import com.mathagent.model.TaskResult;
+import com.mathagent.service.GraphCheckpointService;
+import com.mathagent.service.MathTaskService;
+import com.mathagent.util.VirtualThreads;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import static com.alibaba.cloud.ai.graph.OverAllState.DEFAULT_INPUT_KEY;
+
+/**
+ * 任务执行引擎 在有界线程池中异步运行数学建模Graph工作流
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Service
+public class TaskExecutionEngine {
+
+	@Autowired
+	private MathTaskService mathTaskService;
+
+	@Autowired
+	@Qualifier("compiledMathModelingGraph")
+	private CompiledGraph compiledGraph;
+
+	@Autowired
+	@Qualifier("taskExecutionExecutor")
+	private ThreadPoolTaskExecutor executor;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private TaskEventPublisher taskEventPublisher;
+
+	@Autowired
+	private GraphCheckpointService graphCheckpointService;
+
+	@Autowired
+	private TaskCancellationRegistry cancellationRegistry;
+
+	@Value("${math-agent.execution.mode:platform}")
+	private String executionMode;
+
+	@Value("${math-agent.execution.task-deadline-minutes:60}")
+	private long taskDeadlineMinutes;
+
+	/**
+	 * 执行结束后句柄保留的时间，期间仍可查询执行状态
+	 */
+	@Value("${math-agent.execution.retention-minutes:30}")
+	private long retentionMinutes;
+
+	private final Map<Long, TaskExecution> executions = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void registerMetrics() {
+		Gauge.builder("mathagent.execution.queue.size", executor, ThreadPoolTaskExecutor::getQueueSize)
+			.description("等待执行的任务数")
+			.register(meterRegistry);
+		Gauge.builder("mathagent.execution.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+			.description("正在执行的任务数")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * 提交任务完整执行，立即返回执行句柄
+	 */
+	public TaskExecution submit(MathTask task) throws TaskSubmissionException {
+		return submit(task, false);
+	}
+
+	/**
+	 * 从最后一个成功的检查点恢复执行，已完成的节点不再重复调用模型
+	 */
+	public TaskExecution resume(MathTask task) throws TaskSubmissionException {
+		return submit(task, true);
+	}
+
+	private TaskExecution submit(MathTask task, boolean resume) throws TaskSubmissionException {
+		Long taskId = task.getId();
+		TaskExecution execution = new TaskExecution("execution_" + taskId + "_" + System.currentTimeMillis(), taskId);
+
+		TaskExecution previous = executions.putIfAbsent(taskId, execution);
+		if (previous != null) {
+			if (previous.isActive()) {
+				throw new TaskSubmissionException(taskId, "任务正在执行中: " + previous.getExecutionId());
+			}
+			if (!executions.replace(taskId, previous, execution)) {
+				throw new TaskSubmissionException(taskId, "任务正在执行中");
+			}
+		}
+
+		// 入队前更新任务状态，避免与工作线程的状态写入交错
+		MathTask.TaskStatus previousStatus = task.getStatus();
+		task.setStatus(MathTask.TaskStatus.ANALYZING);
+		task.setGraphExecutionId(execution.getExecutionId());
+		mathTaskService.updateTask(task);
+		mathTaskService.addTaskLog(taskId, "GRAPH_EXECUTOR", TaskLog.LogLevel.INFO,
+				resume ? "数学建模Graph工作流已进入恢复执行队列" : "数学建模Graph工作流已进入执行队列", execution.getExecutionId());
+
+		taskEventPublisher.open(taskId);
+		execution.setCancellationToken(cancellationRegistry.open(taskId));
+
+		try {
+			execution.setFuture(executor.submit(() -> run(task, execution, resume)));
+		}
+		catch (TaskRejectedException e) {
+			executions.remove(taskId, execution);
+			cancellationRegistry.close(taskId, execution.getCancellationToken());
+			task.setStatus(previousStatus);
+			mathTaskService.updateTask(task);
+			// 已打开的事件流同样结束，订阅方不会一直等待
+			taskEventPublisher.complete(taskId, TaskEvent.EventType.TASK_FAILED, "执行队列已满，请稍后重试");
+			throw new TaskSubmissionException(taskId, "执行队列已满，请稍后重试", e);
+		}
+
+		log.info("任务已提交执行: {} -> {}, 队列长度: {}", taskId, execution.getExecutionId(), executor.getQueueSize());
+		return execution;
+	}
+
+	/**
+	 * 取消任务执行：中止进行中的LLM请求、终止Python进程并中断工作线程
+	 * @return 是否存在被取消的执行
+	 */
+	public boolean cancel(Long taskId) {
+		TaskExecution execution = executions.get(taskId);
+		if (execution == null || !execution.isActive()) {
+			return false;
+		}
+
+		boolean queued = execution.cancelIfQueued();
+		execution.getCancellationToken().cancel();
+		Future<?> future = execution.getFuture();
+		if (future != null) {
+			future.cancel(true);
+		}
+
+		// 未开始执行的任务不会进入run()，在此处收尾
+		if (queued) {
+			cancellationRegistry.close(taskId, execution.getCancellationToken());
+			taskEventPublisher.complete(taskId, TaskEvent.EventType.TASK_CANCELLED, "任务已取消");
+			scheduleRemoval(execution);
+		}
+
+		log.info("任务执行已取消: {} -> {}", taskId, execution.getExecutionId());
+		return true;
+	}
+
+	/**
+	 * 获取任务最近一次执行句柄
+	 */
+	public TaskExecution getExecution(Long taskId) {
+		return executions.get(taskId);
+	}
+
+	/**
+	 * 获取执行队列状态
+	 */
+	public Map<String, Object> getQueueStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("mode", executionMode);
+		stats.put("virtualThreadsSupported", VirtualThreads.isSupported());
+		stats.put("corePoolSize", executor.getCorePoolSize());
+		stats.put("maxPoolSize", executor.getMaxPoolSize());
+		stats.put("poolSize", executor.getPoolSize());
+		stats.put("activeCount", executor.getActiveCount());
+		stats.put("queueSize", executor.getQueueSize());
+		stats.put("queueCapacity", executor.getQueueCapacity());
+		stats.put("queuedTasks", executions.values()
+			.stream()
+			.filter(e -> e.getState() == TaskExecution.ExecutionState.QUEUED)
+			.map(TaskExecution::getTaskId)
+			.toList());
+		return stats;
+	}
+
+	/**
+	 * 在工作线程中执行Graph工作流
+	 */
+	private void run(MathTask task, TaskExecution execution, boolean resume) {
+		if (!execution.markRunning()) {
+			return;
+		}
+		String executionId = execution.getExecutionId();
+		CancellationToken token = execution.getCancellationToken();
+		// 截止时间从开始执行计算，排队时间不计入
+		token.setDeadline(Instant.now().plus(Duration.ofMinutes(taskDeadlineMinutes)));
+
+		try {
+			task.setStartedAt(LocalDateTime.now());
+			mathTaskService.updateTask(task);
+
+			// 构建输入状态：恢复执行时合并检查点中的节点输出，完整执行时清除旧检查点
+			Map<String, Object> input = new HashMap<>();
+			if (resume) {
+				input.putAll(graphCheckpointService.loadResumeState(task.getId()));
+				log.info("从检查点恢复任务: {}, 已完成节点: {}", task.getId(),
+						input.get(GraphCheckpointService.COMPLETED_NODES_KEY));
+			}
+			else {
+				graphCheckpointService.clear(task.getId());
+			}
+			input.put(DEFAULT_INPUT_KEY, task.getProblemStatement());
+			input.put("task_id", task.getId());
+			input.put("task_title", task.getTitle());
+			input.put("execution_id", executionId);
+
+			// 执行Graph工作流
+			Optional<OverAllState> result = compiledGraph.call(input);
+			if (result.isEmpty()) {
+				throw new GraphWorkflowException("FINAL_REPORT", executionId, "Graph工作流执行失败");
+			}
+			token.throwIfCancelled();
+
+			OverAllState finalState = result.get();
+			String report = finalState.value("result")
+				.or(() -> finalState.value("writing_result"))
+				.map(Object::toString)
+				.orElse("");
+
+			// 更新任务状态
+			task.setStatus(MathTask.TaskStatus.COMPLETED);
+			task.setCompletedAt(LocalDateTime.now());
+			task.setExecutionTimeMs(calculateExecutionTime(task));
+			mathTaskService.updateTask(task);
+
+			// 保存最终结果
+			mathTaskService.saveTaskResult(task.getId(), "FINAL_REPORT", TaskResult.NodeStatus.SUCCESS, null,
+					report, null);
+			mathTaskService.addTaskLog(task.getId(), "GRAPH_EXECUTOR", TaskLog.LogLevel.INFO, "Graph工作流执行完成", report);
+
+			execution.markFinished(TaskExecution.ExecutionState.COMPLETED, null);
+			taskEventPublisher.complete(task.getId(), TaskEvent.EventType.TASK_COMPLETED, "Graph工作流执行完成");
+		}
+		catch (Exception e) {
+			if (token.isCancelled()) {
+				onCancelled(task, execution);
+				return;
+			}
+			log.error("Graph工作流执行失败: {}", executionId, e);
+
+			// 更新任务状态为失败
+			task.setStatus(MathTask.TaskStatus.FAILED);
+			task.setCompletedAt(LocalDateTime.now());
+			task.setExecutionTimeMs(calculateExecutionTime(task));
+			mathTaskService.updateTask(task);
+
+			mathTaskService.addTaskLog(task.getId(), "GRAPH_EXECUTOR", TaskLog.LogLevel.ERROR,
+					"Graph工作流执行失败: " + e.getMessage(), null);
+
+			execution.markFinished(TaskExecution.ExecutionState.FAILED, e.getMessage());
+			taskEventPublisher.complete(task.getId(), TaskEvent.EventType.TASK_FAILED, e.getMessage());
+		}
+		finally {
+			cancellationRegistry.close(task.getId(), token);
+			scheduleRemoval(execution);
+		}
+	}
+
+	/**
+	 * 已结束的执行句柄保留一段时间后移除，期间被新的执行替换时不受影响
+	 */
+	private void scheduleRemoval(TaskExecution execution) {
+		Mono.delay(Duration.ofMinutes(retentionMinutes))
+			.subscribe(ignored -> executions.remove(execution.getTaskId(), execution));
+	}
+
+	/**
+	 * 被取消的执行收尾：状态以取消为准，不记为失败
+	 */
+	private void onCancelled(MathTask task, TaskExecution execution) {
+		log.info("Graph工作流已取消: {}", execution.getExecutionId());
+
+		task.setStatus(MathTask.TaskStatus.CANCELLED);
+		task.setCompletedAt(LocalDateTime.now());
+		task.setExecutionTimeMs(calculateExecutionTime(task));
+		mathTaskService.updateTask(task);
+
+		execution.markFinished(TaskExecution.ExecutionState.CANCELLED, "任务已取消");
+		taskEventPublisher.complete(task.getId(), TaskEvent.EventType.TASK_CANCELLED, "任务已取消");
+	}
+
+	private Long calculateExecutionTime(MathTask task) {
+		if (task.getStartedAt() != null && task.getCompletedAt() != null) {
+			return Duration.between(task.getStartedAt(), task.getCompletedAt()).toMillis();
+		}
+		return null;
+	}
+
+}
@@ -8,6 +8,7 @@ import com.alibaba.cloud.ai.graph.KeyStrategy;
 import com.alibaba.cloud.ai.graph.StateGraph;
 import com.alibaba.cloud.ai.graph.CompiledGraph;
 import com.alibaba.cloud.ai.graph.CompileConfig;
+import com.alibaba.cloud.ai.graph.action.NodeAction;
 import com.alibaba.cloud.ai.graph.exception.GraphStateException;
 import static com.alibaba.cloud.ai.graph.action.AsyncNodeAction.node_async;
 import static com.alibaba.cloud.ai.graph.StateGraph.END;
@@ -15,6 +16,9 @@ import static com.alibaba.cloud.ai.graph.StateGraph.START;
 import com.mathagent.agents.ModelingAgent;
 import com.mathagent.agents.CodingAgent;
 import com.mathagent.agents.WritingAgent;
+import com.mathagent.execution.TaskCancellationRegistry;
+import com.mathagent.execution.TaskEventPublisher;
+import com.mathagent.service.GraphCheckpointService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,6 +48,15 @@ public class MathModelingGraphConfig {
 	@Autowired
 	private WritingAgent writingAgent;
 
+	@Autowired
+	private TaskEventPublisher taskEventPublisher;
+
+	@Autowired
+	private GraphCheckpointService graphCheckpointService;
+
+	@Autowired
+	private TaskCancellationRegistry taskCancellationRegistry;
+
 	@Bean
 	public ChatClient chatClient(@Qualifier("dashScopeChatModel") DashScopeChatModel dashScopeChatModel) {
 		return ChatClient.builder(dashScopeChatModel).defaultAdvisors(new SimpleLoggerAdvisor()).build();
@@ -53,7 +66,11 @@ public class MathModelingGraphConfig {
 	public KeyStrategyFactory keyStrategyFactory() {
 		return new KeyStrategyFactoryBuilder().addStrategy(DEFAULT_INPUT_KEY, KeyStrategy.REPLACE)
 			.addStrategy("task_id", KeyStrategy.REPLACE)
+			.addStrategy("task_title", KeyStrategy.REPLACE)
+			.addStrategy("execution_id", KeyStrategy.REPLACE)
+			.addStrategy(GraphCheckpointService.COMPLETED_NODES_KEY, KeyStrategy.REPLACE)
 			.addStrategy("modeling_analysis", KeyStrategy.REPLACE)
+			.addStrategy("modeling_cache", KeyStrategy.REPLACE)
 			.addStrategy("model_definition", KeyStrategy.REPLACE)
 			.addStrategy("variables", KeyStrategy.REPLACE)
 			.addStrategy("constraints", KeyStrategy.REPLACE)
@@ -76,9 +93,9 @@ public class MathModelingGraphConfig {
 
 		StateGraph graph = new StateGraph("Math Modeling Multi-Agents Workflow", keyStrategyFactory)
 			// 添加Multi-Agents节点
-			.addNode("modeling_agent", node_async(modelingAgent))
-			.addNode("coding_agent", node_async(codingAgent))
-			.addNode("writing_agent", node_async(writingAgent))
+			.addNode("modeling_agent", node_async(observed("modeling_agent", modelingAgent)))
+			.addNode("coding_agent", node_async(observed("coding_agent", codingAgent)))
+			.addNode("writing_agent", node_async(observed("writing_agent", writingAgent)))
 
 			// 定义边（工作流序列）
 			.addEdge(START, "modeling_agent") // 开始节点
@@ -90,6 +107,14 @@ public class MathModelingGraphConfig {
 		return graph;
 	}
 
+	/**
+	 * 包装Agent节点，发布节点开始/结束事件并保存检查点
+	 */
+	private NodeAction observed(String nodeName, NodeAction agent) {
+		return new ObservedNodeAction(nodeName, agent, taskEventPublisher, graphCheckpointService,
+				taskCancellationRegistry);
+	}
+
 	@Bean
 	public CompiledGraph compiledMathModelingGraph(@Qualifier("mathModelingGraph") StateGraph stateGraph)
 			throws GraphStateException {
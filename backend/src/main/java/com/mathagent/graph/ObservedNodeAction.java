@@ -0,0 +1,86 @@
+package com.mathagent.graph;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.action.NodeAction;
+import com.mathagent.agents.StreamingChatInvoker;
+import com.mathagent.exception.GraphWorkflowException;
+import com.mathagent.execution.TaskCancellationRegistry;
+import com.mathagent.execution.TaskEventPublisher;
+import com.mathagent.service.GraphCheckpointService;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 节点观测包装器 在Agent节点执行前后发布节点开始/结束事件，成功后保存检查点
+ *
+ * 恢复执行时，检查点中已完成的节点直接跳过；节点返回错误或任务已取消时中止工作流，以便之后从该节点恢复
+ *
+ * @author Makoto
+ */
+public class ObservedNodeAction implements NodeAction {
+
+	private final String nodeName;
+
+	private final NodeAction delegate;
+
+	private final TaskEventPublisher taskEventPublisher;
+
+	private final GraphCheckpointService checkpointService;
+
+	private final TaskCancellationRegistry cancellationRegistry;
+
+	public ObservedNodeAction(String nodeName, NodeAction delegate, TaskEventPublisher taskEventPublisher,
+			GraphCheckpointService checkpointService, TaskCancellationRegistry cancellationRegistry) {
+		this.nodeName = nodeName;
+		this.delegate = delegate;
+		this.taskEventPublisher = taskEventPublisher;
+		this.checkpointService = checkpointService;
+		this.cancellationRegistry = cancellationRegistry;
+	}
+
+	@Override
+	public Map<String, Object> apply(OverAllState state) throws Exception {
+		Long taskId = StreamingChatInvoker.parseTaskId(state.value("task_id").orElse(null));
+		String executionId = state.value("execution_id").map(Object::toString).orElse(null);
+
+		if (isCompleted(state)) {
+			taskEventPublisher.nodeFinished(taskId, nodeName, 0, null);
+			return Map.of();
+		}
+
+		// 任务已取消时不再进入下一个节点
+		cancellationRegistry.get(taskId).throwIfCancelled();
+
+		long start = System.currentTimeMillis();
+		taskEventPublisher.nodeStarted(taskId, nodeName);
+
+		Map<String, Object> output;
+		try {
+			output = delegate.apply(state);
+		}
+		catch (Exception e) {
+			taskEventPublisher.nodeFinished(taskId, nodeName, System.currentTimeMillis() - start, e.getMessage());
+			throw e;
+		}
+
+		// Agent内部捕获异常后以errorCode形式返回
+		if (output != null && output.containsKey("errorCode")) {
+			String error = String.valueOf(output.get("error"));
+			taskEventPublisher.nodeFinished(taskId, nodeName, System.currentTimeMillis() - start, error);
+			throw new GraphWorkflowException(nodeName, executionId, nodeName + "执行失败: " + error);
+		}
+
+		checkpointService.save(taskId, executionId, nodeName, output);
+		taskEventPublisher.nodeFinished(taskId, nodeName, System.currentTimeMillis() - start, null);
+		return output;
+	}
+
+	private boolean isCompleted(OverAllState state) {
+		return state.value(GraphCheckpointService.COMPLETED_NODES_KEY)
+			.filter(List.class::isInstance)
+			.map(nodes -> ((List<?>) nodes).contains(nodeName))
+			.orElse(false);
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.mathagent.llm;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+/**
+ * 上下文预算Advisor 每次调用模型前由 {@link ContextBudgetManager} 估算输入Token并确定本次的输出上限（maxTokens）
+ *
+ * 排在缓存Advisor之前，缓存key包含实际使用的输出上限；调用方通过 {@link #TASK_ID} 和 {@link #CALL_NAME}
+ * 参数传入任务ID和调用名称时，决策记录到任务日志
+ *
+ * @author Makoto
+ */
+public class ContextBudgetAdvisor implements CallAdvisor, StreamAdvisor {
+
+	public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 50;
+
+	public static final String TASK_ID = "math_agent_task_id";
+
+	public static final String CALL_NAME = "math_agent_call_name";
+
+	private final ContextBudgetManager budgetManager;
+
+	private final String agent;
+
+	public ContextBudgetAdvisor(ContextBudgetManager budgetManager, String agent) {
+		this.budgetManager = budgetManager;
+		this.agent = agent;
+	}
+
+	@Override
+	public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+		return chain.nextCall(applyBudget(request));
+	}
+
+	@Override
+	public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+		return Flux.defer(() -> chain.nextStream(applyBudget(request)));
+	}
+
+	@Override
+	public String getName() {
+		return "ContextBudgetAdvisor";
+	}
+
+	@Override
+	public int getOrder() {
+		return ORDER;
+	}
+
+	private ChatClientRequest applyBudget(ChatClientRequest request) {
+		StringBuilder promptText = new StringBuilder();
+		for (Message message : request.prompt().getInstructions()) {
+			if (message.getText() != null) {
+				promptText.append(message.getText()).append('\n');
+			}
+		}
+		ContextBudgetManager.Decision decision = budgetManager.plan(agent, promptText.toString());
+		Object taskId = request.context().get(TASK_ID);
+		Object callName = request.context().get(CALL_NAME);
+		budgetManager.record(taskId instanceof Long id ? id : null, callName != null ? callName.toString() : agent,
+				decision);
+
+		if (!(request.prompt().getOptions() instanceof DashScopeChatOptions options)
+				|| Integer.valueOf(decision.maxOutputTokens()).equals(options.getMaxTokens())) {
+			return request;
+		}
+		DashScopeChatOptions budgeted = (DashScopeChatOptions) options.copy();
+		budgeted.setMaxTokens(decision.maxOutputTokens());
+		return request.mutate().prompt(new Prompt(request.prompt().getInstructions(), budgeted)).build();
+	}
+
+}
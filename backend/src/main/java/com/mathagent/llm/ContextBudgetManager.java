@@ -0,0 +1,164 @@
+package com.mathagent.llm;
+
+import com.mathagent.model.TaskLog;
+import com.mathagent.service.TaskLogWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 上下文预算管理 每次模型调用前估算输入Token，确定输出上限，并为提示词输入分配预算
+ *
+ * 输出上限取以下三者的最小值：Agent配置的最大输出、上下文窗口剩余空间、延迟目标内能生成的Token数
+ * （目标延迟减去按预填充速度估算的输入处理时间，再乘以生成速度）。
+ * 构建提示词时按Agent期望的输出长度预留空间，剩余部分作为结构化输入的预算，超出时由提示词输入序列化按优先级收缩
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class ContextBudgetManager {
+
+	private static final String LOG_NODE_NAME = "LLM_BUDGET";
+
+	/**
+	 * 提示词输入序列化的省略标记，用于统计被截断的输入数量
+	 */
+	private static final String OMISSION_MARKER = "...[省略";
+
+	@Value("${math-agent.llm.budget.context-window-tokens:32768}")
+	private int contextWindowTokens;
+
+	@Value("${math-agent.llm.budget.safety-margin-tokens:512}")
+	private int safetyMarginTokens;
+
+	@Value("${math-agent.llm.budget.min-output-tokens:1000}")
+	private int minOutputTokens;
+
+	@Value("${math-agent.llm.budget.target-latency-seconds:300}")
+	private double targetLatencySeconds;
+
+	@Value("${math-agent.llm.budget.prefill-tokens-per-second:2000}")
+	private double prefillTokensPerSecond;
+
+	@Value("${math-agent.llm.budget.decode-tokens-per-second:30}")
+	private double decodeTokensPerSecond;
+
+	@Value("${math-agent.llm.budget.record-task-logs:true}")
+	private boolean recordTaskLogs;
+
+	@Autowired
+	private TokenEstimator tokenEstimator;
+
+	@Autowired
+	private TaskLogWriter taskLogWriter;
+
+	/**
+	 * 各Agent配置的最大输出Token数
+	 */
+	private final Map<String, Integer> agentMaxOutputTokens = new ConcurrentHashMap<>();
+
+	/**
+	 * 登记Agent的最大输出Token数（ChatClient构建时调用）
+	 */
+	public void registerAgent(String agent, int maxOutputTokens) {
+		agentMaxOutputTokens.put(agent, maxOutputTokens);
+	}
+
+	/**
+	 * 提示词输入预算：为Agent期望的输出预留空间后，上下文窗口和延迟目标允许的最大输入Token数
+	 */
+	public int inputBudget(String agent) {
+		int reservedOutput = agentMaxOutputTokens.getOrDefault(agent, minOutputTokens);
+		int byContext = contextWindowTokens - safetyMarginTokens - reservedOutput;
+		double prefillSeconds = targetLatencySeconds - minOutputTokens / decodeTokensPerSecond;
+		int byLatency = (int) Math.max(0, prefillSeconds * prefillTokensPerSecond);
+		return Math.max(0, Math.min(byContext, byLatency));
+	}
+
+	public int estimateTokens(String text) {
+		return tokenEstimator.estimate(text);
+	}
+
+	/**
+	 * 确定一次调用的输出上限
+	 */
+	public Decision plan(String agent, String promptText) {
+		int inputTokens = tokenEstimator.estimate(promptText);
+		int agentMax = agentMaxOutputTokens.getOrDefault(agent, minOutputTokens);
+		int byContext = contextWindowTokens - safetyMarginTokens - inputTokens;
+		double decodeSeconds = targetLatencySeconds - inputTokens / prefillTokensPerSecond;
+		int byLatency = (int) Math.max(0, decodeSeconds * decodeTokensPerSecond);
+
+		int maxOutput = agentMax;
+		String limitedBy = "agent";
+		if (byContext < maxOutput) {
+			maxOutput = byContext;
+			limitedBy = "context";
+		}
+		if (byLatency < maxOutput) {
+			maxOutput = byLatency;
+			limitedBy = "latency";
+		}
+		// 延迟目标只压缩到最小输出；上下文不足时无法满足，请求大概率被拒绝，记录为溢出
+		boolean overflow = byContext < Math.min(agentMax, minOutputTokens);
+		if (maxOutput < minOutputTokens) {
+			maxOutput = Math.min(agentMax, overflow ? Math.max(1, byContext) : minOutputTokens);
+		}
+		return new Decision(agent, inputTokens, maxOutput, limitedBy, overflow, countTruncated(promptText));
+	}
+
+	private static int countTruncated(String promptText) {
+		int count = 0;
+		int index = promptText.indexOf(OMISSION_MARKER);
+		while (index >= 0) {
+			count++;
+			index = promptText.indexOf(OMISSION_MARKER, index + OMISSION_MARKER.length());
+		}
+		return count;
+	}
+
+	/**
+	 * 记录预算决策到任务日志
+	 * @param callName 调用名称，如 coding_agent.generate_code
+	 */
+	public void record(Long taskId, String callName, Decision decision) {
+		log.debug("上下文预算 {} {}: {}", taskId, callName, decision);
+		if (taskId == null || !recordTaskLogs) {
+			return;
+		}
+		TaskLog.LogLevel level = decision.overflow() ? TaskLog.LogLevel.WARN : TaskLog.LogLevel.INFO;
+		String details = String.format("%s: 输入约%d个Token（截断%d处），输出上限%d（受%s限制）%s", callName,
+				decision.inputTokens(), decision.truncatedInputs(), decision.maxOutputTokens(), decision.limitedBy(),
+				decision.overflow() ? "，输入超出上下文窗口" : "");
+		taskLogWriter.append(TaskLog.builder()
+			.taskId(taskId)
+			.nodeName(LOG_NODE_NAME)
+			.level(level)
+			.message("上下文预算")
+			.details(details)
+			.timestamp(LocalDateTime.now())
+			.build());
+	}
+
+	/**
+	 * 一次调用的预算决策
+	 *
+	 * @param agent Agent名称
+	 * @param inputTokens 估算的输入Token数
+	 * @param maxOutputTokens 输出上限
+	 * @param limitedBy 决定输出上限的因素：agent（Agent配置）、context（上下文窗口）、latency（延迟目标）
+	 * @param overflow 输入是否已超出上下文窗口
+	 * @param truncatedInputs 提示词中被截断的输入数量
+	 * @author Makoto
+	 */
+	public record Decision(String agent, int inputTokens, int maxOutputTokens, String limitedBy, boolean overflow,
+			int truncatedInputs) {
+	}
+
+}
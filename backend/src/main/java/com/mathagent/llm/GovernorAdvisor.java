@@ -0,0 +1,172 @@
+package com.mathagent.llm;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 模型调用调控Advisor 每次实际请求模型前向 {@link ModelGovernor} 申请许可，调用结束后按结果反馈AIMD
+ *
+ * 排在缓存Advisor之后，缓存命中的请求不占用并发和Token预算。申请时按分词器估算的输入Token加上本次输出上限预扣，
+ * 调用结束后按响应中的实际用量校正
+ *
+ * @author Makoto
+ */
+public class GovernorAdvisor implements CallAdvisor, StreamAdvisor {
+
+	public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 300;
+
+	private final ModelGovernor governor;
+
+	private final Duration maxWait;
+
+	private final TokenEstimator tokenEstimator;
+
+	/**
+	 * 请求未指定输出上限时使用的Agent默认输出上限
+	 */
+	private final int defaultMaxTokens;
+
+	public GovernorAdvisor(ModelGovernor governor, Duration maxWait, TokenEstimator tokenEstimator,
+			int defaultMaxTokens) {
+		this.governor = governor;
+		this.maxWait = maxWait;
+		this.tokenEstimator = tokenEstimator;
+		this.defaultMaxTokens = defaultMaxTokens;
+	}
+
+	@Override
+	public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+		ModelGovernor.Permit permit = await(governor.acquire(estimateTokens(request)));
+		try {
+			ChatClientResponse response = chain.nextCall(request);
+			permit.settle(usedTokens(response));
+			permit.release(ModelGovernor.Outcome.SUCCESS, 0);
+			return response;
+		}
+		catch (RuntimeException e) {
+			permit.release(outcomeOf(e), 0);
+			throw e;
+		}
+	}
+
+	@Override
+	public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+		return Mono.defer(() -> Mono.fromFuture(governor.acquire(estimateTokens(request))))
+			.timeout(maxWait)
+			.onErrorMap(TimeoutException.class, e -> timeoutError())
+			.flatMapMany(permit -> {
+				long start = System.currentTimeMillis();
+				AtomicLong firstTokenLatency = new AtomicLong();
+				AtomicReference<Throwable> failure = new AtomicReference<>();
+				// 流式响应的用量通常在最后一个分片中给出（累计值），取最后一次出现的值
+				AtomicLong usedTokens = new AtomicLong();
+				return chain.nextStream(request).doOnNext(response -> {
+					if (firstTokenLatency.get() == 0) {
+						firstTokenLatency.set(Math.max(1, System.currentTimeMillis() - start));
+					}
+					long used = usedTokens(response);
+					if (used > 0) {
+						usedTokens.set(used);
+					}
+				}).doOnError(failure::set).doFinally(signal -> {
+					permit.settle(usedTokens.get());
+					if (signal == SignalType.ON_COMPLETE) {
+						permit.release(ModelGovernor.Outcome.SUCCESS, firstTokenLatency.get());
+					}
+					else if (signal == SignalType.ON_ERROR) {
+						permit.release(outcomeOf(failure.get()), 0);
+					}
+					else {
+						permit.release(ModelGovernor.Outcome.CANCELLED, 0);
+					}
+				});
+			});
+	}
+
+	@Override
+	public String getName() {
+		return "GovernorAdvisor";
+	}
+
+	@Override
+	public int getOrder() {
+		return ORDER;
+	}
+
+	private ModelGovernor.Permit await(CompletableFuture<ModelGovernor.Permit> future) {
+		try {
+			return future.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("等待模型调用许可时被中断");
+		}
+		catch (TimeoutException e) {
+			future.cancel(false);
+			throw timeoutError();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private IllegalStateException timeoutError() {
+		return new IllegalStateException(
+				"等待模型调用许可超时(" + maxWait.toSeconds() + "s): " + governor.getName() + ", 排队: "
+						+ governor.queueDepth());
+	}
+
+	private static ModelGovernor.Outcome outcomeOf(Throwable error) {
+		return LlmErrors.isThrottled(error) ? ModelGovernor.Outcome.THROTTLED : ModelGovernor.Outcome.FAILED;
+	}
+
+	/**
+	 * 预计消耗的Token：分词器估算的输入Token加上本次输出上限（由上下文预算Advisor写入请求选项）
+	 */
+	int estimateTokens(ChatClientRequest request) {
+		long tokens = 0;
+		for (Message message : request.prompt().getInstructions()) {
+			tokens += tokenEstimator.estimate(message.getText());
+		}
+		ChatOptions options = request.prompt().getOptions();
+		Integer maxTokens = options != null ? options.getMaxTokens() : null;
+		tokens += maxTokens != null ? maxTokens : defaultMaxTokens;
+		return (int) Math.min(Integer.MAX_VALUE, tokens);
+	}
+
+	/**
+	 * 响应中的实际Token用量，未提供时为0
+	 */
+	static long usedTokens(ChatClientResponse response) {
+		ChatResponse chatResponse = response != null ? response.chatResponse() : null;
+		if (chatResponse == null || chatResponse.getMetadata() == null) {
+			return 0;
+		}
+		Usage usage = chatResponse.getMetadata().getUsage();
+		Integer total = usage != null ? usage.getTotalTokens() : null;
+		return total != null ? total : 0;
+	}
+
+}
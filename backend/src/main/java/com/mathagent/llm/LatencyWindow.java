@@ -0,0 +1,48 @@
+package com.mathagent.llm;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * 延迟滑动窗口 保存最近N次样本，用于计算对冲请求的触发阈值
+ *
+ * @author Makoto
+ */
+public class LatencyWindow {
+
+	private final long[] samples;
+
+	private final int minSamples;
+
+	private int size;
+
+	private int next;
+
+	public LatencyWindow(int capacity, int minSamples) {
+		this.samples = new long[capacity];
+		this.minSamples = minSamples;
+	}
+
+	public synchronized void record(long latencyMs) {
+		samples[next] = latencyMs;
+		next = (next + 1) % samples.length;
+		size = Math.min(size + 1, samples.length);
+	}
+
+	/**
+	 * 指定分位数，样本不足时返回null
+	 */
+	public Duration percentile(double quantile) {
+		long[] copy;
+		synchronized (this) {
+			if (size < minSamples) {
+				return null;
+			}
+			copy = Arrays.copyOf(samples, size);
+		}
+		Arrays.sort(copy);
+		int index = (int) Math.ceil(quantile * copy.length) - 1;
+		return Duration.ofMillis(copy[Math.max(0, Math.min(index, copy.length - 1))]);
+	}
+
+}
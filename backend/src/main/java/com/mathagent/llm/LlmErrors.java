@@ -0,0 +1,78 @@
+package com.mathagent.llm;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * 模型调用异常分类工具
+ *
+ * @author Makoto
+ */
+public final class LlmErrors {
+
+	private static final Pattern SERVER_ERROR = Pattern.compile("\\b(500|502|503|504)\\b|timed? ?out|connection reset",
+			Pattern.CASE_INSENSITIVE);
+
+	private LlmErrors() {
+	}
+
+	/**
+	 * 是否为可重试的瞬时错误：限流、超时、网络异常和5xx
+	 */
+	public static boolean isTransient(Throwable error) {
+		if (error == null || error instanceof CancellationException) {
+			return false;
+		}
+		if (isThrottled(error)) {
+			return true;
+		}
+		for (Throwable e = error; e != null; e = e.getCause()) {
+			if (e instanceof TimeoutException || e instanceof IOException
+					|| e.getClass().getSimpleName().contains("TransientAiException")
+					|| e.getClass().getSimpleName().contains("WebClientRequestException")) {
+				return true;
+			}
+			String message = e.getMessage();
+			if (message != null && SERVER_ERROR.matcher(message).find()) {
+				return true;
+			}
+			// 对冲请求全部失败时，原始异常保存在suppressed中
+			for (Throwable suppressed : e.getSuppressed()) {
+				if (isTransient(suppressed)) {
+					return true;
+				}
+			}
+			if (e.getCause() == e) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 是否为服务端限流（HTTP 429 / DashScope Throttling）
+	 */
+	public static boolean isThrottled(Throwable error) {
+		for (Throwable e = error; e != null; e = e.getCause()) {
+			String message = e.getMessage();
+			if (e.getClass().getSimpleName().contains("TooManyRequests")) {
+				return true;
+			}
+			if (message != null) {
+				String lower = message.toLowerCase(Locale.ROOT);
+				if (lower.contains("429") || lower.contains("throttling") || lower.contains("rate limit")
+						|| lower.contains("too many requests")) {
+					return true;
+				}
+			}
+			if (e.getCause() == e) {
+				break;
+			}
+		}
+		return false;
+	}
+
+}
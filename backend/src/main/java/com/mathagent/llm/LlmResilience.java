@@ -0,0 +1,191 @@
+package com.mathagent.llm;
+
+import com.mathagent.execution.CancellationToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 模型调用韧性策略 为Agent的流式调用加上超时、重试和对冲请求
+ *
+ * 单次调用超时不超过任务剩余时间；只有在尚未输出任何Token时才重试或对冲，避免重复内容推送到事件流；
+ * 重试和对冲分别受预算限制，额外请求量不超过原始请求量的固定比例。缓存返回的响应不计入首Token延迟统计
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class LlmResilience {
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${math-agent.llm.resilience.max-call-timeout-seconds:600}")
+	private long maxCallTimeoutSeconds;
+
+	@Value("${math-agent.llm.resilience.first-token-timeout-seconds:60}")
+	private long firstTokenTimeoutSeconds;
+
+	@Value("${math-agent.llm.resilience.idle-timeout-seconds:60}")
+	private long idleTimeoutSeconds;
+
+	@Value("${math-agent.llm.resilience.max-retries:3}")
+	private int maxRetries;
+
+	@Value("${math-agent.llm.resilience.initial-backoff-ms:500}")
+	private long initialBackoffMs;
+
+	@Value("${math-agent.llm.resilience.max-backoff-ms:10000}")
+	private long maxBackoffMs;
+
+	@Value("${math-agent.llm.resilience.retry-budget-ratio:0.2}")
+	private double retryBudgetRatio;
+
+	@Value("${math-agent.llm.resilience.hedge.enabled:true}")
+	private boolean hedgeEnabled;
+
+	@Value("${math-agent.llm.resilience.hedge.percentile:0.95}")
+	private double hedgePercentile;
+
+	@Value("${math-agent.llm.resilience.hedge.budget-ratio:0.05}")
+	private double hedgeBudgetRatio;
+
+	@Value("${math-agent.llm.resilience.hedge.min-samples:20}")
+	private int hedgeMinSamples;
+
+	private final Map<String, LatencyWindow> firstTokenLatencies = new ConcurrentHashMap<>();
+
+	private RetryBudget retryBudget;
+
+	private RetryBudget hedgeBudget;
+
+	@PostConstruct
+	public void init() {
+		retryBudget = new RetryBudget(retryBudgetRatio, 10, 100);
+		hedgeBudget = new RetryBudget(hedgeBudgetRatio, 2, 20);
+	}
+
+	/**
+	 * 计算单次调用的超时时间：任务剩余时间与单次调用上限取较小值
+	 * @throws IllegalStateException 任务已超过截止时间
+	 */
+	public Duration callTimeout(CancellationToken token) {
+		Duration max = Duration.ofSeconds(maxCallTimeoutSeconds);
+		Duration remaining = token.remaining();
+		if (remaining == null) {
+			return max;
+		}
+		if (remaining.isNegative() || remaining.isZero()) {
+			record("deadline_exceeded");
+			throw new IllegalStateException("任务已超过执行截止时间", new TimeoutException());
+		}
+		return remaining.compareTo(max) < 0 ? remaining : max;
+	}
+
+	/**
+	 * 为流式调用加上首Token/空闲超时、退避重试和对冲请求
+	 * @param callKey 调用标识（节点.调用名），用于分别统计首Token延迟
+	 * @param attempt 每次订阅都发起一次新的模型请求
+	 * @param callTimeout 本次调用的总超时，重试不会超过该时间
+	 */
+	public Flux<ChatResponse> apply(String callKey, Supplier<Flux<ChatResponse>> attempt, Duration callTimeout) {
+		LatencyWindow latencies = firstTokenLatencies.computeIfAbsent(callKey,
+				k -> new LatencyWindow(200, hedgeMinSamples));
+		long deadlineNanos = System.nanoTime() + callTimeout.toNanos();
+		AtomicBoolean emitted = new AtomicBoolean();
+		retryBudget.recordRequest();
+		hedgeBudget.recordRequest();
+
+		Flux<ChatResponse> single = Flux.defer(() -> {
+			long start = System.currentTimeMillis();
+			Duration firstTokenTimeout = min(Duration.ofSeconds(firstTokenTimeoutSeconds), remaining(deadlineNanos));
+			return hedged(callKey, attempt, latencies)
+				.timeout(Mono.delay(firstTokenTimeout), token -> Mono.delay(Duration.ofSeconds(idleTimeoutSeconds)))
+				.doOnNext(response -> {
+					// 缓存命中几乎零延迟，计入样本会压低分位数而过早触发对冲
+					if (emitted.compareAndSet(false, true) && !ResponseCacheAdvisor.isCacheHit(response)) {
+						latencies.record(System.currentTimeMillis() - start);
+					}
+				});
+		});
+
+		return single.retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(initialBackoffMs))
+			.maxBackoff(Duration.ofMillis(maxBackoffMs))
+			.jitter(0.5)
+			.filter(error -> shouldRetry(callKey, error, emitted, deadlineNanos))
+			.doBeforeRetry(signal -> log.warn("模型调用重试 {} 第{}次: {}", callKey, signal.totalRetries() + 1,
+					signal.failure().getMessage()))
+			.onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+	}
+
+	/**
+	 * 超过历史首Token延迟分位数仍未输出时，发起一个重复请求，取先输出者
+	 */
+	private Flux<ChatResponse> hedged(String callKey, Supplier<Flux<ChatResponse>> attempt,
+			LatencyWindow latencies) {
+		Flux<ChatResponse> primary = attempt.get();
+		Duration hedgeDelay = hedgeEnabled ? latencies.percentile(hedgePercentile) : null;
+		if (hedgeDelay == null) {
+			return primary;
+		}
+		Flux<ChatResponse> hedge = Flux.defer(() -> {
+			if (!hedgeBudget.tryAcquire()) {
+				return Flux.<ChatResponse>empty();
+			}
+			record("hedge");
+			log.debug("首Token超过P{} ({}ms)，发起对冲请求: {}", (int) (hedgePercentile * 100), hedgeDelay.toMillis(),
+					callKey);
+			AtomicBoolean won = new AtomicBoolean();
+			return attempt.get().doOnNext(response -> {
+				if (won.compareAndSet(false, true)) {
+					record("hedge_won");
+				}
+			});
+		}).delaySubscription(hedgeDelay);
+		return Flux.firstWithValue(primary, hedge);
+	}
+
+	private boolean shouldRetry(String callKey, Throwable error, AtomicBoolean emitted, long deadlineNanos) {
+		if (emitted.get() || !LlmErrors.isTransient(error)) {
+			return false;
+		}
+		if (remaining(deadlineNanos).toMillis() <= initialBackoffMs) {
+			record("timeout");
+			return false;
+		}
+		if (!retryBudget.tryAcquire()) {
+			log.warn("重试预算已耗尽，不再重试: {}", callKey);
+			record("retry_budget_exhausted");
+			return false;
+		}
+		record("retry");
+		return true;
+	}
+
+	private void record(String event) {
+		meterRegistry.counter("mathagent.llm.resilience", "event", event).increment();
+	}
+
+	private static Duration remaining(long deadlineNanos) {
+		return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+	}
+
+	private static Duration min(Duration a, Duration b) {
+		return a.compareTo(b) <= 0 ? a : b;
+	}
+
+}
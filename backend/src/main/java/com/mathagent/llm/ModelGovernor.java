@@ -0,0 +1,349 @@
+package com.mathagent.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 模型调用调控器 每个模型一个实例，限制并发数和每分钟Token数
+ *
+ * 等待者按到达顺序排队，只有队首能获得许可；并发上限按AIMD自适应调整：成功时缓慢增加，遇到429或首Token延迟突增时成倍减小
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class ModelGovernor {
+
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "llm-governor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * 遇到429时并发上限的缩减系数
+	 */
+	private static final double THROTTLE_DECREASE = 0.5;
+
+	/**
+	 * 延迟突增时并发上限的缩减系数
+	 */
+	private static final double LATENCY_DECREASE = 0.8;
+
+	/**
+	 * 延迟基线的EWMA平滑系数
+	 */
+	private static final double LATENCY_ALPHA = 0.1;
+
+	/**
+	 * 延迟基线生效前需要的样本数
+	 */
+	private static final int LATENCY_WARMUP_SAMPLES = 10;
+
+	private final String name;
+
+	private final int maxConcurrency;
+
+	private final long tokensPerMinute;
+
+	private final double latencySpikeFactor;
+
+	private final long decreaseCooldownMs;
+
+	private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+	private final Timer waitTimer;
+
+	private final Counter throttledCounter;
+
+	private double limit;
+
+	private int inFlight;
+
+	private double availableTokens;
+
+	private long lastRefillNanos = System.nanoTime();
+
+	private long lastDecreaseMs;
+
+	private double latencyBaselineMs;
+
+	private long latencySamples;
+
+	private ScheduledFuture<?> pendingDrain;
+
+	/**
+	 * @param name 模型名称，用于指标标签
+	 * @param maxConcurrency 并发上限（自适应调整不会超过该值）
+	 * @param tokensPerMinute 每分钟Token预算，小于等于0表示不限制
+	 * @param latencySpikeFactor 首Token延迟超过基线的倍数时视为延迟突增
+	 * @param decreaseCooldownMs 两次缩减之间的最小间隔，避免一次突发把上限压到底
+	 */
+	public ModelGovernor(String name, int maxConcurrency, long tokensPerMinute, double latencySpikeFactor,
+			long decreaseCooldownMs, MeterRegistry meterRegistry) {
+		this.name = name;
+		this.maxConcurrency = Math.max(1, maxConcurrency);
+		this.tokensPerMinute = tokensPerMinute;
+		this.latencySpikeFactor = latencySpikeFactor;
+		this.decreaseCooldownMs = decreaseCooldownMs;
+		this.limit = this.maxConcurrency;
+		this.availableTokens = tokensPerMinute;
+
+		Gauge.builder("mathagent.llm.governor.queue", this, g -> g.queueDepth())
+			.description("等待模型调用许可的请求数")
+			.tag("model", name)
+			.register(meterRegistry);
+		Gauge.builder("mathagent.llm.governor.in_flight", this, g -> g.inFlight())
+			.description("进行中的模型调用数")
+			.tag("model", name)
+			.register(meterRegistry);
+		Gauge.builder("mathagent.llm.governor.limit", this, g -> g.currentLimit())
+			.description("当前自适应并发上限")
+			.tag("model", name)
+			.register(meterRegistry);
+		this.waitTimer = Timer.builder("mathagent.llm.governor.wait")
+			.description("等待模型调用许可的时间")
+			.tag("model", name)
+			.register(meterRegistry);
+		this.throttledCounter = Counter.builder("mathagent.llm.governor.throttled")
+			.description("模型返回限流(429)的次数")
+			.tag("model", name)
+			.register(meterRegistry);
+	}
+
+	/**
+	 * 申请一次调用许可
+	 * @param estimatedTokens 预计消耗的Token数（输入加输出上限），调用结束后按实际用量通过 {@link Permit#settle} 校正
+	 * @return 获得许可时完成；取消返回的Future即放弃排队
+	 */
+	public CompletableFuture<Permit> acquire(int estimatedTokens) {
+		Waiter waiter = new Waiter(tokensFor(estimatedTokens));
+		synchronized (this) {
+			waiters.addLast(waiter);
+		}
+		// 排队中被取消时让后续等待者补位
+		waiter.future.whenComplete((permit, error) -> {
+			if (error != null) {
+				drain();
+			}
+		});
+		drain();
+		return waiter.future;
+	}
+
+	/**
+	 * 按到达顺序发放许可，队首因Token不足阻塞时安排在预算恢复后重试
+	 */
+	private void drain() {
+		List<Waiter> granted = new ArrayList<>();
+		synchronized (this) {
+			refill();
+			while (!waiters.isEmpty()) {
+				Waiter head = waiters.peekFirst();
+				if (head.future.isDone()) {
+					waiters.pollFirst();
+					continue;
+				}
+				if (inFlight >= (int) limit) {
+					break;
+				}
+				if (tokensPerMinute > 0 && availableTokens < head.tokens) {
+					scheduleDrain(head.tokens - availableTokens);
+					break;
+				}
+				waiters.pollFirst();
+				inFlight++;
+				if (tokensPerMinute > 0) {
+					availableTokens -= head.tokens;
+				}
+				granted.add(head);
+			}
+		}
+
+		// 在锁外完成Future，避免回调在持锁状态下执行
+		for (Waiter waiter : granted) {
+			long waitedNanos = System.nanoTime() - waiter.enqueuedNanos;
+			waitTimer.record(waitedNanos, TimeUnit.NANOSECONDS);
+			Permit permit = new Permit(waiter.tokens);
+			if (!waiter.future.complete(permit)) {
+				// 排队期间已被取消，归还许可和Token
+				refund(waiter.tokens);
+				permit.release(Outcome.CANCELLED, 0);
+			}
+		}
+	}
+
+	private void refill() {
+		if (tokensPerMinute <= 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		double elapsedMinutes = (now - lastRefillNanos) / 60_000_000_000.0;
+		availableTokens = Math.min(tokensPerMinute, availableTokens + elapsedMinutes * tokensPerMinute);
+		lastRefillNanos = now;
+	}
+
+	private void scheduleDrain(double deficitTokens) {
+		if (pendingDrain != null && !pendingDrain.isDone()) {
+			return;
+		}
+		long delayMs = Math.max(10, (long) Math.ceil(deficitTokens * 60_000 / tokensPerMinute));
+		pendingDrain = SCHEDULER.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void refund(long tokens) {
+		if (tokensPerMinute > 0) {
+			availableTokens = Math.min(tokensPerMinute, availableTokens + tokens);
+		}
+	}
+
+	/**
+	 * 按实际用量校正预扣的Token：多扣的归还，少扣的补扣（预算可暂时为负，恢复前后续请求等待）
+	 */
+	private void adjust(long chargedTokens, long actualTokens) {
+		if (tokensPerMinute <= 0 || actualTokens == chargedTokens) {
+			return;
+		}
+		synchronized (this) {
+			refill();
+			availableTokens = Math.min(tokensPerMinute, availableTokens + chargedTokens - actualTokens);
+		}
+		if (actualTokens < chargedTokens) {
+			drain();
+		}
+	}
+
+	private long tokensFor(int estimatedTokens) {
+		long tokens = Math.max(1, estimatedTokens);
+		// 单次请求超过整个预算时按预算上限计，否则永远无法获得许可
+		return tokensPerMinute > 0 ? Math.min(tokens, tokensPerMinute) : tokens;
+	}
+
+	/**
+	 * AIMD调整：429成倍缩减，延迟突增小幅缩减，其余情况每轮并发增加1
+	 */
+	private void onRelease(Outcome outcome, long latencyMs) {
+		synchronized (this) {
+			inFlight--;
+			long now = System.currentTimeMillis();
+			if (outcome == Outcome.THROTTLED) {
+				throttledCounter.increment();
+				decrease(THROTTLE_DECREASE, now);
+			}
+			else if (outcome == Outcome.SUCCESS) {
+				boolean spike = latencyMs > 0 && latencySamples >= LATENCY_WARMUP_SAMPLES
+						&& latencyMs > latencyBaselineMs * latencySpikeFactor;
+				if (spike) {
+					decrease(LATENCY_DECREASE, now);
+				}
+				else {
+					if (latencyMs > 0) {
+						latencyBaselineMs = latencySamples == 0 ? latencyMs
+								: latencyBaselineMs + LATENCY_ALPHA * (latencyMs - latencyBaselineMs);
+						latencySamples++;
+					}
+					limit = Math.min(maxConcurrency, limit + 1.0 / limit);
+				}
+			}
+		}
+		drain();
+	}
+
+	private void decrease(double factor, long now) {
+		if (now - lastDecreaseMs < decreaseCooldownMs) {
+			return;
+		}
+		double previous = limit;
+		limit = Math.max(1, limit * factor);
+		lastDecreaseMs = now;
+		log.info("模型 {} 并发上限下调: {} -> {}", name, String.format("%.1f", previous), String.format("%.1f", limit));
+	}
+
+	public synchronized int queueDepth() {
+		return waiters.size();
+	}
+
+	public synchronized int inFlight() {
+		return inFlight;
+	}
+
+	public synchronized double currentLimit() {
+		return limit;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 调用结果，用于AIMD调整
+	 */
+	public enum Outcome {
+
+		SUCCESS, THROTTLED, FAILED, CANCELLED
+
+	}
+
+	/**
+	 * 调用许可，调用结束后必须释放且只释放一次
+	 */
+	public final class Permit {
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private final AtomicBoolean settled = new AtomicBoolean();
+
+		private final long tokens;
+
+		private Permit(long tokens) {
+			this.tokens = tokens;
+		}
+
+		/**
+		 * 按响应中的实际Token用量校正预扣的Token，只校正一次；用量未知（小于等于0）时保持预扣值
+		 */
+		public void settle(long actualTokens) {
+			if (actualTokens > 0 && settled.compareAndSet(false, true)) {
+				adjust(tokens, actualTokens);
+			}
+		}
+
+		/**
+		 * @param latencyMs 首Token延迟，无法测量时传0
+		 */
+		public void release(Outcome outcome, long latencyMs) {
+			if (released.compareAndSet(false, true)) {
+				onRelease(outcome, latencyMs);
+			}
+		}
+
+	}
+
+	private static final class Waiter {
+
+		private final long tokens;
+
+		private final long enqueuedNanos = System.nanoTime();
+
+		private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+		private Waiter(long tokens) {
+			this.tokens = tokens;
+		}
+
+	}
+
+}
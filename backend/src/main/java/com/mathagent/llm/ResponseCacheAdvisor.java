@@ -0,0 +1,154 @@
+package com.mathagent.llm;
+
+import com.mathagent.cache.TieredCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * LLM响应精确匹配缓存Advisor 以模型、温度、最大Token数和提示词哈希为key，命中时不再调用模型
+ *
+ * 同时支持同步调用和流式调用；流式调用只有在正常结束时才写入缓存
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class ResponseCacheAdvisor implements CallAdvisor, StreamAdvisor {
+
+	public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 100;
+
+	/**
+	 * 缓存命中的响应在元数据中带有该标记，下游据此区分（如不计入模型延迟统计）
+	 */
+	public static final String CACHE_HIT = "math_agent_cache_hit";
+
+	private final TieredCache<String> cache;
+
+	private final String model;
+
+	private final Double temperature;
+
+	private final Integer maxTokens;
+
+	/**
+	 * @param cache 响应缓存
+	 * @param model ChatClient默认模型
+	 * @param temperature 默认温度
+	 * @param maxTokens 默认最大输出Token数
+	 */
+	public ResponseCacheAdvisor(TieredCache<String> cache, String model, Double temperature, Integer maxTokens) {
+		this.cache = cache;
+		this.model = model;
+		this.temperature = temperature;
+		this.maxTokens = maxTokens;
+	}
+
+	@Override
+	public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+		String key = cacheKey(request);
+		Optional<String> cached = cache.get(key);
+		if (cached.isPresent()) {
+			log.debug("LLM响应缓存命中: {}", key);
+			return cachedResponse(request, cached.get());
+		}
+
+		ChatClientResponse response = chain.nextCall(request);
+		String content = textOf(response);
+		if (content != null && !content.isBlank()) {
+			cache.put(key, content);
+		}
+		return response;
+	}
+
+	@Override
+	public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+		String key = cacheKey(request);
+		Optional<String> cached = cache.get(key);
+		if (cached.isPresent()) {
+			log.debug("LLM响应缓存命中(流式): {}", key);
+			return Flux.just(cachedResponse(request, cached.get()));
+		}
+
+		StringBuilder content = new StringBuilder();
+		return chain.nextStream(request).doOnNext(response -> {
+			String text = textOf(response);
+			if (text != null) {
+				content.append(text);
+			}
+		}).doOnComplete(() -> {
+			if (!content.isEmpty()) {
+				cache.put(key, content.toString());
+			}
+		});
+	}
+
+	@Override
+	public String getName() {
+		return "ResponseCacheAdvisor";
+	}
+
+	@Override
+	public int getOrder() {
+		return ORDER;
+	}
+
+	/**
+	 * 缓存key：模型 + 选项 + 提示词消息的SHA-256
+	 */
+	private String cacheKey(ChatClientRequest request) {
+		ChatOptions options = request.prompt().getOptions();
+		String requestModel = options != null && options.getModel() != null ? options.getModel() : model;
+		Double requestTemperature = options != null && options.getTemperature() != null ? options.getTemperature()
+				: temperature;
+		Integer requestMaxTokens = options != null && options.getMaxTokens() != null ? options.getMaxTokens()
+				: maxTokens;
+
+		StringBuilder promptText = new StringBuilder();
+		for (Message message : request.prompt().getInstructions()) {
+			promptText.append(message.getMessageType().getValue()).append(':').append(message.getText()).append('\n');
+		}
+
+		return requestModel + "|" + requestTemperature + "|" + requestMaxTokens + "|"
+				+ TieredCache.sha256(promptText.toString());
+	}
+
+	private ChatClientResponse cachedResponse(ChatClientRequest request, String content) {
+		ChatResponse chatResponse = new ChatResponse(List.of(new Generation(new AssistantMessage(content))),
+				ChatResponseMetadata.builder().keyValue(CACHE_HIT, true).build());
+		return ChatClientResponse.builder().chatResponse(chatResponse).context(request.context()).build();
+	}
+
+	/**
+	 * 响应是否由缓存返回
+	 */
+	public static boolean isCacheHit(ChatResponse response) {
+		return response != null && response.getMetadata() != null && response.getMetadata().containsKey(CACHE_HIT);
+	}
+
+	/**
+	 * 提取响应文本（流式响应的最后一个分片可能没有内容）
+	 */
+	static String textOf(ChatClientResponse response) {
+		ChatResponse chatResponse = response.chatResponse();
+		if (chatResponse == null || chatResponse.getResult() == null || chatResponse.getResult().getOutput() == null) {
+			return null;
+		}
+		return chatResponse.getResult().getOutput().getText();
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.mathagent.llm;
+
+/**
+ * 重试预算 每个原始请求存入固定比例的额度，每次重试或对冲消耗1个额度
+ *
+ * 额度耗尽时不再重试，避免故障期间重试流量成倍放大
+ *
+ * @author Makoto
+ */
+public class RetryBudget {
+
+	private final double ratio;
+
+	private final double maxBalance;
+
+	private double balance;
+
+	/**
+	 * @param ratio 每个请求存入的额度，例如0.2表示重试流量不超过原始流量的20%
+	 * @param minBalance 初始额度，保证低流量时也能重试
+	 * @param maxBalance 额度上限
+	 */
+	public RetryBudget(double ratio, double minBalance, double maxBalance) {
+		this.ratio = ratio;
+		this.maxBalance = Math.max(minBalance, maxBalance);
+		this.balance = minBalance;
+	}
+
+	public synchronized void recordRequest() {
+		balance = Math.min(maxBalance, balance + ratio);
+	}
+
+	public synchronized boolean tryAcquire() {
+		if (balance < 1) {
+			return false;
+		}
+		balance -= 1;
+		return true;
+	}
+
+	public synchronized double balance() {
+		return balance;
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.mathagent.llm;
+
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token数估算 使用BPE分词器（cl100k_base）计数，再乘以校准系数
+ *
+ * 通义千问的词表对中文更紧凑，cl100k_base的计数偏高，默认系数1.0即保守估算；按实际用量校准后可调小
+ *
+ * @author Makoto
+ */
+@Component
+public class TokenEstimator {
+
+	private final TokenCountEstimator tokenizer = new JTokkitTokenCountEstimator();
+
+	@Value("${math-agent.llm.budget.token-scale:1.0}")
+	private double tokenScale;
+
+	/**
+	 * 估算文本的Token数
+	 */
+	public int estimate(String text) {
+		if (text == null || text.isEmpty()) {
+			return 0;
+		}
+		return (int) Math.ceil(tokenizer.estimate(text) * tokenScale);
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.mathagent.mapper;
+
+import com.mathagent.model.ModelingAnalysisCache;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+/**
+ * 建模分析语义缓存Mapper
+ */
+@Mapper
+public interface ModelingAnalysisCacheMapper {
+
+	/**
+	 * 插入缓存条目
+	 */
+	@Insert("""
+			INSERT INTO modeling_analysis_cache (problem_hash, problem_statement, embedding_model, embedding, analysis_data, hit_count, created_at)
+			VALUES (#{problemHash}, #{problemStatement}, #{embeddingModel}, #{embedding}, #{analysisData}, 0, #{createdAt})
+			""")
+	@Options(useGeneratedKeys = true, keyProperty = "id")
+	int insert(ModelingAnalysisCache entry);
+
+	/**
+	 * 查询指定向量模型下最近的缓存条目
+	 */
+	@Select("SELECT * FROM modeling_analysis_cache WHERE embedding_model = #{embeddingModel} ORDER BY id DESC LIMIT #{limit}")
+	List<ModelingAnalysisCache> selectRecent(@Param("embeddingModel") String embeddingModel, @Param("limit") int limit);
+
+	/**
+	 * 累加命中次数
+	 */
+	@Update("UPDATE modeling_analysis_cache SET hit_count = hit_count + 1 WHERE id = #{id}")
+	int incrementHitCount(Long id);
+
+}
@@ -0,0 +1,36 @@
+package com.mathagent.mapper;
+
+import com.mathagent.model.TaskCheckpoint;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+/**
+ * Graph检查点Mapper
+ */
+@Mapper
+public interface TaskCheckpointMapper {
+
+	/**
+	 * 插入检查点
+	 */
+	@Insert("""
+			INSERT INTO task_checkpoints (task_id, execution_id, node_name, state_data, created_at)
+			VALUES (#{taskId}, #{executionId}, #{nodeName}, #{stateData}, #{createdAt})
+			""")
+	@Options(useGeneratedKeys = true, keyProperty = "id")
+	int insert(TaskCheckpoint checkpoint);
+
+	/**
+	 * 根据任务ID按写入顺序查询检查点
+	 */
+	@Select("SELECT * FROM task_checkpoints WHERE task_id = #{taskId} ORDER BY id ASC")
+	List<TaskCheckpoint> selectByTaskId(Long taskId);
+
+	/**
+	 * 根据任务ID删除所有检查点
+	 */
+	@Delete("DELETE FROM task_checkpoints WHERE task_id = #{taskId}")
+	int deleteByTaskId(Long taskId);
+
+}
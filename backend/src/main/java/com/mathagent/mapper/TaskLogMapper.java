@@ -21,6 +21,19 @@ public interface TaskLogMapper {
 	@Options(useGeneratedKeys = true, keyProperty = "id")
 	int insert(TaskLog log);
 
+	/**
+	 * 批量插入任务日志（多行INSERT）
+	 */
+	@Insert("""
+			<script>
+			INSERT INTO task_logs (task_id, node_name, level, message, details, timestamp) VALUES
+			<foreach collection="logs" item="log" separator=",">
+			(#{log.taskId}, #{log.nodeName}, #{log.level}, #{log.message}, #{log.details}, #{log.timestamp})
+			</foreach>
+			</script>
+			""")
+	int insertBatch(@Param("logs") List<TaskLog> logs);
+
 	/**
 	 * 根据ID查询日志
 	 */
@@ -0,0 +1,37 @@
+package com.mathagent.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+/**
+ * 建模分析语义缓存实体 保存已分析问题的向量和建模分析结果，用于相似问题复用
+ * 
+ * @author Makoto
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ModelingAnalysisCache {
+
+	private Long id;
+
+	private String problemHash;
+
+	private String problemStatement;
+
+	private String embeddingModel;
+
+	private String embedding;
+
+	private String analysisData;
+
+	private Integer hitCount;
+
+	private LocalDateTime createdAt;
+
+}
@@ -0,0 +1,33 @@
+package com.mathagent.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+/**
+ * Graph检查点实体 记录每个Agent节点成功执行后的输出状态，用于从失败节点恢复
+ * 
+ * @author Makoto
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TaskCheckpoint {
+
+	private Long id;
+
+	private Long taskId;
+
+	private String executionId;
+
+	private String nodeName;
+
+	private String stateData;
+
+	private LocalDateTime createdAt;
+
+}
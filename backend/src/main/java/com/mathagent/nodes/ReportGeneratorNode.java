@@ -40,10 +40,10 @@ public class ReportGeneratorNode implements NodeAction {
 			Map<String, Object> modelDefinition = (Map<String, Object>) state.value("model_definition").get();
 			Map<String, Object> solutionResult = (Map<String, Object>) state.value("solution_result").get();
 
-			// 使用WritingAgent的报告生成提示词
+			// 使用WritingAgent的报告生成提示词，问题分析结果与其他结构化结果一样序列化为紧凑JSON
 			String reportPrompt = promptService.getPaperGenerationPrompt(
-				problemAnalysis.toString(), 
-				modelDefinition, 
+				problemAnalysis,
+				modelDefinition,
 				solutionResult
 			);
 
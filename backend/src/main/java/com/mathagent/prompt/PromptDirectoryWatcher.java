@@ -0,0 +1,113 @@
+package com.mathagent.prompt;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词目录监听 目录中的 .md 文件创建、修改或删除后触发回调
+ *
+ * 编辑器保存文件时通常连续产生多个事件（写临时文件、重命名、修改时间），
+ * 最后一个事件之后安静 debounceMs 才触发一次回调，避免读到写了一半的文件或重复加载
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class PromptDirectoryWatcher implements Closeable {
+
+	private final Path directory;
+
+	private final long debounceMs;
+
+	private final Runnable onChange;
+
+	private final WatchService watchService;
+
+	private final Thread thread;
+
+	private volatile boolean closed;
+
+	private PromptDirectoryWatcher(Path directory, long debounceMs, Runnable onChange) throws IOException {
+		this.directory = directory;
+		this.debounceMs = debounceMs;
+		this.onChange = onChange;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		this.thread = new Thread(this::run, "prompt-watcher");
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * 开始监听目录
+	 * @param debounceMs 最后一个文件事件之后等待多久才触发回调
+	 * @param onChange 回调，在监听线程中执行
+	 */
+	public static PromptDirectoryWatcher start(Path directory, long debounceMs, Runnable onChange) throws IOException {
+		PromptDirectoryWatcher watcher = new PromptDirectoryWatcher(directory, debounceMs, onChange);
+		watcher.thread.start();
+		return watcher;
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				WatchKey key = watchService.take();
+				boolean changed = drain(key);
+				// 持续有事件时继续等待，直到安静 debounceMs
+				while ((key = watchService.poll(debounceMs, TimeUnit.MILLISECONDS)) != null) {
+					changed |= drain(key);
+				}
+				if (changed && !closed) {
+					try {
+						onChange.run();
+					}
+					catch (RuntimeException e) {
+						log.error("提示词目录变更处理失败: {}", directory, e);
+					}
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			// 关闭监听
+		}
+	}
+
+	/**
+	 * 取出事件并重置监听键，返回是否有提示词文件变化
+	 */
+	private boolean drain(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// 事件丢失时无法判断哪些文件变化，按有变化处理
+				changed = true;
+			}
+			else if (event.context() instanceof Path file && file.toString().endsWith(".md")) {
+				changed = true;
+			}
+		}
+		if (!key.reset()) {
+			log.warn("提示词目录已不可访问，停止监听: {}", directory);
+			closed = true;
+		}
+		return changed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		watchService.close();
+		thread.interrupt();
+	}
+
+}
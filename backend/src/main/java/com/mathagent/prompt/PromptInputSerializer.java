@@ -0,0 +1,431 @@
+package com.mathagent.prompt;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.mathagent.llm.TokenEstimator;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * 提示词输入序列化 把智能体结果（Map、列表、对象）转换为紧凑的规范JSON插入提示词，替代 Map.toString()
+ *
+ * 规范化：对象键按字典序排列，无多余空白，去掉null和空值；丢弃配置的簿记字段（会话ID、缓存信息等）；
+ * 与前面已输出内容完全相同的长字符串（如同一段代码）替换为对前者路径的引用。
+ * 字符串和数组按字段名对应的Token预算截断，保留开头和结尾。
+ *
+ * 整体超过调用方给出的预算时按优先级收缩：依次处理 shrink-order 中的各组字段，同组内层级浅的（较早的执行输出，
+ * 如首次执行的output早于debug_result中的output）先收缩；仍超出时所有字段按当前大小等比例收缩
+ *
+ * @author Makoto
+ */
+@Component
+public class PromptInputSerializer {
+
+	private static final String DEFAULT_DROPPED_FIELDS = "session_id,code_session_id,modeling_cache,repair,"
+			+ "estimated_tokens";
+
+	private static final String DEFAULT_FIELD_TOKENS = "code:3000,output:1500,error:800";
+
+	private static final String DEFAULT_SHRINK_ORDER = "output,error,stdout,stderr;data,collected_data,raw_data,appendix";
+
+	/**
+	 * 预算收紧后的下限，避免字段被截断到失去意义
+	 */
+	private static final int MIN_FIELD_TOKENS = 64;
+
+	private static final int MAX_PROPORTIONAL_PASSES = 3;
+
+	/**
+	 * 单个字段收缩的最多次数：截断后的实际Token数与上限有少量偏差时，偏差仍由该字段承担，不波及下一个字段
+	 */
+	private static final int MAX_SHRINK_ATTEMPTS = 3;
+
+	@Value("${math-agent.prompts.input.dropped-fields:" + DEFAULT_DROPPED_FIELDS + "}")
+	private String[] droppedFieldRules;
+
+	@Value("${math-agent.prompts.input.field-tokens:" + DEFAULT_FIELD_TOKENS + "}")
+	private String[] fieldTokenRules;
+
+	@Value("${math-agent.prompts.input.default-field-tokens:2000}")
+	private int defaultFieldTokens;
+
+	/**
+	 * 收缩优先级：分号分隔的字段组，靠前的组先收缩
+	 */
+	@Value("${math-agent.prompts.input.shrink-order:" + DEFAULT_SHRINK_ORDER + "}")
+	private String shrinkOrder;
+
+	/**
+	 * 不短于该长度的重复字符串替换为引用
+	 */
+	@Value("${math-agent.prompts.input.dedupe-min-chars:200}")
+	private int dedupeMinChars;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private TokenEstimator tokenEstimator;
+
+	private ObjectMapper mapper;
+
+	private Set<String> droppedFields;
+
+	private Map<String, Integer> fieldTokens;
+
+	private List<Set<String>> shrinkGroups;
+
+	@PostConstruct
+	public void init() {
+		mapper = objectMapper.copy();
+		droppedFields = Arrays.stream(droppedFieldRules)
+			.map(String::trim)
+			.filter(rule -> !rule.isEmpty())
+			.collect(Collectors.toSet());
+		fieldTokens = new HashMap<>();
+		for (String rule : fieldTokenRules) {
+			int separator = rule.indexOf(':');
+			if (separator > 0) {
+				fieldTokens.put(rule.substring(0, separator).trim(),
+						Integer.parseInt(rule.substring(separator + 1).trim()));
+			}
+		}
+		shrinkGroups = new ArrayList<>();
+		for (String group : shrinkOrder.split(";")) {
+			Set<String> fields = Arrays.stream(group.split(","))
+				.map(String::trim)
+				.filter(field -> !field.isEmpty())
+				.collect(Collectors.toSet());
+			if (!fields.isEmpty()) {
+				shrinkGroups.add(fields);
+			}
+		}
+	}
+
+	/**
+	 * 序列化一次调用的全部结构化变量，重复内容跨变量去重，合计Token数尽量不超过预算
+	 * @param values 变量名到变量值
+	 * @param maxTokens 这些变量合计的Token预算
+	 * @return 变量名到序列化结果，顺序与输入一致
+	 */
+	public Map<String, SerializedInput> serializeAll(Map<String, ?> values, int maxTokens) {
+		ObjectNode tree = JsonNodeFactory.instance.objectNode();
+		values.forEach((name, value) -> tree.set(name, mapper.valueToTree(value)));
+
+		Map<String, Integer> caps = new HashMap<>();
+		Pass pass = run(tree, caps);
+		// 按优先级逐个收缩字段，每次只收缩到刚好满足预算
+		for (Set<String> group : shrinkGroups) {
+			if (pass.tokens <= maxTokens) {
+				break;
+			}
+			for (Leaf leaf : candidates(pass.leaves, group)) {
+				pass = shrink(tree, caps, pass, leaf, maxTokens);
+				if (pass.tokens <= maxTokens) {
+					break;
+				}
+			}
+		}
+		// 仍超出时所有字段按当前大小等比例收缩
+		for (int i = 0; i < MAX_PROPORTIONAL_PASSES && pass.tokens > maxTokens; i++) {
+			double ratio = (double) maxTokens / pass.tokens;
+			for (Leaf leaf : candidates(pass.leaves, null)) {
+				caps.put(leaf.path(), Math.max(MIN_FIELD_TOKENS, (int) (leaf.tokens() * ratio)));
+			}
+			pass = run(tree, caps);
+		}
+
+		Map<String, SerializedInput> result = new LinkedHashMap<>();
+		for (String name : values.keySet()) {
+			result.put(name, pass.inputOf(name));
+		}
+		return result;
+	}
+
+	/**
+	 * 收缩单个字段，直到满足预算或达到下限
+	 */
+	private Pass shrink(ObjectNode tree, Map<String, Integer> caps, Pass pass, Leaf leaf, int maxTokens) {
+		int leafTokens = leaf.tokens();
+		for (int i = 0; i < MAX_SHRINK_ATTEMPTS && pass.tokens > maxTokens; i++) {
+			int cap = Math.max(MIN_FIELD_TOKENS, leafTokens - (pass.tokens - maxTokens));
+			if (cap >= leafTokens) {
+				break;
+			}
+			caps.put(leaf.path(), cap);
+			pass = run(tree, caps);
+			leafTokens = cap;
+		}
+		return pass;
+	}
+
+	private Pass run(ObjectNode tree, Map<String, Integer> caps) {
+		Pass pass = new Pass(caps);
+		JsonNode compact = pass.normalize(tree, "", null);
+		if (compact != null) {
+			compact.fields().forEachRemaining(field -> {
+				String text = write(field.getValue());
+				pass.texts.put(field.getKey(), text);
+				pass.nodes.put(field.getKey(), field.getValue());
+				pass.tokens += tokenEstimator.estimate(text);
+			});
+		}
+		return pass;
+	}
+
+	/**
+	 * 属于该组（为null时不限）的可收缩字段，不含已在其他候选字段内部的，层级浅的在前
+	 */
+	private List<Leaf> candidates(List<Leaf> leaves, Set<String> group) {
+		List<Leaf> matched = leaves.stream()
+			.filter(leaf -> (group == null || group.contains(leaf.field())) && leaf.tokens() > MIN_FIELD_TOKENS)
+			.sorted(Comparator.comparingInt(Leaf::depth))
+			.toList();
+		List<Leaf> candidates = new ArrayList<>();
+		for (Leaf leaf : matched) {
+			boolean nested = candidates.stream()
+				.anyMatch(parent -> leaf.path().startsWith(parent.path() + "[")
+						|| leaf.path().startsWith(parent.path() + "."));
+			if (!nested) {
+				candidates.add(leaf);
+			}
+		}
+		return candidates;
+	}
+
+	private String write(JsonNode node) {
+		try {
+			return mapper.writeValueAsString(node);
+		}
+		catch (JsonProcessingException e) {
+			// 树节点序列化不会失败
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 有预算的字段（字符串或数组）
+	 */
+	private record Leaf(String path, String field, int depth, int tokens) {
+	}
+
+	/**
+	 * 单次序列化的状态：已输出的长字符串（用于去重）、截断和丢弃的字段、各变量的输出
+	 */
+	private class Pass {
+
+		private final Map<String, Integer> caps;
+
+		private final Map<String, String> seen = new HashMap<>();
+
+		private final List<String> truncated = new ArrayList<>();
+
+		private final List<String> dropped = new ArrayList<>();
+
+		private final List<Leaf> leaves = new ArrayList<>();
+
+		private final Map<String, String> texts = new HashMap<>();
+
+		private final Map<String, JsonNode> nodes = new HashMap<>();
+
+		private int tokens;
+
+		Pass(Map<String, Integer> caps) {
+			this.caps = caps;
+		}
+
+		/**
+		 * 规范化节点，返回null表示该节点应省略
+		 * @param field 最近的字段名，决定Token预算
+		 */
+		JsonNode normalize(JsonNode node, String path, String field) {
+			if (node == null || node.isNull() || node.isMissingNode()) {
+				return null;
+			}
+			if (node.isObject()) {
+				ObjectNode result = JsonNodeFactory.instance.objectNode();
+				for (String key : new TreeSet<>(fieldNames(node))) {
+					String childPath = path.isEmpty() ? key : path + "." + key;
+					if (droppedFields.contains(key)) {
+						dropped.add(childPath);
+						continue;
+					}
+					JsonNode child = normalize(node.get(key), childPath, key);
+					if (child != null) {
+						result.set(key, child);
+					}
+				}
+				return result.isEmpty() ? null : result;
+			}
+			if (node.isArray()) {
+				ArrayNode result = JsonNodeFactory.instance.arrayNode();
+				for (int i = 0; i < node.size(); i++) {
+					JsonNode child = normalize(node.get(i), path + "[" + i + "]", field);
+					if (child != null) {
+						result.add(child);
+					}
+				}
+				return result.isEmpty() ? null : truncateArray(result, path, field);
+			}
+			if (node.isTextual()) {
+				String text = node.textValue();
+				if (text.isBlank()) {
+					return null;
+				}
+				if (text.length() >= dedupeMinChars) {
+					String firstPath = seen.putIfAbsent(text, path);
+					if (firstPath != null) {
+						dropped.add(path);
+						return TextNode.valueOf("[同 " + firstPath + "]");
+					}
+				}
+				return TextNode.valueOf(truncateText(text, path, field));
+			}
+			return node;
+		}
+
+		private int budget(String field, String path) {
+			int budget = field != null ? fieldTokens.getOrDefault(field, defaultFieldTokens) : defaultFieldTokens;
+			Integer cap = caps.get(path);
+			return cap != null ? Math.min(budget, cap) : budget;
+		}
+
+		/**
+		 * 超过预算时保留开头和结尾各一半，中间替换为省略标记
+		 */
+		private String truncateText(String text, String path, String field) {
+			int budget = budget(field, path);
+			int textTokens = tokenEstimator.estimate(text);
+			if (textTokens <= budget) {
+				leaves.add(new Leaf(path, field, depth(path), textTokens));
+				return text;
+			}
+			truncated.add(path);
+			leaves.add(new Leaf(path, field, depth(path), budget));
+			// 省略标记本身也占用预算
+			String marker = "\n...[省略约" + (textTokens - budget) + "个Token]...\n";
+			int keepTokens = Math.max(0, budget - tokenEstimator.estimate(marker));
+			int keep = (int) ((long) text.length() * keepTokens / textTokens / 2);
+			return text.substring(0, keep) + marker + text.substring(text.length() - keep);
+		}
+
+		/**
+		 * 超过预算时保留开头和结尾的元素，中间替换为一个省略标记
+		 */
+		private JsonNode truncateArray(ArrayNode array, String path, String field) {
+			int budget = budget(field, path);
+			int arrayTokens = tokenEstimator.estimate(write(array));
+			if (array.size() <= 2 || arrayTokens <= budget) {
+				leaves.add(new Leaf(path, field, depth(path), arrayTokens));
+				return array;
+			}
+			int head = 0;
+			int tail = 0;
+			int used = 0;
+			// 从两端交替取元素，直到用完预算
+			while (head + tail < array.size()) {
+				JsonNode next = (head <= tail) ? array.get(head) : array.get(array.size() - 1 - tail);
+				int cost = tokenEstimator.estimate(write(next)) + 1;
+				if (used + cost > budget && head + tail > 0) {
+					break;
+				}
+				used += cost;
+				if (head <= tail) {
+					head++;
+				}
+				else {
+					tail++;
+				}
+			}
+			if (head + tail >= array.size()) {
+				leaves.add(new Leaf(path, field, depth(path), arrayTokens));
+				return array;
+			}
+			truncated.add(path);
+			leaves.add(new Leaf(path, field, depth(path), used));
+			ArrayNode result = JsonNodeFactory.instance.arrayNode();
+			for (int i = 0; i < head; i++) {
+				result.add(array.get(i));
+			}
+			result.add("...[省略" + (array.size() - head - tail) + "项]...");
+			for (int i = array.size() - tail; i < array.size(); i++) {
+				result.add(array.get(i));
+			}
+			return result;
+		}
+
+		/**
+		 * 单个变量的序列化结果
+		 */
+		SerializedInput inputOf(String name) {
+			String text = texts.get(name);
+			if (text == null) {
+				return new SerializedInput("", 0, Map.of(), List.of(), within(dropped, name));
+			}
+			Map<String, Integer> contributions = new LinkedHashMap<>();
+			JsonNode node = nodes.get(name);
+			if (node.isObject()) {
+				node.fields().forEachRemaining(field -> contributions.put(field.getKey(),
+						tokenEstimator.estimate(field.getKey()) + tokenEstimator.estimate(write(field.getValue()))));
+			}
+			return new SerializedInput(text, tokenEstimator.estimate(text), contributions, within(truncated, name),
+					within(dropped, name));
+		}
+
+		private List<String> within(List<String> paths, String name) {
+			return paths.stream()
+				.filter(path -> path.equals(name) || path.startsWith(name + ".") || path.startsWith(name + "["))
+				.toList();
+		}
+
+		private int depth(String path) {
+			int depth = 0;
+			for (int i = 0; i < path.length(); i++) {
+				if (path.charAt(i) == '.' || path.charAt(i) == '[') {
+					depth++;
+				}
+			}
+			return depth;
+		}
+
+		private List<String> fieldNames(JsonNode node) {
+			List<String> names = new ArrayList<>();
+			node.fieldNames().forEachRemaining(names::add);
+			return names;
+		}
+
+	}
+
+	/**
+	 * 序列化结果
+	 *
+	 * @param text 紧凑JSON
+	 * @param tokens 估算的Token数
+	 * @param fieldTokens 各顶层字段贡献的Token数（按输出顺序）
+	 * @param truncatedFields 被截断的字段路径
+	 * @param droppedFields 被丢弃或替换为引用的字段路径
+	 * @author Makoto
+	 */
+	public record SerializedInput(String text, int tokens, Map<String, Integer> fieldTokens,
+			List<String> truncatedFields, List<String> droppedFields) {
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.mathagent.prompt;
+
+import java.util.Map;
+
+/**
+ * 提示词注册表快照 加载完成后不再修改，重新加载时构建新快照整体替换
+ *
+ * @param templates 模板全名到编译后模板的映射（不可变）
+ * @param version 加载序号，每次成功加载加一
+ * @param loadedAt 加载完成时间（毫秒）
+ * @author Makoto
+ */
+public record PromptRegistry(Map<String, PromptTemplate> templates, long version, long loadedAt) {
+
+	public PromptRegistry {
+		templates = Map.copyOf(templates);
+	}
+
+	/**
+	 * 按全名查找模板，不存在时返回null
+	 */
+	public PromptTemplate get(String name) {
+		return templates.get(name);
+	}
+
+	public int size() {
+		return templates.size();
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.mathagent.prompt;
+
+import java.util.List;
+
+/**
+ * 提示词声明 模板名称及按顺序排列的变量名，渲染时按相同顺序传入变量值
+ *
+ * @param name 模板全名，如 coding.代码调试提示词
+ * @param variables 模板可以引用的变量，模板中出现其他占位符时加载失败
+ * @author Makoto
+ */
+public record PromptSpec(String name, List<String> variables) {
+
+	public static PromptSpec of(String name, String... variables) {
+		return new PromptSpec(name, List.of(variables));
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.mathagent.prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译后的提示词模板 加载时把模板拆分为字面量片段和变量槽位，渲染时一次遍历写入预先按总长度分配的缓冲区
+ *
+ * 占位符格式为 {变量名}（变量名为字母、数字和下划线，不以数字开头），其他花括号内容（如JSON示例）按字面量处理；
+ * 变量值原样写入，值中包含的 {x} 文本不会再被替换
+ *
+ * @author Makoto
+ */
+public final class PromptTemplate {
+
+	private final String name;
+
+	private final String text;
+
+	private final List<String> variables;
+
+	/**
+	 * 字面量片段，比槽位多一个：literals[0] slot[0] literals[1] ... slot[n-1] literals[n]
+	 */
+	private final String[] literals;
+
+	/**
+	 * 每个槽位对应的变量序号
+	 */
+	private final int[] slots;
+
+	private final int literalLength;
+
+	private PromptTemplate(String name, String text, List<String> variables, String[] literals, int[] slots) {
+		this.name = name;
+		this.text = text;
+		this.variables = variables;
+		this.literals = literals;
+		this.slots = slots;
+		int length = 0;
+		for (String literal : literals) {
+			length += literal.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * 编译模板
+	 * @param variables 允许的变量（按渲染时的传参顺序），为null时按模板中占位符首次出现的顺序确定
+	 * @throws IllegalArgumentException 模板引用了未声明的变量
+	 */
+	public static PromptTemplate compile(String name, String text, List<String> variables) {
+		List<String> declared = variables != null ? variables : new ArrayList<>();
+		List<String> literals = new ArrayList<>();
+		List<Integer> slots = new ArrayList<>();
+		int literalStart = 0;
+		int i = 0;
+		while (i < text.length()) {
+			int end = text.charAt(i) == '{' ? placeholderEnd(text, i) : -1;
+			if (end < 0) {
+				i++;
+				continue;
+			}
+			String variable = text.substring(i + 1, end);
+			int index = declared.indexOf(variable);
+			if (index < 0) {
+				if (variables != null) {
+					throw new IllegalArgumentException("提示词模板 " + name + " 引用了未声明的变量: {" + variable
+							+ "}，允许的变量: " + variables);
+				}
+				declared.add(variable);
+				index = declared.size() - 1;
+			}
+			literals.add(text.substring(literalStart, i));
+			slots.add(index);
+			i = end + 1;
+			literalStart = i;
+		}
+		literals.add(text.substring(literalStart));
+		return new PromptTemplate(name, text, List.copyOf(declared), literals.toArray(new String[0]),
+				slots.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	/**
+	 * 占位符的右花括号位置，不是占位符时返回-1
+	 */
+	private static int placeholderEnd(String text, int open) {
+		int i = open + 1;
+		if (i >= text.length() || !isNameStart(text.charAt(i))) {
+			return -1;
+		}
+		i++;
+		while (i < text.length() && isNamePart(text.charAt(i))) {
+			i++;
+		}
+		return i < text.length() && text.charAt(i) == '}' ? i : -1;
+	}
+
+	private static boolean isNameStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+
+	private static boolean isNamePart(char c) {
+		return isNameStart(c) || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * 按变量声明顺序传入变量值渲染，null渲染为空字符串
+	 * @throws IllegalArgumentException 变量值个数与声明不一致
+	 */
+	public String render(Object... values) {
+		if (values.length != variables.size()) {
+			throw new IllegalArgumentException(
+					"提示词模板 " + name + " 需要 " + variables.size() + " 个变量 " + variables + "，实际传入 " + values.length + " 个");
+		}
+		// 每个变量只转换一次字符串，同一变量出现多次时复用
+		String[] strings = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			strings[i] = values[i] != null ? values[i].toString() : "";
+		}
+		int length = literalLength;
+		for (int slot : slots) {
+			length += strings[slot].length();
+		}
+		StringBuilder prompt = new StringBuilder(length);
+		for (int i = 0; i < slots.length; i++) {
+			prompt.append(literals[i]).append(strings[slots[i]]);
+		}
+		return prompt.append(literals[slots.length]).toString();
+	}
+
+	/**
+	 * 按变量名传入变量值渲染，缺少的变量渲染为空字符串，多余的变量忽略
+	 */
+	public String render(Map<String, ?> values) {
+		Object[] ordered = new Object[variables.size()];
+		for (int i = 0; i < ordered.length; i++) {
+			ordered[i] = values.get(variables.get(i));
+		}
+		return render(ordered);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 模板原文
+	 */
+	public String getText() {
+		return text;
+	}
+
+	public List<String> getVariables() {
+		return variables;
+	}
+
+}
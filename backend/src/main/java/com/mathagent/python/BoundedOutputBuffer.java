@@ -0,0 +1,101 @@
+package com.mathagent.python;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 有界输出缓冲 保留输出的开头和结尾，中间超出部分丢弃并计数，避免超大输出占满内存
+ *
+ * 开头通常包含代码的主要结果，结尾通常包含异常堆栈，两端都保留
+ *
+ * @author Makoto
+ */
+public class BoundedOutputBuffer {
+
+	private final int headLimit;
+
+	private final StringBuilder head;
+
+	private final char[] tail;
+
+	private int tailStart;
+
+	private int tailSize;
+
+	private long totalChars;
+
+	/**
+	 * @param headLimit 保留开头的字符数
+	 * @param tailLimit 保留结尾的字符数
+	 */
+	public BoundedOutputBuffer(int headLimit, int tailLimit) {
+		this.headLimit = headLimit;
+		this.head = new StringBuilder(Math.min(headLimit, 8192));
+		this.tail = new char[tailLimit];
+	}
+
+	public synchronized void append(char[] chars, int offset, int length) {
+		totalChars += length;
+		int headRoom = headLimit - head.length();
+		if (headRoom > 0) {
+			int toHead = Math.min(headRoom, length);
+			head.append(chars, offset, toHead);
+			offset += toHead;
+			length -= toHead;
+		}
+		for (int i = 0; i < length && tail.length > 0; i++) {
+			int index = (tailStart + tailSize) % tail.length;
+			tail[index] = chars[offset + i];
+			if (tailSize < tail.length) {
+				tailSize++;
+			}
+			else {
+				tailStart = (tailStart + 1) % tail.length;
+			}
+		}
+	}
+
+	/**
+	 * 持续读取输入流直到结束
+	 */
+	public void drain(InputStream inputStream) throws IOException {
+		try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				append(buffer, 0, read);
+			}
+		}
+	}
+
+	public synchronized long getTotalChars() {
+		return totalChars;
+	}
+
+	/**
+	 * 被丢弃的中间部分字符数
+	 */
+	public synchronized long getDroppedChars() {
+		return totalChars - head.length() - tailSize;
+	}
+
+	/**
+	 * 保留的内容，有丢弃时在中间插入省略标记
+	 */
+	public synchronized String getContent() {
+		StringBuilder content = new StringBuilder(head.length() + tailSize + 64);
+		content.append(head);
+		long dropped = totalChars - head.length() - tailSize;
+		if (dropped > 0) {
+			content.append("\n... [输出过长，省略 ").append(dropped).append(" 个字符] ...\n");
+		}
+		for (int i = 0; i < tailSize; i++) {
+			content.append(tail[(tailStart + i) % tail.length]);
+		}
+		return content.toString();
+	}
+
+}
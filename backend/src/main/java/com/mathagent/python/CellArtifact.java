@@ -0,0 +1,22 @@
+package com.mathagent.python;
+
+/**
+ * 代码单元格的产出文件（图像或数据文件）
+ *
+ * @param name 下载名称，即相对任务产出目录的路径，如 session_1_1700000000000_1/0/figure_1.png
+ * @param path 相对单元格产出目录的路径
+ * @param kind 类型：figure（执行结束时仍打开的图像）或 file（代码写入工作目录的文件）
+ * @param size 文件大小（字节）
+ * @param contentType 内容类型
+ * @param etag 由文件大小和修改时间计算的实体标签，与下载接口返回的ETag一致
+ * @param lastModified 最后修改时间（毫秒）
+ * @author Makoto
+ */
+public record CellArtifact(String name, String path, String kind, long size, String contentType, String etag,
+		long lastModified) {
+
+	public static final String KIND_FIGURE = "figure";
+
+	public static final String KIND_FILE = "file";
+
+}
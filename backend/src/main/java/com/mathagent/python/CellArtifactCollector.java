@@ -0,0 +1,177 @@
+package com.mathagent.python;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单元格产出文件收集 执行前记录工作目录中文件的大小和修改时间，执行后把新建或修改过的文件复制到单元格产出目录，
+ * 与Python进程保存的图像一起作为单元格的产出
+ *
+ * 只收集普通文件，符号链接、隐藏目录和 __pycache__ 不收集；产出目录中已有同名图像时不覆盖
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class CellArtifactCollector {
+
+	private static final int MAX_DEPTH = 8;
+
+	@Value("${math-agent.python.artifacts.max-files-per-cell:50}")
+	private int maxFilesPerCell;
+
+	@Value("${math-agent.python.artifacts.max-file-mb:256}")
+	private long maxFileMb;
+
+	/**
+	 * 记录工作目录中的文件状态
+	 * @return 相对路径 -> 文件状态
+	 */
+	public Map<String, FileState> snapshot(Path workspace) throws IOException {
+		Map<String, FileState> files = new HashMap<>();
+		if (!Files.isDirectory(workspace)) {
+			return files;
+		}
+		walk(workspace, (relative, attributes) -> files.put(relative,
+				new FileState(attributes.size(), attributes.lastModifiedTime().toMillis())));
+		return files;
+	}
+
+	/**
+	 * 收集单元格产出：执行期间新建或修改的文件复制到产出目录，复制后的文件不受之后单元格改写的影响
+	 * @param before 执行前的工作目录状态
+	 * @param artifactRoot 任务产出目录，产出文件的下载名称相对该目录
+	 */
+	public List<CellArtifact> collect(Path workspace, Map<String, FileState> before, Path artifactDir,
+			Path artifactRoot) throws IOException {
+		Set<String> dataFiles = new HashSet<>();
+		long maxBytes = maxFileMb * 1024 * 1024;
+		Map<String, FileState> after = snapshot(workspace);
+		List<String> changed = after.keySet()
+			.stream()
+			.filter(relative -> !after.get(relative).equals(before.get(relative)))
+			.sorted()
+			.toList();
+		for (String relative : changed) {
+			if (dataFiles.size() >= maxFilesPerCell) {
+				log.warn("单元格产出文件超过{}个，其余文件不再收集: {}", maxFilesPerCell, workspace);
+				break;
+			}
+			if (after.get(relative).size() > maxBytes) {
+				log.warn("产出文件超过{}MB，不收集: {}", maxFileMb, workspace.resolve(relative));
+				continue;
+			}
+			Path target = artifactDir.resolve(relative);
+			if (Files.exists(target)) {
+				continue;
+			}
+			Files.createDirectories(target.getParent());
+			Files.copy(workspace.resolve(relative), target);
+			dataFiles.add(relative);
+		}
+		return describe(artifactDir, artifactRoot, dataFiles);
+	}
+
+	/**
+	 * 列出单元格产出目录中的文件
+	 * @param dataFiles 来自工作目录的数据文件（相对产出目录的路径），其余为图像
+	 */
+	public List<CellArtifact> describe(Path artifactDir, Path artifactRoot, Set<String> dataFiles)
+			throws IOException {
+		List<CellArtifact> artifacts = new ArrayList<>();
+		if (!Files.isDirectory(artifactDir)) {
+			return artifacts;
+		}
+		Path cellPrefix = artifactRoot.toAbsolutePath()
+			.normalize()
+			.relativize(artifactDir.toAbsolutePath().normalize());
+		walk(artifactDir, (relative, attributes) -> {
+			long lastModified = attributes.lastModifiedTime().toMillis();
+			artifacts.add(new CellArtifact(toName(cellPrefix.resolve(relative)), relative,
+					dataFiles.contains(relative) ? CellArtifact.KIND_FILE : CellArtifact.KIND_FIGURE, attributes.size(),
+					contentType(relative), etag(attributes.size(), lastModified), lastModified));
+		});
+		artifacts.sort(Comparator.comparing(CellArtifact::path));
+		return artifacts;
+	}
+
+	/**
+	 * 由文件大小和修改时间计算实体标签，不读取文件内容
+	 */
+	public static String etag(long size, long lastModified) {
+		return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	public static String contentType(String fileName) {
+		return MediaTypeFactory.getMediaType(fileName)
+			.map(MediaType::toString)
+			.orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+	}
+
+	private static void walk(Path root, FileConsumer consumer) throws IOException {
+		Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), MAX_DEPTH,
+				new SimpleFileVisitor<>() {
+
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+						String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+						if (!dir.equals(root) && (name.startsWith(".") || name.equals("__pycache__"))) {
+							return FileVisitResult.SKIP_SUBTREE;
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+						if (attributes.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+							consumer.accept(toName(root.relativize(file)), attributes);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) {
+						// 执行期间被删除的文件
+						return FileVisitResult.CONTINUE;
+					}
+
+				});
+	}
+
+	private static String toName(Path relative) {
+		return relative.toString().replace('\\', '/');
+	}
+
+	@FunctionalInterface
+	private interface FileConsumer {
+
+		void accept(String relative, BasicFileAttributes attributes);
+
+	}
+
+	/**
+	 * 文件状态，大小或修改时间变化即视为执行期间写入过
+	 */
+	public record FileState(long size, long lastModified) {
+	}
+
+}
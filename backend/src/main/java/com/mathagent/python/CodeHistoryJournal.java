@@ -0,0 +1,245 @@
+package com.mathagent.python;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 代码历史日志 每个会话一个只追加的JSONL文件，每个单元格写入执行前的代码记录和执行后的结果记录
+ *
+ * 写入只追加一行，与会话长度无关；fsync按批次合并，积累到一定条数或超过间隔时才刷盘；
+ * 会话结束时压缩为每个单元格一行。读取时逐行流式合并，不把整个历史加载到内存
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class CodeHistoryJournal implements Closeable {
+
+	public static final String TYPE_CELL = "cell";
+
+	public static final String TYPE_RESULT = "result";
+
+	private static final ScheduledExecutorService SYNC_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "code-history-sync");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Path path;
+
+	private final ObjectMapper objectMapper;
+
+	private final int syncBatchSize;
+
+	private final long syncIntervalMs;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private FileChannel channel;
+
+	private int unsyncedRecords;
+
+	private ScheduledFuture<?> pendingSync;
+
+	private CodeHistoryJournal(Path path, ObjectMapper objectMapper, int syncBatchSize, long syncIntervalMs)
+			throws IOException {
+		this.path = path;
+		this.objectMapper = objectMapper;
+		this.syncBatchSize = Math.max(1, syncBatchSize);
+		this.syncIntervalMs = syncIntervalMs;
+		this.channel = openForAppend(path);
+	}
+
+	/**
+	 * 打开（不存在时创建）会话日志
+	 * @param syncBatchSize 累积多少条记录后立即刷盘
+	 * @param syncIntervalMs 未满一批时最长多久刷盘一次
+	 */
+	public static CodeHistoryJournal open(Path path, ObjectMapper objectMapper, int syncBatchSize, long syncIntervalMs)
+			throws IOException {
+		Files.createDirectories(path.getParent());
+		return new CodeHistoryJournal(path, objectMapper, syncBatchSize, syncIntervalMs);
+	}
+
+	/**
+	 * 追加一条记录
+	 */
+	public void append(Map<String, Object> record) throws IOException {
+		byte[] json = objectMapper.writeValueAsBytes(record);
+		ByteBuffer buffer = ByteBuffer.allocate(json.length + 1);
+		buffer.put(json).put((byte) '\n').flip();
+
+		lock.lock();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			unsyncedRecords++;
+			if (unsyncedRecords >= syncBatchSize) {
+				syncLocked();
+			}
+			else if (pendingSync == null || pendingSync.isDone()) {
+				pendingSync = SYNC_SCHEDULER.schedule(this::syncQuietly, syncIntervalMs, TimeUnit.MILLISECONDS);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 将已写入的记录刷到磁盘
+	 */
+	public void sync() throws IOException {
+		lock.lock();
+		try {
+			syncLocked();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void syncLocked() throws IOException {
+		if (unsyncedRecords > 0 && channel.isOpen()) {
+			channel.force(false);
+			unsyncedRecords = 0;
+		}
+	}
+
+	private void syncQuietly() {
+		try {
+			sync();
+		}
+		catch (IOException e) {
+			log.warn("代码历史刷盘失败: {}", path, e);
+		}
+	}
+
+	/**
+	 * 压缩日志：每个单元格的代码记录和结果记录合并为一行，写入临时文件后原子替换
+	 */
+	public void compact() throws IOException {
+		lock.lock();
+		try {
+			syncLocked();
+			Path temp = path.resolveSibling(path.getFileName() + ".compact");
+			try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				forEachCell(path, objectMapper, cell -> {
+					writer.write(objectMapper.writeValueAsString(cell));
+					writer.write('\n');
+				});
+			}
+			try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				tempChannel.force(true);
+			}
+			channel.close();
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			channel = openForAppend(path);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (pendingSync != null) {
+				pendingSync.cancel(false);
+			}
+			syncLocked();
+			channel.close();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * 逐个读取单元格（代码记录与其结果记录合并后），内存占用与日志长度无关
+	 *
+	 * 进程崩溃留下的半行或正在写入的行无法解析，直接跳过
+	 */
+	public static void forEachCell(Path path, ObjectMapper objectMapper, CellVisitor visitor) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			ObjectNode pending = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				JsonNode node;
+				try {
+					node = objectMapper.readTree(line);
+				}
+				catch (IOException e) {
+					log.warn("跳过无法解析的代码历史记录: {}", path);
+					continue;
+				}
+				if (!(node instanceof ObjectNode record)) {
+					continue;
+				}
+				String type = record.path("type").asText();
+				if (TYPE_RESULT.equals(type)) {
+					if (pending != null && pending.path("index").asInt() == record.path("index").asInt()) {
+						pending.set("result", record.get("result"));
+						visitor.visit(pending);
+						pending = null;
+					}
+				}
+				else if (TYPE_CELL.equals(type)) {
+					if (pending != null) {
+						visitor.visit(pending);
+					}
+					pending = record;
+				}
+			}
+			if (pending != null) {
+				visitor.visit(pending);
+			}
+		}
+	}
+
+	private static FileChannel openForAppend(Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * 单元格记录处理
+	 */
+	@FunctionalInterface
+	public interface CellVisitor {
+
+		void visit(ObjectNode cell) throws IOException;
+
+	}
+
+}
@@ -0,0 +1,399 @@
+package com.mathagent.python;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Python代码安全检查 对源码做一次词法分析，在真实的Token上匹配禁止导入的模块、禁止调用的函数和禁止出现的名称，
+ * 字符串和注释中的内容不会误报
+ *
+ * 禁止调用的规则：不以点开头的规则匹配完整调用名（如 eval、builtins.exec）；以点开头的规则匹配任意对象上的同名方法
+ * （如 .system 匹配 os.system）；以星号结尾表示前缀匹配（如 .spawn* 匹配 os.spawnl）。
+ * 字符串内容不参与匹配，因此通过名称访问模块对象的途径单独禁止：__dict__ 等名称、模块上的 modules 属性（sys.modules）、
+ * 以模块为第一个参数或不带参数的 getattr/vars/globals 等反射调用，以及把反射函数当作值使用（如 f = getattr）；
+ * 模块包括代码中导入的和执行环境预先导入的。
+ * 属性链中出现禁止导入的模块名（如 pd.io.common.os、tempfile._os）同样禁止，其他库导入的模块可以经属性链访问
+ *
+ * @author Makoto
+ */
+@Component
+public class CodeSafetyScanner {
+
+	private static final String DEFAULT_DENIED_MODULES = "os,subprocess,shutil,socket,ctypes,multiprocessing,pty,"
+			+ "importlib,urllib,http,requests";
+
+	private static final String DEFAULT_DENIED_CALLS = "eval,exec,compile,__import__,input,breakpoint,builtins.eval,"
+			+ "builtins.exec,.system,.popen,.fork,.forkpty,.spawn*,.execv*,.execl*";
+
+	private static final String DEFAULT_DENIED_NAMES = "__builtins__,__subclasses__,__globals__,__code__,__loader__,"
+			+ "__dict__";
+
+	/**
+	 * 模块对象上禁止访问的属性（sys.modules 可按字符串取得任意已加载模块）
+	 */
+	private static final String DEFAULT_DENIED_MODULE_ATTRIBUTES = "modules";
+
+	private static final String DEFAULT_REFLECTION_CALLS = "getattr,setattr,delattr,vars,globals,locals,__import__";
+
+	/**
+	 * 执行环境预先导入、代码中无需导入即可使用的模块名
+	 */
+	private static final String DEFAULT_PRELOADED_MODULES = "sys,warnings,matplotlib,np,plt,pd,scipy,json";
+
+	@Value("${math-agent.python.safety.denied-modules:" + DEFAULT_DENIED_MODULES + "}")
+	private String[] deniedModuleRules;
+
+	@Value("${math-agent.python.safety.denied-calls:" + DEFAULT_DENIED_CALLS + "}")
+	private String[] deniedCallRules;
+
+	@Value("${math-agent.python.safety.denied-names:" + DEFAULT_DENIED_NAMES + "}")
+	private String[] deniedNameRules;
+
+	@Value("${math-agent.python.safety.denied-module-attributes:" + DEFAULT_DENIED_MODULE_ATTRIBUTES + "}")
+	private String[] deniedModuleAttributeRules;
+
+	@Value("${math-agent.python.safety.reflection-calls:" + DEFAULT_REFLECTION_CALLS + "}")
+	private String[] reflectionCallRules;
+
+	@Value("${math-agent.python.safety.preloaded-modules:" + DEFAULT_PRELOADED_MODULES + "}")
+	private String[] preloadedModuleRules;
+
+	private Set<String> deniedModules;
+
+	private List<CallRule> deniedCalls;
+
+	private Set<String> deniedNames;
+
+	private Set<String> deniedModuleAttributes;
+
+	private Set<String> reflectionCalls;
+
+	private Set<String> preloadedModules;
+
+	@PostConstruct
+	public void init() {
+		deniedModules = normalize(deniedModuleRules).collect(Collectors.toSet());
+		deniedCalls = normalize(deniedCallRules).map(CallRule::parse).toList();
+		deniedNames = normalize(deniedNameRules).collect(Collectors.toSet());
+		deniedModuleAttributes = normalize(deniedModuleAttributeRules).collect(Collectors.toSet());
+		reflectionCalls = normalize(reflectionCallRules).collect(Collectors.toSet());
+		preloadedModules = normalize(preloadedModuleRules).collect(Collectors.toSet());
+	}
+
+	/**
+	 * 扫描代码
+	 */
+	public ScanResult scan(String code) {
+		List<PythonTokenizer.Token> tokens = PythonTokenizer.tokenize(code);
+		List<Violation> violations = new ArrayList<>();
+		// 指向模块对象的名称：预先导入的模块和代码中导入语句绑定的名称
+		Set<String> moduleNames = new HashSet<>(preloadedModules);
+		int i = 0;
+		while (i < tokens.size()) {
+			PythonTokenizer.Token token = tokens.get(i);
+			if (token.type() != PythonTokenizer.Type.NAME) {
+				i++;
+			}
+			else if (token.text().equals("import")) {
+				i = scanImport(tokens, i + 1, violations, moduleNames);
+			}
+			else if (token.text().equals("from")) {
+				i = scanFromImport(tokens, i + 1, violations, moduleNames);
+			}
+			else {
+				i = scanName(tokens, i, violations, moduleNames);
+			}
+		}
+		return new ScanResult(violations);
+	}
+
+	/**
+	 * import a.b as c, d
+	 */
+	private int scanImport(List<PythonTokenizer.Token> tokens, int i, List<Violation> violations,
+			Set<String> moduleNames) {
+		while (i < tokens.size() && !isStatementEnd(tokens.get(i))) {
+			PythonTokenizer.Token token = tokens.get(i);
+			if (token.type() == PythonTokenizer.Type.NAME && !token.text().equals("as")
+					&& !tokens.get(i - 1).is(PythonTokenizer.Type.NAME, "as")) {
+				StringBuilder module = new StringBuilder(token.text());
+				i = readDotted(tokens, i + 1, module);
+				checkModule(module.toString(), token.line(), violations);
+				// import a.b 绑定 a，import a.b as c 绑定 c
+				moduleNames.add(aliasOr(tokens, i, token.text()));
+				continue;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * from a.b import c, d；不是导入语句的from（yield from、raise ... from）按普通名称处理
+	 */
+	private int scanFromImport(List<PythonTokenizer.Token> tokens, int i, List<Violation> violations,
+			Set<String> moduleNames) {
+		int line = tokens.get(i - 1).line();
+		StringBuilder module = new StringBuilder();
+		while (i < tokens.size() && tokens.get(i).is(PythonTokenizer.Type.OP, ".")) {
+			// 相对导入
+			module.append('.');
+			i++;
+		}
+		if (i < tokens.size() && tokens.get(i).type() == PythonTokenizer.Type.NAME
+				&& !tokens.get(i).text().equals("import")) {
+			module.append(tokens.get(i).text());
+			i = readDotted(tokens, i + 1, module);
+		}
+		if (i >= tokens.size() || !tokens.get(i).is(PythonTokenizer.Type.NAME, "import")) {
+			return i;
+		}
+		checkModule(module.toString(), line, violations);
+		i++;
+		while (i < tokens.size() && !isStatementEnd(tokens.get(i))) {
+			PythonTokenizer.Token token = tokens.get(i);
+			if (token.type() == PythonTokenizer.Type.NAME && !token.text().equals("as")
+					&& !tokens.get(i - 1).is(PythonTokenizer.Type.NAME, "as")) {
+				String imported = module + "." + token.text();
+				if (isDeniedCall(imported) || deniedNames.contains(token.text()) || isDeniedModuleName(token.text())
+						|| (moduleNames.contains(module.toString()) && deniedModuleAttributes.contains(token.text()))) {
+					violations.add(new Violation(ViolationType.IMPORT, imported, token.line()));
+				}
+				// 导入的名称可能是子模块（from os import path）
+				moduleNames.add(aliasOr(tokens, i + 1, token.text()));
+			}
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * 名称或点号连接的属性链，后面跟着括号时按调用检查
+	 */
+	private int scanName(List<PythonTokenizer.Token> tokens, int i, List<Violation> violations,
+			Set<String> moduleNames) {
+		PythonTokenizer.Token first = tokens.get(i);
+		// 前面是点号说明是某个表达式结果的属性，如 f().system(...)
+		boolean attribute = i > 0 && tokens.get(i - 1).is(PythonTokenizer.Type.OP, ".");
+		StringBuilder name = new StringBuilder(attribute ? "<expr>." : "").append(first.text());
+		int next = readDotted(tokens, i + 1, name);
+		boolean call = next < tokens.size() && tokens.get(next).is(PythonTokenizer.Type.OP, "(");
+		if (next == i + 1 && !call && !attribute) {
+			// 大部分名称是普通变量引用，不需要拼接调用名；反射函数被当作值使用时（如 f = getattr）无法跟踪后续调用，直接禁止
+			if (deniedNames.contains(first.text()) || reflectionCalls.contains(first.text())) {
+				violations.add(new Violation(ViolationType.NAME, first.text(), first.line()));
+			}
+			return i + 1;
+		}
+
+		StringBuilder prefix = new StringBuilder(attribute ? "<expr>" : "");
+		for (int j = i; j < next; j += 2) {
+			PythonTokenizer.Token token = tokens.get(j);
+			prefix.append(prefix.isEmpty() ? "" : ".").append(token.text());
+			if (deniedNames.contains(token.text())) {
+				violations.add(new Violation(ViolationType.NAME, token.text(), token.line()));
+			}
+			if ((j > i || attribute) && isDeniedModuleName(token.text())) {
+				violations.add(new Violation(ViolationType.MODULE, prefix.toString(), token.line()));
+			}
+		}
+		boolean onModule = !attribute && moduleNames.contains(first.text());
+		if (onModule && next > i + 1 && deniedModuleAttributes.contains(tokens.get(i + 2).text())) {
+			violations.add(new Violation(ViolationType.NAME, first.text() + "." + tokens.get(i + 2).text(),
+					first.line()));
+		}
+		// getattr(...) 或 builtins.getattr(...)
+		PythonTokenizer.Token last = tokens.get(next - 1);
+		if (!attribute && reflectionCalls.contains(last.text()) && (next == i + 1 || (onModule && next == i + 3))) {
+			if (call) {
+				checkReflection(tokens, next - 1, violations, moduleNames);
+			}
+			else {
+				violations.add(new Violation(ViolationType.NAME, name.toString(), last.line()));
+			}
+		}
+		if (call && isDeniedCall(name.toString())) {
+			violations.add(new Violation(ViolationType.CALL, name.toString(), first.line()));
+		}
+		return next;
+	}
+
+	/**
+	 * getattr(sys, ...) 等以模块为第一个参数的反射调用，属性名是字符串，无法按名称检查，直接禁止；
+	 * 不带参数的 globals()/vars() 返回包含模块对象的字典，同样禁止
+	 * @param i 反射函数名所在位置，后面是左括号
+	 */
+	private static void checkReflection(List<PythonTokenizer.Token> tokens, int i, List<Violation> violations,
+			Set<String> moduleNames) {
+		if (i + 2 >= tokens.size()) {
+			return;
+		}
+		PythonTokenizer.Token function = tokens.get(i);
+		PythonTokenizer.Token target = tokens.get(i + 2);
+		if (target.is(PythonTokenizer.Type.OP, ")")) {
+			violations.add(new Violation(ViolationType.CALL, function.text() + "()", function.line()));
+			return;
+		}
+		if (i + 3 >= tokens.size()) {
+			return;
+		}
+		PythonTokenizer.Token after = tokens.get(i + 3);
+		if (target.type() == PythonTokenizer.Type.NAME && moduleNames.contains(target.text())
+				&& (after.is(PythonTokenizer.Type.OP, ",") || after.is(PythonTokenizer.Type.OP, ")"))) {
+			violations.add(new Violation(ViolationType.CALL, function.text() + "(" + target.text() + ")",
+					function.line()));
+		}
+	}
+
+	/**
+	 * 导入项后面有 as 别名时返回别名，否则返回默认名称
+	 * @param i 导入项之后的位置
+	 */
+	private static String aliasOr(List<PythonTokenizer.Token> tokens, int i, String name) {
+		if (i + 1 < tokens.size() && tokens.get(i).is(PythonTokenizer.Type.NAME, "as")
+				&& tokens.get(i + 1).type() == PythonTokenizer.Type.NAME) {
+			return tokens.get(i + 1).text();
+		}
+		return name;
+	}
+
+	/**
+	 * 读取 .name.name 形式的后续部分
+	 */
+	private static int readDotted(List<PythonTokenizer.Token> tokens, int i, StringBuilder name) {
+		while (i + 1 < tokens.size() && tokens.get(i).is(PythonTokenizer.Type.OP, ".")
+				&& tokens.get(i + 1).type() == PythonTokenizer.Type.NAME) {
+			name.append('.').append(tokens.get(i + 1).text());
+			i += 2;
+		}
+		return i;
+	}
+
+	private void checkModule(String module, int line, List<Violation> violations) {
+		// 禁止 os 时同时禁止 os.path 等子模块
+		for (String denied : deniedModules) {
+			if (module.equals(denied) || module.startsWith(denied + ".")) {
+				violations.add(new Violation(ViolationType.IMPORT, module, line));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 名称是否指向禁止导入的模块；库内部常以下划线前缀别名导入（如 tempfile 中的 _os）
+	 */
+	private boolean isDeniedModuleName(String name) {
+		int start = 0;
+		while (start < name.length() - 1 && name.charAt(start) == '_') {
+			start++;
+		}
+		return deniedModules.contains(start > 0 ? name.substring(start) : name);
+	}
+
+	private boolean isDeniedCall(String name) {
+		int dot = name.lastIndexOf('.');
+		String lastSegment = dot >= 0 ? name.substring(dot + 1) : null;
+		for (CallRule rule : deniedCalls) {
+			if (rule.matches(name, lastSegment)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isStatementEnd(PythonTokenizer.Token token) {
+		return token.type() == PythonTokenizer.Type.NEWLINE || token.is(PythonTokenizer.Type.OP, ";");
+	}
+
+	private static Stream<String> normalize(String[] values) {
+		return Arrays.stream(values).map(String::trim).filter(value -> !value.isEmpty());
+	}
+
+	/**
+	 * 禁止调用规则
+	 * @param anyObject 以点开头，匹配任意对象上的同名方法（不匹配同名的普通函数）
+	 * @param prefix 以星号结尾，前缀匹配
+	 */
+	private record CallRule(String pattern, boolean anyObject, boolean prefix) {
+
+		static CallRule parse(String rule) {
+			boolean anyObject = rule.startsWith(".");
+			boolean prefix = rule.endsWith("*");
+			String pattern = rule.substring(anyObject ? 1 : 0, prefix ? rule.length() - 1 : rule.length());
+			return new CallRule(pattern, anyObject, prefix);
+		}
+
+		/**
+		 * @param lastSegment 调用名最后一段，调用名不含点号时为null
+		 */
+		boolean matches(String name, String lastSegment) {
+			String target = anyObject ? lastSegment : name;
+			if (target == null) {
+				return false;
+			}
+			return prefix ? target.startsWith(pattern) : target.equals(pattern);
+		}
+
+	}
+
+	/**
+	 * 违规类型
+	 */
+	public enum ViolationType {
+
+		IMPORT("禁止导入"), CALL("禁止调用"), NAME("禁止使用"), MODULE("禁止访问模块");
+
+		private final String description;
+
+		ViolationType(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+	}
+
+	/**
+	 * 一处违规
+	 * @param target 模块名、调用名或名称
+	 * @param line 所在行号
+	 */
+	public record Violation(ViolationType type, String target, int line) {
+
+		@Override
+		public String toString() {
+			return "第" + line + "行: " + type.getDescription() + " " + target;
+		}
+
+	}
+
+	/**
+	 * 扫描结果
+	 */
+	public record ScanResult(List<Violation> violations) {
+
+		public boolean isSafe() {
+			return violations.isEmpty();
+		}
+
+		/**
+		 * 违规描述，供错误信息和调试提示词使用
+		 */
+		public String describe() {
+			return violations.stream().map(Violation::toString).collect(Collectors.joining("; "));
+		}
+
+	}
+
+}
@@ -0,0 +1,26 @@
+package com.mathagent.python;
+
+/**
+ * 单个代码单元格的执行限制
+ *
+ * @param wallSeconds 运行时间上限（秒），超时后终止执行，小于等于0表示不限制
+ * @param cpuSeconds CPU时间上限（秒），小于等于0表示不限制
+ * @param headChars stdout/stderr各自保留的开头字符数
+ * @param tailChars stdout/stderr各自保留的结尾字符数
+ * @author Makoto
+ */
+public record ExecutionLimits(int wallSeconds, int cpuSeconds, int headChars, int tailChars) {
+
+	/**
+	 * 进程内超时未能中止执行（如卡在C扩展中）时，额外等待多久后强制终止进程
+	 */
+	public static final int KILL_GRACE_SECONDS = 5;
+
+	/**
+	 * 强制终止进程的等待时间，不限制运行时间时返回0
+	 */
+	public long hardKillMillis() {
+		return wallSeconds > 0 ? (wallSeconds + KILL_GRACE_SECONDS) * 1000L : 0;
+	}
+
+}
@@ -0,0 +1,620 @@
+package com.mathagent.python;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mathagent.cache.TieredCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Python执行结果缓存 以规范化代码、预置代码和解释器/库版本的哈希为key，相同代码再次执行时直接返回输出和产出文件，不启动进程
+ *
+ * 使用随机数或读取当前时间的代码结果不确定，不缓存：导入 time/datetime 等时间模块的代码一律不缓存；
+ * 标准库 random、numpy 全局随机状态和各个随机数生成器分别需要以字面量固定种子，任一种未固定时不缓存；
+ * 代码中包含 "# no-cache" 注释时也不缓存。
+ * 单元格产出文件按内容哈希存储，命中时链接到新单元格的产出目录，数据文件同时复制到工作目录。
+ * 文件在存入和命中时更新修改时间，定期清理：超过缓存有效期未使用的文件不再被任何有效条目引用，直接删除；
+ * 总大小超过上限时再按修改时间从旧到新删除（引用被删文件的条目在读取时视为未命中）
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class ExecutionResultCache {
+
+	private static final String NO_CACHE_MARKER = "# no-cache";
+
+	/**
+	 * 导入后即视为结果不确定的模块（读取当前时间或系统熵）
+	 */
+	private static final Set<String> TIME_MODULES = Set.of("time", "datetime", "uuid", "secrets");
+
+	/**
+	 * 不经导入（通过预先导入的模块）读取当前时间或系统熵的调用
+	 */
+	private static final Pattern TIME_USAGE = Pattern.compile(
+			"\\b(time\\.(time|perf_counter|monotonic|process_time|time_ns)|datetime\\.(now|today|utcnow)|date\\.today"
+					+ "|Timestamp\\.(now|today)|uuid\\.uuid[14]|os\\.urandom|secrets\\.)");
+
+	private static final Pattern FROM_IMPORT = Pattern.compile("^from\\s+([\\w.]+)\\s+import\\s+(.+)$");
+
+	private static final Pattern IMPORT = Pattern.compile("^import\\s+(.+)$");
+
+	/**
+	 * 标准库 random 的使用与固定种子
+	 */
+	private static final Pattern STDLIB_RANDOM_USAGE = Pattern.compile("(?<![\\w.])random\\.\\w");
+
+	private static final Pattern STDLIB_RANDOM_SEED = Pattern.compile("(?<![\\w.])random\\.seed\\s*\\(\\s*\\d+\\s*\\)");
+
+	/**
+	 * numpy 全局随机状态的使用（生成器构造除外；scipy.stats 的 rvs 未指定 random_state 时也使用全局状态）与固定种子
+	 */
+	private static final Pattern NUMPY_GLOBAL_USAGE = Pattern.compile(
+			"(?<![\\w.])(np|numpy)\\.random\\.(?!seed\\b|default_rng\\b|RandomState\\b)\\w+|\\.rvs\\s*\\((?![^)]*random_state)");
+
+	private static final Pattern NUMPY_GLOBAL_SEED = Pattern
+		.compile("(?<![\\w.])(np|numpy)\\.random\\.seed\\s*\\(\\s*\\d+\\s*\\)");
+
+	/**
+	 * 通过 from ... import seed 导入后直接调用的固定种子
+	 */
+	private static final Pattern BARE_SEED = Pattern.compile("(?<![\\w.])seed\\s*\\(\\s*\\d+\\s*\\)");
+
+	/**
+	 * 随机数生成器的构造，及以字面量固定种子的构造
+	 */
+	private static final Pattern GENERATOR = Pattern.compile("\\b(default_rng|RandomState)\\s*\\(");
+
+	private static final Pattern SEEDED_GENERATOR = Pattern.compile(
+			"\\b(default_rng\\s*\\(\\s*(seed\\s*=\\s*)?\\d+\\s*\\)|RandomState\\s*\\(\\s*(seed\\s*=\\s*)?\\d+\\s*\\))");
+
+	/**
+	 * 从 numpy.random 导入后不使用全局随机状态的名称
+	 */
+	private static final Set<String> NUMPY_GENERATOR_NAMES = Set.of("default_rng", "RandomState", "Generator",
+			"SeedSequence", "seed");
+
+	private static final String VERSION_SCRIPT = "import sys, json\n" + "versions = {'python': sys.version}\n"
+			+ "for name in ('numpy', 'scipy', 'pandas', 'matplotlib'):\n" + "    try:\n"
+			+ "        versions[name] = __import__(name).__version__\n" + "    except Exception:\n"
+			+ "        versions[name] = None\n" + "print(json.dumps(versions, sort_keys=True))\n";
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${math-agent.python.result-cache.enabled:true}")
+	private boolean enabled;
+
+	@Value("${math-agent.python.result-cache.max-entries:200}")
+	private int maxEntries;
+
+	@Value("${math-agent.python.result-cache.max-disk-entries:5000}")
+	private int maxDiskEntries;
+
+	@Value("${math-agent.python.result-cache.ttl-hours:168}")
+	private long ttlHours;
+
+	@Value("${math-agent.python.result-cache.directory:python_cache}")
+	private String directory;
+
+	/**
+	 * 产出文件存储的总大小上限
+	 */
+	@Value("${math-agent.python.result-cache.max-artifact-mb:1024}")
+	private long maxArtifactMb;
+
+	@Value("${math-agent.python.result-cache.sweep-interval-minutes:30}")
+	private long sweepIntervalMinutes;
+
+	@Value("${math-agent.python.interpreter:python}")
+	private String interpreter;
+
+	private TieredCache<CachedExecution> cache;
+
+	private Path artifactStore;
+
+	private String environmentFingerprint;
+
+	private boolean fingerprintResolved;
+
+	private ScheduledExecutorService sweeper;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+		cache = new TieredCache<>("python_execution", maxEntries, maxDiskEntries, Duration.ofHours(ttlHours),
+				Paths.get(directory, "results"), CachedExecution.class, objectMapper,
+				meterRegistry);
+		artifactStore = Paths.get(directory, "artifacts");
+
+		sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "python-cache-sweeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		sweeper.scheduleWithFixedDelay(this::sweepArtifacts, 1, sweepIntervalMinutes, TimeUnit.MINUTES);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+		}
+	}
+
+	/**
+	 * 计算缓存key
+	 * @param preamble 执行前注入的预置代码
+	 * @return 代码结果不确定、禁用缓存或无法确定运行环境版本时为空
+	 */
+	public Optional<String> keyFor(String code, String preamble) {
+		if (!enabled || !isDeterministic(code)) {
+			return Optional.empty();
+		}
+		String fingerprint = environmentFingerprint();
+		if (fingerprint == null) {
+			return Optional.empty();
+		}
+		return Optional
+			.of(TieredCache.sha256(normalize(code) + "\n#--preamble--\n" + preamble + "\n#--env--\n" + fingerprint));
+	}
+
+	/**
+	 * 读取缓存结果并恢复产出文件：链接到单元格产出目录（缓存文件不会被改写，不需要复制），数据文件另复制到工作目录；
+	 * 任一产出文件丢失时视为未命中
+	 */
+	public Optional<CachedExecution> get(String key, Path workspace, Path artifactDir) {
+		Optional<CachedExecution> cached = cache.get(key);
+		if (cached.isEmpty()) {
+			return cached;
+		}
+		try {
+			for (ArtifactRef artifact : cached.get().getArtifacts()) {
+				Path blob = blobPath(artifact.getSha256());
+				if (!Files.exists(blob)) {
+					cache.invalidate(key);
+					return Optional.empty();
+				}
+				touch(blob);
+				Path target = resolveInside(artifactDir, artifact.getName());
+				if (target == null) {
+					continue;
+				}
+				Files.createDirectories(target.getParent());
+				linkOrCopy(blob, target);
+				Path workspaceFile = resolveInside(workspace, artifact.getName());
+				if (CellArtifact.KIND_FILE.equals(artifact.getKind()) && workspaceFile != null) {
+					Files.createDirectories(workspaceFile.getParent());
+					Files.copy(blob, workspaceFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			return cached;
+		}
+		catch (IOException e) {
+			log.warn("恢复缓存的产出文件失败: {}", key, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * 缓存执行结果，单元格产出目录中的文件一并保存
+	 */
+	public void put(String key, Path artifactDir, List<CellArtifact> artifacts, CachedExecution execution) {
+		try {
+			List<ArtifactRef> refs = new ArrayList<>();
+			for (CellArtifact artifact : artifacts) {
+				Path file = resolveInside(artifactDir, artifact.path());
+				if (file == null || !Files.isRegularFile(file)) {
+					continue;
+				}
+				refs.add(new ArtifactRef(artifact.path(), storeBlob(file), artifact.kind()));
+			}
+			execution.setArtifacts(refs);
+			cache.put(key, execution);
+		}
+		catch (IOException e) {
+			log.warn("缓存Python执行结果失败: {}", key, e);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 规范化代码：统一换行符，去掉行尾空白、整行注释和首尾空行
+	 */
+	static String normalize(String code) {
+		StringBuilder normalized = new StringBuilder(code.length());
+		for (String line : code.replace("\r\n", "\n").replace('\r', '\n').split("\n")) {
+			String stripped = line.stripTrailing();
+			String trimmed = stripped.strip();
+			if (trimmed.startsWith("#") && !trimmed.equalsIgnoreCase(NO_CACHE_MARKER)) {
+				continue;
+			}
+			normalized.append(stripped).append('\n');
+		}
+		return normalized.toString().strip();
+	}
+
+	/**
+	 * 判断代码结果是否可复现：导入时间模块或读取当前时间的代码不可复现；
+	 * 标准库 random、numpy 全局随机状态、随机数生成器各自被使用时，都需要以字面量固定种子
+	 */
+	static boolean isDeterministic(String code) {
+		if (code.contains(NO_CACHE_MARKER) || TIME_USAGE.matcher(code).find()) {
+			return false;
+		}
+		Set<String> imported = new HashSet<>();
+		Map<String, Set<String>> fromImported = new HashMap<>();
+		for (String line : code.split("\n")) {
+			parseImport(line.strip(), imported, fromImported);
+		}
+		for (String module : imported) {
+			if (TIME_MODULES.contains(module.split("\\.")[0])) {
+				return false;
+			}
+		}
+
+		Set<String> fromRandom = fromImported.getOrDefault("random", Set.of());
+		boolean stdlibRandom = imported.contains("random") || STDLIB_RANDOM_USAGE.matcher(code).find();
+		boolean stdlibSeeded = STDLIB_RANDOM_SEED.matcher(code).find()
+				|| (fromRandom.contains("seed") && BARE_SEED.matcher(code).find());
+		if (stdlibRandom && !stdlibSeeded) {
+			return false;
+		}
+
+		Set<String> fromNumpyRandom = fromImported.getOrDefault("numpy.random", Set.of());
+		boolean numpyGlobal = NUMPY_GLOBAL_USAGE.matcher(code).find()
+				|| !NUMPY_GENERATOR_NAMES.containsAll(fromNumpyRandom);
+		boolean numpySeeded = NUMPY_GLOBAL_SEED.matcher(code).find()
+				|| (fromNumpyRandom.contains("seed") && BARE_SEED.matcher(code).find());
+		if (numpyGlobal && !numpySeeded) {
+			return false;
+		}
+
+		// 每个生成器都要固定种子
+		return GENERATOR.matcher(code).results().count() == SEEDED_GENERATOR.matcher(code).results().count();
+	}
+
+	/**
+	 * 解析一行导入语句：import 的模块记入 imported；from ... import 的模块同样记入，导入的名称按模块记入 fromImported
+	 */
+	private static void parseImport(String line, Set<String> imported, Map<String, Set<String>> fromImported) {
+		Matcher from = FROM_IMPORT.matcher(line);
+		if (from.matches()) {
+			String module = from.group(1);
+			imported.add(module);
+			Set<String> names = fromImported.computeIfAbsent(module, k -> new HashSet<>());
+			if (from.group(2).contains("(") && !from.group(2).contains(")")) {
+				// 跨行的导入列表无法逐行解析，按导入了任意名称处理
+				names.add("*");
+			}
+			for (String name : from.group(2).replace("(", "").replace(")", "").split(",")) {
+				String[] parts = name.strip().split("\\s+");
+				if (!parts[0].isEmpty() && !parts[0].startsWith("#")) {
+					names.add(parts[0]);
+				}
+			}
+			return;
+		}
+		Matcher plain = IMPORT.matcher(line);
+		if (plain.matches()) {
+			for (String name : plain.group(1).split(",")) {
+				String[] parts = name.strip().split("\\s+");
+				if (!parts[0].isEmpty()) {
+					imported.add(parts[0]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 解析目录下的相对路径，越出该目录时返回null
+	 */
+	private static Path resolveInside(Path workingDir, String name) {
+		Path base = workingDir.toAbsolutePath().normalize();
+		Path resolved = base.resolve(name).normalize();
+		return resolved.startsWith(base) && !resolved.equals(base) ? resolved : null;
+	}
+
+	private String storeBlob(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		String sha256 = HexFormat.of().formatHex(digest.digest());
+		Path blob = blobPath(sha256);
+		if (!Files.exists(blob)) {
+			Files.createDirectories(blob.getParent());
+			Path tempFile = Files.createTempFile(blob.getParent(), "blob-", ".tmp");
+			Files.copy(file, tempFile, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tempFile, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		else {
+			touch(blob);
+		}
+		return sha256;
+	}
+
+	/**
+	 * 更新文件的修改时间，记录最近一次被缓存条目引用的时间
+	 */
+	private static void touch(Path blob) throws IOException {
+		Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+	}
+
+	/**
+	 * 清理产出文件：超过有效期未被引用的文件删除；总大小仍超过上限时按修改时间从旧到新删除
+	 */
+	void sweepArtifacts() {
+		if (!Files.isDirectory(artifactStore)) {
+			return;
+		}
+		long expireBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(ttlHours);
+		List<Blob> blobs = new ArrayList<>();
+		long expired = 0;
+		try (Stream<Path> files = Files.walk(artifactStore)) {
+			for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				long modifiedAt = attributes.lastModifiedTime().toMillis();
+				if (modifiedAt < expireBefore) {
+					if (Files.deleteIfExists(file)) {
+						expired++;
+					}
+				}
+				else if (!file.getFileName().toString().endsWith(".tmp")) {
+					blobs.add(new Blob(file, modifiedAt, attributes.size()));
+				}
+			}
+		}
+		catch (IOException | UncheckedIOException e) {
+			log.warn("清理Python执行结果缓存的产出文件失败", e);
+			return;
+		}
+
+		long maxBytes = maxArtifactMb * 1024 * 1024;
+		long totalBytes = blobs.stream().mapToLong(Blob::size).sum();
+		long evicted = 0;
+		blobs.sort(Comparator.comparingLong(Blob::modifiedAt));
+		for (Blob blob : blobs) {
+			if (totalBytes <= maxBytes) {
+				break;
+			}
+			try {
+				Files.deleteIfExists(blob.path());
+				totalBytes -= blob.size();
+				evicted++;
+			}
+			catch (IOException e) {
+				log.warn("删除缓存的产出文件失败: {}", blob.path(), e);
+			}
+		}
+		if (expired > 0 || evicted > 0) {
+			log.info("清理Python执行结果缓存的产出文件: 过期 {} 个, 超出容量 {} 个, 剩余 {}MB", expired, evicted,
+					totalBytes / 1024 / 1024);
+		}
+	}
+
+	private record Blob(Path path, long modifiedAt, long size) {
+	}
+
+	private static void linkOrCopy(Path blob, Path target) throws IOException {
+		Files.deleteIfExists(target);
+		try {
+			Files.createLink(target, blob);
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			// 跨文件系统或不支持硬链接
+			Files.copy(blob, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private Path blobPath(String sha256) {
+		return artifactStore.resolve(sha256.substring(0, 2)).resolve(sha256);
+	}
+
+	/**
+	 * 解释器和科学计算库版本，首次使用时启动一次解释器获取；获取失败时不使用缓存
+	 */
+	private synchronized String environmentFingerprint() {
+		if (fingerprintResolved) {
+			return environmentFingerprint;
+		}
+		fingerprintResolved = true;
+		try {
+			Process process = new ProcessBuilder(interpreter, "-c", VERSION_SCRIPT).redirectErrorStream(true).start();
+			String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).strip();
+			if (process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0) {
+				environmentFingerprint = output;
+				log.info("Python执行结果缓存已启用，运行环境: {}", output);
+			}
+			else {
+				process.destroyForcibly();
+				log.warn("获取Python运行环境版本失败，执行结果缓存不生效: {}", output);
+			}
+		}
+		catch (IOException e) {
+			log.warn("获取Python运行环境版本失败，执行结果缓存不生效", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			// 下次使用时重试
+			fingerprintResolved = false;
+		}
+		return environmentFingerprint;
+	}
+
+	/**
+	 * 缓存的执行结果
+	 */
+	public static class CachedExecution {
+
+		private String output;
+
+		private String error;
+
+		private long stdoutTotalChars;
+
+		private long stdoutDroppedChars;
+
+		private long stderrTotalChars;
+
+		private long stderrDroppedChars;
+
+		private List<ArtifactRef> artifacts = new ArrayList<>();
+
+		// Getters and Setters
+		public String getOutput() {
+			return output;
+		}
+
+		public void setOutput(String output) {
+			this.output = output;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		public void setError(String error) {
+			this.error = error;
+		}
+
+		public long getStdoutTotalChars() {
+			return stdoutTotalChars;
+		}
+
+		public void setStdoutTotalChars(long stdoutTotalChars) {
+			this.stdoutTotalChars = stdoutTotalChars;
+		}
+
+		public long getStdoutDroppedChars() {
+			return stdoutDroppedChars;
+		}
+
+		public void setStdoutDroppedChars(long stdoutDroppedChars) {
+			this.stdoutDroppedChars = stdoutDroppedChars;
+		}
+
+		public long getStderrTotalChars() {
+			return stderrTotalChars;
+		}
+
+		public void setStderrTotalChars(long stderrTotalChars) {
+			this.stderrTotalChars = stderrTotalChars;
+		}
+
+		public long getStderrDroppedChars() {
+			return stderrDroppedChars;
+		}
+
+		public void setStderrDroppedChars(long stderrDroppedChars) {
+			this.stderrDroppedChars = stderrDroppedChars;
+		}
+
+		public List<ArtifactRef> getArtifacts() {
+			return artifacts;
+		}
+
+		public void setArtifacts(List<ArtifactRef> artifacts) {
+			this.artifacts = artifacts;
+		}
+
+	}
+
+	/**
+	 * 产出文件：相对单元格产出目录的路径、内容哈希及类型（{@link CellArtifact#KIND_FIGURE}/{@link CellArtifact#KIND_FILE}）
+	 */
+	public static class ArtifactRef {
+
+		private String name;
+
+		private String sha256;
+
+		private String kind;
+
+		public ArtifactRef() {
+		}
+
+		public ArtifactRef(String name, String sha256, String kind) {
+			this.name = name;
+			this.sha256 = sha256;
+			this.kind = kind;
+		}
+
+		// Getters and Setters
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String getSha256() {
+			return sha256;
+		}
+
+		public void setSha256(String sha256) {
+			this.sha256 = sha256;
+		}
+
+		public String getKind() {
+			return kind;
+		}
+
+		public void setKind(String kind) {
+			this.kind = kind;
+		}
+
+	}
+
+}
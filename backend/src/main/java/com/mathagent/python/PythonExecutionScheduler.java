@@ -0,0 +1,258 @@
+package com.mathagent.python;
+
+import com.mathagent.execution.CancellationToken;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Python执行调度器 按CPU核数限制同时执行的代码单元格数，超出的请求按任务分队列等待
+ *
+ * 各任务的队列轮流获得执行许可，某个任务反复调试重试时也不会饿死其他任务；
+ * 同时统一Python进程的资源限制：数值库线程数、地址空间上限
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class PythonExecutionScheduler {
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * 同时执行的单元格数上限，小于等于0时按 CPU核数 / 每进程线程数 计算
+	 */
+	@Value("${math-agent.python.scheduler.max-concurrency:0}")
+	private int configuredMaxConcurrency;
+
+	@Value("${math-agent.python.scheduler.threads-per-process:1}")
+	private int threadsPerProcess;
+
+	@Value("${math-agent.python.limits.max-memory-mb:4096}")
+	private long maxMemoryMb;
+
+	private final Map<String, Deque<Waiter>> queues = new HashMap<>();
+
+	/**
+	 * 有等待者的任务，按轮转顺序排列
+	 */
+	private final Deque<String> rotation = new ArrayDeque<>();
+
+	private int maxConcurrency;
+
+	private int inFlight;
+
+	private int queued;
+
+	private Timer waitTimer;
+
+	@PostConstruct
+	public void init() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		maxConcurrency = configuredMaxConcurrency > 0 ? configuredMaxConcurrency
+				: Math.max(1, cores / Math.max(1, threadsPerProcess));
+
+		Gauge.builder("mathagent.python.scheduler.queue", this, s -> s.queueDepth())
+			.description("等待执行的代码单元格数")
+			.register(meterRegistry);
+		Gauge.builder("mathagent.python.scheduler.in_flight", this, s -> s.inFlight())
+			.description("正在执行的代码单元格数")
+			.register(meterRegistry);
+		waitTimer = Timer.builder("mathagent.python.scheduler.wait")
+			.description("代码单元格等待执行许可的时间")
+			.register(meterRegistry);
+		log.info("Python执行调度器: 并发上限 {} (CPU核数 {}, 每进程线程数 {}), 内存上限 {}MB", maxConcurrency, cores,
+				threadsPerProcess, maxMemoryMb);
+	}
+
+	/**
+	 * 申请执行许可，阻塞到轮到该任务
+	 * @param taskId 任务ID，同一任务的请求按提交顺序排队
+	 * @throws CancellationException 等待期间任务被取消
+	 */
+	public Permit acquire(String taskId, CancellationToken cancellationToken) throws InterruptedException {
+		cancellationToken.throwIfCancelled();
+		Waiter waiter = new Waiter(taskId);
+		synchronized (this) {
+			queues.computeIfAbsent(taskId, k -> {
+				rotation.addLast(k);
+				return new ArrayDeque<>();
+			}).addLast(waiter);
+			queued++;
+		}
+		// 排队中被取消时移出队列
+		waiter.future.whenComplete((permit, error) -> {
+			if (error != null) {
+				remove(waiter);
+			}
+		});
+		Runnable unregister = cancellationToken.onCancel(() -> waiter.future.cancel(false));
+		dispatch();
+
+		try {
+			return waiter.future.get();
+		}
+		catch (InterruptedException e) {
+			if (!waiter.future.cancel(false)) {
+				// 中断与获得许可同时发生，归还许可
+				waiter.future.join().release();
+			}
+			throw e;
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			unregister.run();
+		}
+	}
+
+	/**
+	 * 有空闲许可时按任务轮转发放，每个任务每轮只发放一个
+	 */
+	private void dispatch() {
+		List<Waiter> granted = new ArrayList<>();
+		synchronized (this) {
+			while (inFlight < maxConcurrency && !rotation.isEmpty()) {
+				String taskId = rotation.pollFirst();
+				Deque<Waiter> queue = queues.get(taskId);
+				Waiter waiter = queue != null ? queue.pollFirst() : null;
+				if (waiter == null) {
+					queues.remove(taskId);
+					continue;
+				}
+				queued--;
+				if (queue.isEmpty()) {
+					queues.remove(taskId);
+				}
+				else {
+					rotation.addLast(taskId);
+				}
+				if (waiter.future.isDone()) {
+					continue;
+				}
+				inFlight++;
+				granted.add(waiter);
+			}
+		}
+
+		// 在锁外完成Future，避免回调在持锁状态下执行
+		for (Waiter waiter : granted) {
+			waitTimer.record(System.nanoTime() - waiter.enqueuedNanos, TimeUnit.NANOSECONDS);
+			Permit permit = new Permit();
+			if (!waiter.future.complete(permit)) {
+				permit.release();
+			}
+		}
+	}
+
+	private void remove(Waiter waiter) {
+		synchronized (this) {
+			Deque<Waiter> queue = queues.get(waiter.taskId);
+			if (queue != null && queue.remove(waiter)) {
+				queued--;
+				if (queue.isEmpty()) {
+					queues.remove(waiter.taskId);
+					rotation.remove(waiter.taskId);
+				}
+			}
+		}
+	}
+
+	private void onRelease() {
+		synchronized (this) {
+			inFlight--;
+		}
+		dispatch();
+	}
+
+	/**
+	 * Python进程的环境变量：限制数值库线程数，使并发上限与CPU核数对应
+	 */
+	public Map<String, String> processEnvironment() {
+		String threads = String.valueOf(Math.max(1, threadsPerProcess));
+		Map<String, String> environment = new LinkedHashMap<>();
+		environment.put("OMP_NUM_THREADS", threads);
+		environment.put("OPENBLAS_NUM_THREADS", threads);
+		environment.put("MKL_NUM_THREADS", threads);
+		environment.put("NUMEXPR_NUM_THREADS", threads);
+		environment.put("MATHAGENT_MAX_MEMORY_MB", String.valueOf(maxMemoryMb));
+		return environment;
+	}
+
+	/**
+	 * 单个Python进程的地址空间上限（MB），小于等于0表示不限制
+	 */
+	public long getMaxMemoryMb() {
+		return maxMemoryMb;
+	}
+
+	public synchronized int queueDepth() {
+		return queued;
+	}
+
+	public synchronized int inFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * 调度器状态
+	 */
+	public synchronized Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("maxConcurrency", maxConcurrency);
+		stats.put("inFlight", inFlight);
+		stats.put("queued", queued);
+		stats.put("waitingTasks", queues.size());
+		return stats;
+	}
+
+	/**
+	 * 执行许可，执行结束后必须释放且只释放一次
+	 */
+	public final class Permit {
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				onRelease();
+			}
+		}
+
+	}
+
+	private static final class Waiter {
+
+		private final String taskId;
+
+		private final long enqueuedNanos = System.nanoTime();
+
+		private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+		private Waiter(String taskId) {
+			this.taskId = taskId;
+		}
+
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.mathagent.python;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 会话级Python内核 每个PythonSession独占一个常驻进程，单元格在同一命名空间中按提交顺序执行，变量跨单元格保留
+ *
+ * 进程异常退出、被终止（取消、超时、内存超限）或空闲回收后，下一个单元格自动在新进程中执行，
+ * 并在执行结果中标明之前的变量已丢失
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class PythonKernel {
+
+	private final String sessionId;
+
+	private final WorkerStarter starter;
+
+	/**
+	 * 公平锁，保证单元格按提交顺序执行
+	 */
+	private final ReentrantLock lock = new ReentrantLock(true);
+
+	private volatile PythonWorker worker;
+
+	private volatile int restarts;
+
+	/**
+	 * 是否启动过进程，用于区分首次启动和重启
+	 */
+	private volatile boolean started;
+
+	/**
+	 * 之前单元格的变量是否已丢失（进程崩溃、被终止或回收），下一个单元格执行时报告一次
+	 */
+	private volatile boolean stateLost;
+
+	private volatile long lastUsedAt = System.currentTimeMillis();
+
+	public PythonKernel(String sessionId, WorkerStarter starter) {
+		this.sessionId = sessionId;
+		this.starter = starter;
+	}
+
+	/**
+	 * 在会话命名空间中执行一个单元格
+	 */
+	public KernelResult execute(String code, Path workingDir, Path artifactDir, ExecutionLimits limits)
+			throws IOException, InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			PythonWorker current = worker;
+			boolean restarted = stateLost || (current != null && !current.isAlive());
+			stateLost = false;
+			if (current == null || !current.isAlive()) {
+				if (current != null) {
+					current.destroy();
+				}
+				current = start();
+			}
+			try {
+				PythonWorker.WorkerResponse response = current.execute(code, workingDir, artifactDir, true, limits);
+				return new KernelResult(response, restarted, false, null);
+			}
+			catch (IOException e) {
+				// 单元格执行过程中进程崩溃（段错误、OOM被杀、任务取消等）
+				log.warn("Python内核进程异常退出: {} ({})", sessionId, e.getMessage());
+				current.destroy();
+				worker = null;
+				stateLost = true;
+				return new KernelResult(null, restarted, true, e.getMessage());
+			}
+		}
+		finally {
+			lastUsedAt = System.currentTimeMillis();
+			lock.unlock();
+		}
+	}
+
+	private PythonWorker start() throws IOException, InterruptedException {
+		if (started) {
+			restarts++;
+			log.info("重启Python内核: {}, 第{}次", sessionId, restarts);
+		}
+		worker = starter.start();
+		started = true;
+		return worker;
+	}
+
+	/**
+	 * 终止内核进程（用于任务取消、超时和内存超限），下一个单元格将在新进程中执行
+	 */
+	public void interrupt() {
+		PythonWorker current = worker;
+		if (current != null) {
+			stateLost = true;
+			current.destroy();
+		}
+	}
+
+	/**
+	 * 空闲回收：终止内核进程但保留内核，会话再次执行时在新进程中执行并报告变量已丢失
+	 * @return 是否终止了进程
+	 */
+	public boolean release() {
+		if (!lock.tryLock()) {
+			return false;
+		}
+		try {
+			PythonWorker current = worker;
+			worker = null;
+			if (current == null) {
+				return false;
+			}
+			stateLost = true;
+			current.destroy();
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 标记之前的变量已丢失（如单元格结果直接取自执行结果缓存，内核中没有执行该单元格）
+	 */
+	public void markStateLost() {
+		stateLost = true;
+	}
+
+	/**
+	 * 之前单元格定义的变量在下一个单元格中是否仍然可用
+	 */
+	public boolean isStateAvailable() {
+		PythonWorker current = worker;
+		return current != null && current.isAlive() && !stateLost;
+	}
+
+	/**
+	 * 关闭内核
+	 */
+	public void shutdown() {
+		PythonWorker current = worker;
+		worker = null;
+		if (current != null) {
+			current.destroy();
+		}
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public boolean isBusy() {
+		return lock.isLocked();
+	}
+
+	/**
+	 * 内核进程是否在运行
+	 */
+	public boolean isRunning() {
+		PythonWorker current = worker;
+		return current != null && current.isAlive();
+	}
+
+	public int getRestarts() {
+		return restarts;
+	}
+
+	public long getLastUsedAt() {
+		return lastUsedAt;
+	}
+
+	/**
+	 * 当前内核进程的常驻内存
+	 */
+	public long getRssKb() {
+		PythonWorker current = worker;
+		return current != null && current.isAlive() ? current.getRssKb() : 0;
+	}
+
+	/**
+	 * 内核进程启动方式（从预热进程池取出或直接启动）
+	 */
+	@FunctionalInterface
+	public interface WorkerStarter {
+
+		PythonWorker start() throws IOException, InterruptedException;
+
+	}
+
+	/**
+	 * 单元格执行结果
+	 * @param response 进程响应，进程崩溃时为null
+	 * @param restarted 本次执行前内核是否重启过（之前的变量已丢失）
+	 * @param crashed 本次执行过程中进程是否崩溃
+	 * @param crashReason 进程崩溃原因（包括超时被强制终止）
+	 */
+	public record KernelResult(PythonWorker.WorkerResponse response, boolean restarted, boolean crashed,
+			String crashReason) {
+	}
+
+}
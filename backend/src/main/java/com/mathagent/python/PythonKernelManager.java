@@ -0,0 +1,169 @@
+package com.mathagent.python;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Python会话内核管理 为每个会话维护一个常驻内核，统计内核内存，超出上限或长时间空闲时关闭
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class PythonKernelManager {
+
+	@Autowired
+	private PythonWorkerFactory workerFactory;
+
+	@Autowired
+	private PythonWorkerPool workerPool;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${math-agent.python.kernel.enabled:true}")
+	private boolean enabled;
+
+	@Value("${math-agent.python.kernel.max-rss-mb:2048}")
+	private long maxRssMb;
+
+	@Value("${math-agent.python.kernel.idle-timeout-minutes:30}")
+	private long idleTimeoutMinutes;
+
+	private final Map<String, PythonKernel> kernels = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService reaper;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+		Gauge.builder("mathagent.python.kernel.count", this, PythonKernelManager::runningCount)
+			.description("运行中的会话内核进程数")
+			.register(meterRegistry);
+		Gauge.builder("mathagent.python.kernel.rss", this, PythonKernelManager::totalRssBytes)
+			.description("所有会话内核的常驻内存")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+
+		reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "python-kernel-reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reaper.scheduleWithFixedDelay(this::reapIdle, 1, 1, TimeUnit.MINUTES);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 获取会话内核，不存在时创建（进程在第一个单元格执行时启动）
+	 */
+	public PythonKernel kernelFor(String sessionId) {
+		return kernels.computeIfAbsent(sessionId, id -> new PythonKernel(id, this::startWorker));
+	}
+
+	/**
+	 * 会话之前单元格定义的变量在下一个单元格中是否仍然可用
+	 */
+	public boolean isStateAvailable(String sessionId) {
+		PythonKernel kernel = enabled ? kernels.get(sessionId) : null;
+		return kernel != null && kernel.isStateAvailable();
+	}
+
+	/**
+	 * 标记会话内核的变量已丢失，下一个单元格执行时报告
+	 */
+	public void markStateLost(String sessionId) {
+		kernelFor(sessionId).markStateLost();
+	}
+
+	/**
+	 * 单元格执行后检查内存，超过上限时终止内核，下一个单元格在新进程中执行
+	 * @return 是否因内存超限终止了内核
+	 */
+	public boolean enforceMemoryLimit(PythonKernel kernel) {
+		long rssMb = kernel.getRssKb() / 1024;
+		if (rssMb <= maxRssMb) {
+			return false;
+		}
+		log.warn("Python内核内存超限: {} 使用 {}MB, 上限 {}MB, 终止内核", kernel.getSessionId(), rssMb, maxRssMb);
+		kernel.interrupt();
+		return true;
+	}
+
+	/**
+	 * 关闭会话内核
+	 */
+	public void shutdown(String sessionId) {
+		PythonKernel kernel = kernels.remove(sessionId);
+		if (kernel != null) {
+			kernel.shutdown();
+			log.info("关闭Python内核: {}", sessionId);
+		}
+	}
+
+	private PythonWorker startWorker() throws IOException, InterruptedException {
+		// 启用进程池时直接取出预热进程，省去启动和导入时间
+		return workerPool.isEnabled() ? workerPool.checkout() : workerFactory.start();
+	}
+
+	/**
+	 * 回收空闲内核的进程；会话仍然存在，内核保留并标记变量已丢失，会话关闭时才移除内核
+	 */
+	private void reapIdle() {
+		long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+		for (PythonKernel kernel : kernels.values()) {
+			if (kernel.getLastUsedAt() < expireBefore && kernel.release()) {
+				log.info("Python内核空闲超时，已终止进程: {}", kernel.getSessionId());
+			}
+		}
+	}
+
+	private long runningCount() {
+		return kernels.values().stream().filter(PythonKernel::isRunning).count();
+	}
+
+	private double totalRssBytes() {
+		return kernels.values().stream().mapToLong(PythonKernel::getRssKb).sum() * 1024.0;
+	}
+
+	/**
+	 * 内核状态
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", enabled);
+		stats.put("kernels", kernels.size());
+		stats.put("running", runningCount());
+		stats.put("totalRssMb", (long) (totalRssBytes() / 1024 / 1024));
+		stats.put("maxRssMb", maxRssMb);
+		return stats;
+	}
+
+	@PreDestroy
+	public void shutdownAll() {
+		if (reaper != null) {
+			reaper.shutdownNow();
+		}
+		kernels.keySet().forEach(this::shutdown);
+	}
+
+}
@@ -0,0 +1,253 @@
+package com.mathagent.python;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Python源码词法分析 单遍扫描，输出名称、运算符、字符串等Token，跳过注释；字符串内容不展开，
+ * f-string中花括号里的表达式按代码继续分析
+ *
+ * 只用于安全检查，不做语法校验：不完整的字符串、括号不配对等情况按尽量宽松的方式处理
+ *
+ * @author Makoto
+ */
+public final class PythonTokenizer {
+
+	private static final Set<String> STRING_PREFIXES = Set.of("r", "u", "b", "f", "br", "rb", "fr", "rf");
+
+	/**
+	 * 单字符运算符的共享字符串，避免每个Token分配一次
+	 */
+	private static final String[] ASCII_OPS = new String[128];
+
+	static {
+		for (char c = 0; c < 128; c++) {
+			ASCII_OPS[c] = String.valueOf(c);
+		}
+	}
+
+	private final String source;
+
+	private final int end;
+
+	private final List<Token> tokens;
+
+	private int pos;
+
+	private int line;
+
+	private int depth;
+
+	private PythonTokenizer(String source, int start, int end, int line) {
+		this.source = source;
+		this.pos = start;
+		this.end = end;
+		this.line = line;
+		// 数值计算代码平均每3~4个字符一个Token
+		this.tokens = new ArrayList<>(Math.max(16, (end - start) / 3));
+	}
+
+	/**
+	 * 对源码做词法分析
+	 */
+	public static List<Token> tokenize(String source) {
+		PythonTokenizer tokenizer = new PythonTokenizer(source, 0, source.length(), 1);
+		tokenizer.run();
+		return tokenizer.tokens;
+	}
+
+	private void run() {
+		while (pos < end) {
+			char c = source.charAt(pos);
+			if (c == '#') {
+				while (pos < end && source.charAt(pos) != '\n') {
+					pos++;
+				}
+			}
+			else if (c == '\\' && pos + 1 < end && source.charAt(pos + 1) == '\n') {
+				// 续行符，逻辑行未结束
+				pos += 2;
+				line++;
+			}
+			else if (c == '\n') {
+				if (depth == 0) {
+					newline();
+				}
+				line++;
+				pos++;
+			}
+			else if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+				pos++;
+			}
+			else if (isNameStart(c)) {
+				readName();
+			}
+			else if (isDigit(c) || (c == '.' && pos + 1 < end && isDigit(source.charAt(pos + 1)))) {
+				readNumber();
+			}
+			else if (c == '\'' || c == '"') {
+				readString(pos, false);
+			}
+			else {
+				if (c == '(' || c == '[' || c == '{') {
+					depth++;
+				}
+				else if ((c == ')' || c == ']' || c == '}') && depth > 0) {
+					depth--;
+				}
+				add(Type.OP, c < 128 ? ASCII_OPS[c] : String.valueOf(c));
+				pos++;
+			}
+		}
+		newline();
+	}
+
+	private void readName() {
+		int start = pos;
+		while (pos < end && isNamePart(source.charAt(pos))) {
+			pos++;
+		}
+		String name = source.substring(start, pos);
+		if (pos < end && (source.charAt(pos) == '\'' || source.charAt(pos) == '"') && pos - start <= 2
+				&& STRING_PREFIXES.contains(name.toLowerCase())) {
+			readString(start, name.toLowerCase().contains("f"));
+			return;
+		}
+		add(Type.NAME, name);
+	}
+
+	private void readNumber() {
+		int start = pos;
+		while (pos < end && (isNamePart(source.charAt(pos)) || source.charAt(pos) == '.')) {
+			pos++;
+		}
+		add(Type.NUMBER, source.substring(start, pos));
+	}
+
+	/**
+	 * 读取字符串字面量（pos指向引号），f-string的替换字段作为代码分析
+	 */
+	private void readString(int start, boolean formatted) {
+		int startLine = line;
+		char quote = source.charAt(pos);
+		boolean triple = pos + 2 < end && source.charAt(pos + 1) == quote && source.charAt(pos + 2) == quote;
+		pos += triple ? 3 : 1;
+		while (pos < end) {
+			char c = source.charAt(pos);
+			if (c == '\\') {
+				if (pos + 1 < end && source.charAt(pos + 1) == '\n') {
+					line++;
+				}
+				pos += 2;
+				continue;
+			}
+			if (c == '\n') {
+				if (!triple) {
+					// 单引号字符串不能跨行，按未闭合处理，换行符留给外层计数
+					break;
+				}
+				line++;
+			}
+			if (c == quote && (!triple || (pos + 2 < end && source.charAt(pos + 1) == quote
+					&& source.charAt(pos + 2) == quote))) {
+				pos += triple ? 3 : 1;
+				break;
+			}
+			if (formatted && c == '{') {
+				if (pos + 1 < end && source.charAt(pos + 1) == '{') {
+					pos += 2;
+					continue;
+				}
+				readReplacementField();
+				continue;
+			}
+			pos++;
+		}
+		// 安全检查不关心字符串内容，只保留前缀和引号
+		tokens.add(new Token(Type.STRING, source.substring(start, Math.min(start + 4, end)), startLine));
+	}
+
+	/**
+	 * f-string替换字段 {expr!r:spec}，表达式部分单独做词法分析
+	 */
+	private void readReplacementField() {
+		int exprStart = pos + 1;
+		int exprLine = line;
+		int nesting = 0;
+		pos++;
+		while (pos < end) {
+			char c = source.charAt(pos);
+			if (c == '\n') {
+				line++;
+			}
+			else if (c == '{' || c == '(' || c == '[') {
+				nesting++;
+			}
+			else if (c == ')' || c == ']') {
+				nesting = Math.max(0, nesting - 1);
+			}
+			else if (c == '}') {
+				if (nesting == 0) {
+					break;
+				}
+				nesting--;
+			}
+			pos++;
+		}
+		PythonTokenizer inner = new PythonTokenizer(source, exprStart, Math.min(pos, end), exprLine);
+		inner.run();
+		for (Token token : inner.tokens) {
+			if (token.type() != Type.NEWLINE) {
+				tokens.add(token);
+			}
+		}
+		pos++;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isNameStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+				|| (c >= 128 && Character.isUnicodeIdentifierStart(c));
+	}
+
+	private static boolean isNamePart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+				|| (c >= 128 && Character.isUnicodeIdentifierPart(c));
+	}
+
+	private void newline() {
+		if (!tokens.isEmpty() && tokens.get(tokens.size() - 1).type() != Type.NEWLINE) {
+			tokens.add(new Token(Type.NEWLINE, "\n", line));
+		}
+	}
+
+	private void add(Type type, String text) {
+		tokens.add(new Token(type, text, line));
+	}
+
+	/**
+	 * Token类型
+	 */
+	public enum Type {
+
+		NAME, NUMBER, STRING, OP, NEWLINE
+
+	}
+
+	/**
+	 * 词法单元
+	 * @param line 所在行号（从1开始）
+	 */
+	public record Token(Type type, String text, int line) {
+
+		public boolean is(Type expectedType, String expectedText) {
+			return type == expectedType && text.equals(expectedText);
+		}
+
+	}
+
+}
@@ -0,0 +1,328 @@
+package com.mathagent.python;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 常驻Python执行进程 启动时预加载numpy/pandas/scipy/matplotlib，通过stdin/stdout长度前缀帧交换JSON请求
+ *
+ * 同一时刻只处理一个请求，由 {@link PythonWorkerPool} 或 {@link PythonKernel} 保证独占使用
+ *
+ * @author Makoto
+ */
+@Slf4j
+public class PythonWorker {
+
+	/**
+	 * 单帧最大长度，防止协议错乱时分配超大内存
+	 */
+	private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	/**
+	 * 执行超时后强制终止进程的看门狗
+	 */
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "python-worker-watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String name;
+
+	private final Process process;
+
+	private final DataOutputStream requests;
+
+	private final DataInputStream responses;
+
+	private final ObjectMapper objectMapper;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final long createdAt = System.currentTimeMillis();
+
+	private volatile long lastUsedAt = createdAt;
+
+	private volatile long baselineRssKb;
+
+	private volatile long rssKb;
+
+	private volatile int runs;
+
+	private volatile boolean killedByTimeout;
+
+	/**
+	 * 最近一次使用该进程的任务，不同任务不共用同一个解释器
+	 */
+	private volatile String owner;
+
+	private PythonWorker(Process process, ObjectMapper objectMapper) {
+		this.name = "python-worker-" + SEQUENCE.incrementAndGet();
+		this.process = process;
+		this.requests = new DataOutputStream(process.getOutputStream());
+		this.responses = new DataInputStream(process.getInputStream());
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * 启动常驻进程并等待预加载完成
+	 * @param command Python解释器命令
+	 * @param script worker.py路径
+	 * @param workingDir 工作目录
+	 */
+	public static PythonWorker start(String command, Path script, Path workingDir, Map<String, String> environment,
+			ObjectMapper objectMapper) throws IOException {
+		ProcessBuilder processBuilder = new ProcessBuilder(command, "-u", script.toString());
+		processBuilder.directory(workingDir.toFile());
+		processBuilder.environment().putAll(environment);
+		Process process = processBuilder.start();
+
+		PythonWorker worker = new PythonWorker(process, objectMapper);
+		worker.drainStderr(process.getErrorStream());
+		try {
+			Map<String, Object> ready = worker.readFrame();
+			worker.baselineRssKb = toLong(ready.get("rss_kb"));
+			worker.rssKb = worker.baselineRssKb;
+			log.info("Python常驻进程已就绪: {} (pid {}), RSS {} KB", worker.name, process.pid(), worker.rssKb);
+			return worker;
+		}
+		catch (IOException e) {
+			worker.destroy();
+			throw new IOException("Python常驻进程启动失败: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 执行一个代码单元格
+	 * @param artifactDir 单元格产出目录，执行结束时仍打开的图像保存到该目录；为null时不保存
+	 * @param persistent 为true时在进程级会话命名空间中执行，变量在单元格之间保留
+	 * @param limits 超时和输出保留限制；进程内的定时器未能中止执行时，超过宽限期后强制终止整个进程
+	 * @throws TimeoutKilledException 执行超时且进程已被强制终止
+	 */
+	public WorkerResponse execute(String code, Path workingDir, Path artifactDir, boolean persistent,
+			ExecutionLimits limits) throws IOException {
+		Map<String, Object> request = new HashMap<>();
+		request.put("op", "exec");
+		request.put("code", code);
+		request.put("cwd", workingDir != null ? workingDir.toAbsolutePath().toString() : null);
+		request.put("artifact_dir", artifactDir != null ? artifactDir.toAbsolutePath().toString() : null);
+		request.put("persist", persistent);
+		request.put("wall_timeout", limits.wallSeconds());
+		request.put("cpu_timeout", limits.cpuSeconds());
+		request.put("head_chars", limits.headChars());
+		request.put("tail_chars", limits.tailChars());
+
+		long hardKillMillis = limits.hardKillMillis();
+		ScheduledFuture<?> watchdog = hardKillMillis > 0
+				? WATCHDOG.schedule(this::killOnTimeout, hardKillMillis, TimeUnit.MILLISECONDS) : null;
+		try {
+			return exchange(request);
+		}
+		catch (IOException e) {
+			if (killedByTimeout) {
+				throw new TimeoutKilledException(
+						"执行超时(" + limits.wallSeconds() + "s)，Python进程未响应中断已被强制终止: " + name, e);
+			}
+			throw e;
+		}
+		finally {
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+		}
+	}
+
+	private void killOnTimeout() {
+		killedByTimeout = true;
+		log.warn("Python常驻进程执行超时未响应，强制终止: {} (pid {})", name, process.pid());
+		destroy();
+	}
+
+	/**
+	 * 健康检查
+	 */
+	public boolean ping() {
+		try {
+			return exchange(Map.of("op", "ping")).ok();
+		}
+		catch (IOException e) {
+			log.warn("Python常驻进程健康检查失败: {}", name, e);
+			return false;
+		}
+	}
+
+	private WorkerResponse exchange(Map<String, Object> request) throws IOException {
+		lock.lock();
+		try {
+			writeFrame(request);
+			Map<String, Object> response = readFrame();
+			lastUsedAt = System.currentTimeMillis();
+			rssKb = toLong(response.get("rss_kb"));
+			runs = (int) toLong(response.get("runs"));
+			Object timedOut = response.get("timed_out");
+			return new WorkerResponse(Boolean.TRUE.equals(response.get("ok")), (int) toLong(response.get("exit_code")),
+					stringOf(response.get("stdout")), stringOf(response.get("stderr")),
+					timedOut != null ? timedOut.toString() : null, toLong(response.get("stdout_total")),
+					toLong(response.get("stdout_dropped")), toLong(response.get("stderr_total")),
+					toLong(response.get("stderr_dropped")));
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeFrame(Map<String, Object> request) throws IOException {
+		byte[] payload = objectMapper.writeValueAsBytes(request);
+		requests.writeInt(payload.length);
+		requests.write(payload);
+		requests.flush();
+	}
+
+	private Map<String, Object> readFrame() throws IOException {
+		int length;
+		try {
+			length = responses.readInt();
+		}
+		catch (EOFException e) {
+			throw new IOException("Python常驻进程已退出: " + name, e);
+		}
+		if (length < 0 || length > MAX_FRAME_BYTES) {
+			throw new IOException("Python常驻进程返回了非法帧长度: " + length);
+		}
+		byte[] payload = responses.readNBytes(length);
+		if (payload.length < length) {
+			throw new IOException("Python常驻进程响应不完整: " + name);
+		}
+		return objectMapper.readValue(payload, new TypeReference<Map<String, Object>>() {
+		});
+	}
+
+	/**
+	 * 持续读取stderr，避免缓冲区写满阻塞进程；用户代码的输出已在进程内捕获，这里只有解释器级别的信息
+	 */
+	private void drainStderr(InputStream stderr) {
+		Thread thread = new Thread(() -> {
+			byte[] buffer = new byte[8192];
+			try {
+				int read;
+				while ((read = stderr.read(buffer)) != -1) {
+					if (log.isDebugEnabled()) {
+						log.debug("{} stderr: {}", name, new String(buffer, 0, read, StandardCharsets.UTF_8).strip());
+					}
+				}
+			}
+			catch (IOException e) {
+				// 进程退出
+			}
+		}, name + "-stderr");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 终止进程及其所有子进程
+	 */
+	public void destroy() {
+		if (process.isAlive()) {
+			process.descendants().forEach(ProcessHandle::destroyForcibly);
+			process.destroyForcibly();
+		}
+	}
+
+	public boolean isAlive() {
+		return process.isAlive();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getPid() {
+		return process.pid();
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public long getRssKb() {
+		return rssKb;
+	}
+
+	/**
+	 * 相对启动时的内存增长
+	 */
+	public long getRssGrowthKb() {
+		return rssKb - baselineRssKb;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	void setOwner(String owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * 是否可以交给该任务使用：未执行过代码的进程，或上次就是该任务使用的进程
+	 */
+	boolean canServe(String taskId) {
+		return runs == 0 && owner == null || taskId != null && taskId.equals(owner);
+	}
+
+	public long getLastUsedAt() {
+		return lastUsedAt;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Number number ? number.longValue() : 0;
+	}
+
+	private static String stringOf(Object value) {
+		return value != null ? value.toString() : "";
+	}
+
+	/**
+	 * 执行响应
+	 * @param timedOut 超时类型（wall/cpu），未超时为null
+	 */
+	public record WorkerResponse(boolean ok, int exitCode, String stdout, String stderr, String timedOut,
+			long stdoutTotalChars, long stdoutDroppedChars, long stderrTotalChars, long stderrDroppedChars) {
+	}
+
+	/**
+	 * 执行超时后进程被强制终止
+	 */
+	public static class TimeoutKilledException extends IOException {
+
+		public TimeoutKilledException(String message, Throwable cause) {
+			super(message, cause);
+		}
+
+	}
+
+}
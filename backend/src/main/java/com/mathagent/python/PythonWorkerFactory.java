@@ -0,0 +1,71 @@
+package com.mathagent.python;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Python常驻进程工厂 负责释放worker.py脚本并按统一的解释器、工作目录和环境变量启动进程
+ *
+ * @author Makoto
+ */
+@Component
+public class PythonWorkerFactory {
+
+	private static final String WORKER_SCRIPT = "python/worker.py";
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private PythonExecutionScheduler executionScheduler;
+
+	@Value("${math-agent.python.interpreter:python}")
+	private String interpreter;
+
+	private Path workerScript;
+
+	private Path workingDir;
+
+	/**
+	 * 启动一个常驻进程，阻塞到预加载完成
+	 */
+	public PythonWorker start() throws IOException {
+		Map<String, String> environment = new HashMap<>(executionScheduler.processEnvironment());
+		environment.put("PYTHONPATH", workingDir().toString());
+		environment.put("MPLBACKEND", "Agg");
+		return PythonWorker.start(interpreter, workerScript(), workingDir(), environment, objectMapper);
+	}
+
+	public synchronized Path workingDir() throws IOException {
+		if (workingDir == null) {
+			workingDir = Paths.get("python_code").toAbsolutePath();
+			Files.createDirectories(workingDir);
+		}
+		return workingDir;
+	}
+
+	private synchronized Path workerScript() throws IOException {
+		if (workerScript == null) {
+			Path script = Files.createTempFile("mathagent-worker-", ".py");
+			try (InputStream in = new ClassPathResource(WORKER_SCRIPT).getInputStream()) {
+				Files.copy(in, script, StandardCopyOption.REPLACE_EXISTING);
+			}
+			script.toFile().deleteOnExit();
+			workerScript = script;
+		}
+		return workerScript;
+	}
+
+}
@@ -0,0 +1,294 @@
+package com.mathagent.python;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Python常驻进程池 预先启动并保温若干解释器，执行代码单元格时直接复用，省去每次启动解释器和导入科学计算库的时间
+ *
+ * 进程执行达到次数上限或内存增长超过阈值后回收重建；定期健康检查空闲进程；
+ * 有请求排队时扩容到上限，空闲超时后缩容到最小值
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class PythonWorkerPool {
+
+	@Autowired
+	private PythonWorkerFactory workerFactory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${math-agent.python.pool.enabled:true}")
+	private boolean enabled;
+
+	@Value("${math-agent.python.pool.min-size:1}")
+	private int minSize;
+
+	@Value("${math-agent.python.pool.max-size:4}")
+	private int maxSize;
+
+	@Value("${math-agent.python.pool.max-runs:50}")
+	private int maxRuns;
+
+	@Value("${math-agent.python.pool.max-rss-growth-mb:512}")
+	private long maxRssGrowthMb;
+
+	@Value("${math-agent.python.pool.idle-timeout-seconds:300}")
+	private long idleTimeoutSeconds;
+
+	@Value("${math-agent.python.pool.health-check-interval-seconds:30}")
+	private long healthCheckIntervalSeconds;
+
+	@Value("${math-agent.python.pool.acquire-timeout-seconds:120}")
+	private long acquireTimeoutSeconds;
+
+	private final LinkedBlockingDeque<PythonWorker> idle = new LinkedBlockingDeque<>();
+
+	private final Set<PythonWorker> all = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger starting = new AtomicInteger();
+
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private ScheduledExecutorService maintenance;
+
+	private Timer acquireTimer;
+
+	private volatile boolean closed;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+
+		acquireTimer = Timer.builder("mathagent.python.pool.acquire")
+			.description("等待Python常驻进程的时间")
+			.register(meterRegistry);
+		Gauge.builder("mathagent.python.pool.size", all, Set::size).register(meterRegistry);
+		Gauge.builder("mathagent.python.pool.idle", idle, LinkedBlockingDeque::size).register(meterRegistry);
+		Gauge.builder("mathagent.python.pool.waiting", waiting, AtomicInteger::get).register(meterRegistry);
+
+		maintenance = Executors.newScheduledThreadPool(2, r -> {
+			Thread thread = new Thread(r, "python-pool-maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < minSize; i++) {
+			spawnAsync();
+		}
+		maintenance.scheduleWithFixedDelay(this::maintain, healthCheckIntervalSeconds, healthCheckIntervalSeconds,
+				TimeUnit.SECONDS);
+		log.info("Python常驻进程池已启用: min={}, max={}, maxRuns={}", minSize, maxSize, maxRuns);
+	}
+
+	public boolean isEnabled() {
+		return enabled && !closed;
+	}
+
+	/**
+	 * 获取一个空闲进程，必要时扩容
+	 *
+	 * 非会话单元格在全新的全局命名空间中执行，但导入的模块、库的全局设置等解释器状态仍会保留，
+	 * 因此进程只在同一任务内复用：优先取该任务上次用过的进程或未执行过代码的进程，
+	 * 只剩其他任务用过的进程时回收它并补充新进程
+	 * @param taskId 使用进程的任务，为null时只接受未执行过代码的进程
+	 * @throws IOException 超时仍无可用进程
+	 */
+	public PythonWorker acquire(String taskId) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		waiting.incrementAndGet();
+		try {
+			long deadline = start + TimeUnit.SECONDS.toNanos(acquireTimeoutSeconds);
+			while (true) {
+				PythonWorker worker = pollIdle(taskId);
+				if (worker == null) {
+					scaleUpIfNeeded();
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						throw new IOException("等待Python常驻进程超时(" + acquireTimeoutSeconds + "s)");
+					}
+					worker = idle.pollFirst(remaining, TimeUnit.NANOSECONDS);
+				}
+				if (worker == null) {
+					continue;
+				}
+				if (!worker.isAlive()) {
+					retire(worker, "进程已退出");
+				}
+				else if (!worker.canServe(taskId)) {
+					retire(worker, "切换到其他任务");
+					spawnAsync();
+				}
+				else {
+					worker.setOwner(taskId);
+					return worker;
+				}
+			}
+		}
+		finally {
+			waiting.decrementAndGet();
+			acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * 从空闲队列取进程：优先可直接交给该任务的进程，没有时取队首
+	 */
+	private PythonWorker pollIdle(String taskId) {
+		for (PythonWorker worker : idle) {
+			if (worker.canServe(taskId) && idle.remove(worker)) {
+				return worker;
+			}
+		}
+		return idle.pollFirst();
+	}
+
+	/**
+	 * 取出一个预热进程独占使用（会话内核），不再归还到池中，池按最小进程数补充
+	 */
+	public PythonWorker checkout() throws IOException, InterruptedException {
+		PythonWorker worker = acquire(null);
+		all.remove(worker);
+		if (all.size() + starting.get() < minSize) {
+			spawnAsync();
+		}
+		return worker;
+	}
+
+	/**
+	 * 归还进程：执行失败、次数超限或内存增长过多时回收，否则放回池中
+	 * @param healthy 本次使用是否正常完成（协议异常、被取消时为false）
+	 */
+	public void release(PythonWorker worker, boolean healthy) {
+		if (!healthy || closed || !worker.isAlive()) {
+			retire(worker, healthy ? "进程已退出" : "执行异常");
+		}
+		else if (worker.getRuns() >= maxRuns) {
+			retire(worker, "执行次数达到上限 " + maxRuns);
+		}
+		else if (worker.getRssGrowthKb() > maxRssGrowthMb * 1024) {
+			retire(worker, "内存增长 " + worker.getRssGrowthKb() / 1024 + "MB");
+		}
+		else {
+			idle.offerFirst(worker);
+			return;
+		}
+		if (all.size() + starting.get() < minSize || waiting.get() > 0) {
+			spawnAsync();
+		}
+	}
+
+	/**
+	 * 有请求排队且未达上限时启动新进程（预加载耗时较长，异步启动）
+	 */
+	private void scaleUpIfNeeded() {
+		int pending = starting.get();
+		if (all.size() + pending < maxSize && waiting.get() > pending) {
+			spawnAsync();
+		}
+	}
+
+	private void spawnAsync() {
+		if (closed) {
+			return;
+		}
+		starting.incrementAndGet();
+		maintenance.execute(() -> {
+			try {
+				PythonWorker worker = workerFactory.start();
+				all.add(worker);
+				idle.offerLast(worker);
+			}
+			catch (IOException e) {
+				log.error("启动Python常驻进程失败", e);
+			}
+			finally {
+				starting.decrementAndGet();
+			}
+		});
+	}
+
+	private void retire(PythonWorker worker, String reason) {
+		all.remove(worker);
+		idle.remove(worker);
+		worker.destroy();
+		log.info("回收Python常驻进程 {}: {}", worker.getName(), reason);
+	}
+
+	/**
+	 * 定期维护：健康检查空闲进程，空闲超时缩容，补足最小进程数
+	 */
+	private void maintain() {
+		try {
+			long now = System.currentTimeMillis();
+			List<PythonWorker> snapshot = new ArrayList<>(idle);
+			for (PythonWorker worker : snapshot) {
+				// 只检查仍在空闲队列中的进程，取出期间不会被其他请求使用
+				if (!idle.remove(worker)) {
+					continue;
+				}
+				boolean expired = all.size() > minSize && now - worker.getLastUsedAt() > idleTimeoutSeconds * 1000;
+				if (expired) {
+					retire(worker, "空闲超时");
+				}
+				else if (!worker.ping()) {
+					retire(worker, "健康检查失败");
+				}
+				else {
+					idle.offerLast(worker);
+				}
+			}
+			for (int i = all.size() + starting.get(); i < minSize; i++) {
+				spawnAsync();
+			}
+		}
+		catch (Exception e) {
+			log.warn("Python常驻进程池维护失败", e);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		closed = true;
+		if (maintenance != null) {
+			maintenance.shutdownNow();
+		}
+		for (PythonWorker worker : all) {
+			worker.destroy();
+		}
+		all.clear();
+		idle.clear();
+	}
+
+	/**
+	 * 进程池状态
+	 */
+	public Map<String, Object> getStats() {
+		return Map.of("enabled", isEnabled(), "size", all.size(), "idle", idle.size(), "starting", starting.get(),
+				"waiting", waiting.get());
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.mathagent.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mathagent.mapper.TaskCheckpointMapper;
+import com.mathagent.model.TaskCheckpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Graph检查点服务 在每个Agent节点成功后把节点输出持久化到MySQL，失败后从最后一个成功节点继续执行
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Service
+public class GraphCheckpointService {
+
+	/**
+	 * 恢复执行时记录已完成节点的状态键
+	 */
+	public static final String COMPLETED_NODES_KEY = "resume_completed_nodes";
+
+	@Autowired
+	private TaskCheckpointMapper taskCheckpointMapper;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * 保存节点检查点
+	 */
+	public void save(Long taskId, String executionId, String nodeName, Map<String, Object> nodeOutput) {
+		if (taskId == null) {
+			return;
+		}
+		try {
+			TaskCheckpoint checkpoint = TaskCheckpoint.builder()
+				.taskId(taskId)
+				.executionId(executionId)
+				.nodeName(nodeName)
+				.stateData(objectMapper.writeValueAsString(nodeOutput))
+				.createdAt(LocalDateTime.now())
+				.build();
+			taskCheckpointMapper.insert(checkpoint);
+			log.debug("保存检查点: {} - {}", taskId, nodeName);
+		}
+		catch (Exception e) {
+			// 检查点失败不影响本次执行，只影响之后的恢复
+			log.warn("保存检查点失败: {} - {}", taskId, nodeName, e);
+		}
+	}
+
+	/**
+	 * 加载恢复状态：合并所有已完成节点的输出，并记录已完成节点列表
+	 */
+	public Map<String, Object> loadResumeState(Long taskId) {
+		Map<String, Object> state = new HashMap<>();
+		List<String> completedNodes = new ArrayList<>();
+
+		for (TaskCheckpoint checkpoint : taskCheckpointMapper.selectByTaskId(taskId)) {
+			try {
+				Map<String, Object> nodeOutput = objectMapper.readValue(checkpoint.getStateData(),
+						new TypeReference<Map<String, Object>>() {
+						});
+				state.putAll(nodeOutput);
+				if (!completedNodes.contains(checkpoint.getNodeName())) {
+					completedNodes.add(checkpoint.getNodeName());
+				}
+			}
+			catch (Exception e) {
+				log.warn("检查点解析失败，忽略: {} - {}", taskId, checkpoint.getNodeName(), e);
+			}
+		}
+
+		state.put(COMPLETED_NODES_KEY, completedNodes);
+		return state;
+	}
+
+	/**
+	 * 清除任务的所有检查点（重新完整执行时调用）
+	 */
+	public void clear(Long taskId) {
+		taskCheckpointMapper.deleteByTaskId(taskId);
+	}
+
+}
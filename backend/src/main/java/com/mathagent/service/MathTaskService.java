@@ -4,6 +4,7 @@ import com.alibaba.cloud.ai.graph.CompiledGraph;
 import com.alibaba.cloud.ai.graph.OverAllState;
 import com.mathagent.exception.TaskManagementException;
 import com.mathagent.mapper.MathTaskMapper;
+import com.mathagent.mapper.TaskCheckpointMapper;
 import com.mathagent.mapper.TaskLogMapper;
 import com.mathagent.mapper.TaskResultMapper;
 import com.mathagent.util.ExceptionHandler;
@@ -41,6 +42,12 @@ public class MathTaskService {
 	@Autowired
 	private TaskLogMapper taskLogMapper;
 
+	@Autowired
+	private TaskLogWriter taskLogWriter;
+
+	@Autowired
+	private TaskCheckpointMapper taskCheckpointMapper;
+
 	@Autowired
 	@Qualifier("compiledMathModelingGraph")
 	private CompiledGraph compiledGraph;
@@ -174,10 +181,10 @@ public class MathTaskService {
 	}
 
 	/**
-	 * 获取任务日志
+	 * 获取任务日志（包含尚未写入数据库的日志）
 	 */
 	public List<TaskLog> getTaskLogs(Long taskId) {
-		return taskLogMapper.selectByTaskId(taskId);
+		return taskLogWriter.getTaskLogs(taskId);
 	}
 
 	/**
@@ -201,7 +208,7 @@ public class MathTaskService {
 	}
 
 	/**
-	 * 添加任务日志
+	 * 添加任务日志 异步批量写入，不占用当前事务
 	 */
 	public void addTaskLog(Long taskId, String nodeName, TaskLog.LogLevel level, String message, String details) {
 		TaskLog log = TaskLog.builder()
@@ -213,7 +220,7 @@ public class MathTaskService {
 			.timestamp(LocalDateTime.now())
 			.build();
 
-		taskLogMapper.insert(log);
+		taskLogWriter.append(log);
 	}
 
 	/**
@@ -262,9 +269,11 @@ public class MathTaskService {
 	public void deleteTask(Long taskId) {
 		log.info("删除任务: {}", taskId);
 
-		// 删除相关日志和结果
+		// 删除相关日志、结果和检查点
+		taskLogWriter.discard(taskId);
 		taskLogMapper.deleteByTaskId(taskId);
 		taskResultMapper.deleteByTaskId(taskId);
+		taskCheckpointMapper.deleteByTaskId(taskId);
 
 		// 删除任务
 		mathTaskMapper.deleteById(taskId);
@@ -0,0 +1,309 @@
+package com.mathagent.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mathagent.cache.TieredCache;
+import com.mathagent.mapper.ModelingAnalysisCacheMapper;
+import com.mathagent.model.ModelingAnalysisCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 建模分析语义缓存服务 对问题描述做向量化，在历史分析中查找最相近的问题
+ *
+ * 相似度不低于复用阈值时直接复用历史建模分析；介于适配阈值和复用阈值之间时由调用方做轻量适配；其余情况完整调用模型。
+ * 只改了数据的题目向量相似度同样很高，因此直接复用还要求规范化后的文本相同或数值常量一致，否则降为适配。
+ * 向量模型通过 {@link EmbeddingModel} 接口注入，测试中可替换为本地实现
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Service
+public class ModelingSemanticCacheService {
+
+	/**
+	 * 数值常量：整数、小数、科学计数法，可带百分号
+	 */
+	private static final Pattern NUMBER = Pattern.compile("\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?%?");
+
+	@Autowired
+	@Qualifier("dashScopeEmbeddingModel")
+	private EmbeddingModel embeddingModel;
+
+	@Autowired
+	private ModelingAnalysisCacheMapper cacheMapper;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${spring.ai.dashscope.embedding.model:text-embedding-v3}")
+	private String embeddingModelName;
+
+	@Value("${math-agent.modeling.semantic-cache.enabled:true}")
+	private boolean enabled;
+
+	@Value("${math-agent.modeling.semantic-cache.reuse-threshold:0.95}")
+	private double reuseThreshold;
+
+	@Value("${math-agent.modeling.semantic-cache.adapt-threshold:0.88}")
+	private double adaptThreshold;
+
+	@Value("${math-agent.modeling.semantic-cache.max-entries:2000}")
+	private int maxEntries;
+
+	@Value("${math-agent.modeling.semantic-cache.max-input-chars:6000}")
+	private int maxInputChars;
+
+	/**
+	 * 内存索引 - 首次查询时从数据库加载，按写入顺序追加
+	 */
+	private List<IndexEntry> index;
+
+	/**
+	 * 查找最相近的历史建模分析
+	 * @return 查找结果，缓存关闭或向量化失败时返回 {@link Lookup#DISABLED}
+	 */
+	public Lookup lookup(String problemStatement) {
+		if (!enabled || problemStatement == null || problemStatement.isBlank()) {
+			return Lookup.DISABLED;
+		}
+
+		String problemHash = TieredCache.sha256(problemStatement.strip());
+		float[] vector;
+		try {
+			vector = normalize(embeddingModel.embed(truncate(problemStatement.strip())));
+		}
+		catch (Exception e) {
+			// 向量服务不可用时退化为完整调用
+			log.warn("问题描述向量化失败，跳过语义缓存: {}", e.getMessage());
+			return Lookup.DISABLED;
+		}
+
+		IndexEntry best = null;
+		double bestScore = -1;
+		for (IndexEntry entry : snapshot()) {
+			double score = entry.problemHash.equals(problemHash) ? 1.0 : dot(vector, entry.vector);
+			if (score > bestScore) {
+				best = entry;
+				bestScore = score;
+			}
+		}
+
+		Decision decision = Decision.MISS;
+		if (best != null && bestScore >= reuseThreshold) {
+			decision = best.problemHash.equals(problemHash) || sameProblem(problemStatement, best.problemStatement)
+					? Decision.REUSE : Decision.ADAPT;
+		}
+		else if (best != null && bestScore >= adaptThreshold) {
+			decision = Decision.ADAPT;
+		}
+		record(decision);
+
+		if (decision == Decision.MISS) {
+			log.debug("语义缓存未命中, 最高相似度: {}", bestScore);
+			return new Lookup(decision, problemHash, vector, null, bestScore);
+		}
+		cacheMapper.incrementHitCount(best.id);
+		log.info("语义缓存{}: 相似度 {}, 缓存条目 {}", decision == Decision.REUSE ? "复用" : "适配", bestScore, best.id);
+		return new Lookup(decision, problemHash, vector, best, bestScore);
+	}
+
+	/**
+	 * 保存新的建模分析结果
+	 */
+	public void store(Lookup lookup, String problemStatement, Map<String, Object> analysis) {
+		if (lookup.vector() == null || analysis == null || analysis.containsKey("raw_response")) {
+			return;
+		}
+		try {
+			ModelingAnalysisCache entry = ModelingAnalysisCache.builder()
+				.problemHash(lookup.problemHash())
+				.problemStatement(problemStatement)
+				.embeddingModel(embeddingModelName)
+				.embedding(objectMapper.writeValueAsString(lookup.vector()))
+				.analysisData(objectMapper.writeValueAsString(analysis))
+				.createdAt(LocalDateTime.now())
+				.build();
+			cacheMapper.insert(entry);
+			append(new IndexEntry(entry.getId(), lookup.problemHash(), problemStatement, lookup.vector(),
+					entry.getAnalysisData()));
+		}
+		catch (Exception e) {
+			// 缓存写入失败不影响本次建模结果
+			log.warn("保存建模分析语义缓存失败", e);
+		}
+	}
+
+	/**
+	 * 解析缓存中的建模分析结果
+	 */
+	public Map<String, Object> readAnalysis(IndexEntry entry) throws Exception {
+		return objectMapper.readValue(entry.analysisData, new TypeReference<Map<String, Object>>() {
+		});
+	}
+
+	private synchronized List<IndexEntry> snapshot() {
+		if (index == null) {
+			index = load();
+		}
+		return List.copyOf(index);
+	}
+
+	private synchronized void append(IndexEntry entry) {
+		if (index == null) {
+			index = load();
+			return;
+		}
+		index.add(entry);
+		while (index.size() > maxEntries) {
+			index.remove(0);
+		}
+	}
+
+	private List<IndexEntry> load() {
+		List<IndexEntry> entries = new ArrayList<>();
+		List<ModelingAnalysisCache> rows = cacheMapper.selectRecent(embeddingModelName, maxEntries);
+		// 查询结果按id倒序，转为写入顺序
+		for (int i = rows.size() - 1; i >= 0; i--) {
+			ModelingAnalysisCache row = rows.get(i);
+			try {
+				float[] vector = objectMapper.readValue(row.getEmbedding(), float[].class);
+				entries.add(new IndexEntry(row.getId(), row.getProblemHash(), row.getProblemStatement(),
+						normalize(vector), row.getAnalysisData()));
+			}
+			catch (Exception e) {
+				log.warn("语义缓存条目解析失败，忽略: {}", row.getId(), e);
+			}
+		}
+		log.info("加载建模分析语义缓存 {} 条", entries.size());
+		return entries;
+	}
+
+	/**
+	 * 两个题目是否可以共用同一份分析：规范化后文本相同，或出现的数值常量依次相同
+	 */
+	static boolean sameProblem(String statement, String cached) {
+		if (cached == null) {
+			return false;
+		}
+		String a = canonical(statement);
+		String b = canonical(cached);
+		return a.replaceAll("[\\s\\p{P}]+", "").equals(b.replaceAll("[\\s\\p{P}]+", ""))
+				|| numbers(a).equals(numbers(b));
+	}
+
+	/**
+	 * 全角字符转半角并统一小写
+	 */
+	private static String canonical(String text) {
+		return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+	}
+
+	/**
+	 * 按出现顺序提取数值常量，10 与 10.0 视为相同
+	 */
+	private static List<String> numbers(String text) {
+		List<String> numbers = new ArrayList<>();
+		Matcher matcher = NUMBER.matcher(text);
+		while (matcher.find()) {
+			String literal = matcher.group();
+			boolean percent = literal.endsWith("%");
+			String digits = percent ? literal.substring(0, literal.length() - 1) : literal;
+			numbers.add(new BigDecimal(digits).stripTrailingZeros().toPlainString() + (percent ? "%" : ""));
+		}
+		return numbers;
+	}
+
+	private void record(Decision decision) {
+		Counter.builder("mathagent.cache.requests")
+			.tag("cache", "modeling_semantic")
+			.tag("result", decision.name().toLowerCase())
+			.register(meterRegistry)
+			.increment();
+	}
+
+	private String truncate(String text) {
+		return text.length() > maxInputChars ? text.substring(0, maxInputChars) : text;
+	}
+
+	private static float[] normalize(float[] vector) {
+		double norm = 0;
+		for (float v : vector) {
+			norm += v * v;
+		}
+		norm = Math.sqrt(norm);
+		if (norm == 0) {
+			return vector;
+		}
+		float[] result = new float[vector.length];
+		for (int i = 0; i < vector.length; i++) {
+			result[i] = (float) (vector[i] / norm);
+		}
+		return result;
+	}
+
+	private static double dot(float[] a, float[] b) {
+		if (a.length != b.length) {
+			return -1;
+		}
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	public enum Decision {
+
+		/**
+		 * 未命中，完整调用模型
+		 */
+		MISS,
+
+		/**
+		 * 高度相似，直接复用
+		 */
+		REUSE,
+
+		/**
+		 * 较为相似，基于历史分析做轻量适配
+		 */
+		ADAPT
+
+	}
+
+	/**
+	 * 内存索引条目，向量已归一化，余弦相似度即点积
+	 */
+	public record IndexEntry(Long id, String problemHash, String problemStatement, float[] vector,
+			String analysisData) {
+	}
+
+	/**
+	 * 一次语义缓存查找的结果，未命中时保留向量供写入复用
+	 */
+	public record Lookup(Decision decision, String problemHash, float[] vector, IndexEntry match, double similarity) {
+
+		public static final Lookup DISABLED = new Lookup(Decision.MISS, null, null, null, 0);
+
+	}
+
+}
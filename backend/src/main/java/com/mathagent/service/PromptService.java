@@ -1,20 +1,47 @@
 package com.mathagent.service;
 
 import com.mathagent.exception.PromptProcessingException;
+import com.mathagent.llm.ContextBudgetManager;
+import com.mathagent.prompt.PromptDirectoryWatcher;
+import com.mathagent.prompt.PromptInputSerializer;
+import com.mathagent.prompt.PromptInputSerializer.SerializedInput;
+import com.mathagent.prompt.PromptRegistry;
+import com.mathagent.prompt.PromptSpec;
+import com.mathagent.prompt.PromptTemplate;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * 提示词管理服务 负责加载和管理Agent的提示词模板 支持多文件加载和分类管理
  * 
+ * 模板在加载时编译为字面量片段和变量槽位（见 {@link PromptTemplate}），渲染时一次遍历生成提示词；
+ * 已声明的模板（见下方 PromptSpec 常量）引用了未声明的变量时加载失败
+ *
+ * 已加载的模板保存为不可变快照，通过原子引用发布，读取不加锁；配置了外部提示词目录时，目录中的同名文件覆盖类路径中的文件，
+ * 文件变化后在后台重新加载并整体替换快照，修改无需重启即可生效
+ *
+ * 结构化的变量值（建模结果、代码执行结果等）经 {@link PromptInputSerializer} 转换为紧凑JSON并按字段预算截断后插入，
+ * 合计不超过 {@link ContextBudgetManager} 为该Agent给出的输入预算
+ *
  * @author Makoto
  */
 @Slf4j
@@ -26,54 +53,204 @@ public class PromptService {
 			"prompts/coding-agent-prompts.md", "prompts/writing-agent-prompts.md", "prompts/common-prompts.md",
 			"prompts/nodes-prompts.md" };
 
-	private Map<String, String> promptTemplates = new HashMap<>();
+	private static final Pattern PROMPT_BLOCK_PATTERN = Pattern.compile("## (.*?)\\n\\n(.*?)(?=\\n## |$)",
+			Pattern.DOTALL);
 
-	private boolean initialized = false;
+	// ========== 提示词声明：模板名称及变量顺序 ==========
+
+	private static final PromptSpec MODELING_ANALYSIS = PromptSpec.of("modeling.问题分析提示词", "problemStatement");
+
+	private static final PromptSpec MODELING_ADAPTATION = PromptSpec.of("modeling.分析结果适配提示词", "problemStatement",
+			"cachedProblemStatement", "cachedAnalysis");
+
+	private static final PromptSpec MODEL_VALIDATION = PromptSpec.of("modeling.模型验证提示词", "modelDefinition");
+
+	private static final PromptSpec COMPLEXITY_ASSESSMENT = PromptSpec.of("modeling.复杂度评估提示词", "problemStatement");
+
+	private static final PromptSpec CODE_GENERATION = PromptSpec.of("coding.代码生成提示词", "modelingResult");
+
+	private static final PromptSpec CODE_DEBUG = PromptSpec.of("coding.代码调试提示词", "originalCode", "error",
+			"sessionContext");
+
+	private static final PromptSpec CODE_OPTIMIZATION = PromptSpec.of("coding.代码优化提示词", "originalCode");
+
+	private static final PromptSpec ALGORITHM_IMPLEMENTATION = PromptSpec.of("coding.算法实现提示词",
+			"algorithmDescription");
+
+	private static final PromptSpec VISUALIZATION_CODE = PromptSpec.of("coding.可视化代码提示词", "dataDescription");
+
+	private static final PromptSpec PAPER_GENERATION = PromptSpec.of("writing.论文生成提示词", "problemStatement",
+			"modelingResult", "codingResult");
+
+	private static final PromptSpec PAPER_FORMATTING = PromptSpec.of("writing.论文格式化提示词", "paper");
+
+	private static final PromptSpec ABSTRACT_GENERATION = PromptSpec.of("writing.摘要生成提示词", "problemStatement",
+			"modelingResult", "codingResult");
+
+	private static final PromptSpec KEYWORDS_GENERATION = PromptSpec.of("writing.关键词生成提示词", "modelingResult");
+
+	private static final PromptSpec INTRODUCTION = PromptSpec.of("writing.引言撰写提示词", "researchTopic",
+			"problemBackground");
+
+	private static final PromptSpec CONCLUSION = PromptSpec.of("writing.结论撰写提示词", "researchResults",
+			"modelEvaluation");
+
+	private static final PromptSpec ERROR_HANDLING = PromptSpec.of("common.错误处理提示词", "error", "context");
+
+	private static final PromptSpec RESULT_VALIDATION = PromptSpec.of("common.结果验证提示词", "result");
+
+	private static final PromptSpec QUALITY_ASSESSMENT = PromptSpec.of("common.质量评估提示词", "workContent");
+
+	private static final PromptSpec OPTIMIZATION_SUGGESTION = PromptSpec.of("common.优化建议提示词", "currentContent",
+			"optimizationGoal");
+
+	private static final PromptSpec SUMMARY_GENERATION = PromptSpec.of("common.总结生成提示词", "originalContent");
+
+	private static final PromptSpec FORMAT_CONVERSION = PromptSpec.of("common.格式转换提示词", "originalContent",
+			"targetFormat");
+
+	private static final PromptSpec DATA_COLLECTION = PromptSpec.of("nodes.数据收集提示词", "problemAnalysis");
+
+	private static final PromptSpec MODEL_BUILDING = PromptSpec.of("nodes.模型构建提示词", "problemAnalysis",
+			"collectedData");
+
+	private static final PromptSpec MODEL_SOLVING = PromptSpec.of("nodes.模型求解提示词", "problemAnalysis",
+			"modelDefinition");
+
+	private static final Map<String, PromptSpec> PROMPT_SPECS = List
+		.of(MODELING_ANALYSIS, MODELING_ADAPTATION, MODEL_VALIDATION, COMPLEXITY_ASSESSMENT, CODE_GENERATION,
+				CODE_DEBUG, CODE_OPTIMIZATION, ALGORITHM_IMPLEMENTATION, VISUALIZATION_CODE, PAPER_GENERATION,
+				PAPER_FORMATTING, ABSTRACT_GENERATION, KEYWORDS_GENERATION, INTRODUCTION, CONCLUSION, ERROR_HANDLING,
+				RESULT_VALIDATION, QUALITY_ASSESSMENT, OPTIMIZATION_SUGGESTION, SUMMARY_GENERATION, FORMAT_CONVERSION,
+				DATA_COLLECTION, MODEL_BUILDING, MODEL_SOLVING)
+		.stream()
+		.collect(Collectors.toUnmodifiableMap(PromptSpec::name, Function.identity()));
+
+	@Autowired
+	private PromptInputSerializer promptInputSerializer;
+
+	@Autowired
+	private ContextBudgetManager contextBudgetManager;
+
+	@Value("${math-agent.prompts.directory:}")
+	private String externalDirectory;
+
+	@Value("${math-agent.prompts.watch-debounce-ms:500}")
+	private long watchDebounceMs;
+
+	/**
+	 * 当前生效的提示词快照，读取不加锁；重新加载时在旁边构建新快照，成功后一次替换
+	 */
+	private final AtomicReference<PromptRegistry> registry = new AtomicReference<>();
+
+	private final Object loadLock = new Object();
+
+	private PromptDirectoryWatcher watcher;
+
+	@PostConstruct
+	public void init() throws PromptProcessingException {
+		initialize();
+
+		Path directory = externalDirectory();
+		if (directory == null) {
+			return;
+		}
+		if (!Files.isDirectory(directory)) {
+			log.warn("外部提示词目录不存在，不启用热加载: {}", directory);
+			return;
+		}
+		try {
+			watcher = PromptDirectoryWatcher.start(directory, watchDebounceMs, this::reloadQuietly);
+			log.info("监听外部提示词目录: {}", directory);
+		}
+		catch (IOException e) {
+			log.warn("无法监听外部提示词目录，修改后需调用重新加载: {}", directory, e);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+		}
+	}
 
 	/**
 	 * 初始化提示词模板
 	 */
-	public synchronized void initialize() throws PromptProcessingException {
-		if (initialized) {
+	public void initialize() throws PromptProcessingException {
+		if (registry.get() != null) {
 			return;
 		}
+		synchronized (loadLock) {
+			if (registry.get() == null) {
+				registry.set(loadRegistry(1));
+				log.info("提示词模板加载完成，共加载 {} 个模板", registry.get().size());
+			}
+		}
+	}
 
+	/**
+	 * 加载全部提示词文件，构建新的快照；任一模板无效时抛出异常，不影响当前快照
+	 */
+	private PromptRegistry loadRegistry(long version) throws PromptProcessingException {
+		Map<String, PromptTemplate> templates = new HashMap<>();
 		try {
 			// 加载所有提示词文件
 			for (String fileName : PROMPT_FILES) {
-				loadPromptFile(fileName);
+				loadPromptFile(fileName, templates);
 			}
-
-			initialized = true;
-			log.info("提示词模板加载完成，共加载 {} 个模板", promptTemplates.size());
 		}
 		catch (IOException e) {
 			throw new PromptProcessingException("", "加载提示词文件失败", e);
 		}
+
+		// 已声明的模板必须存在，否则调用时才会发现
+		for (PromptSpec spec : PROMPT_SPECS.values()) {
+			if (!templates.containsKey(spec.name())) {
+				throw new PromptProcessingException(spec.name(), "未找到提示词模板: " + spec.name());
+			}
+		}
+		return new PromptRegistry(templates, version, System.currentTimeMillis());
 	}
 
 	/**
-	 * 加载单个提示词文件
+	 * 加载单个提示词文件，外部提示词目录中有同名文件时优先使用
 	 */
-	private void loadPromptFile(String fileName) throws IOException {
-		ClassPathResource resource = new ClassPathResource(fileName);
-		if (!resource.exists()) {
-			log.warn("提示词文件不存在: {}", fileName);
-			return;
+	private void loadPromptFile(String fileName, Map<String, PromptTemplate> templates)
+			throws IOException, PromptProcessingException {
+		Path directory = externalDirectory();
+		Path external = directory != null ? directory.resolve(Path.of(fileName).getFileName()) : null;
+		boolean fromExternal = external != null && Files.isRegularFile(external);
+		String content;
+		if (fromExternal) {
+			content = Files.readString(external, StandardCharsets.UTF_8);
 		}
+		else {
+			ClassPathResource resource = new ClassPathResource(fileName);
+			if (!resource.exists()) {
+				log.warn("提示词文件不存在: {}", fileName);
+				return;
+			}
+			content = resource.getContentAsString(StandardCharsets.UTF_8);
+		}
+
+		parsePrompts(content, fileName, templates);
+		log.debug("加载提示词文件: {}, 解析完成", fromExternal ? external : fileName);
+	}
 
-		String content = resource.getContentAsString(StandardCharsets.UTF_8);
-		parsePrompts(content, fileName);
-		log.debug("加载提示词文件: {}, 解析完成", fileName);
+	private Path externalDirectory() {
+		return externalDirectory == null || externalDirectory.isBlank() ? null
+				: Path.of(externalDirectory).toAbsolutePath().normalize();
 	}
 
 	/**
 	 * 解析提示词文件
 	 */
-	private void parsePrompts(String content, String fileName) {
+	private void parsePrompts(String content, String fileName, Map<String, PromptTemplate> templates)
+			throws PromptProcessingException {
 		// 使用正则表达式匹配提示词块
-		Pattern pattern = Pattern.compile("## (.*?)\\n\\n(.*?)(?=\\n## |$)", Pattern.DOTALL);
-		Matcher matcher = pattern.matcher(content);
+		Matcher matcher = PROMPT_BLOCK_PATTERN.matcher(content);
 
 		while (matcher.find()) {
 			String promptName = matcher.group(1).trim();
@@ -82,11 +259,24 @@ public class PromptService {
 			// 添加文件前缀避免重名
 			String fullPromptName = buildPromptName(fileName, promptName);
 
-			promptTemplates.put(fullPromptName, promptTemplate);
+			templates.put(fullPromptName, compile(fullPromptName, promptTemplate));
 			log.debug("加载提示词: {} -> {}", fullPromptName, promptName);
 		}
 	}
 
+	/**
+	 * 编译提示词模板，已声明的模板只能引用声明的变量
+	 */
+	private PromptTemplate compile(String promptName, String template) throws PromptProcessingException {
+		PromptSpec spec = PROMPT_SPECS.get(promptName);
+		try {
+			return PromptTemplate.compile(promptName, template, spec != null ? spec.variables() : null);
+		}
+		catch (IllegalArgumentException e) {
+			throw new PromptProcessingException(promptName, e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * 构建提示词名称，消除复杂的条件链
 	 */
@@ -110,18 +300,29 @@ public class PromptService {
 	}
 
 	/**
-	 * 获取提示词模板
+	 * 获取提示词模板原文
 	 */
 	public String getPromptTemplate(String promptName) throws PromptProcessingException {
-		if (!initialized) {
-			try {
-				initialize();
-			} catch (PromptProcessingException e) {
-				throw e;
-			}
+		return getCompiledTemplate(promptName).getText();
+	}
+
+	/**
+	 * 当前生效的提示词快照
+	 */
+	private PromptRegistry currentRegistry() throws PromptProcessingException {
+		PromptRegistry current = registry.get();
+		if (current == null) {
+			initialize();
+			current = registry.get();
 		}
+		return current;
+	}
 
-		String template = promptTemplates.get(promptName);
+	/**
+	 * 获取编译后的提示词模板
+	 */
+	private PromptTemplate getCompiledTemplate(String promptName) throws PromptProcessingException {
+		PromptTemplate template = currentRegistry().get(promptName);
 		if (template == null) {
 			throw new PromptProcessingException(promptName, "未找到提示词模板: " + promptName);
 		}
@@ -133,23 +334,77 @@ public class PromptService {
 	 * 构建提示词
 	 */
 	public String buildPrompt(String promptName, Map<String, Object> variables) throws PromptProcessingException {
-		String template = getPromptTemplate(promptName);
-		return replaceVariables(template, variables);
+		return getCompiledTemplate(promptName).render(variables);
 	}
 
 	/**
-	 * 替换模板变量
+	 * 构建提示词
+	 * @param values 变量值，顺序与 spec 声明的变量一致
 	 */
-	private String replaceVariables(String template, Map<String, Object> variables) {
-		String result = template;
+	public String buildPrompt(PromptSpec spec, Object... values) throws PromptProcessingException {
+		PromptTemplate template = getCompiledTemplate(spec.name());
+		if (values.length != spec.variables().size()) {
+			throw new PromptProcessingException(spec.name(),
+					"需要 " + spec.variables().size() + " 个变量 " + spec.variables() + "，实际传入 " + values.length + " 个");
+		}
 
-		for (Map.Entry<String, Object> entry : variables.entrySet()) {
-			String placeholder = "{" + entry.getKey() + "}";
-			String value = entry.getValue() != null ? entry.getValue().toString() : "";
-			result = result.replace(placeholder, value);
+		// 模板文本和字符串等标量变量原样插入，剩余预算分给结构化变量
+		Object[] inputs = values.clone();
+		Map<String, Object> structured = new LinkedHashMap<>();
+		int fixedTokens = contextBudgetManager.estimateTokens(template.getText());
+		for (int i = 0; i < values.length; i++) {
+			if (isScalar(values[i])) {
+				fixedTokens += contextBudgetManager.estimateTokens(values[i] != null ? values[i].toString() : null);
+			}
+			else {
+				structured.put(spec.variables().get(i), values[i]);
+			}
 		}
+		if (!structured.isEmpty()) {
+			int budget = Math.max(0, contextBudgetManager.inputBudget(agentOf(spec)) - fixedTokens);
+			Map<String, SerializedInput> serialized = promptInputSerializer.serializeAll(structured, budget);
+			for (int i = 0; i < values.length; i++) {
+				SerializedInput input = serialized.get(spec.variables().get(i));
+				if (input != null) {
+					inputs[i] = input.text();
+					logInput(spec, spec.variables().get(i), input, budget);
+				}
+			}
+		}
+
+		try {
+			return template.render(inputs);
+		}
+		catch (IllegalArgumentException e) {
+			throw new PromptProcessingException(spec.name(), e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 字符串、数字等原样插入的变量值；其他（智能体结果Map等）序列化为紧凑JSON
+	 */
+	private static boolean isScalar(Object value) {
+		return value == null || value instanceof CharSequence || value instanceof Number || value instanceof Boolean;
+	}
 
-		return result;
+	/**
+	 * 提示词对应的Agent，决定为输出预留的空间
+	 */
+	private static String agentOf(PromptSpec spec) {
+		String prefix = spec.name().substring(0, Math.max(0, spec.name().indexOf('.')));
+		return switch (prefix) {
+			case "modeling", "coding", "writing" -> prefix;
+			default -> "analysis";
+		};
+	}
+
+	private void logInput(PromptSpec spec, String variable, SerializedInput input, int budget) {
+		if (!input.truncatedFields().isEmpty()) {
+			log.info("提示词 {} 变量 {} 按输入预算 {} 收缩为约 {} 个Token，截断: {}", spec.name(), variable, budget,
+					input.tokens(), input.truncatedFields());
+		}
+		log.debug("提示词 {} 变量 {} 序列化为约 {} 个Token，各字段Token: {}，省略: {}", spec.name(), variable,
+				input.tokens(), input.fieldTokens(), input.droppedFields());
 	}
 
 	// ========== 建模手Agent提示词 ==========
@@ -158,27 +413,29 @@ public class PromptService {
 	 * 获取建模手问题分析提示词
 	 */
 	public String getModelingAnalysisPrompt(String problemStatement) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("problemStatement", problemStatement);
-		return buildPrompt("modeling.问题分析提示词", variables);
+		return buildPrompt(MODELING_ANALYSIS, problemStatement);
+	}
+
+	/**
+	 * 获取建模分析适配提示词 - 基于相似问题的历史分析做轻量调整
+	 */
+	public String getModelingAdaptationPrompt(String problemStatement, String cachedProblemStatement,
+			String cachedAnalysis) throws PromptProcessingException {
+		return buildPrompt(MODELING_ADAPTATION, problemStatement, cachedProblemStatement, cachedAnalysis);
 	}
 
 	/**
 	 * 获取模型验证提示词
 	 */
 	public String getModelValidationPrompt(String modelDefinition) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("modelDefinition", modelDefinition);
-		return buildPrompt("modeling.模型验证提示词", variables);
+		return buildPrompt(MODEL_VALIDATION, modelDefinition);
 	}
 
 	/**
 	 * 获取复杂度评估提示词
 	 */
 	public String getComplexityAssessmentPrompt(String problemStatement) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("problemStatement", problemStatement);
-		return buildPrompt("modeling.复杂度评估提示词", variables);
+		return buildPrompt(COMPLEXITY_ASSESSMENT, problemStatement);
 	}
 
 	// ========== 代码手Agent提示词 ==========
@@ -187,108 +444,101 @@ public class PromptService {
 	 * 获取代码生成提示词
 	 */
 	public String getCodeGenerationPrompt(Object modelingResult) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("modelingResult", modelingResult);
-		return buildPrompt("coding.代码生成提示词", variables);
+		return buildPrompt(CODE_GENERATION, modelingResult);
 	}
 
 	/**
 	 * 获取代码调试提示词
 	 */
 	public String getCodeDebugPrompt(String originalCode, String error) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("originalCode", originalCode);
-		variables.put("error", error);
-		return buildPrompt("coding.代码调试提示词", variables);
+		return getCodeDebugPrompt(originalCode, error, false);
+	}
+
+	/**
+	 * 获取代码调试提示词
+	 * @param statefulSession 修复代码是否在保留变量的同一会话内核中执行
+	 */
+	public String getCodeDebugPrompt(String originalCode, String error, boolean statefulSession) throws PromptProcessingException {
+		String sessionContext = statefulSession
+				? "执行环境：修复代码将在同一个Python会话中继续执行，原始代码在出错位置之前定义的变量、导入的模块和加载的数据仍然可用。请只提供从出错位置开始需要重新执行的代码，不要重复已成功完成的数据加载和计算。"
+				: "执行环境：修复代码将在新的Python进程中独立执行，请提供完整可运行的代码。";
+		return buildPrompt(CODE_DEBUG, originalCode, error, sessionContext);
+	}
+
+	/**
+	 * 获取并行修复候选的代码调试提示词，修复代码在新的Python进程中独立执行
+	 * @param strategy 本候选的修复思路，使各候选给出不同的修复方案
+	 */
+	public String getCodeRepairPrompt(String originalCode, String error, String strategy)
+			throws PromptProcessingException {
+		return buildPrompt(CODE_DEBUG, originalCode, error,
+				"执行环境：修复代码将在新的Python进程中独立执行，请提供完整可运行的代码。\n修复思路：" + strategy);
 	}
 
 	/**
 	 * 获取代码优化提示词
 	 */
 	public String getCodeOptimizationPrompt(String originalCode) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("originalCode", originalCode);
-		return buildPrompt("coding.代码优化提示词", variables);
+		return buildPrompt(CODE_OPTIMIZATION, originalCode);
 	}
 
 	/**
 	 * 获取算法实现提示词
 	 */
 	public String getAlgorithmImplementationPrompt(String algorithmDescription) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("algorithmDescription", algorithmDescription);
-		return buildPrompt("coding.算法实现提示词", variables);
+		return buildPrompt(ALGORITHM_IMPLEMENTATION, algorithmDescription);
 	}
 
 	/**
 	 * 获取可视化代码提示词
 	 */
 	public String getVisualizationCodePrompt(String dataDescription) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("dataDescription", dataDescription);
-		return buildPrompt("coding.可视化代码提示词", variables);
+		return buildPrompt(VISUALIZATION_CODE, dataDescription);
 	}
 
 	// ========== 论文手Agent提示词 ==========
 
 	/**
 	 * 获取论文生成提示词
+	 * @param problemStatement 问题原文，或问题分析结果（结构化结果按紧凑JSON插入）
 	 */
-	public String getPaperGenerationPrompt(String problemStatement, Object modelingResult, Object codingResult) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("problemStatement", problemStatement);
-		variables.put("modelingResult", modelingResult);
-		variables.put("codingResult", codingResult);
-		return buildPrompt("writing.论文生成提示词", variables);
+	public String getPaperGenerationPrompt(Object problemStatement, Object modelingResult, Object codingResult) throws PromptProcessingException {
+		return buildPrompt(PAPER_GENERATION, problemStatement, modelingResult, codingResult);
 	}
 
 	/**
 	 * 获取论文格式化提示词
 	 */
 	public String getPaperFormattingPrompt(String paper) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("paper", paper);
-		return buildPrompt("writing.论文格式化提示词", variables);
+		return buildPrompt(PAPER_FORMATTING, paper);
 	}
 
 	/**
 	 * 获取摘要生成提示词
 	 */
 	public String getAbstractGenerationPrompt(String problemStatement, Object modelingResult, Object codingResult) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("problemStatement", problemStatement);
-		variables.put("modelingResult", modelingResult);
-		variables.put("codingResult", codingResult);
-		return buildPrompt("writing.摘要生成提示词", variables);
+		return buildPrompt(ABSTRACT_GENERATION, problemStatement, modelingResult, codingResult);
 	}
 
 	/**
 	 * 获取关键词生成提示词
 	 */
 	public String getKeywordsGenerationPrompt(Object modelingResult) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("modelingResult", modelingResult);
-		return buildPrompt("writing.关键词生成提示词", variables);
+		return buildPrompt(KEYWORDS_GENERATION, modelingResult);
 	}
 
 	/**
 	 * 获取引言撰写提示词
 	 */
 	public String getIntroductionPrompt(String researchTopic, String problemBackground) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("researchTopic", researchTopic);
-		variables.put("problemBackground", problemBackground);
-		return buildPrompt("writing.引言撰写提示词", variables);
+		return buildPrompt(INTRODUCTION, researchTopic, problemBackground);
 	}
 
 	/**
 	 * 获取结论撰写提示词
 	 */
 	public String getConclusionPrompt(Object researchResults, Object modelEvaluation) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("researchResults", researchResults);
-		variables.put("modelEvaluation", modelEvaluation);
-		return buildPrompt("writing.结论撰写提示词", variables);
+		return buildPrompt(CONCLUSION, researchResults, modelEvaluation);
 	}
 
 	// ========== 通用提示词 ==========
@@ -297,94 +547,90 @@ public class PromptService {
 	 * 获取错误处理提示词
 	 */
 	public String getErrorHandlingPrompt(String error, String context) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("error", error);
-		variables.put("context", context);
-		return buildPrompt("common.错误处理提示词", variables);
+		return buildPrompt(ERROR_HANDLING, error, context);
 	}
 
 	/**
 	 * 获取结果验证提示词
 	 */
 	public String getResultValidationPrompt(Object result) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("result", result);
-		return buildPrompt("common.结果验证提示词", variables);
+		return buildPrompt(RESULT_VALIDATION, result);
 	}
 
 	/**
 	 * 获取质量评估提示词
 	 */
 	public String getQualityAssessmentPrompt(Object workContent) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("workContent", workContent);
-		return buildPrompt("common.质量评估提示词", variables);
+		return buildPrompt(QUALITY_ASSESSMENT, workContent);
 	}
 
 	/**
 	 * 获取优化建议提示词
 	 */
 	public String getOptimizationSuggestionPrompt(Object currentContent, String optimizationGoal) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("currentContent", currentContent);
-		variables.put("optimizationGoal", optimizationGoal);
-		return buildPrompt("common.优化建议提示词", variables);
+		return buildPrompt(OPTIMIZATION_SUGGESTION, currentContent, optimizationGoal);
 	}
 
 	/**
 	 * 获取总结生成提示词
 	 */
 	public String getSummaryGenerationPrompt(Object originalContent) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("originalContent", originalContent);
-		return buildPrompt("common.总结生成提示词", variables);
+		return buildPrompt(SUMMARY_GENERATION, originalContent);
 	}
 
 	/**
 	 * 获取格式转换提示词
 	 */
 	public String getFormatConversionPrompt(Object originalContent, String targetFormat) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("originalContent", originalContent);
-		variables.put("targetFormat", targetFormat);
-		return buildPrompt("common.格式转换提示词", variables);
+		return buildPrompt(FORMAT_CONVERSION, originalContent, targetFormat);
 	}
 
 	/**
-	 * 重新加载提示词
+	 * 重新加载提示词 新快照加载成功后才替换，加载失败时继续使用当前快照
 	 */
 	public void reloadPrompts() throws PromptProcessingException {
-		initialized = false;
-		promptTemplates.clear();
-		initialize();
-		log.info("提示词重新加载完成");
+		synchronized (loadLock) {
+			PromptRegistry current = registry.get();
+			PromptRegistry reloaded = loadRegistry(current != null ? current.version() + 1 : 1);
+			registry.set(reloaded);
+			log.info("提示词重新加载完成，版本 {}，共 {} 个模板", reloaded.version(), reloaded.size());
+		}
+	}
+
+	/**
+	 * 外部提示词目录变化时重新加载，失败时记录错误并保留当前版本
+	 */
+	private void reloadQuietly() {
+		try {
+			reloadPrompts();
+		}
+		catch (PromptProcessingException e) {
+			log.error("提示词重新加载失败，继续使用当前版本: {}", e.getMessage(), e);
+		}
 	}
 
 	/**
 	 * 获取所有提示词名称
 	 */
 	public Map<String, String> getAllPromptTemplates() throws PromptProcessingException {
-		if (!initialized) {
-			initialize();
+		Map<String, String> templates = new HashMap<>();
+		for (Map.Entry<String, PromptTemplate> entry : currentRegistry().templates().entrySet()) {
+			templates.put(entry.getKey(), entry.getValue().getText());
 		}
-		return new HashMap<>(promptTemplates);
+		return templates;
 	}
 
 	/**
 	 * 获取指定Agent的提示词
 	 */
 	public Map<String, String> getAgentPrompts(String agentName) throws PromptProcessingException {
-		if (!initialized) {
-			initialize();
-		}
-
 		Map<String, String> agentPrompts = new HashMap<>();
 		String prefix = agentName + ".";
 
-		for (Map.Entry<String, String> entry : promptTemplates.entrySet()) {
+		for (Map.Entry<String, PromptTemplate> entry : currentRegistry().templates().entrySet()) {
 			if (entry.getKey().startsWith(prefix)) {
 				String promptName = entry.getKey().substring(prefix.length());
-				agentPrompts.put(promptName, entry.getValue());
+				agentPrompts.put(promptName, entry.getValue().getText());
 			}
 		}
 
@@ -397,29 +643,21 @@ public class PromptService {
 	 * 获取数据收集提示词
 	 */
 	public String getDataCollectionPrompt(Map<String, Object> problemAnalysis) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("problemAnalysis", problemAnalysis);
-		return buildPrompt("nodes.数据收集提示词", variables);
+		return buildPrompt(DATA_COLLECTION, problemAnalysis);
 	}
 
 	/**
 	 * 获取模型构建提示词
 	 */
 	public String getModelBuildingPrompt(Map<String, Object> problemAnalysis, Map<String, Object> collectedData) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("problemAnalysis", problemAnalysis);
-		variables.put("collectedData", collectedData);
-		return buildPrompt("nodes.模型构建提示词", variables);
+		return buildPrompt(MODEL_BUILDING, problemAnalysis, collectedData);
 	}
 
 	/**
 	 * 获取模型求解提示词
 	 */
 	public String getModelSolvingPrompt(Map<String, Object> problemAnalysis, Map<String, Object> modelDefinition) throws PromptProcessingException {
-		Map<String, Object> variables = new HashMap<>();
-		variables.put("problemAnalysis", problemAnalysis);
-		variables.put("modelDefinition", modelDefinition);
-		return buildPrompt("nodes.模型求解提示词", variables);
+		return buildPrompt(MODEL_SOLVING, problemAnalysis, modelDefinition);
 	}
 
 }
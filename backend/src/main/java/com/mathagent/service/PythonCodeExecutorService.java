@@ -1,23 +1,45 @@
 package com.mathagent.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mathagent.exception.PythonExecutionException;
+import com.mathagent.execution.CancellationToken;
+import com.mathagent.execution.TaskCancellationRegistry;
+import com.mathagent.python.BoundedOutputBuffer;
+import com.mathagent.python.CellArtifact;
+import com.mathagent.python.CellArtifactCollector;
+import com.mathagent.python.CodeSafetyScanner;
+import com.mathagent.python.CodeHistoryJournal;
+import com.mathagent.python.ExecutionLimits;
+import com.mathagent.python.ExecutionResultCache;
+import com.mathagent.python.PythonExecutionScheduler;
+import com.mathagent.python.PythonKernel;
+import com.mathagent.python.PythonKernelManager;
+import com.mathagent.python.PythonWorker;
+import com.mathagent.python.PythonWorkerPool;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
- * Python代码执行服务 - 基于ProcessBuilder的Python解释器
+ * Python代码执行服务 - 默认每个会话一个常驻内核，单元格共享变量；也可使用常驻进程池或每次启动新进程
  * 
  * @author Makoto
  */
@@ -28,20 +50,115 @@ public class PythonCodeExecutorService {
 	@Autowired
 	private ObjectMapper objectMapper;
 
-	private final Map<String, PythonSession> sessions = new ConcurrentHashMap<>();
+	@Autowired
+	private TaskCancellationRegistry cancellationRegistry;
+
+	@Autowired
+	private PythonWorkerPool pythonWorkerPool;
+
+	@Autowired
+	private PythonKernelManager pythonKernelManager;
+
+	@Autowired
+	private PythonSessionManager pythonSessionManager;
+
+	@Autowired
+	private PythonExecutionScheduler executionScheduler;
+
+	@Autowired
+	private ExecutionResultCache executionResultCache;
+
+	@Autowired
+	private CodeSafetyScanner codeSafetyScanner;
+
+	@Autowired
+	private CellArtifactCollector artifactCollector;
+
+	@Value("${math-agent.python.interpreter:python}")
+	private String interpreter;
+
+	@Value("${math-agent.python.timeout.wall-seconds:300}")
+	private int wallTimeoutSeconds;
+
+	@Value("${math-agent.python.timeout.cpu-seconds:240}")
+	private int cpuTimeoutSeconds;
+
+	@Value("${math-agent.python.output.head-chars:16000}")
+	private int outputHeadChars;
+
+	@Value("${math-agent.python.output.tail-chars:16000}")
+	private int outputTailChars;
+
+
+	/**
+	 * 一次性进程模式下并发读取stdout/stderr的线程
+	 */
+	private final ExecutorService outputReaders = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "python-output-reader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	private final String codeBasePath = "python_code";
 
+	/**
+	 * 会话ID序号，同一毫秒内为同一任务创建多个会话时区分
+	 */
+	private static final AtomicLong SESSION_SEQUENCE = new AtomicLong();
+
+	/**
+	 * 任务目录下存放单元格产出文件的子目录
+	 */
+	private static final String ARTIFACTS_DIR = "artifacts";
+
+	/**
+	 * 单元格执行前注入的导入语句（常驻进程在每个单元格的全局命名空间中提供相同的名称），强制使用非交互的Agg后端
+	 */
+	private static final String CELL_PREAMBLE = "import sys\n" + "import warnings\n" + "import matplotlib\n"
+			+ "matplotlib.use(\"Agg\")\n" + "warnings.filterwarnings(\"ignore\", message=\".*non-interactive.*\")\n"
+			+ "import numpy as np\n" + "import matplotlib.pyplot as plt\n" + "import pandas as pd\n" + "import scipy\n"
+			+ "import json\n";
+
+	/**
+	 * 一次性进程退出时把仍打开的图像保存到单元格产出目录，与常驻进程的行为一致（进程被信号终止时不保存）
+	 */
+	private static final String FIGURE_HOOK = "import atexit as _mathagent_atexit\n"
+			+ "def _mathagent_save_figures():\n"
+			+ "    import os as _os\n"
+			+ "    import matplotlib.pyplot as _plt\n"
+			+ "    _dir = _os.environ.get(\"MATHAGENT_ARTIFACT_DIR\")\n"
+			+ "    if not _dir:\n"
+			+ "        return\n"
+			+ "    for _num in _plt.get_fignums():\n"
+			+ "        try:\n"
+			+ "            _path = _os.path.join(_dir, \"figure_%d.png\" % _num)\n"
+			+ "            _plt.figure(_num).savefig(_path, bbox_inches=\"tight\")\n"
+			+ "        except Exception as _e:\n"
+			+ "            print(\"保存图像 %d 失败: %s\" % (_num, _e), file=sys.stderr)\n"
+			+ "_mathagent_atexit.register(_mathagent_save_figures)\n";
+
 	/**
 	 * 创建新的Python执行会话
 	 */
 	public PythonSession createSession(String taskId) throws PythonExecutionException {
+		return createSession(taskId, null);
+	}
+
+	/**
+	 * 创建使用指定取消令牌的Python执行会话，令牌取消时只中止该会话中的执行（如并行修复中落选的候选）
+	 * @param cancellationToken 为null时使用任务的取消令牌
+	 */
+	public PythonSession createSession(String taskId, CancellationToken cancellationToken)
+			throws PythonExecutionException {
 		try {
-			String sessionId = "session_" + taskId + "_" + System.currentTimeMillis();
+			String sessionId = "session_" + taskId + "_" + System.currentTimeMillis() + "_"
+					+ SESSION_SEQUENCE.incrementAndGet();
 			PythonSession session = new PythonSession(sessionId, taskId);
-			sessions.put(sessionId, session);
+			session.setCancellationToken(cancellationToken);
 
-			// 创建代码目录
+			// 创建代码目录和会话的代码历史日志
 			createCodeDirectory(session);
+			pythonSessionManager.register(session);
 
 			log.info("创建Python执行会话: {}", sessionId);
 			return session;
@@ -55,43 +172,93 @@ public class PythonCodeExecutorService {
 	 * 执行Python代码
 	 */
 	public CodeExecutionResult executeCode(String sessionId, String code, String language) throws PythonExecutionException {
-		PythonSession session = sessions.get(sessionId);
-		if (session == null) {
-			throw new PythonExecutionException(sessionId, code, "会话不存在: " + sessionId);
+		// 同一会话的单元格按提交顺序串行执行，内核中的变量状态与单元格顺序一致（使用公平锁，虚拟线程上不会钉住载体线程）
+		PythonSession session = lockSession(sessionId, code);
+		try {
+			try {
+				// 添加代码到会话，执行前先记录代码，进程崩溃后也能知道执行到了哪个单元格
+				CodeCell cell = new CodeCell(code, language);
+				session.addCell(cell);
+				int index = session.getCells().size() - 1;
+				appendCellRecord(session, index, cell);
+
+				// 执行代码
+				CodeExecutionResult result = executeCodeCell(session, cell, index);
+				cell.setExecutionResult(result);
+
+				// 追加执行结果到代码历史
+				appendResultRecord(session, index, result);
+				session.addRetainedBytes(cell.estimateRetainedBytes());
+
+				log.info("代码执行完成: {}", sessionId);
+				return result;
+			}
+			catch (IOException e) {
+				throw new PythonExecutionException(sessionId, code, "代码执行失败", e);
+			}
 		}
+		finally {
+			session.getLock().unlock();
+		}
+	}
 
+	/**
+	 * 获取会话，已卸载到磁盘的会话自动恢复
+	 */
+	private PythonSession requireSession(String sessionId, String code) throws PythonExecutionException {
+		PythonSession session;
 		try {
-			// 添加代码到会话
-			CodeCell cell = new CodeCell(code, language);
-			session.addCell(cell);
-
-			// 执行代码
-			CodeExecutionResult result = executeCodeCell(cell);
-			cell.setExecutionResult(result);
-
-			// 保存代码历史
-			saveCodeHistory(session);
-
-			log.info("代码执行完成: {}", sessionId);
-			return result;
+			session = pythonSessionManager.get(sessionId);
 		}
 		catch (IOException e) {
-			throw new PythonExecutionException(sessionId, code, "代码执行失败", e);
+			throw new PythonExecutionException(sessionId, code, "恢复Python执行会话失败: " + sessionId, e);
+		}
+		if (session == null) {
+			throw new PythonExecutionException(sessionId, code, "会话不存在: " + sessionId);
 		}
+		return session;
+	}
+
+	/**
+	 * 获取会话并持有会话锁；等待锁期间会话被卸载时重新获取恢复后的会话
+	 */
+	private PythonSession lockSession(String sessionId, String code) throws PythonExecutionException {
+		PythonSession session = requireSession(sessionId, code);
+		session.getLock().lock();
+		while (session.isEvicted()) {
+			session.getLock().unlock();
+			session = requireSession(sessionId, code);
+			session.getLock().lock();
+		}
+		return session;
 	}
 
 	/**
 	 * 获取会话的代码历史内容
 	 */
 	public String getCodeHistory(String sessionId) throws PythonExecutionException {
-		PythonSession session = sessions.get(sessionId);
-		if (session == null) {
-			throw new PythonExecutionException(sessionId, "", "会话不存在: " + sessionId);
-		}
+		StringWriter writer = new StringWriter();
+		writeCodeHistory(sessionId, writer);
+		return writer.toString();
+	}
 
-		try {
-			Path codePath = Paths.get(codeBasePath, session.getTaskId(), "code_history.json");
-			return Files.readString(codePath);
+	/**
+	 * 以流式方式输出会话的代码历史，逐行读取日志，不把全部单元格加载到内存
+	 */
+	public void writeCodeHistory(String sessionId, Writer out) throws PythonExecutionException {
+		PythonSession session = requireSession(sessionId, "");
+
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+			// 输出目标由调用方关闭
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartObject();
+			generator.writeStringField("session_id", session.getSessionId());
+			generator.writeStringField("task_id", session.getTaskId());
+			generator.writeStringField("created_at", session.getCreatedAt().toString());
+			generator.writeArrayFieldStart("cells");
+			CodeHistoryJournal.forEachCell(journalPath(session), objectMapper, generator::writeTree);
+			generator.writeEndArray();
+			generator.writeEndObject();
 		}
 		catch (IOException e) {
 			throw new PythonExecutionException(sessionId, "", "读取代码历史失败", e);
@@ -102,170 +269,627 @@ public class PythonCodeExecutorService {
 	 * 获取会话的所有代码单元格
 	 */
 	public List<CodeCell> getSessionCells(String sessionId) throws PythonExecutionException {
-		PythonSession session = sessions.get(sessionId);
-		if (session == null) {
-			throw new PythonExecutionException(sessionId, "", "会话不存在: " + sessionId);
+		PythonSession session = lockSession(sessionId, "");
+		try {
+			return new ArrayList<>(session.getCells());
+		}
+		finally {
+			session.getLock().unlock();
 		}
-		return new ArrayList<>(session.getCells());
 	}
 
 	/**
 	 * 清理会话
 	 */
 	public void cleanupSession(String sessionId) {
-		PythonSession session = sessions.remove(sessionId);
+		PythonSession session = pythonSessionManager.remove(sessionId);
+		pythonKernelManager.shutdown(sessionId);
 		if (session != null) {
+			closeJournal(session);
 			log.info("清理Python执行会话: {}", sessionId);
 		}
 	}
 
+	/**
+	 * 关闭会话的代码历史日志，并压缩为每个单元格一行
+	 */
+	private void closeJournal(PythonSession session) {
+		CodeHistoryJournal journal = session.getJournal();
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.compact();
+			journal.close();
+		}
+		catch (IOException e) {
+			log.warn("关闭代码历史日志失败: {}", journal.getPath(), e);
+		}
+	}
+
+
+	/**
+	 * 会话之前单元格定义的变量在下一个单元格中是否仍然可用：会话内核模式下，内核进程仍在运行且未崩溃、未被终止或回收
+	 */
+	public boolean isSessionStateAvailable(String sessionId) {
+		return pythonKernelManager.isStateAvailable(sessionId);
+	}
+
+	/**
+	 * 执行代码单元格 - 优先使用会话内核；其次复用常驻进程池中预热的解释器；否则每次启动新进程
+	 *
+	 * 代码在会话工作目录中执行，执行期间写入的文件和结束时仍打开的图像收集到单元格产出目录
+	 */
+	private CodeExecutionResult executeCodeCell(PythonSession session, CodeCell cell, int index) {
+		// 检查代码安全性，违规时直接拒绝，不占用执行许可
+		CodeSafetyScanner.ScanResult scan = codeSafetyScanner.scan(cell.getCode());
+		if (!scan.isSafe()) {
+			log.warn("代码安全检查未通过: {}", scan.describe());
+			CodeExecutionResult result = failedResult("代码包含不安全的操作，执行被拒绝: " + scan.describe());
+			result.setSafetyViolations(scan.violations());
+			return result;
+		}
+
+		Path workspace = workspaceDir(session);
+		Path artifactDir = artifactDir(session, index);
+		Map<String, CellArtifactCollector.FileState> before;
+		try {
+			prepareArtifactDir(artifactDir);
+			Files.createDirectories(workspace);
+			before = artifactCollector.snapshot(workspace);
+		}
+		catch (IOException e) {
+			log.warn("准备单元格工作目录失败: {}", artifactDir, e);
+			return failedResult("准备单元格工作目录失败: " + e.getMessage());
+		}
+
+		// 结果不依赖之前单元格时，相同代码直接返回缓存结果，不占用执行许可也不启动进程：无状态执行的每个单元格，
+		// 以及会话内核中新会话的第一个单元格（如并行修复的每个候选）；内核中后续单元格的结果依赖之前的变量，不缓存
+		boolean cacheable = !pythonKernelManager.isEnabled() || index == 0;
+		String cacheKey = cacheable ? executionResultCache.keyFor(cell.getCode(), CELL_PREAMBLE).orElse(null) : null;
+		if (cacheKey != null) {
+			Optional<ExecutionResultCache.CachedExecution> cached = executionResultCache.get(cacheKey, workspace,
+					artifactDir);
+			if (cached.isPresent()) {
+				log.info("命中Python执行结果缓存: {}", session.getSessionId());
+				if (pythonKernelManager.isEnabled()) {
+					// 单元格没有在内核中执行，其中定义的变量不存在，下一个单元格执行时提示
+					pythonKernelManager.markStateLost(session.getSessionId());
+				}
+				CodeExecutionResult result = cachedResult(cached.get());
+				result.setArtifacts(describeCachedArtifacts(session, artifactDir, cached.get()));
+				return result;
+			}
+		}
+
+		// 先向调度器申请执行许可，同时执行的单元格数不超过CPU核数对应的上限
+		PythonExecutionScheduler.Permit permit;
+		try {
+			permit = executionScheduler.acquire(session.getTaskId(), cancellationToken(session));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return failedResult("代码执行被中断");
+		}
+		catch (CancellationException e) {
+			return failedResult("任务已取消");
+		}
+
+		CodeExecutionResult result;
+		try {
+			if (pythonKernelManager.isEnabled()) {
+				result = executeInKernel(session, cell, workspace, artifactDir);
+			}
+			else if (pythonWorkerPool.isEnabled()) {
+				result = executeInWorker(session, cell, workspace, artifactDir);
+			}
+			else {
+				result = executeInNewProcess(session, cell, workspace, artifactDir);
+			}
+		}
+		finally {
+			permit.release();
+		}
+
+		// 执行失败时已写出的文件和图像同样收集，便于排查
+		try {
+			result.setArtifacts(
+					artifactCollector.collect(workspace, before, artifactDir, artifactRoot(session.getTaskId())));
+		}
+		catch (IOException e) {
+			log.warn("收集单元格产出文件失败: {}", artifactDir, e);
+		}
+
+		if (cacheKey != null && result.isSuccess() && !result.isTimedOut()) {
+			executionResultCache.put(cacheKey, artifactDir, result.getArtifacts(), toCached(result));
+		}
+		return result;
+	}
+
+	/**
+	 * 缓存命中时列出恢复到产出目录的文件
+	 */
+	private List<CellArtifact> describeCachedArtifacts(PythonSession session, Path artifactDir,
+			ExecutionResultCache.CachedExecution cached) {
+		Set<String> dataFiles = new HashSet<>();
+		for (ExecutionResultCache.ArtifactRef artifact : cached.getArtifacts()) {
+			if (CellArtifact.KIND_FILE.equals(artifact.getKind())) {
+				dataFiles.add(artifact.getName());
+			}
+		}
+		try {
+			return artifactCollector.describe(artifactDir, artifactRoot(session.getTaskId()), dataFiles);
+		}
+		catch (IOException e) {
+			log.warn("读取单元格产出文件失败: {}", artifactDir, e);
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * 解析任务产出文件
+	 * @param name 相对任务产出目录的路径，即 {@link CellArtifact#name()}
+	 * @return 越出任务产出目录（包括经符号链接越出）或文件不存在时为null
+	 */
+	public Path resolveArtifact(String taskId, String name) throws IOException {
+		Path root = artifactRoot(taskId);
+		Path resolved = root.resolve(name).normalize();
+		if (!resolved.startsWith(root) || resolved.equals(root) || !Files.isRegularFile(resolved)) {
+			return null;
+		}
+		Path real = resolved.toRealPath();
+		return real.startsWith(root.toRealPath()) ? real : null;
+	}
+
+	private ExecutionResultCache.CachedExecution toCached(CodeExecutionResult result) {
+		ExecutionResultCache.CachedExecution cached = new ExecutionResultCache.CachedExecution();
+		cached.setOutput(result.getOutput());
+		cached.setError(result.getError());
+		cached.setStdoutTotalChars(result.getStdoutTotalChars());
+		cached.setStdoutDroppedChars(result.getStdoutDroppedChars());
+		cached.setStderrTotalChars(result.getStderrTotalChars());
+		cached.setStderrDroppedChars(result.getStderrDroppedChars());
+		return cached;
+	}
+
+	private CodeExecutionResult cachedResult(ExecutionResultCache.CachedExecution cached) {
+		CodeExecutionResult result = new CodeExecutionResult();
+		result.setStartTime(LocalDateTime.now());
+		result.setSuccess(true);
+		result.setCached(true);
+		result.setOutput(cached.getOutput());
+		result.setError(cached.getError());
+		result.setStdoutTotalChars(cached.getStdoutTotalChars());
+		result.setStdoutDroppedChars(cached.getStdoutDroppedChars());
+		result.setStderrTotalChars(cached.getStderrTotalChars());
+		result.setStderrDroppedChars(cached.getStderrDroppedChars());
+		result.setEndTime(result.getStartTime());
+		return result;
+	}
+
+	private CodeExecutionResult failedResult(String error) {
+		CodeExecutionResult result = new CodeExecutionResult();
+		result.setStartTime(LocalDateTime.now());
+		result.setSuccess(false);
+		result.setError(error);
+		result.setEndTime(result.getStartTime());
+		return result;
+	}
+
+	/**
+	 * 在会话内核中执行代码单元格，变量在单元格之间保留
+	 */
+	private CodeExecutionResult executeInKernel(PythonSession session, CodeCell cell, Path workspace,
+			Path artifactDir) {
+		CodeExecutionResult result = new CodeExecutionResult();
+		result.setStartTime(LocalDateTime.now());
+
+		CancellationToken cancellationToken = cancellationToken(session);
+		PythonKernel kernel = pythonKernelManager.kernelFor(session.getSessionId());
+		// 任务取消时终止内核进程，阻塞中的读取随之返回
+		Runnable unregister = cancellationToken.onCancel(kernel::interrupt);
+
+		try {
+			cancellationToken.throwIfCancelled();
+
+			PythonKernel.KernelResult kernelResult = kernel.execute(cell.getCode(), workspace, artifactDir,
+					executionLimits());
+			StringBuilder error = new StringBuilder();
+			boolean stateLost = session.consumeStateLost();
+			if (kernelResult.restarted() || stateLost) {
+				error.append("[Python内核已重启，之前单元格定义的变量已丢失]\n");
+			}
+			if (kernelResult.crashed()) {
+				result.setSuccess(false);
+				result.setOutput("");
+				if (cancellationToken.isCancelled()) {
+					error.append("任务已取消");
+				}
+				else if (kernelResult.crashReason() != null && kernelResult.crashReason().startsWith("执行超时")) {
+					result.setTimedOut(true);
+					result.setTimeoutReason("wall");
+					error.append(kernelResult.crashReason()).append("，之前单元格定义的变量已丢失");
+				}
+				else {
+					error.append("Python内核进程异常退出");
+				}
+			}
+			else {
+				PythonWorker.WorkerResponse response = kernelResult.response();
+				applyWorkerResponse(result, response);
+				error.append(result.getError());
+				if (pythonKernelManager.enforceMemoryLimit(kernel)) {
+					error.append(error.isEmpty() ? "" : "\n").append("[Python内核内存超限，已终止，下一个单元格将在新内核中执行]");
+				}
+			}
+			result.setError(error.toString());
+			result.setEndTime(LocalDateTime.now());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result.setSuccess(false);
+			result.setError("代码执行被中断");
+			result.setEndTime(LocalDateTime.now());
+		}
+		catch (Exception e) {
+			result.setSuccess(false);
+			result.setError(cancellationToken.isCancelled() ? "任务已取消" : e.getMessage());
+			result.setEndTime(LocalDateTime.now());
+		}
+		finally {
+			unregister.run();
+		}
+
+		return result;
+	}
+
+	/**
+	 * 在常驻进程中执行代码单元格
+	 */
+	private CodeExecutionResult executeInWorker(PythonSession session, CodeCell cell, Path workspace,
+			Path artifactDir) {
+		CodeExecutionResult result = new CodeExecutionResult();
+		result.setStartTime(LocalDateTime.now());
+
+		CancellationToken cancellationToken = cancellationToken(session);
+		PythonWorker worker = null;
+		boolean healthy = false;
+		Runnable unregister = () -> {
+		};
+
+		try {
+			cancellationToken.throwIfCancelled();
+
+			worker = pythonWorkerPool.acquire(session.getTaskId());
+			// 任务取消时终止常驻进程，阻塞中的读取随之返回，该进程不再放回池中
+			PythonWorker acquired = worker;
+			unregister = cancellationToken.onCancel(acquired::destroy);
+
+			PythonWorker.WorkerResponse response = worker.execute(cell.getCode(), workspace, artifactDir, false,
+					executionLimits());
+			healthy = true;
+
+			applyWorkerResponse(result, response);
+			result.setEndTime(LocalDateTime.now());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result.setSuccess(false);
+			result.setError("代码执行被中断");
+			result.setEndTime(LocalDateTime.now());
+		}
+		catch (PythonWorker.TimeoutKilledException e) {
+			result.setSuccess(false);
+			result.setTimedOut(true);
+			result.setTimeoutReason("wall");
+			result.setError(e.getMessage());
+			result.setEndTime(LocalDateTime.now());
+		}
+		catch (Exception e) {
+			result.setSuccess(false);
+			result.setError(cancellationToken.isCancelled() ? "任务已取消" : e.getMessage());
+			result.setEndTime(LocalDateTime.now());
+		}
+		finally {
+			unregister.run();
+			if (worker != null) {
+				pythonWorkerPool.release(worker, healthy && !cancellationToken.isCancelled());
+			}
+		}
+
+		return result;
+	}
 
 	/**
-	 * 执行代码单元格
+	 * 启动新的Python进程执行代码单元格 stdout/stderr由两个线程并发读取到有界缓冲，超过运行时间上限时终止整个进程树
 	 */
-	private CodeExecutionResult executeCodeCell(CodeCell cell) {
+	private CodeExecutionResult executeInNewProcess(PythonSession session, CodeCell cell, Path workspace,
+			Path artifactDir) {
 		CodeExecutionResult result = new CodeExecutionResult();
 		result.setStartTime(LocalDateTime.now());
 
+		CancellationToken cancellationToken = cancellationToken(session);
+		ExecutionLimits limits = executionLimits();
+		Process process = null;
+		Path tempFile = null;
+		Runnable unregister = () -> {
+		};
+
 		try {
+			cancellationToken.throwIfCancelled();
+
 			// 创建临时Python文件
-			Path tempFile = createTempPythonFile(cell.getCode());
+			tempFile = createTempPythonFile(cell.getCode(), limits);
 			
 			// 构建Python执行命令
 			ProcessBuilder processBuilder = new ProcessBuilder(
-				"python", tempFile.toString()
+				interpreter, tempFile.toString()
 			);
 			
-		// 设置工作目录和环境变量
-		processBuilder.directory(Paths.get(codeBasePath).toFile());
-		processBuilder.environment().put("PYTHONPATH", codeBasePath);
+			// 设置工作目录和环境变量
+			processBuilder.directory(workspace.toFile());
+			processBuilder.environment().put("PYTHONPATH", Paths.get(codeBasePath).toAbsolutePath().toString());
+			processBuilder.environment().put("MPLBACKEND", "Agg");
+			processBuilder.environment().put("MATHAGENT_ARTIFACT_DIR", artifactDir.toString());
+			processBuilder.environment().putAll(executionScheduler.processEnvironment());
+			
+			// 执行Python代码，任务取消时终止整个进程树
+			process = processBuilder.start();
+			Process started = process;
+			unregister = cancellationToken.onCancel(() -> destroyProcessTree(started));
 			
-			// 执行Python代码
-			Process process = processBuilder.start();
+			// 同时读取输出和错误，避免任一管道写满后进程阻塞
+			BoundedOutputBuffer stdout = new BoundedOutputBuffer(limits.headChars(), limits.tailChars());
+			BoundedOutputBuffer stderr = new BoundedOutputBuffer(limits.headChars(), limits.tailChars());
+			CompletableFuture<Void> readers = CompletableFuture.allOf(drainAsync(process.getInputStream(), stdout),
+					drainAsync(process.getErrorStream(), stderr));
 			
-			// 读取输出和错误
-			String output = readProcessOutput(process.getInputStream());
-			String error = readProcessError(process.getErrorStream());
+			// 等待进程完成 - 通过onExit()等待，虚拟线程上不会钉住载体线程
+			int exitCode;
+			try {
+				exitCode = limits.wallSeconds() > 0
+						? process.onExit().get(limits.wallSeconds(), TimeUnit.SECONDS).exitValue()
+						: process.onExit().get().exitValue();
+			}
+			catch (TimeoutException e) {
+				destroyProcessTree(process);
+				exitCode = process.onExit().get().exitValue();
+				result.setTimedOut(true);
+				result.setTimeoutReason("wall");
+			}
+			// 超过CPU时间软限制时进程收到SIGXCPU退出
+			if (exitCode == 128 + 24) {
+				result.setTimedOut(true);
+				result.setTimeoutReason("cpu");
+			}
 			
-			// 等待进程完成
-			int exitCode = process.waitFor();
+			// 进程退出后管道关闭，读取随之结束；后台子进程仍持有管道时不再等待
+			try {
+				readers.get(ExecutionLimits.KILL_GRACE_SECONDS, TimeUnit.SECONDS);
+			}
+			catch (TimeoutException e) {
+				log.warn("Python进程已退出但输出管道仍未关闭，使用已读取的输出: {}", process.pid());
+			}
 			
-			result.setSuccess(exitCode == 0);
-			result.setOutput(output);
-			result.setError(error);
+			result.setSuccess(exitCode == 0 && !result.isTimedOut());
+			result.setOutput(stripTrailingNewline(stdout.getContent()));
+			result.setError(appendTimeoutMessage(stripTrailingNewline(stderr.getContent()), result, limits));
+			result.setStdoutTotalChars(stdout.getTotalChars());
+			result.setStdoutDroppedChars(stdout.getDroppedChars());
+			result.setStderrTotalChars(stderr.getTotalChars());
+			result.setStderrDroppedChars(stderr.getDroppedChars());
 			result.setEndTime(LocalDateTime.now());
 			
-			// 清理临时文件
-			Files.deleteIfExists(tempFile);
-			
+		}
+		catch (InterruptedException e) {
+			destroyProcessTree(process);
+			Thread.currentThread().interrupt();
+			result.setSuccess(false);
+			result.setError("代码执行被中断");
+			result.setEndTime(LocalDateTime.now());
 		}
 		catch (Exception e) {
+			destroyProcessTree(process);
 			result.setSuccess(false);
-			result.setError(e.getMessage());
+			result.setError(cancellationToken.isCancelled() ? "任务已取消" : e.getMessage());
 			result.setEndTime(LocalDateTime.now());
 		}
+		finally {
+			unregister.run();
+			// 清理临时文件
+			deleteQuietly(tempFile);
+		}
 
 		return result;
 	}
 
 	/**
-	 * 创建临时Python文件
+	 * 会话的取消令牌：创建会话时指定的令牌优先，否则使用任务的取消令牌
 	 */
-	private Path createTempPythonFile(String code) throws IOException {
-		// 检查代码安全性
-		if (!isCodeSafe(code)) {
-			throw new SecurityException("代码包含不安全的操作，执行被拒绝");
-		}
-		
-		String sessionId = UUID.randomUUID().toString();
-		Path tempFile = Paths.get(codeBasePath, sessionId + ".py");
-		
-		// 添加必要的import和设置
-		StringBuilder fullCode = new StringBuilder();
-		fullCode.append("import sys\n");
-		fullCode.append("import numpy as np\n");
-		fullCode.append("import matplotlib.pyplot as plt\n");
-		fullCode.append("import pandas as pd\n");
-		fullCode.append("import scipy\n");
-		fullCode.append("import json\n");
-		fullCode.append("\n");
-		fullCode.append(code);
-		
-		Files.writeString(tempFile, fullCode.toString());
-		return tempFile;
+	private CancellationToken cancellationToken(PythonSession session) {
+		CancellationToken token = session.getCancellationToken();
+		return token != null ? token : cancellationRegistry.get(session.getTaskId());
 	}
 
 	/**
-	 * 检查代码安全性
+	 * 当前配置的单元格执行限制
 	 */
-	private boolean isCodeSafe(String code) {
-		// 检查危险操作
-		String[] dangerousPatterns = {
-			"import os", "subprocess", "eval(", "exec(",
-			"__import__", "open(", "file(", "input(",
-			"system(", "popen(", "spawn", "fork",
-			"rm ", "del ", "format(", "compile("
-		};
-		
-		String lowerCode = code.toLowerCase();
-		for (String pattern : dangerousPatterns) {
-			if (lowerCode.contains(pattern)) {
-				log.warn("检测到危险操作: {}", pattern);
-				return false;
+	private ExecutionLimits executionLimits() {
+		return new ExecutionLimits(wallTimeoutSeconds, cpuTimeoutSeconds, outputHeadChars, outputTailChars);
+	}
+
+	/**
+	 * 将常驻进程的响应写入执行结果
+	 */
+	private void applyWorkerResponse(CodeExecutionResult result, PythonWorker.WorkerResponse response) {
+		result.setSuccess(response.ok());
+		result.setOutput(stripTrailingNewline(response.stdout()));
+		result.setError(stripTrailingNewline(response.stderr()));
+		result.setTimedOut(response.timedOut() != null);
+		result.setTimeoutReason(response.timedOut());
+		result.setStdoutTotalChars(response.stdoutTotalChars());
+		result.setStdoutDroppedChars(response.stdoutDroppedChars());
+		result.setStderrTotalChars(response.stderrTotalChars());
+		result.setStderrDroppedChars(response.stderrDroppedChars());
+	}
+
+	private CompletableFuture<Void> drainAsync(InputStream inputStream, BoundedOutputBuffer buffer) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				buffer.drain(inputStream);
+			}
+			catch (IOException e) {
+				// 进程被终止时管道关闭
+				log.debug("读取Python进程输出结束: {}", e.getMessage());
 			}
+		}, outputReaders);
+	}
+
+	private String appendTimeoutMessage(String error, CodeExecutionResult result, ExecutionLimits limits) {
+		if (!result.isTimedOut()) {
+			return error;
 		}
-		return true;
+		String message = "cpu".equals(result.getTimeoutReason())
+				? "执行超时: CPU时间超过 " + limits.cpuSeconds() + " 秒，已终止进程"
+				: "执行超时: 运行时间超过 " + limits.wallSeconds() + " 秒，已终止进程";
+		return error.isEmpty() ? message : error + "\n" + message;
+	}
+
+	private void deleteQuietly(Path file) {
+		if (file == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(file);
+		}
+		catch (IOException e) {
+			log.warn("删除临时文件失败: {}", file, e);
+		}
+	}
+
+	/**
+	 * 去掉末尾换行，与按行读取时的输出格式保持一致
+	 */
+	private String stripTrailingNewline(String text) {
+		return text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
 	}
 
 	/**
-	 * 读取进程输出
+	 * 终止Python进程及其所有子进程
 	 */
-	private String readProcessOutput(InputStream inputStream) throws IOException {
-		try (BufferedReader reader = new BufferedReader(
-				new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-			return reader.lines().collect(Collectors.joining("\n"));
+	private void destroyProcessTree(Process process) {
+		if (process == null || !process.isAlive()) {
+			return;
 		}
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
+		log.info("已终止Python进程树: {}", process.pid());
 	}
 
 	/**
-	 * 读取进程错误
+	 * 创建临时Python文件
 	 */
-	private String readProcessError(InputStream errorStream) throws IOException {
-		try (BufferedReader reader = new BufferedReader(
-				new InputStreamReader(errorStream, StandardCharsets.UTF_8))) {
-			return reader.lines().collect(Collectors.joining("\n"));
+	private Path createTempPythonFile(String code, ExecutionLimits limits) throws IOException {
+		String sessionId = UUID.randomUUID().toString();
+		Path tempFile = Paths.get(codeBasePath, sessionId + ".py").toAbsolutePath();
+		
+		// 添加必要的import和设置
+		StringBuilder fullCode = new StringBuilder();
+		long maxMemoryMb = executionScheduler.getMaxMemoryMb();
+		if (limits.cpuSeconds() > 0 || maxMemoryMb > 0) {
+			// CPU时间软限制到期时内核发送SIGXCPU终止进程；超过地址空间上限时分配内存抛出MemoryError
+			fullCode.append("try:\n");
+			fullCode.append("    import resource\n");
+			if (limits.cpuSeconds() > 0) {
+				fullCode.append("    resource.setrlimit(resource.RLIMIT_CPU, (")
+					.append(limits.cpuSeconds()).append(", ").append(limits.cpuSeconds() + 1).append("))\n");
+			}
+			if (maxMemoryMb > 0) {
+				long bytes = maxMemoryMb * 1024 * 1024;
+				fullCode.append("    resource.setrlimit(resource.RLIMIT_AS, (").append(bytes).append(", ")
+					.append(bytes).append("))\n");
+			}
+			fullCode.append("except Exception:\n");
+			fullCode.append("    pass\n");
 		}
+		fullCode.append(CELL_PREAMBLE);
+		fullCode.append(FIGURE_HOOK);
+		fullCode.append("\n");
+		fullCode.append(code);
+		
+		Files.writeString(tempFile, fullCode.toString());
+		return tempFile;
 	}
 
 	/**
-	 * 创建代码目录
+	 * 创建代码目录和会话工作目录，并打开会话的代码历史日志，同一任务的多个会话各自写入独立文件
 	 */
 	private void createCodeDirectory(PythonSession session) throws IOException {
 		Path taskDir = Paths.get(codeBasePath, session.getTaskId());
 		Files.createDirectories(taskDir);
+		Files.createDirectories(workspaceDir(session));
 
-		Path codePath = taskDir.resolve("code_history.json");
+		session.setJournal(pythonSessionManager.openJournal(journalPath(session)));
+	}
 
-		Map<String, Object> codeHistory = new HashMap<>();
-		codeHistory.put("cells", new ArrayList<>());
-		codeHistory.put("metadata", new HashMap<>());
-		codeHistory.put("created_at", LocalDateTime.now().toString());
+	/**
+	 * 会话工作目录，单元格在其中执行，代码以相对路径写入的文件保存在这里，同一会话的后续单元格可以读取
+	 */
+	private Path workspaceDir(PythonSession session) {
+		return Paths.get(codeBasePath, session.getTaskId(), session.getSessionId()).toAbsolutePath();
+	}
 
-		Files.writeString(codePath, objectMapper.writeValueAsString(codeHistory));
+	private Path artifactRoot(String taskId) {
+		return Paths.get(codeBasePath, taskId, ARTIFACTS_DIR).toAbsolutePath().normalize();
 	}
 
 	/**
-	 * 保存代码历史
+	 * 单元格产出目录：任务产出目录/会话ID/单元格序号
 	 */
-	private void saveCodeHistory(PythonSession session) throws IOException {
-		Path codePath = Paths.get(codeBasePath, session.getTaskId(), "code_history.json");
+	private Path artifactDir(PythonSession session, int index) {
+		return artifactRoot(session.getTaskId()).resolve(session.getSessionId()).resolve(String.valueOf(index));
+	}
+
+	/**
+	 * 创建空的单元格产出目录；会话从磁盘恢复后重新执行同一序号的单元格时，先清除之前的产出
+	 */
+	private void prepareArtifactDir(Path artifactDir) throws IOException {
+		if (Files.exists(artifactDir)) {
+			try (Stream<Path> paths = Files.walk(artifactDir)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+					Files.delete(path);
+				}
+			}
+		}
+		Files.createDirectories(artifactDir);
+	}
+
+	private Path journalPath(PythonSession session) {
+		return Paths.get(codeBasePath, session.getTaskId(), session.getSessionId() + ".jsonl");
+	}
 
-		Map<String, Object> codeHistory = new HashMap<>();
-		codeHistory.put("cells", session.getCells());
-		codeHistory.put("metadata", new HashMap<>());
-		codeHistory.put("updated_at", LocalDateTime.now().toString());
+	/**
+	 * 记录即将执行的单元格
+	 */
+	private void appendCellRecord(PythonSession session, int index, CodeCell cell) throws IOException {
+		Map<String, Object> record = new LinkedHashMap<>();
+		record.put("type", CodeHistoryJournal.TYPE_CELL);
+		record.put("index", index);
+		record.put("code", cell.getCode());
+		record.put("language", cell.getLanguage());
+		record.put("created_at", cell.getCreatedAt().toString());
+		session.getJournal().append(record);
+	}
 
-		Files.writeString(codePath, objectMapper.writeValueAsString(codeHistory));
+	/**
+	 * 记录单元格的执行结果
+	 */
+	private void appendResultRecord(PythonSession session, int index, CodeExecutionResult result) throws IOException {
+		Map<String, Object> record = new LinkedHashMap<>();
+		record.put("type", CodeHistoryJournal.TYPE_RESULT);
+		record.put("index", index);
+		record.put("result", result);
+		session.getJournal().append(record);
 	}
 
 	/**
@@ -281,10 +905,24 @@ public class PythonCodeExecutorService {
 
 		private LocalDateTime createdAt;
 
+		private final ReentrantLock lock = new ReentrantLock(true);
+
+		private CodeHistoryJournal journal;
+
+		private volatile long lastAccessedAt = System.currentTimeMillis();
+
+		private volatile boolean evicted;
+
+		private volatile boolean stateLost;
+
+		private final AtomicLong retainedBytes = new AtomicLong();
+
+		private volatile CancellationToken cancellationToken;
+
 		public PythonSession(String sessionId, String taskId) {
 			this.sessionId = sessionId;
 			this.taskId = taskId;
-			this.cells = new ArrayList<>();
+			this.cells = Collections.synchronizedList(new ArrayList<>());
 			this.createdAt = LocalDateTime.now();
 		}
 
@@ -292,6 +930,78 @@ public class PythonCodeExecutorService {
 			this.cells.add(cell);
 		}
 
+		/**
+		 * 会话执行锁，保证单元格按提交顺序执行
+		 */
+		public ReentrantLock getLock() {
+			return lock;
+		}
+
+		/**
+		 * 会话的代码历史日志
+		 */
+		public CodeHistoryJournal getJournal() {
+			return journal;
+		}
+
+		public void setJournal(CodeHistoryJournal journal) {
+			this.journal = journal;
+		}
+
+		public void touch() {
+			this.lastAccessedAt = System.currentTimeMillis();
+		}
+
+		public long getLastAccessedAt() {
+			return lastAccessedAt;
+		}
+
+		/**
+		 * 标记会话已卸载到磁盘，此后应通过 {@link PythonSessionManager} 重新获取
+		 */
+		public void markEvicted() {
+			this.evicted = true;
+		}
+
+		public boolean isEvicted() {
+			return evicted;
+		}
+
+		/**
+		 * 会话从磁盘恢复后内核变量已丢失，下一个单元格执行时提示一次
+		 */
+		public void setStateLost(boolean stateLost) {
+			this.stateLost = stateLost;
+		}
+
+		public boolean consumeStateLost() {
+			boolean lost = stateLost;
+			stateLost = false;
+			return lost;
+		}
+
+		public void addRetainedBytes(long bytes) {
+			retainedBytes.addAndGet(bytes);
+		}
+
+		/**
+		 * 会话在内存中保留的代码和输出大小（估算）
+		 */
+		public long getRetainedBytes() {
+			return retainedBytes.get();
+		}
+
+		/**
+		 * 会话专用的取消令牌，为null时使用任务的取消令牌；只保存在内存中，会话从磁盘恢复后不再保留
+		 */
+		public CancellationToken getCancellationToken() {
+			return cancellationToken;
+		}
+
+		public void setCancellationToken(CancellationToken cancellationToken) {
+			this.cancellationToken = cancellationToken;
+		}
+
 		// Getters and Setters
 		public String getSessionId() {
 			return sessionId;
@@ -371,6 +1081,22 @@ public class PythonCodeExecutorService {
 			this.executionResult = executionResult;
 		}
 
+		/**
+		 * 估算单元格占用的内存：代码和输出按每字符2字节计，另加对象开销
+		 */
+		public long estimateRetainedBytes() {
+			long chars = lengthOf(code);
+			if (executionResult != null) {
+				chars += lengthOf(executionResult.getOutput()) + lengthOf(executionResult.getError());
+				chars += executionResult.getArtifacts().size() * 128L;
+			}
+			return chars * 2 + 256;
+		}
+
+		private static long lengthOf(String text) {
+			return text != null ? text.length() : 0;
+		}
+
 		public LocalDateTime getCreatedAt() {
 			return createdAt;
 		}
@@ -396,6 +1122,42 @@ public class PythonCodeExecutorService {
 
 		private LocalDateTime endTime;
 
+		/**
+		 * 是否因超时被中止
+		 */
+		private boolean timedOut;
+
+		/**
+		 * 超时类型：wall（运行时间）或 cpu（CPU时间）
+		 */
+		private String timeoutReason;
+
+		/**
+		 * 输出总字符数及被省略的字符数（只保留开头和结尾）
+		 */
+		private long stdoutTotalChars;
+
+		private long stdoutDroppedChars;
+
+		private long stderrTotalChars;
+
+		private long stderrDroppedChars;
+
+		/**
+		 * 结果是否来自执行结果缓存
+		 */
+		private boolean cached;
+
+		/**
+		 * 安全检查发现的违规，代码被拒绝执行时非空
+		 */
+		private List<CodeSafetyScanner.Violation> safetyViolations = new ArrayList<>();
+
+		/**
+		 * 单元格产出的图像和数据文件，可通过 /api/tasks/{taskId}/artifacts/{name} 下载
+		 */
+		private List<CellArtifact> artifacts = new ArrayList<>();
+
 		// Getters and Setters
 		public boolean isSuccess() {
 			return success;
@@ -437,6 +1199,78 @@ public class PythonCodeExecutorService {
 			this.endTime = endTime;
 		}
 
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+
+		public void setTimedOut(boolean timedOut) {
+			this.timedOut = timedOut;
+		}
+
+		public String getTimeoutReason() {
+			return timeoutReason;
+		}
+
+		public void setTimeoutReason(String timeoutReason) {
+			this.timeoutReason = timeoutReason;
+		}
+
+		public long getStdoutTotalChars() {
+			return stdoutTotalChars;
+		}
+
+		public void setStdoutTotalChars(long stdoutTotalChars) {
+			this.stdoutTotalChars = stdoutTotalChars;
+		}
+
+		public long getStdoutDroppedChars() {
+			return stdoutDroppedChars;
+		}
+
+		public void setStdoutDroppedChars(long stdoutDroppedChars) {
+			this.stdoutDroppedChars = stdoutDroppedChars;
+		}
+
+		public long getStderrTotalChars() {
+			return stderrTotalChars;
+		}
+
+		public void setStderrTotalChars(long stderrTotalChars) {
+			this.stderrTotalChars = stderrTotalChars;
+		}
+
+		public long getStderrDroppedChars() {
+			return stderrDroppedChars;
+		}
+
+		public void setStderrDroppedChars(long stderrDroppedChars) {
+			this.stderrDroppedChars = stderrDroppedChars;
+		}
+
+		public boolean isCached() {
+			return cached;
+		}
+
+		public void setCached(boolean cached) {
+			this.cached = cached;
+		}
+
+		public List<CodeSafetyScanner.Violation> getSafetyViolations() {
+			return safetyViolations;
+		}
+
+		public void setSafetyViolations(List<CodeSafetyScanner.Violation> safetyViolations) {
+			this.safetyViolations = safetyViolations;
+		}
+
+		public List<CellArtifact> getArtifacts() {
+			return artifacts;
+		}
+
+		public void setArtifacts(List<CellArtifact> artifacts) {
+			this.artifacts = artifacts;
+		}
+
 	}
 
 }
@@ -0,0 +1,405 @@
+package com.mathagent.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mathagent.python.CodeHistoryJournal;
+import com.mathagent.python.PythonKernelManager;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Python会话生命周期管理 内存中只保留最近使用的会话，其余会话卸载到磁盘（代码历史日志），再次访问时从日志恢复
+ *
+ * 会话空闲超时或活跃会话数超过上限时按LRU卸载，卸载时关闭会话内核；正在执行单元格的会话不会被卸载；
+ * 卸载后超过保留时间仍未访问的会话彻底移除，日志文件保留在磁盘上
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class PythonSessionManager {
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private PythonKernelManager pythonKernelManager;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${math-agent.python.session.max-active:64}")
+	private int maxActive;
+
+	@Value("${math-agent.python.session.idle-ttl-minutes:30}")
+	private long idleTtlMinutes;
+
+	@Value("${math-agent.python.session.offload-retention-hours:24}")
+	private long offloadRetentionHours;
+
+	@Value("${math-agent.python.journal.sync-batch-size:16}")
+	private int journalSyncBatchSize;
+
+	@Value("${math-agent.python.journal.sync-interval-ms:200}")
+	private long journalSyncIntervalMs;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 内存中的会话，按访问顺序排列，最久未使用的在前
+	 */
+	private final LinkedHashMap<String, PythonCodeExecutorService.PythonSession> active = new LinkedHashMap<>(16,
+			0.75f, true);
+
+	private final Map<String, OffloadedSession> offloaded = new HashMap<>();
+
+	private final Map<String, CompletableFuture<PythonCodeExecutorService.PythonSession>> rehydrating = new HashMap<>();
+
+	private ScheduledExecutorService reaper;
+
+	@PostConstruct
+	public void init() {
+		Gauge.builder("mathagent.python.sessions", this, m -> m.count(true))
+			.description("内存中的Python会话数")
+			.tag("state", "active")
+			.register(meterRegistry);
+		Gauge.builder("mathagent.python.sessions", this, m -> m.count(false))
+			.description("已卸载到磁盘的Python会话数")
+			.tag("state", "offloaded")
+			.register(meterRegistry);
+		Gauge.builder("mathagent.python.sessions.retained", this, PythonSessionManager::retainedBytes)
+			.description("内存中会话保留的代码和输出大小（估算）")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+
+		reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "python-session-reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reaper.scheduleWithFixedDelay(this::reapIdle, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * 打开会话的代码历史日志
+	 */
+	public CodeHistoryJournal openJournal(Path path) throws IOException {
+		return CodeHistoryJournal.open(path, objectMapper, journalSyncBatchSize, journalSyncIntervalMs);
+	}
+
+	/**
+	 * 登记新会话，超过活跃会话上限时卸载最久未使用的会话
+	 */
+	public void register(PythonCodeExecutorService.PythonSession session) {
+		lock.lock();
+		try {
+			active.put(session.getSessionId(), session);
+		}
+		finally {
+			lock.unlock();
+		}
+		evictOverCapacity();
+	}
+
+	/**
+	 * 获取会话，已卸载的会话从日志恢复
+	 * @return 会话不存在时返回null
+	 * @throws IOException 读取日志失败
+	 */
+	public PythonCodeExecutorService.PythonSession get(String sessionId) throws IOException {
+		CompletableFuture<PythonCodeExecutorService.PythonSession> loading;
+		OffloadedSession meta = null;
+		lock.lock();
+		try {
+			PythonCodeExecutorService.PythonSession session = active.get(sessionId);
+			if (session != null) {
+				session.touch();
+				return session;
+			}
+			loading = rehydrating.get(sessionId);
+			if (loading == null) {
+				meta = offloaded.remove(sessionId);
+				if (meta == null) {
+					return null;
+				}
+				loading = new CompletableFuture<>();
+				rehydrating.put(sessionId, loading);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+
+		if (meta == null) {
+			// 其他线程正在恢复该会话
+			try {
+				return loading.join();
+			}
+			catch (CompletionException e) {
+				throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+			}
+		}
+
+		try {
+			PythonCodeExecutorService.PythonSession session = rehydrate(meta);
+			lock.lock();
+			try {
+				rehydrating.remove(sessionId);
+				active.put(sessionId, session);
+			}
+			finally {
+				lock.unlock();
+			}
+			loading.complete(session);
+			meterRegistry.counter("mathagent.python.sessions.rehydrations").increment();
+			evictOverCapacity();
+			return session;
+		}
+		catch (IOException | RuntimeException e) {
+			lock.lock();
+			try {
+				rehydrating.remove(sessionId);
+				offloaded.put(sessionId, meta);
+			}
+			finally {
+				lock.unlock();
+			}
+			loading.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * 移除会话（不再恢复）
+	 * @return 内存中的会话，已卸载或不存在时返回null
+	 */
+	public PythonCodeExecutorService.PythonSession remove(String sessionId) {
+		lock.lock();
+		try {
+			offloaded.remove(sessionId);
+			return active.remove(sessionId);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 从代码历史日志重建会话，单元格的结果一并恢复；内核中的变量无法恢复
+	 */
+	private PythonCodeExecutorService.PythonSession rehydrate(OffloadedSession meta) throws IOException {
+		PythonCodeExecutorService.PythonSession session = new PythonCodeExecutorService.PythonSession(meta.sessionId(),
+				meta.taskId());
+		session.setCreatedAt(meta.createdAt());
+		CodeHistoryJournal.forEachCell(meta.journalPath(), objectMapper, node -> {
+			PythonCodeExecutorService.CodeCell cell = new PythonCodeExecutorService.CodeCell(node.path("code").asText(),
+					node.path("language").asText("python"));
+			JsonNode createdAt = node.get("created_at");
+			if (createdAt != null && createdAt.isTextual()) {
+				cell.setCreatedAt(LocalDateTime.parse(createdAt.asText()));
+			}
+			JsonNode result = node.get("result");
+			if (result != null && !result.isNull()) {
+				cell.setExecutionResult(
+						objectMapper.treeToValue(result, PythonCodeExecutorService.CodeExecutionResult.class));
+			}
+			session.addCell(cell);
+			session.addRetainedBytes(cell.estimateRetainedBytes());
+		});
+		session.setJournal(openJournal(meta.journalPath()));
+		session.setStateLost(pythonKernelManager.isEnabled() && !session.getCells().isEmpty());
+		log.info("从磁盘恢复Python会话: {}, 单元格 {} 个", meta.sessionId(), session.getCells().size());
+		return session;
+	}
+
+	/**
+	 * 卸载会话：关闭内核、压缩并关闭日志、释放内存中的单元格
+	 *
+	 * 调用方必须持有会话锁；等待该锁的执行请求获得锁后发现会话已卸载，会重新获取（恢复）会话
+	 */
+	private void offload(PythonCodeExecutorService.PythonSession session, String reason) {
+		session.markEvicted();
+		pythonKernelManager.shutdown(session.getSessionId());
+		CodeHistoryJournal journal = session.getJournal();
+		Path journalPath = journal != null ? journal.getPath() : null;
+		if (journal != null) {
+			try {
+				journal.compact();
+				journal.close();
+			}
+			catch (IOException e) {
+				log.warn("卸载会话时关闭代码历史日志失败: {}", journalPath, e);
+			}
+		}
+
+		lock.lock();
+		try {
+			active.remove(session.getSessionId());
+			if (journalPath != null) {
+				offloaded.put(session.getSessionId(), new OffloadedSession(session.getSessionId(), session.getTaskId(),
+						session.getCreatedAt(), journalPath, System.currentTimeMillis()));
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		meterRegistry.counter("mathagent.python.sessions.evictions", "reason", reason).increment();
+		log.info("卸载Python会话: {} ({}), 释放约 {} KB", session.getSessionId(), reason,
+				session.getRetainedBytes() / 1024);
+	}
+
+	/**
+	 * 活跃会话超过上限时，从最久未使用的开始卸载空闲会话
+	 */
+	private void evictOverCapacity() {
+		List<PythonCodeExecutorService.PythonSession> victims = new ArrayList<>();
+		lock.lock();
+		try {
+			int excess = active.size() - maxActive;
+			Iterator<PythonCodeExecutorService.PythonSession> iterator = active.values().iterator();
+			while (excess > 0 && iterator.hasNext()) {
+				PythonCodeExecutorService.PythonSession session = iterator.next();
+				// 正在执行单元格的会话跳过
+				if (session.getLock().tryLock()) {
+					victims.add(session);
+					excess--;
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		offloadAll(victims, "capacity");
+	}
+
+	private void reapIdle() {
+		try {
+			long now = System.currentTimeMillis();
+			long idleBefore = now - TimeUnit.MINUTES.toMillis(idleTtlMinutes);
+			long retainBefore = now - TimeUnit.HOURS.toMillis(offloadRetentionHours);
+			List<PythonCodeExecutorService.PythonSession> victims = new ArrayList<>();
+			lock.lock();
+			try {
+				for (PythonCodeExecutorService.PythonSession session : active.values()) {
+					if (session.getLastAccessedAt() < idleBefore && session.getLock().tryLock()) {
+						victims.add(session);
+					}
+				}
+				offloaded.values().removeIf(meta -> meta.offloadedAt() < retainBefore);
+			}
+			finally {
+				lock.unlock();
+			}
+			offloadAll(victims, "idle");
+			evictOverCapacity();
+		}
+		catch (Exception e) {
+			log.warn("Python会话清理失败", e);
+		}
+	}
+
+	/**
+	 * 卸载已持有会话锁的会话，完成后释放锁
+	 */
+	private void offloadAll(List<PythonCodeExecutorService.PythonSession> victims, String reason) {
+		for (PythonCodeExecutorService.PythonSession session : victims) {
+			try {
+				offload(session, reason);
+			}
+			finally {
+				session.getLock().unlock();
+			}
+		}
+	}
+
+	private int count(boolean inMemory) {
+		lock.lock();
+		try {
+			return inMemory ? active.size() : offloaded.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private double retainedBytes() {
+		lock.lock();
+		try {
+			return active.values()
+				.stream()
+				.mapToLong(PythonCodeExecutorService.PythonSession::getRetainedBytes)
+				.sum();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 会话状态
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("active", count(true));
+		stats.put("offloaded", count(false));
+		stats.put("retainedKb", (long) retainedBytes() / 1024);
+		stats.put("maxActive", maxActive);
+		return stats;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (reaper != null) {
+			reaper.shutdownNow();
+		}
+		List<PythonCodeExecutorService.PythonSession> sessions;
+		lock.lock();
+		try {
+			sessions = new ArrayList<>(active.values());
+		}
+		finally {
+			lock.unlock();
+		}
+		for (PythonCodeExecutorService.PythonSession session : sessions) {
+			CodeHistoryJournal journal = session.getJournal();
+			if (journal != null) {
+				try {
+					journal.close();
+				}
+				catch (IOException e) {
+					log.warn("关闭代码历史日志失败: {}", journal.getPath(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 已卸载会话的元数据，单元格内容保存在日志文件中
+	 */
+	private record OffloadedSession(String sessionId, String taskId, LocalDateTime createdAt, Path journalPath,
+			long offloadedAt) {
+	}
+
+}
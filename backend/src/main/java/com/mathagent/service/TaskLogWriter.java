@@ -0,0 +1,274 @@
+package com.mathagent.service;
+
+import com.mathagent.mapper.TaskLogMapper;
+import com.mathagent.model.TaskLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 任务日志异步写入 日志先进入有界内存队列，由后台线程按条数或时间阈值合并为多行INSERT批量写入
+ *
+ * 队列满时按溢出策略处理：caller-runs 由调用线程直接写入（不丢日志，反压调用方）；
+ * drop 丢弃DEBUG/INFO日志并计数，WARN及以上仍由调用线程直接写入。
+ * 读取时合并数据库中的日志和尚未写入的日志；写入批次时持有写锁，读取持有读锁，每条日志只会出现在其中一处。
+ * 事务内追加的日志在事务提交后才入队，避免写入线程因外键检查等待未提交的任务行；事务回滚时这些日志随之丢弃，
+ * 但WARN及以上的日志（如任务执行失败）仍然入队，记录回滚的原因
+ *
+ * @author Makoto
+ */
+@Slf4j
+@Component
+public class TaskLogWriter {
+
+	private static final String POLICY_DROP = "drop";
+
+	@Value("${math-agent.task-log.queue-capacity:10000}")
+	private int queueCapacity;
+
+	@Value("${math-agent.task-log.batch-size:200}")
+	private int batchSize;
+
+	/**
+	 * 单个批次的文本字符数上限，避免最终报告等大日志使单条INSERT超过max_allowed_packet
+	 */
+	@Value("${math-agent.task-log.max-batch-chars:4000000}")
+	private long maxBatchChars;
+
+	@Value("${math-agent.task-log.flush-interval-ms:200}")
+	private long flushIntervalMs;
+
+	@Value("${math-agent.task-log.overflow-policy:caller-runs}")
+	private String overflowPolicy;
+
+	@Autowired
+	private TaskLogMapper taskLogMapper;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private ArrayBlockingQueue<TaskLog> queue;
+
+	/**
+	 * 批次写入（含从队列取出）持有写锁，读取合并持有读锁
+	 */
+	private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+	private final Object signal = new Object();
+
+	private Thread writer;
+
+	private volatile boolean closed;
+
+	private Counter droppedCounter;
+
+	private Counter directCounter;
+
+	@PostConstruct
+	public void init() {
+		queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+		Gauge.builder("mathagent.task_log.queue", queue, ArrayBlockingQueue::size)
+			.description("等待写入的任务日志数")
+			.register(meterRegistry);
+		droppedCounter = Counter.builder("mathagent.task_log.overflow")
+			.description("队列满时的任务日志处理次数")
+			.tag("action", "dropped")
+			.register(meterRegistry);
+		directCounter = Counter.builder("mathagent.task_log.overflow")
+			.description("队列满时的任务日志处理次数")
+			.tag("action", "direct")
+			.register(meterRegistry);
+
+		writer = new Thread(this::run, "task-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * 追加一条日志，不等待写入数据库
+	 */
+	public void append(TaskLog taskLog) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					enqueue(taskLog);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					// 失败日志说明了回滚的原因，回滚后仍需保留
+					if (status == STATUS_ROLLED_BACK && !isDroppable(taskLog)) {
+						enqueue(taskLog);
+					}
+				}
+			});
+			return;
+		}
+		enqueue(taskLog);
+	}
+
+	private void enqueue(TaskLog taskLog) {
+		if (!closed && queue.offer(taskLog)) {
+			if (queue.size() >= batchSize) {
+				synchronized (signal) {
+					signal.notify();
+				}
+			}
+			return;
+		}
+		// 已关闭或队列已满
+		if (POLICY_DROP.equalsIgnoreCase(overflowPolicy) && !closed && isDroppable(taskLog)) {
+			droppedCounter.increment();
+			return;
+		}
+		directCounter.increment();
+		insertEach(List.of(taskLog));
+	}
+
+	private static boolean isDroppable(TaskLog taskLog) {
+		return taskLog.getLevel() == TaskLog.LogLevel.DEBUG || taskLog.getLevel() == TaskLog.LogLevel.INFO;
+	}
+
+	/**
+	 * 查询任务日志：已写入数据库的日志加上队列中尚未写入的日志，按时间排序
+	 */
+	public List<TaskLog> getTaskLogs(Long taskId) {
+		flushLock.readLock().lock();
+		try {
+			List<TaskLog> logs = new ArrayList<>(taskLogMapper.selectByTaskId(taskId));
+			for (TaskLog pending : queue) {
+				if (taskId.equals(pending.getTaskId())) {
+					logs.add(pending);
+				}
+			}
+			logs.sort(Comparator.comparing(TaskLog::getTimestamp, Comparator.nullsLast(Comparator.naturalOrder())));
+			return logs;
+		}
+		finally {
+			flushLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 丢弃任务尚未写入的日志（删除任务时调用，避免之后写入已删除任务的日志）
+	 */
+	public void discard(Long taskId) {
+		flushLock.writeLock().lock();
+		try {
+			queue.removeIf(pending -> taskId.equals(pending.getTaskId()));
+		}
+		finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 写入队列中的全部日志
+	 */
+	public void flush() {
+		while (!queue.isEmpty()) {
+			flushBatch();
+		}
+	}
+
+	private void run() {
+		while (!closed) {
+			try {
+				synchronized (signal) {
+					if (queue.size() < batchSize) {
+						signal.wait(flushIntervalMs);
+					}
+				}
+				flush();
+			}
+			catch (InterruptedException e) {
+				break;
+			}
+			catch (RuntimeException e) {
+				log.error("任务日志写入线程异常", e);
+			}
+		}
+	}
+
+	/**
+	 * 从队列取出一个批次并写入，条数和字符数均不超过上限
+	 */
+	private void flushBatch() {
+		flushLock.writeLock().lock();
+		try {
+			List<TaskLog> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+			long chars = 0;
+			TaskLog next;
+			while (batch.size() < batchSize && (next = queue.peek()) != null) {
+				long size = textLength(next);
+				if (!batch.isEmpty() && chars + size > maxBatchChars) {
+					break;
+				}
+				batch.add(queue.poll());
+				chars += size;
+			}
+			if (batch.isEmpty()) {
+				return;
+			}
+			try {
+				taskLogMapper.insertBatch(batch);
+			}
+			catch (RuntimeException e) {
+				// 个别日志无法写入（如任务已删除）时整批失败，逐条重试，只丢弃失败的日志
+				log.warn("批量写入任务日志失败，逐条重试: {}", e.getMessage());
+				insertEach(batch);
+			}
+		}
+		finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+
+	private void insertEach(List<TaskLog> logs) {
+		for (TaskLog taskLog : logs) {
+			try {
+				taskLogMapper.insert(taskLog);
+			}
+			catch (RuntimeException e) {
+				log.warn("任务日志写入失败，已丢弃: task={}, message={}, error={}", taskLog.getTaskId(),
+						taskLog.getMessage(), e.getMessage());
+			}
+		}
+	}
+
+	private static long textLength(TaskLog taskLog) {
+		return (taskLog.getMessage() != null ? taskLog.getMessage().length() : 0)
+				+ (taskLog.getDetails() != null ? taskLog.getDetails().length() : 0);
+	}
+
+	/**
+	 * 停止后台线程并写入剩余日志；之后追加的日志由调用线程直接写入
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		closed = true;
+		if (writer != null) {
+			writer.interrupt();
+			writer.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		flush();
+		log.info("任务日志写入器已关闭");
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.mathagent.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程工具类 项目以Java 17编译，通过反射在Java 21+运行时创建虚拟线程
+ *
+ * @author Makoto
+ */
+public class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = findOfVirtual();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 创建虚拟线程工厂，线程名为 prefix + 序号
+     */
+    public static ThreadFactory threadFactory(String prefix) {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("当前Java运行时不支持虚拟线程: " + Runtime.version());
+        }
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程工厂失败", e);
+        }
+    }
+
+    private static Method findOfVirtual() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
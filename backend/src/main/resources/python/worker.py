@@ -0,0 +1,317 @@
+# -*- coding: utf-8 -*-
+"""
+MathAgent Python常驻执行进程
+
+启动时预加载常用科学计算库，之后循环读取JVM发送的执行请求。
+通信协议：stdin/stdout上的长度前缀帧，4字节大端长度 + UTF-8 JSON。
+
+请求: {"op": "exec", "code": "...", "cwd": "...", "artifact_dir": "...", "persist": false, "wall_timeout": 300,
+       "cpu_timeout": 240, "head_chars": 16000, "tail_chars": 16000} / {"op": "ping"} / {"op": "reset"}
+persist为true时在会话级全局命名空间中执行（内核模式），变量在单元格之间保留；
+输出只保留开头和结尾，超时通过定时器信号在用户代码中抛出异常，进程本身保持可用；
+执行结束时仍打开的图像保存到artifact_dir（figure_<编号>.png）后关闭
+响应: {"ok": true/false, "exit_code": 0, "stdout": "...", "stderr": "...", "figures": [], "rss_kb": 0, "runs": 0}
+"""
+import collections
+import io
+import json
+import os
+import signal
+import struct
+import sys
+import traceback
+import contextlib
+import warnings
+
+# 协议使用原始的stdin/stdout文件描述符，用户代码直接写fd 1的输出改写到stderr，避免破坏帧
+_proto_in = os.fdopen(os.dup(0), "rb", buffering=0)
+_proto_out = os.fdopen(os.dup(1), "wb", buffering=0)
+os.dup2(os.open(os.devnull, os.O_RDONLY), 0)
+os.dup2(2, 1)
+
+
+def _apply_memory_limit():
+    """按JVM传入的上限限制进程地址空间，超出时分配内存抛出MemoryError而不是拖垮整机"""
+    limit_mb = int(os.environ.get("MATHAGENT_MAX_MEMORY_MB") or 0)
+    if limit_mb <= 0:
+        return
+    try:
+        import resource
+
+        limit = limit_mb * 1024 * 1024
+        resource.setrlimit(resource.RLIMIT_AS, (limit, limit))
+    except Exception as e:
+        print("设置内存上限失败: %s" % e, file=sys.stderr)
+
+
+_apply_memory_limit()
+
+import matplotlib
+
+matplotlib.use("Agg")
+# 非交互后端下调用plt.show()只给出警告，图像在单元格结束时统一保存
+warnings.filterwarnings("ignore", message=".*non-interactive.*")
+
+import numpy as np
+import matplotlib.pyplot as plt
+import pandas as pd
+import scipy
+
+_runs = 0
+_session_globals = None
+# 定时器只在用户代码执行期间有效，关闭后迟到的信号不再抛出异常
+_timers_armed = False
+
+
+def _read_exactly(n):
+    buf = b""
+    while len(buf) < n:
+        chunk = _proto_in.read(n - len(buf))
+        if not chunk:
+            return None
+        buf += chunk
+    return buf
+
+
+def _read_frame():
+    header = _read_exactly(4)
+    if header is None:
+        return None
+    (length,) = struct.unpack(">I", header)
+    payload = _read_exactly(length)
+    if payload is None:
+        return None
+    return json.loads(payload.decode("utf-8"))
+
+
+def _write_frame(obj):
+    payload = json.dumps(obj, ensure_ascii=False).encode("utf-8")
+    _proto_out.write(struct.pack(">I", len(payload)) + payload)
+    _proto_out.flush()
+
+
+def _rss_kb():
+    try:
+        with open("/proc/self/statm") as f:
+            pages = int(f.read().split()[1])
+        return pages * os.sysconf("SC_PAGE_SIZE") // 1024
+    except Exception:
+        try:
+            import resource
+
+            return resource.getrusage(resource.RUSAGE_SELF).ru_maxrss
+        except Exception:
+            return 0
+
+
+class CellTimeout(BaseException):
+    """单元格执行超时，继承BaseException避免被用户代码的 except Exception 吞掉"""
+
+    def __init__(self, kind):
+        super().__init__(kind)
+        self.kind = kind
+
+
+def _raise_wall_timeout(signum, frame):
+    if _timers_armed:
+        raise CellTimeout("wall")
+
+
+def _raise_cpu_timeout(signum, frame):
+    if _timers_armed:
+        raise CellTimeout("cpu")
+
+
+def _arm_timers(wall_timeout, cpu_timeout):
+    global _timers_armed
+    _timers_armed = True
+    if wall_timeout > 0:
+        signal.setitimer(signal.ITIMER_REAL, wall_timeout)
+    if cpu_timeout > 0:
+        signal.setitimer(signal.ITIMER_VIRTUAL, cpu_timeout)
+
+
+def _disarm_timers():
+    """关闭定时器；定时器恰好在关闭过程中到期时信号处理函数抛出的CellTimeout在这里吞掉，不会逃出执行循环"""
+    global _timers_armed
+    while True:
+        try:
+            _timers_armed = False
+            signal.setitimer(signal.ITIMER_REAL, 0)
+            signal.setitimer(signal.ITIMER_VIRTUAL, 0)
+            return
+        except CellTimeout:
+            pass
+
+
+class BoundedWriter(io.TextIOBase):
+    """只保留开头和结尾的输出缓冲，中间部分丢弃并计数"""
+
+    def __init__(self, head_limit, tail_limit):
+        self.head_limit = head_limit
+        self.tail_limit = tail_limit
+        self.head = []
+        self.head_len = 0
+        self.tail = collections.deque()
+        self.tail_len = 0
+        self.total = 0
+
+    def writable(self):
+        return True
+
+    def write(self, s):
+        n = len(s)
+        self.total += n
+        room = self.head_limit - self.head_len
+        if room > 0:
+            part = s[:room]
+            self.head.append(part)
+            self.head_len += len(part)
+            s = s[room:]
+        if s and self.tail_limit > 0:
+            self.tail.append(s)
+            self.tail_len += len(s)
+            while self.tail and self.tail_len - len(self.tail[0]) >= self.tail_limit:
+                self.tail_len -= len(self.tail.popleft())
+            excess = self.tail_len - self.tail_limit
+            if excess > 0:
+                self.tail[0] = self.tail[0][excess:]
+                self.tail_len -= excess
+        return n
+
+    def dropped(self):
+        return self.total - self.head_len - self.tail_len
+
+    def content(self):
+        text = "".join(self.head)
+        dropped = self.dropped()
+        if dropped > 0:
+            text += "\n... [输出过长，省略 %d 个字符] ...\n" % dropped
+        return text + "".join(self.tail)
+
+
+def _save_figures(artifact_dir):
+    """保存所有仍打开的图像，返回文件名列表"""
+    saved = []
+    for num in plt.get_fignums():
+        name = "figure_%d.png" % num
+        try:
+            plt.figure(num).savefig(os.path.join(artifact_dir, name), bbox_inches="tight")
+            saved.append(name)
+        except Exception as e:
+            print("保存图像 %d 失败: %s" % (num, e), file=sys.stderr)
+    return saved
+
+
+def _fresh_globals():
+    # 与一次性进程模式的预置导入保持一致
+    return {
+        "__name__": "__main__",
+        "__builtins__": __builtins__,
+        "sys": sys,
+        "np": np,
+        "plt": plt,
+        "pd": pd,
+        "scipy": scipy,
+        "json": json,
+    }
+
+
+def _execute(request):
+    global _runs, _session_globals
+    _runs += 1
+    if request.get("persist"):
+        if _session_globals is None:
+            _session_globals = _fresh_globals()
+        namespace = _session_globals
+    else:
+        namespace = _fresh_globals()
+    head_chars = int(request.get("head_chars") or 16000)
+    tail_chars = int(request.get("tail_chars") or 16000)
+    stdout, stderr = BoundedWriter(head_chars, tail_chars), BoundedWriter(head_chars, tail_chars)
+    exit_code = 0
+    timed_out = None
+    figures = []
+    cwd = request.get("cwd")
+    artifact_dir = request.get("artifact_dir")
+    previous_cwd = os.getcwd()
+    wall_timeout = float(request.get("wall_timeout") or 0)
+    cpu_timeout = float(request.get("cpu_timeout") or 0)
+    try:
+        if cwd:
+            os.chdir(cwd)
+        with contextlib.redirect_stdout(stdout), contextlib.redirect_stderr(stderr):
+            try:
+                # 先关闭定时器再处理异常，避免处理异常（打印栈等）期间再收到超时信号
+                try:
+                    _arm_timers(wall_timeout, cpu_timeout)
+                    exec(compile(request.get("code", ""), "<cell>", "exec"), namespace)
+                finally:
+                    _disarm_timers()
+            except CellTimeout as e:
+                timed_out = e.kind
+                limit = wall_timeout if e.kind == "wall" else cpu_timeout
+                print("执行超时: %s时间超过 %s 秒，已中止" % ("运行" if e.kind == "wall" else "CPU", limit), file=sys.stderr)
+                exit_code = 124
+            except SystemExit as e:
+                if e.code is None:
+                    exit_code = 0
+                elif isinstance(e.code, int):
+                    exit_code = e.code
+                else:
+                    print(e.code, file=sys.stderr)
+                    exit_code = 1
+            except BaseException:
+                # 去掉worker自身的栈帧，只保留用户代码部分
+                exc_type, exc, tb = sys.exc_info()
+                traceback.print_exception(exc_type, exc, tb.tb_next)
+                exit_code = 1
+            # 执行失败时已画出的图像同样保存，便于排查
+            if artifact_dir:
+                figures = _save_figures(artifact_dir)
+    finally:
+        plt.close("all")
+        os.chdir(previous_cwd)
+        sys.stdout.flush()
+    return {
+        "ok": exit_code == 0,
+        "exit_code": exit_code,
+        "timed_out": timed_out,
+        "stdout": stdout.content(),
+        "stderr": stderr.content(),
+        "stdout_total": stdout.total,
+        "stdout_dropped": stdout.dropped(),
+        "stderr_total": stderr.total,
+        "stderr_dropped": stderr.dropped(),
+        "figures": figures,
+        "rss_kb": _rss_kb(),
+        "runs": _runs,
+    }
+
+
+def main():
+    global _session_globals
+    signal.signal(signal.SIGALRM, _raise_wall_timeout)
+    signal.signal(signal.SIGVTALRM, _raise_cpu_timeout)
+    _write_frame({"ok": True, "ready": True, "pid": os.getpid(), "rss_kb": _rss_kb(), "runs": 0})
+    while True:
+        request = _read_frame()
+        if request is None:
+            break
+        op = request.get("op")
+        if op == "exec":
+            _write_frame(_execute(request))
+        elif op == "reset":
+            _session_globals = None
+            _write_frame({"ok": True, "rss_kb": _rss_kb(), "runs": _runs})
+        elif op == "ping":
+            _write_frame({"ok": True, "rss_kb": _rss_kb(), "runs": _runs})
+        elif op == "shutdown":
+            _write_frame({"ok": True})
+            break
+        else:
+            _write_frame({"ok": False, "stderr": "unknown op: %s" % op})
+
+
+if __name__ == "__main__":
+    main()
@@ -53,3 +53,29 @@ CREATE TABLE IF NOT EXISTS task_logs (
     INDEX idx_level (level),
     INDEX idx_timestamp (timestamp)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='任务日志表';
+
+-- Graph检查点表
+CREATE TABLE IF NOT EXISTS task_checkpoints (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    task_id BIGINT NOT NULL COMMENT '任务ID',
+    execution_id VARCHAR(100) COMMENT 'Graph执行ID',
+    node_name VARCHAR(100) NOT NULL COMMENT '节点名称',
+    state_data LONGTEXT NOT NULL COMMENT '节点输出状态(JSON)',
+    created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    FOREIGN KEY (task_id) REFERENCES math_tasks(id) ON DELETE CASCADE,
+    INDEX idx_task_id (task_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='Graph检查点表';
+
+-- 建模分析语义缓存表
+CREATE TABLE IF NOT EXISTS modeling_analysis_cache (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    problem_hash CHAR(64) NOT NULL COMMENT '问题描述SHA-256',
+    problem_statement TEXT NOT NULL COMMENT '问题描述',
+    embedding_model VARCHAR(100) NOT NULL COMMENT '向量模型',
+    embedding MEDIUMTEXT NOT NULL COMMENT '问题向量(JSON)',
+    analysis_data LONGTEXT NOT NULL COMMENT '建模分析结果(JSON)',
+    hit_count INT NOT NULL DEFAULT 0 COMMENT '命中次数',
+    created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    INDEX idx_problem_hash (problem_hash),
+    INDEX idx_embedding_model (embedding_model)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='建模分析语义缓存表';
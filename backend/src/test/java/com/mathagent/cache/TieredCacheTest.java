@@ -0,0 +1,83 @@
+package com.mathagent.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * TieredCache 测试：磁盘层的持久化和定期清理
+ *
+ * @author Makoto
+ */
+class TieredCacheTest {
+
+	@TempDir
+	Path directory;
+
+	private TieredCache<String> newCache(int maxDiskEntries) {
+		return new TieredCache<>("test", 10, maxDiskEntries, Duration.ofHours(1), directory, String.class,
+				new ObjectMapper(), new SimpleMeterRegistry());
+	}
+
+	@Test
+	void readsEntriesWrittenByAnotherInstance() {
+		newCache(0).put("k", "v");
+
+		assertThat(newCache(0).get("k")).contains("v");
+	}
+
+	@Test
+	void sweepDeletesExpiredEntriesAndStaleTempFiles() throws Exception {
+		TieredCache<String> cache = newCache(0);
+		cache.put("old", "1");
+		cache.put("fresh", "2");
+		long now = System.currentTimeMillis();
+		age(fileFor("old"), now - Duration.ofHours(2).toMillis());
+		Path temp = Files.createTempFile(directory, "entry-", ".tmp");
+		age(temp, now - Duration.ofHours(2).toMillis());
+
+		cache.sweepDisk();
+
+		assertThat(diskFiles()).containsExactly(fileFor("fresh"));
+	}
+
+	@Test
+	void sweepEvictsOldestEntriesOverCapacity() throws Exception {
+		TieredCache<String> cache = newCache(2);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 4; i++) {
+			cache.put("k" + i, "v" + i);
+			age(fileFor("k" + i), now - (4 - i) * 60_000L);
+		}
+
+		cache.sweepDisk();
+
+		assertThat(diskFiles()).containsExactlyInAnyOrder(fileFor("k2"), fileFor("k3"));
+	}
+
+	private Path fileFor(String key) {
+		String fileName = TieredCache.sha256(key);
+		return directory.resolve(fileName.substring(0, 2)).resolve(fileName + ".json");
+	}
+
+	private static void age(Path file, long modifiedAt) throws Exception {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedAt));
+	}
+
+	private List<Path> diskFiles() throws Exception {
+		try (Stream<Path> files = Files.walk(directory)) {
+			return files.filter(Files::isRegularFile).toList();
+		}
+	}
+
+}
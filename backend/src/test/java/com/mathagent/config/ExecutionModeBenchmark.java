@@ -0,0 +1,115 @@
+package com.mathagent.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 执行模式对比：平台线程与虚拟线程下，任务执行线程池完成一批阻塞任务（模拟等待LLM响应和Python进程）的耗时
+ *
+ * 使用 application.yml 中的默认线程池参数；线程池拒绝时按客户端收到繁忙响应后重试处理，记录被拒绝的次数。
+ * 虚拟线程需要Java 21+运行时，低版本运行时virtual模式回退到平台线程。
+ * 运行：mvn test-compile 后以测试类路径执行本类的 main 方法
+ *
+ * @author Makoto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+	@Param({ "platform", "virtual" })
+	private String mode;
+
+	/**
+	 * 同时提交的任务数
+	 */
+	@Param({ "1000" })
+	private int tasks;
+
+	/**
+	 * 每个任务的阻塞时间
+	 */
+	@Param({ "50" })
+	private int blockMillis;
+
+	private ThreadPoolTaskExecutor executor;
+
+	private final AtomicInteger rejected = new AtomicInteger();
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		ExecutionConfig config = new ExecutionConfig();
+		ReflectionTestUtils.setField(config, "mode", mode);
+		ReflectionTestUtils.setField(config, "corePoolSize", 4);
+		ReflectionTestUtils.setField(config, "maxPoolSize", 8);
+		ReflectionTestUtils.setField(config, "queueCapacity", 50);
+		ReflectionTestUtils.setField(config, "keepAliveSeconds", 60);
+		ReflectionTestUtils.setField(config, "virtualMaxConcurrency", 2000);
+		executor = config.taskExecutionExecutor();
+		rejected.set(0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		System.out.printf("%n%s: 线程池拒绝 %d 次%n", mode, rejected.get());
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public void runBlockingTasks() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(tasks);
+		Runnable task = () -> {
+			try {
+				Thread.sleep(blockMillis);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				done.countDown();
+			}
+		};
+		for (int i = 0; i < tasks; i++) {
+			while (true) {
+				try {
+					executor.execute(task);
+					break;
+				}
+				catch (TaskRejectedException e) {
+					rejected.incrementAndGet();
+					Thread.sleep(1);
+				}
+			}
+		}
+		done.await();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ExecutionModeBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
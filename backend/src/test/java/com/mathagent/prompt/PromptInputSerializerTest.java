@@ -0,0 +1,174 @@
+package com.mathagent.prompt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mathagent.llm.TokenEstimator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PromptInputSerializer 测试，使用默认规则
+ *
+ * @author Makoto
+ */
+class PromptInputSerializerTest {
+
+	private static final int UNLIMITED = 1_000_000;
+
+	private PromptInputSerializer serializer;
+
+	@BeforeEach
+	void setUp() {
+		serializer = newSerializer(2000);
+	}
+
+	private static PromptInputSerializer newSerializer(int defaultFieldTokens) {
+		TokenEstimator tokenEstimator = new TokenEstimator();
+		ReflectionTestUtils.setField(tokenEstimator, "tokenScale", 1.0);
+
+		PromptInputSerializer inputSerializer = new PromptInputSerializer();
+		setRules(inputSerializer, "droppedFieldRules", "DEFAULT_DROPPED_FIELDS");
+		setRules(inputSerializer, "fieldTokenRules", "DEFAULT_FIELD_TOKENS");
+		ReflectionTestUtils.setField(inputSerializer, "shrinkOrder",
+				ReflectionTestUtils.getField(PromptInputSerializer.class, "DEFAULT_SHRINK_ORDER"));
+		ReflectionTestUtils.setField(inputSerializer, "defaultFieldTokens", defaultFieldTokens);
+		ReflectionTestUtils.setField(inputSerializer, "dedupeMinChars", 200);
+		ReflectionTestUtils.setField(inputSerializer, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(inputSerializer, "tokenEstimator", tokenEstimator);
+		inputSerializer.init();
+		return inputSerializer;
+	}
+
+	private static void setRules(PromptInputSerializer serializer, String field, String defaults) {
+		String value = (String) ReflectionTestUtils.getField(PromptInputSerializer.class, defaults);
+		ReflectionTestUtils.setField(serializer, field, value.split(","));
+	}
+
+	@Test
+	void writesCanonicalCompactJsonWithoutBookkeepingFields() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("z_score", 1.5);
+		result.put("method", "线性回归");
+		result.put("notes", null);
+		result.put("tags", List.of());
+		result.put("session_id", "abc");
+
+		PromptInputSerializer.SerializedInput input = serializer.serializeAll(Map.of("result", result), UNLIMITED)
+			.get("result");
+
+		assertThat(input.text()).isEqualTo("{\"method\":\"线性回归\",\"z_score\":1.5}");
+		assertThat(input.droppedFields()).containsExactly("result.session_id");
+		assertThat(input.fieldTokens()).containsOnlyKeys("method", "z_score");
+	}
+
+	@Test
+	void replacesRepeatedLongStringsWithReferenceAcrossVariables() {
+		String code = "import numpy as np\n" + "x = np.linspace(0, 1, 100)\n".repeat(20);
+		Map<String, Object> values = new LinkedHashMap<>();
+		values.put("coding", Map.of("code", code));
+		values.put("debug", Map.of("fixed", Map.of("code", code)));
+
+		Map<String, PromptInputSerializer.SerializedInput> inputs = serializer.serializeAll(values, UNLIMITED);
+
+		assertThat(inputs.get("coding").text()).contains("np.linspace");
+		assertThat(inputs.get("debug").text()).isEqualTo("{\"fixed\":{\"code\":\"[同 coding.code]\"}}");
+		assertThat(inputs.get("debug").droppedFields()).containsExactly("debug.fixed.code");
+		assertThat(inputs.keySet()).containsExactly("coding", "debug");
+	}
+
+	@Test
+	void truncatesLongTextKeepingHeadAndTail() {
+		String error = "Traceback (most recent call last):\n" + "  File \"cell.py\", line 3, in solve\n".repeat(300)
+				+ "ValueError: matrix is singular";
+
+		PromptInputSerializer.SerializedInput input = serializer
+			.serializeAll(Map.of("result", Map.of("error", error)), UNLIMITED)
+			.get("result");
+
+		assertThat(input.truncatedFields()).containsExactly("result.error");
+		assertThat(input.text()).contains("Traceback (most recent call last)")
+			.contains("ValueError: matrix is singular")
+			.contains("省略约");
+		assertThat(input.tokens()).isLessThan(900);
+	}
+
+	@Test
+	void truncatesLongArraysKeepingFirstAndLastElements() {
+		serializer = newSerializer(100);
+		List<Integer> values = IntStream.range(1000, 2000).boxed().toList();
+
+		PromptInputSerializer.SerializedInput input = serializer
+			.serializeAll(Map.of("result", Map.of("values", values)), UNLIMITED)
+			.get("result");
+
+		assertThat(input.truncatedFields()).containsExactly("result.values");
+		assertThat(input.text()).startsWith("{\"values\":[1000,").endsWith(",1999]}").containsPattern("省略\\d+项");
+	}
+
+	@Test
+	void shrinksFieldsInConfiguredOrder() {
+		Map<String, Object> result = new HashMap<>();
+		result.put("output", words("alpha", 1000));
+		result.put("data", words("beta", 1000));
+		result.put("analysis", words("gamma", 1000));
+		int full = serializer.serializeAll(Map.of("result", result), UNLIMITED).get("result").tokens();
+
+		PromptInputSerializer.SerializedInput outputOnly = serializer
+			.serializeAll(Map.of("result", result), full - 500)
+			.get("result");
+		PromptInputSerializer.SerializedInput outputThenData = serializer
+			.serializeAll(Map.of("result", result), full - 1500)
+			.get("result");
+
+		assertThat(outputOnly.truncatedFields()).containsExactly("result.output");
+		assertThat(outputOnly.tokens()).isLessThanOrEqualTo(full - 500);
+		assertThat(outputThenData.truncatedFields()).containsExactlyInAnyOrder("result.output", "result.data");
+		assertThat(outputThenData.tokens()).isLessThanOrEqualTo(full - 1500);
+		assertThat(outputThenData.text()).contains(words("gamma", 1000));
+	}
+
+	@Test
+	void shrinksShallowerOutputsFirst() {
+		Map<String, Object> result = new HashMap<>();
+		result.put("output", words("alpha", 1000));
+		result.put("debug_result", Map.of("output", words("beta", 1000)));
+		int full = serializer.serializeAll(Map.of("result", result), UNLIMITED).get("result").tokens();
+
+		PromptInputSerializer.SerializedInput input = serializer.serializeAll(Map.of("result", result), full - 500)
+			.get("result");
+
+		assertThat(input.truncatedFields()).containsExactly("result.output");
+		assertThat(input.text()).contains(words("beta", 1000));
+	}
+
+	@Test
+	void shrinksAllFieldsProportionallyWhenPriorityGroupsAreNotEnough() {
+		Map<String, Object> result = new HashMap<>();
+		result.put("analysis", words("gamma", 1000));
+		result.put("assumptions", words("delta", 1000));
+
+		PromptInputSerializer.SerializedInput input = serializer.serializeAll(Map.of("result", result), 1000)
+			.get("result");
+
+		assertThat(input.truncatedFields()).containsExactlyInAnyOrder("result.analysis", "result.assumptions");
+		assertThat(input.tokens()).isLessThanOrEqualTo(1100);
+	}
+
+	private static String words(String word, int count) {
+		List<String> words = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			words.add(word);
+		}
+		return String.join(" ", words);
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.mathagent.prompt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词渲染微基准：原逐变量 String.replace 渲染与编译后模板单次遍历渲染的耗时
+ *
+ * 运行：mvn test-compile 后以测试类路径执行本类的 main 方法
+ *
+ * @author Makoto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptTemplateBenchmark {
+
+	private static final List<String> VARIABLES = List.of("problemStatement", "problemAnalysis", "modelDescription",
+			"solutionResults", "codeOutput");
+
+	/**
+	 * 与报告生成提示词结构相近的模板：说明文字中穿插变量，部分变量出现两次，含JSON示例花括号
+	 */
+	private static final String TEMPLATE = """
+			你是一名数学建模竞赛论文写作专家。请根据以下材料撰写完整的建模论文。
+
+			## 问题描述
+			{problemStatement}
+
+			## 问题分析
+			{problemAnalysis}
+
+			## 模型建立
+			{modelDescription}
+
+			## 求解结果
+			{solutionResults}
+
+			## 代码输出
+			{codeOutput}
+
+			要求：
+			1. 摘要需概括问题、方法和主要结论，与问题描述（{problemStatement}）保持一致
+			2. 结果部分引用求解结果中的具体数值：{solutionResults}
+			3. 输出格式为Markdown，章节元数据使用JSON：{"title": "...", "sections": []}
+			""";
+
+	/**
+	 * 每个变量值的字符数
+	 */
+	@Param({ "500", "8000" })
+	private int valueSize;
+
+	private PromptTemplate compiled;
+
+	private Object[] values;
+
+	private Map<String, Object> variableMap;
+
+	@Setup
+	public void setUp() {
+		compiled = PromptTemplate.compile("report", TEMPLATE, VARIABLES);
+		values = new Object[VARIABLES.size()];
+		variableMap = new HashMap<>();
+		for (int i = 0; i < values.length; i++) {
+			String value = ("变量" + i + "的内容，含数值 3.14159 和公式 x_{i}。").repeat(valueSize / 24 + 1)
+				.substring(0, valueSize);
+			values[i] = value;
+			variableMap.put(VARIABLES.get(i), value);
+		}
+	}
+
+	/**
+	 * 原 PromptService.replaceVariables：每个变量构造一次HashMap条目并对整个模板做一次 replace
+	 */
+	@Benchmark
+	public String legacyReplace() {
+		Map<String, Object> variables = new HashMap<>(variableMap);
+		String result = TEMPLATE;
+		for (Map.Entry<String, Object> entry : variables.entrySet()) {
+			String placeholder = "{" + entry.getKey() + "}";
+			String value = entry.getValue() != null ? entry.getValue().toString() : "";
+			result = result.replace(placeholder, value);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public String compiledRender() {
+		return compiled.render(values);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PromptTemplateBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.mathagent.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * PromptTemplate 测试
+ *
+ * @author Makoto
+ */
+class PromptTemplateTest {
+
+	@Test
+	void rendersDeclaredVariablesInOrder() {
+		PromptTemplate template = PromptTemplate.compile("t", "问题：{problem}\n数据：{data}\n再次：{problem}",
+				List.of("problem", "data"));
+
+		assertThat(template.render("P", "D")).isEqualTo("问题：P\n数据：D\n再次：P");
+	}
+
+	@Test
+	void rejectsUnknownPlaceholderAtCompile() {
+		assertThatThrownBy(() -> PromptTemplate.compile("t", "{problem} {unknown}", List.of("problem")))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("{unknown}");
+	}
+
+	@Test
+	void doesNotResubstitutePlaceholdersInsideValues() {
+		PromptTemplate template = PromptTemplate.compile("t", "代码：{code}\n错误：{error}", List.of("code", "error"));
+
+		assertThat(template.render("print(f'{error}')", "NameError")).isEqualTo("代码：print(f'{error}')\n错误：NameError");
+	}
+
+	@Test
+	void treatsNonPlaceholderBracesAsLiterals() {
+		String text = "输出JSON：{\"key\": \"{value}\"} {1x} {} {a-b} {name";
+		PromptTemplate template = PromptTemplate.compile("t", text, List.of("value"));
+
+		assertThat(template.getVariables()).containsExactly("value");
+		assertThat(template.render("v")).isEqualTo("输出JSON：{\"key\": \"v\"} {1x} {} {a-b} {name");
+	}
+
+	@Test
+	void infersVariablesInFirstOccurrenceOrderWhenUndeclared() {
+		PromptTemplate template = PromptTemplate.compile("t", "{b}{a}{b}", null);
+
+		assertThat(template.getVariables()).containsExactly("b", "a");
+		assertThat(template.render("1", "2")).isEqualTo("121");
+	}
+
+	@Test
+	void rejectsWrongValueCount() {
+		PromptTemplate template = PromptTemplate.compile("t", "{a}{b}", List.of("a", "b"));
+
+		assertThatThrownBy(() -> template.render("only")).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void rendersMapWithMissingAndNullValuesAsEmpty() {
+		PromptTemplate template = PromptTemplate.compile("t", "[{a}|{b}|{c}]", List.of("a", "b", "c"));
+		Map<String, Object> values = new HashMap<>();
+		values.put("a", 1);
+		values.put("b", null);
+		values.put("extra", "ignored");
+
+		assertThat(template.render(values)).isEqualTo("[1||]");
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.mathagent.python;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BoundedOutputBuffer 测试
+ *
+ * @author Makoto
+ */
+class BoundedOutputBufferTest {
+
+	@Test
+	void keepsShortOutputUnchanged() {
+		BoundedOutputBuffer buffer = new BoundedOutputBuffer(4, 4);
+		append(buffer, "abcdefg");
+
+		assertThat(buffer.getContent()).isEqualTo("abcdefg");
+		assertThat(buffer.getDroppedChars()).isZero();
+		assertThat(buffer.getTotalChars()).isEqualTo(7);
+	}
+
+	@Test
+	void keepsHeadAndTailAndCountsDroppedMiddle() {
+		BoundedOutputBuffer buffer = new BoundedOutputBuffer(3, 4);
+		append(buffer, "0123456789");
+
+		assertThat(buffer.getDroppedChars()).isEqualTo(3);
+		assertThat(buffer.getContent()).isEqualTo("012\n... [输出过长，省略 3 个字符] ...\n6789");
+	}
+
+	@Test
+	void tailWrapsAroundAcrossManySmallAppends() {
+		BoundedOutputBuffer buffer = new BoundedOutputBuffer(2, 3);
+		for (char c = 'a'; c <= 'z'; c++) {
+			append(buffer, String.valueOf(c));
+		}
+
+		assertThat(buffer.getTotalChars()).isEqualTo(26);
+		assertThat(buffer.getDroppedChars()).isEqualTo(21);
+		assertThat(buffer.getContent()).endsWith("\nxyz").startsWith("ab\n");
+	}
+
+	@Test
+	void splitsSingleAppendBetweenHeadAndTailWithOffset() {
+		BoundedOutputBuffer buffer = new BoundedOutputBuffer(2, 2);
+		char[] chars = "##abcdef##".toCharArray();
+		buffer.append(chars, 2, 6);
+
+		assertThat(buffer.getDroppedChars()).isEqualTo(2);
+		assertThat(buffer.getContent()).startsWith("ab").endsWith("ef");
+	}
+
+	@Test
+	void zeroTailKeepsOnlyHead() {
+		BoundedOutputBuffer buffer = new BoundedOutputBuffer(3, 0);
+		append(buffer, "abcdef");
+
+		assertThat(buffer.getDroppedChars()).isEqualTo(3);
+		assertThat(buffer.getContent()).isEqualTo("abc\n... [输出过长，省略 3 个字符] ...\n");
+	}
+
+	@Test
+	void drainsUtf8Stream() throws Exception {
+		BoundedOutputBuffer buffer = new BoundedOutputBuffer(2, 2);
+		buffer.drain(new ByteArrayInputStream("结果：一二三四五".getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(buffer.getTotalChars()).isEqualTo(8);
+		assertThat(buffer.getDroppedChars()).isEqualTo(4);
+		assertThat(buffer.getContent()).startsWith("结果").endsWith("四五");
+	}
+
+	private static void append(BoundedOutputBuffer buffer, String text) {
+		char[] chars = text.toCharArray();
+		buffer.append(chars, 0, chars.length);
+	}
+
+}
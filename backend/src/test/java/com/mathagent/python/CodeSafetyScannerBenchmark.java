@@ -0,0 +1,110 @@
+package com.mathagent.python;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代码安全检查微基准：原子串匹配检查（isCodeSafe）与词法分析扫描的单次耗时
+ *
+ * 运行：mvn test-compile 后以测试类路径执行本类的 main 方法
+ *
+ * @author Makoto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeSafetyScannerBenchmark {
+
+	/**
+	 * 原 isCodeSafe 的匹配模式
+	 */
+	private static final String[] LEGACY_PATTERNS = { "import os", "subprocess", "eval(", "exec(", "__import__",
+			"open(", "file(", "input(", "system(", "popen(", "spawn", "fork", "rm ", "del ", "format(", "compile(" };
+
+	private static final String BLOCK = """
+			# 读取数据并做预处理
+			data = pd.read_csv('data.csv')
+			data = data.dropna()
+			x = data['x'].values
+			y = data['y'].values
+
+			def model(t, a, b, c):
+			    \"\"\"logistic 增长模型\"\"\"
+			    return a / (1 + np.exp(-b * (t - c)))
+
+			params, cov = scipy.optimize.curve_fit(model, x, y, p0=[max(y), 1, np.median(x)])
+			residuals = y - model(x, *params)
+			rmse = np.sqrt(np.mean(residuals ** 2))
+			print(f"参数: {params}, RMSE: {rmse:.4f}")
+			fig, ax = plt.subplots(figsize=(8, 5))
+			ax.plot(x, y, 'o', label='观测值')
+			ax.plot(x, model(x, *params), '-', label='拟合')
+			ax.legend()
+			results = {'a': params[0], 'b': params[1], 'c': params[2], 'rmse': rmse}
+			print(json.dumps(results, ensure_ascii=False))
+			""";
+
+	/**
+	 * 单元格代码的字符数
+	 */
+	@Param({ "2000", "32000" })
+	private int size;
+
+	private String code;
+
+	private CodeSafetyScanner scanner;
+
+	@Setup
+	public void setUp() {
+		StringBuilder builder = new StringBuilder(size + BLOCK.length());
+		while (builder.length() < size) {
+			builder.append(BLOCK);
+		}
+		code = builder.toString();
+		scanner = CodeSafetyScannerTest.defaultScanner();
+	}
+
+	@Benchmark
+	public boolean legacySubstring() {
+		String lowerCode = code.toLowerCase();
+		for (String pattern : LEGACY_PATTERNS) {
+			if (lowerCode.contains(pattern)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Benchmark
+	public List<PythonTokenizer.Token> tokenizeOnly() {
+		return PythonTokenizer.tokenize(code);
+	}
+
+	@Benchmark
+	public CodeSafetyScanner.ScanResult scan() {
+		return scanner.scan(code);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CodeSafetyScannerBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
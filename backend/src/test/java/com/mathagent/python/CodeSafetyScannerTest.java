@@ -0,0 +1,236 @@
+package com.mathagent.python;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CodeSafetyScanner 测试，使用默认规则
+ *
+ * @author Makoto
+ */
+class CodeSafetyScannerTest {
+
+	private CodeSafetyScanner scanner;
+
+	@BeforeEach
+	void setUp() {
+		scanner = defaultScanner();
+	}
+
+	/**
+	 * 按默认规则创建扫描器（与 application.yml 中的默认值一致）
+	 */
+	static CodeSafetyScanner defaultScanner() {
+		CodeSafetyScanner scanner = new CodeSafetyScanner();
+		setRules(scanner, "deniedModuleRules", "DEFAULT_DENIED_MODULES");
+		setRules(scanner, "deniedCallRules", "DEFAULT_DENIED_CALLS");
+		setRules(scanner, "deniedNameRules", "DEFAULT_DENIED_NAMES");
+		setRules(scanner, "deniedModuleAttributeRules", "DEFAULT_DENIED_MODULE_ATTRIBUTES");
+		setRules(scanner, "reflectionCallRules", "DEFAULT_REFLECTION_CALLS");
+		setRules(scanner, "preloadedModuleRules", "DEFAULT_PRELOADED_MODULES");
+		scanner.init();
+		return scanner;
+	}
+
+	private static void setRules(CodeSafetyScanner scanner, String field, String defaults) {
+		String value = (String) ReflectionTestUtils.getField(CodeSafetyScanner.class, defaults);
+		ReflectionTestUtils.setField(scanner, field, value.split(","));
+	}
+
+	@Test
+	void allowsOrdinaryNumericalCode() {
+		String code = """
+				import re
+				import numpy as np
+				from scipy import optimize
+				data = open('data.csv').read()
+				pattern = re.compile(r'\\d+')
+				label = '{:.2f}'.format(np.pi)
+				del data
+				print(f"result: {optimize.minimize(lambda x: x ** 2, 1.0).x}")
+				""";
+
+		assertThat(scanner.scan(code).isSafe()).isTrue();
+	}
+
+	@Test
+	void ignoresDeniedTextInStringsAndComments() {
+		String code = """
+				# import os; os.system('rm -rf /')
+				note = "subprocess.run(['ls']) and eval(x)"
+				doc = '''
+				import socket
+				__import__('os')
+				'''
+				""";
+
+		assertThat(scanner.scan(code).isSafe()).isTrue();
+	}
+
+	@Test
+	void reportsImportsIncludingSubmodulesAndFromImports() {
+		String code = """
+				import numpy as np, os.path as p
+				from subprocess import run
+				from urllib.request import urlopen
+				from . import helpers
+				""";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("os.path", "subprocess", "urllib.request");
+	}
+
+	@Test
+	void yieldFromAndRaiseFromAreNotImports() {
+		String code = """
+				def gen(items):
+				    yield from items
+				try:
+				    pass
+				except ValueError as e:
+				    raise RuntimeError('x') from e
+				""";
+
+		assertThat(scanner.scan(code).isSafe()).isTrue();
+	}
+
+	@Test
+	void reportsDeniedFromImportedNames() {
+		assertThat(scanner.scan("from builtins import eval").violations())
+			.extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("builtins.eval");
+	}
+
+	@Test
+	void reportsCallsOnAnyReceiverAndPrefixRules() {
+		String code = """
+				eval('1 + 1')
+				np.os.system('ls')
+				make().popen('ls')
+				handle.spawnlp(0, 'ls')
+				""";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("eval", "np.os", "np.os.system", "<expr>.popen", "handle.spawnlp");
+	}
+
+	@Test
+	void reportsCallsInsideFormattedStrings() {
+		CodeSafetyScanner.ScanResult result = scanner.scan("x = 1\nprint(f\"{x} {eval('2')}\")");
+
+		assertThat(result.violations()).containsExactly(
+				new CodeSafetyScanner.Violation(CodeSafetyScanner.ViolationType.CALL, "eval", 2));
+	}
+
+	@Test
+	void reportsLineNumbersAfterTripleQuotedStrings() {
+		String code = "text = \"\"\"\nline\nline\n\"\"\"\nexec('x')\n";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::line).containsExactly(5);
+	}
+
+	@Test
+	void reportsDunderEscapes() {
+		String code = "().__class__.__bases__[0].__subclasses__()\nf.__globals__['x']";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("__subclasses__", "__globals__");
+	}
+
+	@Test
+	void reportsModuleLookupThroughSysModules() {
+		// matplotlib已经导入了subprocess，字符串中的模块名无法检查
+		CodeSafetyScanner.ScanResult result = scanner.scan("sys.modules['subprocess'].run(['ls'])");
+
+		assertThat(result.isSafe()).isFalse();
+		assertThat(result.violations()).extracting(CodeSafetyScanner.Violation::target).contains("sys.modules");
+	}
+
+	@Test
+	void reportsModuleLookupThroughAliasesAndFromImports() {
+		String code = """
+				import sys as s
+				s.modules['os']
+				from sys import modules
+				""";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("s.modules", "sys.modules");
+	}
+
+	@Test
+	void allowsOrdinaryVariablesNamedModules() {
+		String code = """
+				modules = ['回归', '聚类']
+				for m in modules:
+				    print(m)
+				layers = list(model.modules())
+				""";
+
+		assertThat(scanner.scan(code).isSafe()).isTrue();
+	}
+
+	@Test
+	void reportsDeniedModulesReachedThroughAttributeChains() {
+		String code = """
+				import matplotlib.animation
+				matplotlib.animation.subprocess.run(['id'])
+				pd.io.common.os.remove('data.csv')
+				import tempfile
+				tempfile._os.remove('data.csv')
+				from pandas.io.common import os
+				""";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("matplotlib.animation.subprocess", "pd.io.common.os", "tempfile._os",
+					"pandas.io.common.os");
+	}
+
+	@Test
+	void reportsReflectionOnModules() {
+		String code = """
+				mods = getattr(sys, 'modules')
+				import numpy as xp
+				vars(xp)
+				getattr(model, 'coef_')
+				""";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("getattr(sys)", "vars(xp)");
+	}
+
+	@Test
+	void reportsReflectionBuiltinsUsedAsValues() {
+		String code = """
+				f = getattr
+				f(sys, 'modules')
+				loader = __import__
+				apply(vars, np)
+				""";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("getattr", "__import__", "vars");
+	}
+
+	@Test
+	void reportsNamespaceDictionaries() {
+		String code = """
+				globals()['sys']
+				vars()['np']
+				import builtins
+				builtins.getattr(sys, 'path')
+				""";
+
+		assertThat(scanner.scan(code).violations()).extracting(CodeSafetyScanner.Violation::target)
+			.containsExactly("globals()", "vars()", "getattr(sys)");
+	}
+
+	@Test
+	void describesViolations() {
+		assertThat(scanner.scan("import os").describe()).isEqualTo("第1行: 禁止导入 os");
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.mathagent.python;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ExecutionResultCache 测试：代码结果是否可复现的判断和产出文件清理
+ *
+ * @author Makoto
+ */
+class ExecutionResultCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void cachesPlainComputation() {
+		assertThat(ExecutionResultCache.isDeterministic("import numpy as np\nprint(np.linalg.inv([[2, 0], [0, 2]]))"))
+			.isTrue();
+	}
+
+	@Test
+	void doesNotCacheTimeModuleImports() {
+		assertThat(ExecutionResultCache.isDeterministic("from time import time\nstart = time()")).isFalse();
+		assertThat(ExecutionResultCache.isDeterministic("import datetime as dt\nprint(dt.date(2024, 1, 1))"))
+			.isFalse();
+		assertThat(ExecutionResultCache.isDeterministic("from datetime import datetime\nprint(datetime.now())"))
+			.isFalse();
+		assertThat(ExecutionResultCache.isDeterministic("print(pd.Timestamp.now())")).isFalse();
+	}
+
+	@Test
+	void requiresSeedForFromImportedRandomFunctions() {
+		assertThat(ExecutionResultCache.isDeterministic("from numpy.random import normal\nx = normal(0, 1, 10)"))
+			.isFalse();
+		assertThat(ExecutionResultCache.isDeterministic("from random import choice\nprint(choice([1, 2, 3]))"))
+			.isFalse();
+		assertThat(ExecutionResultCache
+			.isDeterministic("from numpy.random import normal, seed\nseed(0)\nx = normal(0, 1, 10)")).isTrue();
+		assertThat(ExecutionResultCache
+			.isDeterministic("from random import choice\nimport random\nrandom.seed(1)\nprint(choice([1, 2]))"))
+			.isTrue();
+	}
+
+	@Test
+	void requiresSeedForEachGeneratorFamily() {
+		String numpySeededOnly = """
+				import random
+				np.random.seed(0)
+				x = np.random.rand(3)
+				print(random.random())
+				""";
+		String bothSeeded = """
+				import random
+				random.seed(0)
+				np.random.seed(0)
+				print(random.random(), np.random.rand())
+				""";
+
+		assertThat(ExecutionResultCache.isDeterministic(numpySeededOnly)).isFalse();
+		assertThat(ExecutionResultCache.isDeterministic(bothSeeded)).isTrue();
+	}
+
+	@Test
+	void requiresSeedForEveryGenerator() {
+		assertThat(ExecutionResultCache.isDeterministic("rng = np.random.default_rng(42)\nx = rng.normal(size=5)"))
+			.isTrue();
+		assertThat(ExecutionResultCache
+			.isDeterministic("a = np.random.default_rng(42)\nb = np.random.default_rng()\nprint(b.random())"))
+			.isFalse();
+		assertThat(ExecutionResultCache.isDeterministic("rng = np.random.default_rng(42)\nx = np.random.rand(3)"))
+			.isFalse();
+		assertThat(ExecutionResultCache.isDeterministic("from scipy import stats\nx = stats.norm.rvs(size=5)"))
+			.isFalse();
+		assertThat(ExecutionResultCache
+			.isDeterministic("from scipy import stats\nx = stats.norm.rvs(size=5, random_state=1)")).isTrue();
+	}
+
+	@Test
+	void honoursNoCacheMarker() {
+		assertThat(ExecutionResultCache.isDeterministic("print(1)\n# no-cache")).isFalse();
+	}
+
+	@Test
+	void sweepDeletesExpiredBlobsAndEvictsOldestOverCapacity() throws Exception {
+		ExecutionResultCache cache = new ExecutionResultCache();
+		ReflectionTestUtils.setField(cache, "artifactStore", tempDir);
+		ReflectionTestUtils.setField(cache, "ttlHours", 24L);
+		ReflectionTestUtils.setField(cache, "maxArtifactMb", 1L);
+		long now = System.currentTimeMillis();
+		Path expired = blob("aa", 10, now - TimeUnit.HOURS.toMillis(25));
+		Path oldest = blob("bb", 600 * 1024, now - TimeUnit.HOURS.toMillis(2));
+		Path newest = blob("cc", 600 * 1024, now - TimeUnit.HOURS.toMillis(1));
+
+		cache.sweepArtifacts();
+
+		assertThat(expired).doesNotExist();
+		assertThat(oldest).doesNotExist();
+		assertThat(newest).exists();
+	}
+
+	private Path blob(String prefix, int size, long modifiedAt) throws Exception {
+		Path file = tempDir.resolve(prefix).resolve(prefix + "0".repeat(62));
+		Files.createDirectories(file.getParent());
+		Files.write(file, new byte[size]);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedAt));
+		return file;
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.mathagent.python;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PythonTokenizer 测试
+ *
+ * @author Makoto
+ */
+class PythonTokenizerTest {
+
+	@Test
+	void skipsCommentsAndKeepsStringBodiesOpaque() {
+		List<PythonTokenizer.Token> tokens = PythonTokenizer.tokenize("x = 'import os'  # os.system('ls')\n");
+
+		assertThat(names(tokens)).containsExactly("x");
+		assertThat(tokens).extracting(PythonTokenizer.Token::type)
+			.containsExactly(PythonTokenizer.Type.NAME, PythonTokenizer.Type.OP, PythonTokenizer.Type.STRING,
+					PythonTokenizer.Type.NEWLINE);
+	}
+
+	@Test
+	void lexesFormattedStringReplacementFieldsAsCode() {
+		List<PythonTokenizer.Token> tokens = PythonTokenizer
+			.tokenize("print(f\"{{literal}} {value!r:>10} {obj.method(a['k'])}\")");
+
+		assertThat(names(tokens)).containsExactly("print", "value", "r", "obj", "method", "a");
+	}
+
+	@Test
+	void plainStringsWithBracesAreNotFormatted() {
+		assertThat(names(PythonTokenizer.tokenize("s = '{eval}'; t = rb'{exec}'"))).containsExactly("s", "t");
+	}
+
+	@Test
+	void tripleQuotedStringSpansLinesAndKeepsLineNumbers() {
+		String code = "doc = \"\"\"first\nsecond ' \" still inside\n\"\"\"\nafter = 1\n";
+		List<PythonTokenizer.Token> tokens = PythonTokenizer.tokenize(code);
+
+		assertThat(names(tokens)).containsExactly("doc", "after");
+		assertThat(tokens.stream().filter(token -> token.text().equals("after")).findFirst().orElseThrow().line())
+			.isEqualTo(4);
+	}
+
+	@Test
+	void escapedQuotesDoNotCloseTheString() {
+		assertThat(names(PythonTokenizer.tokenize("s = 'it\\'s os.system'\nrest"))).containsExactly("s", "rest");
+	}
+
+	@Test
+	void newlinesInsideBracketsAndContinuationsDoNotEndTheStatement() {
+		List<PythonTokenizer.Token> tokens = PythonTokenizer.tokenize("total = sum([\n  1,\n  2]) + \\\n  3\nnext\n");
+
+		long newlines = tokens.stream().filter(token -> token.type() == PythonTokenizer.Type.NEWLINE).count();
+		assertThat(newlines).isEqualTo(2);
+	}
+
+	@Test
+	void unterminatedStringDoesNotSwallowFollowingLines() {
+		List<PythonTokenizer.Token> tokens = PythonTokenizer.tokenize("s = 'open\nimport os\n");
+
+		assertThat(names(tokens)).containsExactly("s", "import", "os");
+		assertThat(tokens.stream().filter(token -> token.text().equals("os")).findFirst().orElseThrow().line())
+			.isEqualTo(2);
+	}
+
+	private static List<String> names(List<PythonTokenizer.Token> tokens) {
+		return tokens.stream()
+			.filter(token -> token.type() == PythonTokenizer.Type.NAME)
+			.map(PythonTokenizer.Token::text)
+			.toList();
+	}
+
+}
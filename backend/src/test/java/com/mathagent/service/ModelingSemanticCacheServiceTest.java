@@ -0,0 +1,240 @@
+package com.mathagent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mathagent.mapper.ModelingAnalysisCacheMapper;
+import com.mathagent.model.ModelingAnalysisCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * ModelingSemanticCacheService 测试 向量模型替换为本地实现：每个问题描述对应一个预设向量，与基准问题的余弦相似度即测试中给定的值
+ *
+ * @author Makoto
+ */
+class ModelingSemanticCacheServiceTest {
+
+	private static final String ORIGINAL = "某城市共享单车的调度优化问题";
+
+	private final LocalEmbeddingModel embeddingModel = new LocalEmbeddingModel();
+
+	private final InMemoryCacheMapper cacheMapper = new InMemoryCacheMapper();
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private ModelingSemanticCacheService service;
+
+	@BeforeEach
+	void setUp() {
+		embeddingModel.define(ORIGINAL, 1.0);
+		service = newService();
+	}
+
+	private ModelingSemanticCacheService newService() {
+		ModelingSemanticCacheService cacheService = new ModelingSemanticCacheService();
+		ReflectionTestUtils.setField(cacheService, "embeddingModel", embeddingModel);
+		ReflectionTestUtils.setField(cacheService, "cacheMapper", cacheMapper);
+		ReflectionTestUtils.setField(cacheService, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(cacheService, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(cacheService, "embeddingModelName", "local-test");
+		ReflectionTestUtils.setField(cacheService, "enabled", true);
+		ReflectionTestUtils.setField(cacheService, "reuseThreshold", 0.95);
+		ReflectionTestUtils.setField(cacheService, "adaptThreshold", 0.88);
+		ReflectionTestUtils.setField(cacheService, "maxEntries", 100);
+		ReflectionTestUtils.setField(cacheService, "maxInputChars", 6000);
+		return cacheService;
+	}
+
+	private void storeOriginal() throws Exception {
+		ModelingSemanticCacheService.Lookup first = service.lookup(ORIGINAL);
+		assertThat(first.decision()).isEqualTo(ModelingSemanticCacheService.Decision.MISS);
+		service.store(first, ORIGINAL, Map.of("problem_type", "优化问题"));
+	}
+
+	@Test
+	void missesOnEmptyCacheAndReusesIdenticalStatement() throws Exception {
+		storeOriginal();
+
+		ModelingSemanticCacheService.Lookup lookup = service.lookup(ORIGINAL);
+
+		assertThat(lookup.decision()).isEqualTo(ModelingSemanticCacheService.Decision.REUSE);
+		assertThat(lookup.similarity()).isEqualTo(1.0);
+		assertThat(service.readAnalysis(lookup.match())).containsEntry("problem_type", "优化问题");
+		assertThat(cacheMapper.hits).containsEntry(lookup.match().id(), 1);
+	}
+
+	@Test
+	void reusesParaphraseAboveReuseThreshold() throws Exception {
+		storeOriginal();
+		String paraphrase = "共享单车在城市中的调度如何优化";
+		embeddingModel.define(paraphrase, 0.97);
+
+		ModelingSemanticCacheService.Lookup lookup = service.lookup(paraphrase);
+
+		assertThat(lookup.decision()).isEqualTo(ModelingSemanticCacheService.Decision.REUSE);
+		assertThat(lookup.similarity()).isCloseTo(0.97, within(1e-4));
+	}
+
+	@Test
+	void adaptsInsteadOfReusingWhenOnlyNumbersDiffer() throws Exception {
+		String stored = "某仓库有3辆货车，每辆载重5吨，求总运输成本最低的配送路线";
+		String changed = "某仓库有4辆货车，每辆载重8吨，求总运输成本最低的配送路线";
+		embeddingModel.define(stored, 1.0);
+		embeddingModel.define(changed, 0.99);
+		ModelingSemanticCacheService.Lookup first = service.lookup(stored);
+		service.store(first, stored, Map.of("problem_type", "路径优化"));
+
+		ModelingSemanticCacheService.Lookup lookup = service.lookup(changed);
+
+		assertThat(lookup.similarity()).isCloseTo(0.99, within(1e-4));
+		assertThat(lookup.decision()).isEqualTo(ModelingSemanticCacheService.Decision.ADAPT);
+	}
+
+	@Test
+	void reusesWhenNumbersMatchDespiteFormatting() throws Exception {
+		String stored = "某仓库有3辆货车，每辆载重5吨，求配送路线";
+		String reformatted = "某仓库有 ３ 辆货车, 每辆载重 5.0 吨; 求配送路线";
+		embeddingModel.define(stored, 1.0);
+		embeddingModel.define(reformatted, 0.98);
+		service.store(service.lookup(stored), stored, Map.of("problem_type", "路径优化"));
+
+		assertThat(service.lookup(reformatted).decision()).isEqualTo(ModelingSemanticCacheService.Decision.REUSE);
+	}
+
+	@Test
+	void adaptsBetweenThresholds() throws Exception {
+		storeOriginal();
+		String similar = "共享单车调度优化，增加了电动车充电约束";
+		embeddingModel.define(similar, 0.9);
+
+		assertThat(service.lookup(similar).decision()).isEqualTo(ModelingSemanticCacheService.Decision.ADAPT);
+	}
+
+	@Test
+	void missesBelowAdaptThreshold() throws Exception {
+		storeOriginal();
+		String unrelated = "传染病传播的SIR模型参数估计";
+		embeddingModel.define(unrelated, 0.5);
+
+		ModelingSemanticCacheService.Lookup lookup = service.lookup(unrelated);
+
+		assertThat(lookup.decision()).isEqualTo(ModelingSemanticCacheService.Decision.MISS);
+		assertThat(lookup.match()).isNull();
+		assertThat(lookup.vector()).isNotNull();
+	}
+
+	@Test
+	void loadsPersistedEntriesInNewInstance() throws Exception {
+		storeOriginal();
+		String paraphrase = "城市共享单车调度优化";
+		embeddingModel.define(paraphrase, 0.96);
+
+		ModelingSemanticCacheService restarted = newService();
+
+		assertThat(restarted.lookup(paraphrase).decision()).isEqualTo(ModelingSemanticCacheService.Decision.REUSE);
+	}
+
+	@Test
+	void fallsBackToFullCallWhenEmbeddingFails() {
+		ModelingSemanticCacheService.Lookup lookup = service.lookup("未定义向量的问题");
+
+		assertThat(lookup).isSameAs(ModelingSemanticCacheService.Lookup.DISABLED);
+	}
+
+	@Test
+	void recordsDecisionsAsMetrics() throws Exception {
+		storeOriginal();
+		service.lookup(ORIGINAL);
+
+		assertThat(meterRegistry.counter("mathagent.cache.requests", "cache", "modeling_semantic", "result", "miss")
+			.count()).isEqualTo(1);
+		assertThat(meterRegistry.counter("mathagent.cache.requests", "cache", "modeling_semantic", "result", "reuse")
+			.count()).isEqualTo(1);
+	}
+
+	/**
+	 * 本地向量模型：三维向量，第一维与基准问题 (1, 0, 0) 的余弦相似度为预设值；未预设的文本视为向量服务失败
+	 */
+	private static class LocalEmbeddingModel implements EmbeddingModel {
+
+		private final Map<String, float[]> vectors = new HashMap<>();
+
+		void define(String text, double similarity) {
+			vectors.put(text, new float[] { (float) similarity, (float) Math.sqrt(1 - similarity * similarity), 0 });
+		}
+
+		@Override
+		public EmbeddingResponse call(EmbeddingRequest request) {
+			List<Embedding> embeddings = new ArrayList<>();
+			for (int i = 0; i < request.getInstructions().size(); i++) {
+				embeddings.add(new Embedding(embed(request.getInstructions().get(i)), i));
+			}
+			return new EmbeddingResponse(embeddings);
+		}
+
+		@Override
+		public float[] embed(String text) {
+			float[] vector = vectors.get(text);
+			if (vector == null) {
+				throw new IllegalStateException("向量服务不可用");
+			}
+			return vector.clone();
+		}
+
+		@Override
+		public float[] embed(Document document) {
+			return embed(document.getText());
+		}
+
+	}
+
+	/**
+	 * 内存中的缓存表
+	 */
+	private static class InMemoryCacheMapper implements ModelingAnalysisCacheMapper {
+
+		private final List<ModelingAnalysisCache> rows = new ArrayList<>();
+
+		private final Map<Long, Integer> hits = new HashMap<>();
+
+		@Override
+		public int insert(ModelingAnalysisCache entry) {
+			entry.setId((long) rows.size() + 1);
+			rows.add(entry);
+			return 1;
+		}
+
+		@Override
+		public List<ModelingAnalysisCache> selectRecent(String embeddingModel, int limit) {
+			List<ModelingAnalysisCache> recent = new ArrayList<>();
+			for (int i = rows.size() - 1; i >= 0 && recent.size() < limit; i--) {
+				if (rows.get(i).getEmbeddingModel().equals(embeddingModel)) {
+					recent.add(rows.get(i));
+				}
+			}
+			return recent;
+		}
+
+		@Override
+		public int incrementHitCount(Long id) {
+			hits.merge(id, 1, Integer::sum);
+			return 1;
+		}
+
+	}
+
+}